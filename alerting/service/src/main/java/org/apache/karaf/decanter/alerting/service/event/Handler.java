@@ -21,6 +21,7 @@ import org.apache.karaf.decanter.alerting.service.Store;
 import org.apache.karaf.decanter.alerting.service.model.Loader;
 import org.apache.karaf.decanter.alerting.service.model.PeriodParser;
 import org.apache.karaf.decanter.alerting.service.model.Rule;
+import org.apache.lucene.queryparser.flexible.standard.QueryParserUtil;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -35,6 +36,9 @@ import org.slf4j.LoggerFactory;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component(
         name = "org.apache.karaf.decanter.alerting.service",
@@ -53,6 +57,9 @@ public class Handler implements EventHandler {
 
     private List<Rule> rules;
 
+    // alerts flagged by the recoverable or period rules, per rule name
+    private final Map<String, Alert> flagged = new ConcurrentHashMap<>();
+
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
         activate(componentContext.getProperties());
@@ -60,6 +67,21 @@ public class Handler implements EventHandler {
 
     public void activate(Dictionary<String, Object> configuration) {
         rules = Loader.load(configuration);
+        flagged.clear();
+        try {
+            // only the flagged alerts are stored, remove the events stored without rule
+            store.eviction();
+            for (Rule rule : rules) {
+                if (rule.getPeriod() != null || rule.isRecoverable()) {
+                    List<Alert> alerts = store.query(flaggedQuery(rule));
+                    if (!alerts.isEmpty()) {
+                        flagged.put(rule.getName(), alerts.get(0));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Can't load flagged alerts from the store", e);
+        }
     }
 
     private Event prepareEvent(Alert alert, Rule rule, boolean recover) {
@@ -74,57 +96,104 @@ public class Handler implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        try {
-            String uuid = store.store(event);
-            for (Rule rule : rules) {
-                if (rule.getPeriod() != null) {
-                    long timestamp = System.currentTimeMillis() - PeriodParser.parse(rule.getPeriod());
-                    List<Alert> known = store.query("(" + rule.getCondition() + ") AND NOT alertUUID:" + uuid);
-                    if (known.size() == 1) {
-                        List<Alert> recover = store.query("alertUUID:" + uuid + " AND NOT (" + rule.getCondition() + ")");
-                        if (recover.size() != 1 && (((Long) known.get(0).get("alertTimestamp")) < timestamp)) {
-                            // not recover during the period
-                            dispatcher.postEvent(prepareEvent(known.get(0), rule, false));
-                            store.delete(rule.getCondition());
-                        }
-                        store.delete("alertUUID:" + uuid);
-                    } else {
-                        // flag
-                        List<Alert> toFlag = store.query("alertUUID:" + uuid + " AND (" + rule.getCondition() + ")");
-                        if (toFlag.size() == 1) {
-                            store.flag("alertUUID:" + uuid, rule.getName());
-                        }
-                    }
+        Alert alert = null;
+        // the event stored for the rules evaluated with a Lucene query
+        String uuid = null;
+        for (Rule rule : rules) {
+            try {
+                boolean matches;
+                if (rule.isCompiled()) {
+                    matches = rule.matches(event);
                 } else {
-                    if (!rule.isRecoverable()) {
-                        List<Alert> alerts = store.query(rule.getCondition());
-                        for (Alert alert : alerts) {
-                            dispatcher.postEvent(prepareEvent(alert, rule, false));
-                            store.delete("alertUUID:" + alert.get("alertUUID"));
+                    uuid = (uuid != null) ? uuid : store.store(event);
+                    matches = !store.query("alertUUID:" + uuid + " AND (" + rule.getCondition() + ")").isEmpty();
+                }
+                if (rule.getPeriod() == null && !rule.isRecoverable()) {
+                    if (matches) {
+                        alert = (alert != null) ? alert : toAlert(event);
+                        dispatcher.postEvent(prepareEvent(alert, rule, false));
+                    }
+                    continue;
+                }
+                synchronized (rule) {
+                    Alert known = flagged.get(rule.getName());
+                    if (rule.getPeriod() != null) {
+                        if (known != null) {
+                            long timestamp = System.currentTimeMillis() - PeriodParser.parse(rule.getPeriod());
+                            if (matches && ((Number) known.get("alertTimestamp")).longValue() < timestamp) {
+                                // not recover during the period
+                                dispatcher.postEvent(prepareEvent(known, rule, false));
+                                unflag(rule);
+                            }
+                        } else if (matches) {
+                            alert = (alert != null) ? alert : toAlert(event);
+                            flag(rule, event, alert);
                         }
                     } else {
-                        List<Alert> known = store.query("(" + rule.getCondition() + ") AND NOT alertUUID:" + uuid);
-                        if (known.size() == 1) {
-                            List<Alert> recover = store.query("alertUUID:" + uuid + " AND NOT (" + rule.getCondition() + ")");
-                            if (recover.size() == 1) {
-                                dispatcher.postEvent(prepareEvent(recover.get(0), rule, true));
-                                store.delete(rule.getCondition());
-                            }
-                            store.delete("alertUUID:" + uuid);
-                        } else {
-                            List<Alert> toSend = store.query("alertUUID:" + uuid + " AND (" + rule.getCondition() + ")");
-                            if (toSend.size() == 1) {
-                                store.flag("alertUUID:" + uuid, rule.getName());
-                                dispatcher.postEvent(prepareEvent(toSend.get(0), rule, false));
+                        if (known != null) {
+                            if (!matches) {
+                                alert = (alert != null) ? alert : toAlert(event);
+                                dispatcher.postEvent(prepareEvent(alert, rule, true));
+                                unflag(rule);
                             }
+                        } else if (matches) {
+                            alert = (alert != null) ? alert : toAlert(event);
+                            dispatcher.postEvent(prepareEvent(flag(rule, event, alert), rule, false));
                         }
                     }
                 }
+            } catch (Exception e) {
+                LOGGER.error("Can't process alerting rule {} for event", rule.getName(), e);
+            }
+        }
+        if (uuid != null) {
+            try {
+                store.delete("alertUUID:" + uuid);
+            } catch (Exception e) {
+                LOGGER.warn("Can't remove the event from the store", e);
+            }
+        }
+    }
+
+    private Alert toAlert(Event event) {
+        Alert alert = new Alert();
+        for (String name : event.getPropertyNames()) {
+            Object value = event.getProperty(name);
+            if (value instanceof Number) {
+                alert.put(name, value);
+            } else if (value != null) {
+                alert.put(name, value.toString());
             }
-            store.eviction();
-        } catch (Exception e) {
-            LOGGER.error("Can't process alerting for event", e);
         }
+        if (alert.get("alertTimestamp") == null) {
+            alert.put("alertTimestamp", System.currentTimeMillis());
+        }
+        alert.put("alertUUID", UUID.randomUUID().toString());
+        return alert;
+    }
+
+    /**
+     * Persist the alert flagged with the rule, waiting for the period or the recovery.
+     */
+    private Alert flag(Rule rule, Event event, Alert alert) throws Exception {
+        HashMap<String, Object> data = new HashMap<>(alert.get());
+        data.remove("alertUUID");
+        data.put("alertRule", rule.getName());
+        String uuid = store.store(new Event(event.getTopic(), data));
+        Alert flaggedAlert = new Alert();
+        flaggedAlert.get().putAll(data);
+        flaggedAlert.put("alertUUID", uuid);
+        flagged.put(rule.getName(), flaggedAlert);
+        return flaggedAlert;
+    }
+
+    private void unflag(Rule rule) throws Exception {
+        flagged.remove(rule.getName());
+        store.delete(flaggedQuery(rule));
+    }
+
+    private static String flaggedQuery(Rule rule) {
+        return "alertRule:" + QueryParserUtil.escape(rule.getName());
     }
 
     /**
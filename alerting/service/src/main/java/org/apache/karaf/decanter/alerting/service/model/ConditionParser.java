@@ -0,0 +1,562 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.alerting.service.model;
+
+import org.osgi.service.event.Event;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles a rule condition into a predicate evaluated directly on the event properties.
+ * The supported syntax is the subset of the Lucene query syntax used by the rules:
+ * <ul>
+ *     <li>term and phrase: <code>foo:bar</code>, <code>foo:"bar bla"</code>, <code>counter:100</code></li>
+ *     <li>wildcard: <code>foo:*</code>, <code>foo:ba?*</code></li>
+ *     <li>range: <code>counter:[100 TO *]</code>, <code>counter:{10 TO 20]</code>, <code>counter:&gt;=100</code></li>
+ *     <li>boolean: <code>AND</code>, <code>OR</code>, <code>NOT</code>, <code>+</code>, <code>-</code> and grouping with parenthesis</li>
+ * </ul>
+ * The boolean clauses follow the Lucene semantic: the default operator is <code>OR</code> and a group containing only
+ * negative clauses doesn't match.
+ */
+public class ConditionParser {
+
+    private enum Occur { DEFAULT, MUST, SHOULD, MUST_NOT }
+
+    private final String condition;
+    private int position = 0;
+
+    private ConditionParser(String condition) {
+        this.condition = condition;
+    }
+
+    /**
+     * Compile a condition.
+     *
+     * @param condition the rule condition.
+     * @return the predicate matching the events verifying the condition.
+     * @throws IllegalArgumentException if the condition syntax is not valid or not supported.
+     */
+    public static Predicate<Event> parse(String condition) throws IllegalArgumentException {
+        if (condition == null || condition.trim().isEmpty()) {
+            throw new IllegalArgumentException("Condition is empty");
+        }
+        ConditionParser parser = new ConditionParser(condition);
+        Predicate<Event> predicate = parser.parseQuery(null);
+        if (!parser.end()) {
+            throw parser.error("Unexpected character '" + condition.charAt(parser.position) + "'");
+        }
+        return predicate;
+    }
+
+    // Query ::= DisjQuery ( DisjQuery )*
+    private Predicate<Event> parseQuery(String field) {
+        List<Clause> clauses = new ArrayList<>();
+        do {
+            clauses.add(parseDisjunction(field));
+        } while (!end() && peek() != ')');
+        if (clauses.size() == 1 && clauses.get(0).occur == Occur.DEFAULT) {
+            return clauses.get(0).predicate;
+        }
+        return bool(clauses, Occur.SHOULD);
+    }
+
+    // DisjQuery ::= ConjQuery ( OR ConjQuery )*
+    private Clause parseDisjunction(String field) {
+        List<Clause> clauses = new ArrayList<>();
+        clauses.add(parseConjunction(field));
+        while (keyword("OR") || symbol("||")) {
+            clauses.add(parseConjunction(field));
+        }
+        if (clauses.size() == 1) {
+            return clauses.get(0);
+        }
+        return new Clause(Occur.DEFAULT, bool(clauses, Occur.SHOULD));
+    }
+
+    // ConjQuery ::= ModClause ( AND ModClause )*
+    private Clause parseConjunction(String field) {
+        List<Clause> clauses = new ArrayList<>();
+        clauses.add(parseModifiedClause(field));
+        while (keyword("AND") || symbol("&&")) {
+            clauses.add(parseModifiedClause(field));
+        }
+        if (clauses.size() == 1) {
+            return clauses.get(0);
+        }
+        return new Clause(Occur.DEFAULT, bool(clauses, Occur.MUST));
+    }
+
+    // ModClause ::= [ + | - | ! | NOT ] Clause
+    private Clause parseModifiedClause(String field) {
+        Occur occur = Occur.DEFAULT;
+        if (symbol("+")) {
+            occur = Occur.MUST;
+        } else if (keyword("NOT") || symbol("-") || symbol("!")) {
+            occur = Occur.MUST_NOT;
+        }
+        return new Clause(occur, parseClause(field));
+    }
+
+    // Clause ::= [ field : ] ( Term | ( Query ) )
+    private Predicate<Event> parseClause(String field) {
+        skipWhitespaces();
+        if (end()) {
+            throw error("Unexpected end of condition");
+        }
+        if (peek() == '(') {
+            return parseGroup(field);
+        }
+        if (peek() != '"' && peek() != '[' && peek() != '{' && peek() != '<' && peek() != '>') {
+            int start = position;
+            Term term = readTerm();
+            skipWhitespaces();
+            if (!end() && peek() == ':') {
+                if (term.wildcard) {
+                    throw error("Invalid field name " + term.text);
+                }
+                position++;
+                return parseValue(term.text);
+            }
+            position = start;
+        }
+        return parseValue(field != null ? field : "");
+    }
+
+    private Predicate<Event> parseGroup(String field) {
+        position++;
+        Predicate<Event> predicate = parseQuery(field);
+        skipWhitespaces();
+        if (end() || peek() != ')') {
+            throw error("Missing closing parenthesis");
+        }
+        position++;
+        checkUnsupportedModifiers();
+        return predicate;
+    }
+
+    private Predicate<Event> parseValue(String field) {
+        skipWhitespaces();
+        if (end()) {
+            throw error("Missing value for field " + field);
+        }
+        char c = peek();
+        Predicate<Event> predicate;
+        if (c == '(') {
+            return parseGroup(field);
+        } else if (c == '[' || c == '{') {
+            predicate = parseRange(field);
+        } else if (c == '>' || c == '<') {
+            predicate = parseComparison(field);
+        } else if (c == '"') {
+            predicate = new TermPredicate(field, readPhrase());
+        } else {
+            Term term = readTerm();
+            if (term.text.isEmpty()) {
+                throw error("Missing value for field " + field);
+            }
+            if (term.wildcard) {
+                predicate = new WildcardPredicate(field, term.pattern.toString());
+            } else {
+                predicate = new TermPredicate(field, term.text);
+            }
+        }
+        checkUnsupportedModifiers();
+        return predicate;
+    }
+
+    private Predicate<Event> parseRange(String field) {
+        boolean includeLower = peek() == '[';
+        position++;
+        String lower = readBound();
+        if (!keyword("TO")) {
+            throw error("Missing TO in range");
+        }
+        String upper = readBound();
+        skipWhitespaces();
+        if (end() || (peek() != ']' && peek() != '}')) {
+            throw error("Missing end of range");
+        }
+        boolean includeUpper = peek() == ']';
+        position++;
+        return new RangePredicate(field, lower, upper, includeLower, includeUpper);
+    }
+
+    private Predicate<Event> parseComparison(String field) {
+        boolean greater = peek() == '>';
+        position++;
+        boolean inclusive = !atEnd() && peek() == '=';
+        if (inclusive) {
+            position++;
+        }
+        String bound = readBound();
+        if (bound == null) {
+            throw error("Invalid comparison bound");
+        }
+        if (greater) {
+            return new RangePredicate(field, bound, null, inclusive, true);
+        }
+        return new RangePredicate(field, null, bound, true, inclusive);
+    }
+
+    private String readBound() {
+        skipWhitespaces();
+        if (!end() && peek() == '"') {
+            return readPhrase();
+        }
+        Term term = readTerm();
+        if (term.text.isEmpty()) {
+            throw error("Missing range bound");
+        }
+        return term.text.equals("*") ? null : term.text;
+    }
+
+    private String readPhrase() {
+        position++;
+        StringBuilder builder = new StringBuilder();
+        while (!atEnd() && peek() != '"') {
+            char c = condition.charAt(position++);
+            if (c == '\\' && !atEnd()) {
+                c = condition.charAt(position++);
+            }
+            builder.append(c);
+        }
+        if (atEnd()) {
+            throw error("Missing closing quote");
+        }
+        position++;
+        return builder.toString();
+    }
+
+    private Term readTerm() {
+        skipWhitespaces();
+        StringBuilder text = new StringBuilder();
+        StringBuilder pattern = new StringBuilder();
+        boolean wildcard = false;
+        while (!atEnd() && !isTermEnd(peek())) {
+            char c = condition.charAt(position++);
+            if (c == '\\') {
+                if (atEnd()) {
+                    throw error("Invalid escape at end of condition");
+                }
+                c = condition.charAt(position++);
+                text.append(c);
+                pattern.append(Pattern.quote(String.valueOf(c)));
+            } else if (c == '/') {
+                // Lucene reads /.../ as a regular expression
+                throw error("Regular expression queries are not supported");
+            } else if (c == '*') {
+                wildcard = true;
+                text.append(c);
+                pattern.append(".*");
+            } else if (c == '?') {
+                wildcard = true;
+                text.append(c);
+                pattern.append('.');
+            } else {
+                text.append(c);
+                pattern.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return new Term(text.toString(), wildcard, pattern);
+    }
+
+    private void checkUnsupportedModifiers() {
+        if (!end() && (peek() == '^' || peek() == '~')) {
+            throw error("Boost and fuzzy/proximity queries are not supported");
+        }
+    }
+
+    private boolean isTermEnd(char c) {
+        return Character.isWhitespace(c) || c == '(' || c == ')' || c == ':' || c == '[' || c == ']'
+                || c == '{' || c == '}' || c == '"' || c == '^' || c == '~';
+    }
+
+    private boolean keyword(String keyword) {
+        skipWhitespaces();
+        int end = position + keyword.length();
+        if (condition.startsWith(keyword, position)
+                && (end == condition.length() || Character.isWhitespace(condition.charAt(end)) || condition.charAt(end) == '(')) {
+            position = end;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean symbol(String symbol) {
+        skipWhitespaces();
+        if (condition.startsWith(symbol, position)) {
+            position += symbol.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespaces() {
+        while (position < condition.length() && Character.isWhitespace(condition.charAt(position))) {
+            position++;
+        }
+    }
+
+    private boolean end() {
+        skipWhitespaces();
+        return atEnd();
+    }
+
+    private boolean atEnd() {
+        return position >= condition.length();
+    }
+
+    private char peek() {
+        return condition.charAt(position);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position + " in condition: " + condition);
+    }
+
+    private static Predicate<Event> bool(List<Clause> clauses, Occur defaultOccur) {
+        List<Predicate<Event>> must = new ArrayList<>();
+        List<Predicate<Event>> should = new ArrayList<>();
+        List<Predicate<Event>> mustNot = new ArrayList<>();
+        for (Clause clause : clauses) {
+            Occur occur = (clause.occur == Occur.DEFAULT) ? defaultOccur : clause.occur;
+            if (occur == Occur.MUST) {
+                must.add(clause.predicate);
+            } else if (occur == Occur.MUST_NOT) {
+                mustNot.add(clause.predicate);
+            } else {
+                should.add(clause.predicate);
+            }
+        }
+        return new BooleanPredicate(must, should, mustNot);
+    }
+
+    /**
+     * Compare a numeric property value with a numeric bound.
+     */
+    static int compare(Number value, BigDecimal bound) {
+        if (value instanceof Double || value instanceof Float) {
+            double d = value.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return Double.compare(d, bound.doubleValue());
+            }
+            return BigDecimal.valueOf(d).compareTo(bound);
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).compareTo(bound);
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value).compareTo(bound);
+        }
+        return BigDecimal.valueOf(value.longValue()).compareTo(bound);
+    }
+
+    static BigDecimal toNumber(String text) {
+        if (text == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static class Clause {
+
+        private final Occur occur;
+        private final Predicate<Event> predicate;
+
+        Clause(Occur occur, Predicate<Event> predicate) {
+            this.occur = occur;
+            this.predicate = predicate;
+        }
+
+    }
+
+    private static class Term {
+
+        private final String text;
+        private final boolean wildcard;
+        private final StringBuilder pattern;
+
+        Term(String text, boolean wildcard, StringBuilder pattern) {
+            this.text = text;
+            this.wildcard = wildcard;
+            this.pattern = pattern;
+        }
+
+    }
+
+    private static class BooleanPredicate implements Predicate<Event> {
+
+        private final Predicate<Event>[] must;
+        private final Predicate<Event>[] should;
+        private final Predicate<Event>[] mustNot;
+
+        @SuppressWarnings("unchecked")
+        BooleanPredicate(List<Predicate<Event>> must, List<Predicate<Event>> should, List<Predicate<Event>> mustNot) {
+            this.must = must.toArray(new Predicate[0]);
+            this.should = should.toArray(new Predicate[0]);
+            this.mustNot = mustNot.toArray(new Predicate[0]);
+        }
+
+        @Override
+        public boolean test(Event event) {
+            for (Predicate<Event> predicate : must) {
+                if (!predicate.test(event)) {
+                    return false;
+                }
+            }
+            for (Predicate<Event> predicate : mustNot) {
+                if (predicate.test(event)) {
+                    return false;
+                }
+            }
+            if (must.length > 0) {
+                return true;
+            }
+            for (Predicate<Event> predicate : should) {
+                if (predicate.test(event)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    private static class TermPredicate implements Predicate<Event> {
+
+        private final String field;
+        private final String text;
+        private final BigDecimal number;
+
+        TermPredicate(String field, String text) {
+            this.field = field;
+            this.text = text;
+            this.number = toNumber(text);
+        }
+
+        @Override
+        public boolean test(Event event) {
+            Object value = event.getProperty(field);
+            if (value == null) {
+                return false;
+            }
+            if (value instanceof Number) {
+                return number != null && compare((Number) value, number) == 0;
+            }
+            return text.equals(value.toString());
+        }
+
+    }
+
+    private static class WildcardPredicate implements Predicate<Event> {
+
+        private final String field;
+        private final Pattern pattern;
+        private final boolean any;
+
+        WildcardPredicate(String field, String regex) {
+            this.field = field;
+            this.pattern = Pattern.compile(regex, Pattern.DOTALL);
+            this.any = regex.equals(".*");
+        }
+
+        @Override
+        public boolean test(Event event) {
+            Object value = event.getProperty(field);
+            if (value == null) {
+                return false;
+            }
+            if (any) {
+                return true;
+            }
+            return !(value instanceof Number) && pattern.matcher(value.toString()).matches();
+        }
+
+    }
+
+    private static class RangePredicate implements Predicate<Event> {
+
+        private final String field;
+        private final String lower;
+        private final String upper;
+        private final BigDecimal lowerNumber;
+        private final BigDecimal upperNumber;
+        private final boolean includeLower;
+        private final boolean includeUpper;
+
+        RangePredicate(String field, String lower, String upper, boolean includeLower, boolean includeUpper) {
+            this.field = field;
+            this.lower = lower;
+            this.upper = upper;
+            this.lowerNumber = toNumber(lower);
+            this.upperNumber = toNumber(upper);
+            this.includeLower = includeLower;
+            this.includeUpper = includeUpper;
+        }
+
+        @Override
+        public boolean test(Event event) {
+            Object value = event.getProperty(field);
+            if (value == null) {
+                return false;
+            }
+            if (value instanceof Number) {
+                if ((lower != null && lowerNumber == null) || (upper != null && upperNumber == null)) {
+                    return false;
+                }
+                if (lowerNumber != null) {
+                    int comparison = compare((Number) value, lowerNumber);
+                    if (comparison < 0 || (comparison == 0 && !includeLower)) {
+                        return false;
+                    }
+                }
+                if (upperNumber != null) {
+                    int comparison = compare((Number) value, upperNumber);
+                    if (comparison > 0 || (comparison == 0 && !includeUpper)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            String string = value.toString();
+            if (lower != null) {
+                int comparison = string.compareTo(lower);
+                if (comparison < 0 || (comparison == 0 && !includeLower)) {
+                    return false;
+                }
+            }
+            if (upper != null) {
+                int comparison = string.compareTo(upper);
+                if (comparison > 0 || (comparison == 0 && !includeUpper)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -16,6 +16,8 @@
  */
 package org.apache.karaf.decanter.alerting.service.model;
 
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,6 +54,18 @@ public class Loader {
                         LOGGER.error("Can't load rule {} as condition is null", ruleDefinition);
                     } else {
                         rule.setCondition(jsonObject.getString("condition"));
+                        try {
+                            rule.setPredicate(ConditionParser.parse(rule.getCondition()));
+                        } catch (IllegalArgumentException e) {
+                            // not supported in memory (fuzzy, proximity, boost, regexp): the rule is evaluated by a Lucene query
+                            try {
+                                new StandardQueryParser().parse(rule.getCondition(), "");
+                            } catch (QueryNodeException queryNodeException) {
+                                LOGGER.error("Can't load rule {} as condition is not valid: {}", ruleDefinition, e.getMessage());
+                                continue;
+                            }
+                            LOGGER.info("Rule {} is evaluated with a Lucene query: {}", rule.getName(), e.getMessage());
+                        }
                         if (jsonObject.get("period") == null) {
                             rule.setPeriod(null);
                         } else {
@@ -16,10 +16,15 @@
  */
 package org.apache.karaf.decanter.alerting.service.model;
 
+import org.osgi.service.event.Event;
+
+import java.util.function.Predicate;
+
 public class Rule {
 
     private String name;
     private String condition;
+    private Predicate<Event> predicate;
     private String period;
     private String level;
     private boolean recoverable;
@@ -40,6 +45,26 @@ public class Rule {
         this.condition = condition;
     }
 
+    public Predicate<Event> getPredicate() {
+        return predicate;
+    }
+
+    public void setPredicate(Predicate<Event> predicate) {
+        this.predicate = predicate;
+    }
+
+    /**
+     * Check if the condition is evaluated in memory. Else, the condition uses a syntax only supported by
+     * a Lucene query on the store.
+     */
+    public boolean isCompiled() {
+        return predicate != null;
+    }
+
+    public boolean matches(Event event) {
+        return predicate != null && predicate.test(event);
+    }
+
     public String getPeriod() {
         return period;
     }
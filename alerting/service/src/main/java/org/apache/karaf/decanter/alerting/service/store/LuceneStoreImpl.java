@@ -26,6 +26,8 @@ import org.apache.lucene.queryparser.flexible.standard.config.PointsConfig;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.Bits;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -39,6 +41,11 @@ import java.io.FileWriter;
 import java.nio.file.Paths;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component(name = "org.apache.karaf.decanter.alerting.store.lucene")
 public class LuceneStoreImpl implements Store {
@@ -47,25 +54,97 @@ public class LuceneStoreImpl implements Store {
 
     private Directory directory;
     private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+    private ScheduledExecutorService scheduler;
     private Map<String, PointsConfig> points;
 
+    // generation of the index changes, and generation visible by the current searcher
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong refreshed = new AtomicLong();
+
     public static final String INDEX_DIRECTORY = "/decanter/alerting";
     public static final String POINTS_DIRECTORY = "/decanter/alerting/points";
 
+    public static final String REFRESH_INTERVAL_PROPERTY = "refresh.interval";
+    public static final String COMMIT_INTERVAL_PROPERTY = "commit.interval";
+
+    public static final long REFRESH_INTERVAL_DEFAULT = 1000L;
+    public static final long COMMIT_INTERVAL_DEFAULT = 10000L;
+
     @Activate
+    public void activate(ComponentContext componentContext) throws Exception {
+        Dictionary<String, Object> config = componentContext.getProperties();
+        long refreshInterval = (config.get(REFRESH_INTERVAL_PROPERTY) != null) ? Long.parseLong(config.get(REFRESH_INTERVAL_PROPERTY).toString()) : REFRESH_INTERVAL_DEFAULT;
+        long commitInterval = (config.get(COMMIT_INTERVAL_PROPERTY) != null) ? Long.parseLong(config.get(COMMIT_INTERVAL_PROPERTY).toString()) : COMMIT_INTERVAL_DEFAULT;
+        activate(refreshInterval, commitInterval);
+    }
+
     public void activate() throws Exception {
+        activate(REFRESH_INTERVAL_DEFAULT, COMMIT_INTERVAL_DEFAULT);
+    }
+
+    public void activate(long refreshInterval, long commitInterval) throws Exception {
         directory = new NIOFSDirectory(Paths.get(System.getProperty("karaf.data"), INDEX_DIRECTORY));
         IndexWriterConfig indexWriterConfig = new IndexWriterConfig(new StandardAnalyzer());
         indexWriter = new IndexWriter(directory, indexWriterConfig);
-        points = loadPoints();
+        searcherManager = new SearcherManager(indexWriter, null);
+        points = new ConcurrentHashMap<>(loadPoints());
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "decanter-alerting-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::commit, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
     }
 
     @Deactivate
     public void deactivate() throws Exception {
+        // let a running refresh or commit complete before closing the writer
+        scheduler.shutdown();
+        if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOGGER.warn("Alerting store refresh/commit still running, closing anyway");
+        }
+        searcherManager.close();
+        indexWriter.commit();
         indexWriter.close();
         savePoints(points);
     }
 
+    private void refresh() {
+        try {
+            long generation = changes.get();
+            if (refreshed.get() < generation && searcherManager.maybeRefresh()) {
+                refreshed.accumulateAndGet(generation, Math::max);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Can't refresh alerting store searcher: {}", e.getMessage());
+        }
+    }
+
+    private void commit() {
+        try {
+            if (indexWriter.hasUncommittedChanges()) {
+                indexWriter.commit();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Can't commit alerting store: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Acquire a searcher, refreshed first if the index changed since the last refresh,
+     * so a query always sees the previous writes. The searcher has to be released.
+     */
+    private IndexSearcher acquire() throws Exception {
+        long generation = changes.get();
+        if (refreshed.get() < generation) {
+            searcherManager.maybeRefreshBlocking();
+            refreshed.accumulateAndGet(generation, Math::max);
+        }
+        return searcherManager.acquire();
+    }
+
     /* visible for testing */
     static Map<String, PointsConfig> loadPoints() throws Exception {
         Map<String, PointsConfig> points = new HashMap<>();
@@ -156,7 +235,7 @@ public class LuceneStoreImpl implements Store {
         document.add(new StringField("alertUUID", uuid, Field.Store.YES));
         try {
             indexWriter.addDocument(document);
-            indexWriter.commit();
+            changes.incrementAndGet();
         } catch (Exception e) {
             LOGGER.warn("Can't store alert: {}", e.getMessage());
         }
@@ -167,6 +246,7 @@ public class LuceneStoreImpl implements Store {
     public void cleanup() throws Exception {
         indexWriter.deleteDocuments(new MatchAllDocsQuery());
         indexWriter.commit();
+        changes.incrementAndGet();
     }
 
     @Override
@@ -176,7 +256,7 @@ public class LuceneStoreImpl implements Store {
         queryParser.setPointsConfigMap(points);
         Query query = queryParser.parse("alertUUID:* AND NOT alertRule:*", "");
         indexWriter.deleteDocuments(query);
-        indexWriter.commit();
+        changes.incrementAndGet();
     }
 
     @Override
@@ -214,16 +294,25 @@ public class LuceneStoreImpl implements Store {
             }
         }
         indexWriter.addDocument(document);
-        indexWriter.commit();
+        changes.incrementAndGet();
     }
 
     @Override
     public List<Alert> list() throws Exception {
         List<Alert> alerts = new ArrayList<>();
-        IndexReader indexReader = DirectoryReader.open(indexWriter);
-        for (int i = 0; i < indexReader.maxDoc(); i++) {
-            Document document = indexReader.document(i);
-            alerts.add(documentToAlert(document));
+        IndexSearcher indexSearcher = acquire();
+        try {
+            IndexReader indexReader = indexSearcher.getIndexReader();
+            Bits liveDocs = MultiBits.getLiveDocs(indexReader);
+            for (int i = 0; i < indexReader.maxDoc(); i++) {
+                if (liveDocs != null && !liveDocs.get(i)) {
+                    continue;
+                }
+                Document document = indexReader.document(i);
+                alerts.add(documentToAlert(document));
+            }
+        } finally {
+            searcherManager.release(indexSearcher);
         }
         return alerts;
     }
@@ -243,15 +332,18 @@ public class LuceneStoreImpl implements Store {
     @Override
     public List<Alert> query(String queryString) throws Exception {
         List<Alert> alerts = new ArrayList<>();
-        IndexReader indexReader = DirectoryReader.open(indexWriter);
-        IndexSearcher indexSearcher = new IndexSearcher(indexReader);
         StandardQueryParser queryParser = new StandardQueryParser();
         queryParser.setAllowLeadingWildcard(true);
         queryParser.setPointsConfigMap(points);
         Query query = queryParser.parse(queryString, "");
-        TopDocs topDocs = indexSearcher.search(query, Integer.MAX_VALUE, Sort.INDEXORDER, false);
-        for (int i = 0; i < topDocs.scoreDocs.length; i++) {
-            alerts.add(documentToAlert(indexSearcher.doc(topDocs.scoreDocs[i].doc)));
+        IndexSearcher indexSearcher = acquire();
+        try {
+            TopDocs topDocs = indexSearcher.search(query, Integer.MAX_VALUE, Sort.INDEXORDER, false);
+            for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+                alerts.add(documentToAlert(indexSearcher.doc(topDocs.scoreDocs[i].doc)));
+            }
+        } finally {
+            searcherManager.release(indexSearcher);
         }
         return alerts;
     }
@@ -263,7 +355,7 @@ public class LuceneStoreImpl implements Store {
         queryParser.setPointsConfigMap(points);
         Query query = queryParser.parse(queryString, "");
         indexWriter.deleteDocuments(query);
-        indexWriter.commit();
+        changes.incrementAndGet();
     }
 
 }
@@ -127,6 +127,45 @@ public class HandlerTest {
         store.deactivate();
     }
 
+    @Test
+    public void testLuceneRule() throws Exception {
+        System.setProperty("karaf.data", "target/alerting/lucene");
+        EventAdminMock dispatcher = new EventAdminMock();
+        LuceneStoreImpl store = new LuceneStoreImpl();
+        store.activate();
+
+        Dictionary<String, Object> configuration = new Hashtable<>();
+        configuration.put("rule.regexp", "{\"condition\":\"message:/err.*/\"}");
+        configuration.put("rule.fuzzy", "{\"condition\":\"message:warnin~\",\"recoverable\":true}");
+
+        Handler handler = new Handler();
+        handler.setDispatcher(dispatcher);
+        handler.setStore(store);
+        handler.activate(configuration);
+
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("message", "error");
+        handler.handleEvent(new Event("collected", data));
+        Assert.assertEquals(1, dispatcher.postedEvents.size());
+        Assert.assertEquals("message:/err.*/", dispatcher.postedEvents.get(0).getProperty("alertPattern"));
+        Assert.assertEquals(0, store.list().size());
+
+        data.put("message", "warning");
+        handler.handleEvent(new Event("collected", data));
+        Assert.assertEquals(2, dispatcher.postedEvents.size());
+        Assert.assertEquals("message:warnin~", dispatcher.postedEvents.get(1).getProperty("alertPattern"));
+        // only the flagged alert is kept in the store
+        Assert.assertEquals(1, store.list().size());
+
+        data.put("message", "info");
+        handler.handleEvent(new Event("collected", data));
+        Assert.assertEquals(3, dispatcher.postedEvents.size());
+        Assert.assertEquals(true, dispatcher.postedEvents.get(2).getProperty("alertBackToNormal"));
+        Assert.assertEquals(0, store.list().size());
+
+        store.deactivate();
+    }
+
     class EventAdminMock implements EventAdmin {
 
         List<Event> postedEvents = new ArrayList<>();
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.alerting.service.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+public class ConditionParserTest {
+
+    private Event event() {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("message", "this is a message");
+        data.put("level", "ERROR");
+        data.put("threadCount", 200);
+        data.put("load", 0.75);
+        data.put("timestamp", 1000L);
+        data.put("decanter.collector.name", "log");
+        data.put("flag", true);
+        return new Event("decanter/collect/test", data);
+    }
+
+    private boolean matches(String condition) {
+        Predicate<Event> predicate = ConditionParser.parse(condition);
+        return predicate.test(event());
+    }
+
+    @Test
+    public void testTerm() throws Exception {
+        Assert.assertTrue(matches("level:ERROR"));
+        Assert.assertFalse(matches("level:error"));
+        Assert.assertFalse(matches("other:ERROR"));
+        Assert.assertTrue(matches("threadCount:200"));
+        Assert.assertFalse(matches("threadCount:201"));
+        Assert.assertTrue(matches("load:0.75"));
+        Assert.assertTrue(matches("flag:true"));
+        Assert.assertTrue(matches("decanter.collector.name:log"));
+        Assert.assertTrue(matches("message:\"this is a message\""));
+        Assert.assertFalse(matches("message:\"this is\""));
+    }
+
+    @Test
+    public void testWildcard() throws Exception {
+        Assert.assertTrue(matches("message:*"));
+        Assert.assertTrue(matches("threadCount:*"));
+        Assert.assertFalse(matches("other:*"));
+        Assert.assertTrue(matches("message:this*"));
+        Assert.assertTrue(matches("message:*message"));
+        Assert.assertFalse(matches("message:that*"));
+        Assert.assertTrue(matches("level:ERR?R"));
+        Assert.assertFalse(matches("level:ERR?"));
+        Assert.assertTrue(matches("message:this\\ is*"));
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        Assert.assertTrue(matches("threadCount:[200 TO *]"));
+        Assert.assertFalse(matches("threadCount:{200 TO *]"));
+        Assert.assertTrue(matches("threadCount:[0 TO 200]"));
+        Assert.assertFalse(matches("threadCount:[0 TO 200}"));
+        Assert.assertTrue(matches("load:[0.5 TO 1]"));
+        Assert.assertFalse(matches("load:[1 TO *]"));
+        Assert.assertTrue(matches("threadCount:>=200"));
+        Assert.assertFalse(matches("threadCount:>200"));
+        Assert.assertTrue(matches("threadCount:<300"));
+        Assert.assertTrue(matches("level:[A TO F]"));
+        Assert.assertFalse(matches("level:[F TO Z]"));
+        Assert.assertFalse(matches("other:[0 TO *]"));
+    }
+
+    @Test
+    public void testBoolean() throws Exception {
+        Assert.assertTrue(matches("level:ERROR AND threadCount:[100 TO *]"));
+        Assert.assertFalse(matches("level:ERROR AND threadCount:[300 TO *]"));
+        Assert.assertTrue(matches("level:WARN OR threadCount:[100 TO *]"));
+        Assert.assertTrue(matches("level:WARN threadCount:[100 TO *]"));
+        Assert.assertFalse(matches("level:WARN OR level:INFO"));
+        Assert.assertTrue(matches("level:ERROR AND NOT message:foo*"));
+        Assert.assertFalse(matches("level:ERROR AND NOT message:this*"));
+        Assert.assertTrue(matches("+level:ERROR -message:foo*"));
+        Assert.assertFalse(matches("+level:ERROR -message:this*"));
+        Assert.assertTrue(matches("(level:WARN OR level:ERROR) AND threadCount:200"));
+        Assert.assertTrue(matches("level:(WARN OR ERROR)"));
+        Assert.assertTrue(matches("level:WARN OR level:INFO OR level:ERROR AND threadCount:200"));
+        Assert.assertTrue(matches("level:ERROR && !message:foo*"));
+        // a group with only negative clauses doesn't match (as Lucene)
+        Assert.assertFalse(matches("NOT level:WARN"));
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        assertInvalid("");
+        assertInvalid("level:");
+        assertInvalid("(level:ERROR");
+        assertInvalid("threadCount:[0 200]");
+        assertInvalid("message:\"foo");
+        assertInvalid("level:ERROR^2");
+        assertInvalid("level:EROR~");
+        assertInvalid("message:/fo+/");
+        assertInvalid("/ERR.*/");
+    }
+
+    private void assertInvalid(String condition) {
+        try {
+            ConditionParser.parse(condition);
+            Assert.fail("Condition " + condition + " should not be valid");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+}
@@ -68,6 +68,17 @@ public class LoaderTest {
         Assert.assertEquals("SEVERE", rule3.getLevel());
         Assert.assertEquals(false, rule3.isRecoverable());
 
+        Assert.assertTrue(rule1.isCompiled());
+
+        // syntax not supported in memory: evaluated with a Lucene query
+        configuration = new Hashtable<>();
+        configuration.put("rule.fuzzy", "{\"condition\":\"message:warnin~\"}");
+        configuration.put("rule.invalid", "{\"condition\":\"message:(foo\"}");
+        rules = Loader.load(configuration);
+        Assert.assertEquals(1, rules.size());
+        Assert.assertEquals("fuzzy", rules.get(0).getName());
+        Assert.assertFalse(rules.get(0).isCompiled());
+
         configuration = new Hashtable<>();
         configuration.put("rule.empty", "");
         rules = Loader.load(configuration);
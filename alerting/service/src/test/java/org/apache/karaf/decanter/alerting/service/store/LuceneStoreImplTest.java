@@ -139,6 +139,26 @@ public class LuceneStoreImplTest {
         Assert.assertEquals(1, alertingService.list().size());
     }
 
+    @Test
+    public void testDelete() throws Exception {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("foo", "bar");
+        alertingService.store(new Event("collected", data));
+
+        data = new HashMap<>();
+        data.put("foo", "other");
+        String uuid = alertingService.store(new Event("collected", data));
+
+        Assert.assertEquals(1, alertingService.query("alertUUID:" + uuid).size());
+
+        alertingService.delete("alertUUID:" + uuid);
+
+        Assert.assertEquals(0, alertingService.query("alertUUID:" + uuid).size());
+        List<Alert> alerts = alertingService.list();
+        Assert.assertEquals(1, alerts.size());
+        Assert.assertEquals("bar", alerts.get(0).get("foo"));
+    }
+
     @Test
     public void testPointsStore() throws Exception {
         Map<String, PointsConfig> empty = LuceneStoreImpl.loadPoints();
@@ -51,6 +51,7 @@ public class CamelAppender implements EventHandler {
 
     private CamelContext camelContext;
     private Dictionary<String, Object> config;
+    private EventFilter filter;
 
     private final static Logger LOGGER = LoggerFactory.getLogger(CamelAppender.class);
 
@@ -61,6 +62,7 @@ public class CamelAppender implements EventHandler {
     
     public void open(Dictionary<String, Object> config, BundleContext bundleContext) throws ConfigurationException {
         this.config = config;
+        filter = new EventFilter(config);
         if (config.get(DESTINATION_URI_KEY) == null) {
             throw new ConfigurationException(DESTINATION_URI_KEY, DESTINATION_URI_KEY + " is not defined");
         }
@@ -80,7 +82,7 @@ public class CamelAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
+        if (filter.match(event)) {
             HashMap<String, Object> data = new HashMap<>();
             for (String name : event.getPropertyNames()) {
                 data.put(name, event.getProperty(name));
@@ -19,17 +19,37 @@ package org.apache.karaf.decanter.appender.cassandra;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
 import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
 import com.datastax.oss.driver.api.core.cql.Statement;
 import com.datastax.oss.driver.api.core.servererrors.InvalidQueryException;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Dictionary;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -41,34 +61,43 @@ import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.insertInto;
-import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.literal;
-
 @Component(
     name = "org.apache.karaf.decanter.appender.cassandra",
     immediate = true,
+    service = EventHandler.class,
     property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-public class CassandraAppender implements EventHandler {
+public class CassandraAppender implements EventHandler, BatchAppender {
 
     public static final String KEYSPACE_PROPERTY = "keyspace.name";
     public static final String TABLE_PROPERTY = "table.name";
     public static final String CASSANDRA_HOST_PROPERTY = "cassandra.host";
     public static final String CASSANDRA_PORT_PROPERTY = "cassandra.port";
+    public static final String BUCKET_INTERVAL_PROPERTY = "bucket.interval";
+    public static final String BUCKET_SHARDS_PROPERTY = "bucket.shards";
+    public static final String MAX_CONCURRENT_REQUESTS_PROPERTY = "max.concurrent.requests";
+    public static final String UNLOGGED_BATCH_PROPERTY = "unlogged.batch";
 
     public static final String KEYSPACE_DEFAULT = "decanter";
     public static final String TABLE_DEFAULT = "decanter";
     public static final String CASSANDRA_HOST_DEFAULT = "localhost";
     public static final String CASSANDRA_PORT_DEFAULT = "9042";
+    public static final String BUCKET_INTERVAL_DEFAULT = "hour";
+    public static final String BUCKET_SHARDS_DEFAULT = "1";
+    public static final String MAX_CONCURRENT_REQUESTS_DEFAULT = "256";
+    public static final String UNLOGGED_BATCH_DEFAULT = "false";
 
     private final static Logger LOGGER = LoggerFactory.getLogger(CassandraAppender.class);
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
 
     @Reference
     public Marshaller marshaller;
 
-    private final static String createTableTemplate = "CREATE TABLE IF NOT EXISTS %s (timeStamp timestamp PRIMARY KEY, content Text);";
+    private final static String createTableTemplate = "CREATE TABLE IF NOT EXISTS %s (bucket text, id timeuuid, timeStamp timestamp, content text, PRIMARY KEY ((bucket), id)) WITH CLUSTERING ORDER BY (id DESC);";
+    private final static String insertTemplate = "INSERT INTO %s (bucket, id, timeStamp, content) VALUES (?, ?, ?, ?);";
+    private final static String legacyInsertTemplate = "INSERT INTO %s (timeStamp, content) VALUES (?, ?);";
 
     private CqlSession session;
 
@@ -76,6 +105,24 @@ public class CassandraAppender implements EventHandler {
 
     private String tableName;
 
+    private PreparedStatement insertStatement;
+
+    private boolean legacy;
+
+    private Bucketer bucketer;
+
+    private int shards;
+
+    private boolean unloggedBatch;
+
+    private Semaphore inFlight;
+
+    private int maxConcurrentRequests;
+
+    private AsyncDispatcher dispatcher;
+
+    private ServiceRegistration<?> dispatcherRegistration;
+
     public CassandraAppender() {
     }
     
@@ -84,14 +131,23 @@ public class CassandraAppender implements EventHandler {
     public void activate(ComponentContext context) {
         Dictionary<String, Object> config = context.getProperties();
         activate(config);
+        if (dispatcher != null) {
+            dispatcherRegistration = dispatcher.register(context.getBundleContext());
+        }
     }
 
     void activate(Dictionary<String, Object> config) {
         this.config = config;
+        filter = new EventFilter(config);
         String host = getValue(config, CASSANDRA_HOST_PROPERTY, CASSANDRA_HOST_DEFAULT);
         Integer port = Integer.parseInt(getValue(config, CASSANDRA_PORT_PROPERTY, CASSANDRA_PORT_DEFAULT));
         this.keyspace = getValue(config, KEYSPACE_PROPERTY, KEYSPACE_DEFAULT);
         this.tableName = getValue(config, TABLE_PROPERTY, TABLE_DEFAULT);
+        this.bucketer = new Bucketer(getValue(config, BUCKET_INTERVAL_PROPERTY, BUCKET_INTERVAL_DEFAULT));
+        this.shards = Integer.parseInt(getValue(config, BUCKET_SHARDS_PROPERTY, BUCKET_SHARDS_DEFAULT));
+        this.unloggedBatch = Boolean.parseBoolean(getValue(config, UNLOGGED_BATCH_PROPERTY, UNLOGGED_BATCH_DEFAULT));
+        this.maxConcurrentRequests = Integer.parseInt(getValue(config, MAX_CONCURRENT_REQUESTS_PROPERTY, MAX_CONCURRENT_REQUESTS_DEFAULT));
+        this.inFlight = new Semaphore(maxConcurrentRequests);
 
         DriverConfigLoader loader =
                 DriverConfigLoader.programmaticBuilder()
@@ -162,10 +218,36 @@ public class CassandraAppender implements EventHandler {
                 .withLocalDatacenter("datacenter1").build();
         useKeyspace(session, keyspace);
         createTable(session, keyspace, tableName);
+        legacy = isLegacyTable(session, keyspace, tableName);
+        if (legacy) {
+            LOGGER.warn("Table {} doesn't use the bucket/id primary key, events with the same timestamp overwrite each other", tableName);
+            insertStatement = session.prepare(String.format(legacyInsertTemplate, tableName));
+        } else {
+            insertStatement = session.prepare(String.format(insertTemplate, tableName));
+        }
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("cassandra", config, this);
+        }
     }
     
     @Deactivate
     public void deactivate() {
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
+        // wait for the pending requests
+        try {
+            if (inFlight.tryAcquire(maxConcurrentRequests, 10, TimeUnit.SECONDS)) {
+                inFlight.release(maxConcurrentRequests);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         session.close();
     }
     
@@ -176,28 +258,91 @@ public class CassandraAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
-            LOGGER.trace("Looking for the Cassandra datasource");
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
+            }
             try {
-                Long timestamp = (Long) event.getProperty("timestamp");
-                if (timestamp == null) {
-                    timestamp = System.currentTimeMillis();
-                }
-                String jsonSt = marshaller.marshal(event);
-                Statement stmt =
-                    insertInto(keyspace, tableName)
-                            .value("timestamp", literal(timestamp))
-                            .value("content", literal(jsonSt))
-                            .build();
-                session.execute(stmt);
-
-                LOGGER.trace("Data inserted into {} table", tableName);
+                execute(bind(event)).whenComplete((resultSet, throwable) -> {
+                    if (throwable != null) {
+                        LOGGER.error("Can't store in the database", throwable);
+                    } else {
+                        LOGGER.trace("Data inserted into {} table", tableName);
+                    }
+                });
             } catch (Exception e) {
                 LOGGER.error("Can't store in the database", e);
             }
         }
     }
 
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        List<CompletableFuture<AsyncResultSet>> futures = new ArrayList<>();
+        if (unloggedBatch) {
+            // a batch per partition, so a single node handles each batch
+            Map<Object, List<BoundStatement>> partitions = new LinkedHashMap<>();
+            for (Event event : events) {
+                BoundStatement statement = bind(event);
+                Object partition = legacy ? statement.getInstant(0) : statement.getString(0);
+                partitions.computeIfAbsent(partition, key -> new ArrayList<>()).add(statement);
+            }
+            for (List<BoundStatement> statements : partitions.values()) {
+                if (statements.size() == 1) {
+                    futures.add(execute(statements.get(0)).toCompletableFuture());
+                } else {
+                    futures.add(execute(BatchStatement.newInstance(DefaultBatchType.UNLOGGED, statements.toArray(new BoundStatement[0]))).toCompletableFuture());
+                }
+            }
+        } else {
+            for (Event event : events) {
+                futures.add(execute(bind(event)).toCompletableFuture());
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        LOGGER.trace("{} events inserted into {} table", events.size(), tableName);
+    }
+
+    private BoundStatement bind(Event event) {
+        Long timestamp = (Long) event.getProperty("timestamp");
+        if (timestamp == null) {
+            timestamp = System.currentTimeMillis();
+        }
+        String jsonSt = marshaller.marshal(event);
+        if (legacy) {
+            return insertStatement.bind(Instant.ofEpochMilli(timestamp), jsonSt);
+        }
+        String bucket = bucketer.bucket(timestamp);
+        if (shards > 1) {
+            bucket = bucket + ":" + ThreadLocalRandom.current().nextInt(shards);
+        }
+        return insertStatement.bind(bucket, timeUuid(timestamp), Instant.ofEpochMilli(timestamp), jsonSt);
+    }
+
+    /**
+     * Time based UUID for the event timestamp. The clock sequence and node parts are random, so the events
+     * with the same timestamp get different ids.
+     */
+    static UUID timeUuid(long timestamp) {
+        long mostSigBits = Uuids.startOf(timestamp).getMostSignificantBits();
+        long leastSigBits = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Execute a statement asynchronously, waiting if the maximum number of concurrent requests is reached.
+     */
+    private CompletionStage<AsyncResultSet> execute(Statement<?> statement) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return session.executeAsync(statement).whenComplete((resultSet, throwable) -> inFlight.release());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
     private static void useKeyspace(CqlSession session, String keyspace) {
         try {
             session.execute("USE " + keyspace + ";");
@@ -224,4 +369,66 @@ public class CassandraAppender implements EventHandler {
         }
     }
 
+    private static boolean isLegacyTable(CqlSession session, String keyspace, String tableName) {
+        ResultSet execute = session.execute("select column_name from system_schema.columns where keyspace_name = '" + keyspace + "' and table_name = '" + tableName.toLowerCase() + "';");
+        for (Row row : execute) {
+            if (row.getString("column_name").equalsIgnoreCase("bucket")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the partition (time bucket) of an event, caching the current bucket.
+     */
+    static class Bucketer {
+
+        private final long interval;
+        private final DateTimeFormatter formatter;
+        private volatile Bucket current = new Bucket(-1, null);
+
+        Bucketer(String interval) {
+            switch (interval.toLowerCase()) {
+                case "minute":
+                    this.interval = TimeUnit.MINUTES.toMillis(1);
+                    this.formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmm").withZone(ZoneOffset.UTC);
+                    break;
+                case "hour":
+                    this.interval = TimeUnit.HOURS.toMillis(1);
+                    this.formatter = DateTimeFormatter.ofPattern("yyyyMMddHH").withZone(ZoneOffset.UTC);
+                    break;
+                case "day":
+                    this.interval = TimeUnit.DAYS.toMillis(1);
+                    this.formatter = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid bucket interval " + interval + " (minute, hour or day expected)");
+            }
+        }
+
+        String bucket(long timestamp) {
+            long start = timestamp - Math.floorMod(timestamp, interval);
+            Bucket bucket = current;
+            if (bucket.start != start) {
+                bucket = new Bucket(start, formatter.format(Instant.ofEpochMilli(start)));
+                current = bucket;
+            }
+            return bucket.name;
+        }
+
+    }
+
+    private static class Bucket {
+
+        private final long start;
+        private final String name;
+
+        Bucket(long start, String name) {
+            this.start = start;
+            this.name = name;
+        }
+
+    }
+
 }
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.cassandra;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+public class CassandraAppenderTest {
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+
+    @Test
+    public void testMinuteBucket() {
+        CassandraAppender.Bucketer bucketer = new CassandraAppender.Bucketer("minute");
+        Assert.assertEquals("202401010000", bucketer.bucket(millis("2024-01-01T00:00:00Z")));
+        Assert.assertEquals("202401010000", bucketer.bucket(millis("2024-01-01T00:00:59.999Z")));
+        Assert.assertEquals("202401010001", bucketer.bucket(millis("2024-01-01T00:01:00Z")));
+        // going back to a previous bucket doesn't reuse the cached one
+        Assert.assertEquals("202401010000", bucketer.bucket(millis("2024-01-01T00:00:30Z")));
+    }
+
+    @Test
+    public void testHourBucket() {
+        CassandraAppender.Bucketer bucketer = new CassandraAppender.Bucketer("hour");
+        Assert.assertEquals("2023123123", bucketer.bucket(millis("2023-12-31T23:59:59.999Z")));
+        Assert.assertEquals("2024010100", bucketer.bucket(millis("2024-01-01T00:00:00Z")));
+        Assert.assertEquals("2024010100", bucketer.bucket(millis("2024-01-01T00:59:59.999Z")));
+        Assert.assertEquals("2024010101", bucketer.bucket(millis("2024-01-01T01:00:00Z")));
+    }
+
+    @Test
+    public void testDayBucket() {
+        CassandraAppender.Bucketer bucketer = new CassandraAppender.Bucketer("DAY");
+        Assert.assertEquals("20240228", bucketer.bucket(millis("2024-02-28T23:59:59.999Z")));
+        Assert.assertEquals("20240229", bucketer.bucket(millis("2024-02-29T00:00:00Z")));
+        Assert.assertEquals("20240301", bucketer.bucket(millis("2024-03-01T12:00:00Z")));
+        // timestamps before the epoch are floored to the start of their day
+        Assert.assertEquals("19691231", bucketer.bucket(-1));
+        Assert.assertEquals("19700101", bucketer.bucket(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBucket() {
+        new CassandraAppender.Bucketer("week");
+    }
+
+    @Test
+    public void testTimeUuid() {
+        long timestamp = millis("2024-01-01T12:00:00.123Z");
+        UUID uuid = CassandraAppender.timeUuid(timestamp);
+        Assert.assertEquals(1, uuid.version());
+        Assert.assertEquals(2, uuid.variant());
+        Assert.assertEquals(timestamp, Uuids.unixTimestamp(uuid));
+    }
+
+    @Test
+    public void testTimeUuidUniqueness() {
+        long timestamp = millis("2024-01-01T12:00:00Z");
+        Set<UUID> uuids = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            uuids.add(CassandraAppender.timeUuid(timestamp));
+        }
+        Assert.assertEquals(100000, uuids.size());
+    }
+
+    @Test
+    public void testTimeUuidOrdering() {
+        long timestamp = millis("2024-01-01T12:00:00Z");
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            uuids.add(CassandraAppender.timeUuid(timestamp + i));
+        }
+        // the timeuuid order (as the Cassandra clustering order) follows the event timestamps
+        for (int i = 1; i < uuids.size(); i++) {
+            Assert.assertTrue(uuids.get(i - 1).timestamp() < uuids.get(i).timestamp());
+            Assert.assertEquals(timestamp + i, Uuids.unixTimestamp(uuids.get(i)));
+        }
+    }
+
+}
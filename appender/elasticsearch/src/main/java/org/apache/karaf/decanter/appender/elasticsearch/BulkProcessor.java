@@ -0,0 +1,401 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.elasticsearch;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers the marshalled events and sends them to Elasticsearch using the <code>_bulk</code> endpoint.
+ * A flush is triggered when the buffer reaches the number of actions or the size in bytes, or when the
+ * linger time is elapsed. Items rejected with a retryable status (429 or 5xx) are re-enqueued after an
+ * exponential backoff.
+ */
+public class BulkProcessor implements BulkProcessorMBean {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(BulkProcessor.class);
+
+    private final static ContentType NDJSON = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+
+    private final RestClient client;
+    private final String indexType;
+    private final int maxActions;
+    private final long maxBytes;
+    private final int maxRetries;
+    private final long retryBackoff;
+    private final long retryMaxBackoff;
+    private final int concurrentRequests;
+
+    private final BlockingQueue<Item> queue;
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong totalFlushLatency = new AtomicLong();
+    private final AtomicLong lastFlushLatency = new AtomicLong();
+    private final AtomicLong maxFlushLatency = new AtomicLong();
+
+    public BulkProcessor(RestClient client, String indexType, int maxActions, long maxBytes, long linger, int queueSize, int maxRetries, long retryBackoff, long retryMaxBackoff, int concurrentRequests) {
+        this.client = client;
+        this.indexType = indexType;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.retryMaxBackoff = retryMaxBackoff;
+        this.concurrentRequests = concurrentRequests;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.inFlight = new Semaphore(concurrentRequests);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "decanter-appender-elasticsearch-bulk");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flush, linger, linger, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a document into the bulk buffer.
+     *
+     * @param index the target index name.
+     * @param document the marshalled (json) document.
+     */
+    public void add(String index, String document) {
+        enqueue(new Item(index, document));
+        if ((queue.size() >= maxActions || queuedBytes.get() >= maxBytes) && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flush);
+            } catch (Exception e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void enqueue(Item item) {
+        if (queue.offer(item)) {
+            queuedBytes.addAndGet(item.size());
+        } else {
+            dropped.incrementAndGet();
+            LOGGER.warn("Elasticsearch bulk buffer is full, dropping event for index {}", item.index);
+        }
+    }
+
+    /**
+     * Send all buffered documents, using as many bulk requests as needed.
+     */
+    void flush() {
+        flushScheduled.set(false);
+        try {
+            List<Item> batch;
+            while (!(batch = drain()).isEmpty()) {
+                send(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.warn("Can't flush Elasticsearch bulk buffer", e);
+        }
+    }
+
+    private List<Item> drain() {
+        List<Item> batch = new ArrayList<>();
+        long bytes = 0;
+        Item item;
+        while (batch.size() < maxActions && bytes < maxBytes && (item = queue.poll()) != null) {
+            queuedBytes.addAndGet(-item.size());
+            bytes += item.size();
+            batch.add(item);
+        }
+        return batch;
+    }
+
+    private void send(List<Item> batch) throws InterruptedException {
+        // group the documents per index, the response items follow the request order
+        Map<String, List<Item>> byIndex = new LinkedHashMap<>();
+        for (Item item : batch) {
+            byIndex.computeIfAbsent(item.index, key -> new ArrayList<>()).add(item);
+        }
+        List<Item> ordered = new ArrayList<>(batch.size());
+        StringBuilder body = new StringBuilder();
+        for (Map.Entry<String, List<Item>> entry : byIndex.entrySet()) {
+            String action = actionLine(entry.getKey());
+            for (Item item : entry.getValue()) {
+                body.append(action).append('\n').append(item.document).append('\n');
+                ordered.add(item);
+            }
+        }
+
+        Request request = new Request("POST", "/_bulk");
+        request.setEntity(new NStringEntity(body.toString(), NDJSON));
+
+        inFlight.acquire();
+        long start = System.nanoTime();
+        client.performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    recordLatency(start);
+                    handleResponse(ordered, response);
+                } finally {
+                    inFlight.release();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                try {
+                    recordLatency(start);
+                    int status = (exception instanceof ResponseException) ? ((ResponseException) exception).getResponse().getStatusLine().getStatusCode() : 503;
+                    if (isRetryable(status)) {
+                        LOGGER.warn("Elasticsearch bulk request failed, retrying {} events", ordered.size(), exception);
+                        retry(ordered);
+                    } else {
+                        LOGGER.warn("Elasticsearch bulk request rejected, dropping {} events", ordered.size(), exception);
+                        failed.addAndGet(ordered.size());
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            }
+        });
+    }
+
+    private String actionLine(String index) {
+        if (indexType != null) {
+            return "{\"index\":{\"_index\":\"" + index + "\",\"_type\":\"" + indexType + "\"}}";
+        }
+        return "{\"index\":{\"_index\":\"" + index + "\"}}";
+    }
+
+    private void handleResponse(List<Item> ordered, Response response) {
+        List<Item> retries = new ArrayList<>();
+        int handled = 0;
+        try (InputStream inputStream = response.getEntity().getContent(); JsonReader reader = Json.createReader(inputStream)) {
+            JsonObject result = reader.readObject();
+            if (!result.getBoolean("errors", false)) {
+                indexed.addAndGet(ordered.size());
+                return;
+            }
+            JsonArray items = result.getJsonArray("items");
+            for (; handled < ordered.size(); handled++) {
+                JsonObject action = items.getJsonObject(handled);
+                JsonObject itemResult = action.getJsonObject(action.keySet().iterator().next());
+                int status = itemResult.getInt("status", 500);
+                if (status >= 200 && status < 300) {
+                    indexed.incrementAndGet();
+                } else if (isRetryable(status)) {
+                    retries.add(ordered.get(handled));
+                } else {
+                    failed.incrementAndGet();
+                    LOGGER.warn("Elasticsearch rejected event for index {}: {}", ordered.get(handled).index, itemResult.get("error"));
+                }
+            }
+        } catch (Exception e) {
+            // the outcome of the remaining items is unknown
+            failed.addAndGet(ordered.size() - handled);
+            LOGGER.warn("Can't parse Elasticsearch bulk response, {} events counted as failed", ordered.size() - handled, e);
+        } finally {
+            retry(retries);
+        }
+    }
+
+    private boolean isRetryable(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    /**
+     * Re-enqueue the items after the backoff of their attempt: <code>bulk.retry.backoff</code> doubled at each attempt,
+     * up to <code>bulk.retry.max.backoff</code>.
+     */
+    private void retry(List<Item> items) {
+        List<Item> retries = new ArrayList<>(items.size());
+        int attempts = 0;
+        for (Item item : items) {
+            if (item.attempts < maxRetries) {
+                item.attempts++;
+                attempts = Math.max(attempts, item.attempts);
+                retries.add(item);
+            } else {
+                dropped.incrementAndGet();
+                LOGGER.warn("Elasticsearch bulk retries exhausted, dropping event for index {}", item.index);
+            }
+        }
+        if (retries.isEmpty()) {
+            return;
+        }
+        retried.addAndGet(retries.size());
+        long delay = backoff(attempts);
+        try {
+            scheduler.schedule(() -> retries.forEach(this::enqueue), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed: the items are left in the buffer
+            retries.forEach(this::enqueue);
+        }
+    }
+
+    long backoff(int attempt) {
+        long delay = retryBackoff << Math.min(attempt - 1, 30);
+        return (delay < 0 || delay > retryMaxBackoff) ? retryMaxBackoff : delay;
+    }
+
+    private void recordLatency(long start) {
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        flushes.incrementAndGet();
+        totalFlushLatency.addAndGet(latency);
+        lastFlushLatency.set(latency);
+        maxFlushLatency.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * Flush the remaining documents and wait for the in-flight bulk requests.
+     */
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            flush();
+            if (inFlight.tryAcquire(concurrentRequests, 10, TimeUnit.SECONDS)) {
+                inFlight.release(concurrentRequests);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            LOGGER.warn("{} events not sent to Elasticsearch", queue.size());
+        }
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public long getIndexed() {
+        return indexed.get();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public long getRetried() {
+        return retried.get();
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    @Override
+    public long getLastFlushLatency() {
+        return lastFlushLatency.get();
+    }
+
+    @Override
+    public long getMaxFlushLatency() {
+        return maxFlushLatency.get();
+    }
+
+    @Override
+    public long getAverageFlushLatency() {
+        long count = flushes.get();
+        return (count > 0) ? totalFlushLatency.get() / count : 0;
+    }
+
+    /**
+     * Number of bytes of the document in the UTF-8 request body, without encoding it.
+     */
+    static long utf8Length(String document) {
+        long length = 0;
+        for (int i = 0; i < document.length(); i++) {
+            char c = document.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < document.length() && Character.isLowSurrogate(document.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static class Item {
+
+        private final String index;
+        private final String document;
+        private final long size;
+        private int attempts = 0;
+
+        Item(String index, String document) {
+            this.index = index;
+            this.document = document;
+            this.size = utf8Length(document);
+        }
+
+        long size() {
+            return size;
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.elasticsearch;
+
+/**
+ * Counters of the Elasticsearch appender bulk mode.
+ */
+public interface BulkProcessorMBean {
+
+    /**
+     * Number of events waiting in the bulk buffer.
+     */
+    int getQueueSize();
+
+    /**
+     * Number of events successfully indexed.
+     */
+    long getIndexed();
+
+    /**
+     * Number of events rejected by Elasticsearch and not retried.
+     */
+    long getFailed();
+
+    /**
+     * Number of events re-enqueued after a retryable failure.
+     */
+    long getRetried();
+
+    /**
+     * Number of events dropped because the buffer was full or the retries were exhausted.
+     */
+    long getDropped();
+
+    /**
+     * Number of bulk requests sent.
+     */
+    long getFlushes();
+
+    /**
+     * Latency (in ms) of the last bulk request.
+     */
+    long getLastFlushLatency();
+
+    /**
+     * Maximum latency (in ms) of the bulk requests.
+     */
+    long getMaxFlushLatency();
+
+    /**
+     * Average latency (in ms) of the bulk requests.
+     */
+    long getAverageFlushLatency();
+
+}
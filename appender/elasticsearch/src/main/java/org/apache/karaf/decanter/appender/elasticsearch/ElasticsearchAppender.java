@@ -28,9 +28,11 @@ import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
 import org.apache.http.nio.entity.NStringEntity;
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.apache.karaf.decanter.appender.utils.MBeanRegistrar;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.*;
 import org.osgi.service.event.Event;
@@ -56,19 +58,42 @@ public class ElasticsearchAppender implements EventHandler {
     public static final String PASSWORD_PROPERTY = "password";
     public static final String INDEX_PREFIX_PROPERTY = "index.prefix";
     public static final String INDEX_EVENT_TIMESTAMPED_PROPERTY = "index.event.timestamped";
+    public static final String BULK_ENABLED_PROPERTY = "bulk.enabled";
+    public static final String BULK_ACTIONS_PROPERTY = "bulk.actions";
+    public static final String BULK_SIZE_PROPERTY = "bulk.size";
+    public static final String BULK_LINGER_PROPERTY = "bulk.linger";
+    public static final String BULK_QUEUE_SIZE_PROPERTY = "bulk.queue.size";
+    public static final String BULK_RETRIES_PROPERTY = "bulk.retries";
+    public static final String BULK_RETRY_BACKOFF_PROPERTY = "bulk.retry.backoff";
+    public static final String BULK_RETRY_MAX_BACKOFF_PROPERTY = "bulk.retry.max.backoff";
+    public static final String BULK_CONCURRENT_REQUESTS_PROPERTY = "bulk.concurrent.requests";
 
     public static final String ADDRESSES_DEFAULT = "http://localhost:9200";
     public static final String USERNAME_DEFAULT = null;
     public static final String PASSWORD_DEFAULT = null;
     public static final String INDEX_PREFIX_DEFAULT = "karaf";
     public static final String INDEX_EVENT_TIMESTAMPED_DEFAULT = "true";
+    public static final String BULK_ENABLED_DEFAULT = "false";
+    public static final String BULK_ACTIONS_DEFAULT = "1000";
+    public static final String BULK_SIZE_DEFAULT = "5242880";
+    public static final String BULK_LINGER_DEFAULT = "1000";
+    public static final String BULK_QUEUE_SIZE_DEFAULT = "10000";
+    public static final String BULK_RETRIES_DEFAULT = "3";
+    public static final String BULK_RETRY_BACKOFF_DEFAULT = "100";
+    public static final String BULK_RETRY_MAX_BACKOFF_DEFAULT = "10000";
+    public static final String BULK_CONCURRENT_REQUESTS_DEFAULT = "2";
 
     @Reference
     public Marshaller marshaller;
 
     private RestClient client;
 
+    private BulkProcessor bulkProcessor;
+
+    private ServiceRegistration<?> bulkProcessorRegistration;
+
     private Dictionary<String, Object> config;
+    private EventFilter filter;
 
     private final SimpleDateFormat tsFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss,SSS'Z'");
     private final SimpleDateFormat indexDateFormat = new SimpleDateFormat("yyyy.MM.dd");
@@ -79,10 +104,14 @@ public class ElasticsearchAppender implements EventHandler {
     @Activate
     public void activate(ComponentContext context) {
         open(context.getProperties());
+        if (bulkProcessor != null) {
+            bulkProcessorRegistration = MBeanRegistrar.register(context.getBundleContext(), BulkProcessorMBean.class, bulkProcessor, "elasticsearch", context.getProperties());
+        }
     }
     
     public void open(Dictionary<String, Object> config) {
         this.config = config;
+        filter = new EventFilter(config);
 
         String addressesString = getValue(config, ADDRESSES_PROPERTY, ADDRESSES_DEFAULT);
         String username = getValue(config, USERNAME_PROPERTY, USERNAME_DEFAULT);
@@ -126,6 +155,19 @@ public class ElasticsearchAppender implements EventHandler {
 
         client = restClientBuilder.build();
 
+        if (Boolean.parseBoolean(getValue(config, BULK_ENABLED_PROPERTY, BULK_ENABLED_DEFAULT))) {
+            bulkProcessor = new BulkProcessor(client,
+                    (String) config.get("index.type"),
+                    Integer.parseInt(getValue(config, BULK_ACTIONS_PROPERTY, BULK_ACTIONS_DEFAULT)),
+                    Long.parseLong(getValue(config, BULK_SIZE_PROPERTY, BULK_SIZE_DEFAULT)),
+                    Long.parseLong(getValue(config, BULK_LINGER_PROPERTY, BULK_LINGER_DEFAULT)),
+                    Integer.parseInt(getValue(config, BULK_QUEUE_SIZE_PROPERTY, BULK_QUEUE_SIZE_DEFAULT)),
+                    Integer.parseInt(getValue(config, BULK_RETRIES_PROPERTY, BULK_RETRIES_DEFAULT)),
+                    Long.parseLong(getValue(config, BULK_RETRY_BACKOFF_PROPERTY, BULK_RETRY_BACKOFF_DEFAULT)),
+                    Long.parseLong(getValue(config, BULK_RETRY_MAX_BACKOFF_PROPERTY, BULK_RETRY_MAX_BACKOFF_DEFAULT)),
+                    Integer.parseInt(getValue(config, BULK_CONCURRENT_REQUESTS_PROPERTY, BULK_CONCURRENT_REQUESTS_DEFAULT)));
+        }
+
         TimeZone tz = TimeZone.getTimeZone( "UTC" );
         tsFormat.setTimeZone(tz);
         indexDateFormat.setTimeZone(tz);
@@ -138,6 +180,14 @@ public class ElasticsearchAppender implements EventHandler {
 
     @Deactivate
     public void close() {
+        if (bulkProcessorRegistration != null) {
+            bulkProcessorRegistration.unregister();
+            bulkProcessorRegistration = null;
+        }
+        if (bulkProcessor != null) {
+            bulkProcessor.close();
+            bulkProcessor = null;
+        }
         try {
             client.close();
         } catch (Exception e) {
@@ -147,7 +197,7 @@ public class ElasticsearchAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
+        if (filter.match(event)) {
             try {
                 send(event);
             } catch (Exception e) {
@@ -160,6 +210,11 @@ public class ElasticsearchAppender implements EventHandler {
         String indexName = getIndexName(getValue(config, INDEX_PREFIX_PROPERTY, INDEX_PREFIX_DEFAULT), getDate(event));
         String jsonSt = marshaller.marshal(event);
 
+        if (bulkProcessor != null) {
+            bulkProcessor.add(indexName, jsonSt);
+            return;
+        }
+
         String endpoint;
         if (config.get("index.type") != null) {
             endpoint = String.format("/%s/%s", indexName, config.get("index.type"));
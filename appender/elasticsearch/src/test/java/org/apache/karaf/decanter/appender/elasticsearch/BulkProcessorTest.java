@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.elasticsearch;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BulkProcessorTest {
+
+    @Test
+    public void testPartialFailure() throws Exception {
+        List<String> bodies = new ArrayList<>();
+        Queue<String> responses = new LinkedList<>();
+        // first bulk: one indexed, one throttled (retried), one rejected (failed)
+        responses.add("{\"took\":3,\"errors\":true,\"items\":["
+                + "{\"index\":{\"_index\":\"decanter\",\"status\":201}},"
+                + "{\"index\":{\"_index\":\"decanter\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\"}}},"
+                + "{\"index\":{\"_index\":\"decanter\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\"}}}]}");
+        // second bulk: the retried document is indexed
+        responses.add("{\"took\":1,\"errors\":false,\"items\":[{\"index\":{\"_index\":\"decanter\",\"status\":201}}]}");
+        RestClient client = mockClient(bodies, responses, null);
+
+        BulkProcessor processor = new BulkProcessor(client, null, 100, 5 * 1024 * 1024, 60000, 100, 3, 50, 1000, 1);
+        try {
+            processor.add("decanter", "{\"id\":1}");
+            processor.add("decanter", "{\"id\":2}");
+            processor.add("decanter", "{\"id\":3}");
+            long start = System.nanoTime();
+            processor.flush();
+            // the throttled document is re-enqueued after the backoff
+            Assert.assertEquals(0, processor.getQueueSize());
+            awaitQueued(processor);
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+            processor.flush();
+
+            Assert.assertEquals(2, bodies.size());
+            Assert.assertEquals("{\"index\":{\"_index\":\"decanter\"}}\n{\"id\":1}\n"
+                    + "{\"index\":{\"_index\":\"decanter\"}}\n{\"id\":2}\n"
+                    + "{\"index\":{\"_index\":\"decanter\"}}\n{\"id\":3}\n", bodies.get(0));
+            Assert.assertEquals("{\"index\":{\"_index\":\"decanter\"}}\n{\"id\":2}\n", bodies.get(1));
+            Assert.assertEquals(2, processor.getIndexed());
+            Assert.assertEquals(1, processor.getRetried());
+            Assert.assertEquals(1, processor.getFailed());
+            Assert.assertEquals(0, processor.getDropped());
+            Assert.assertEquals(0, processor.getQueueSize());
+        } finally {
+            processor.close();
+        }
+    }
+
+    @Test
+    public void testRetriesExhausted() throws Exception {
+        List<String> bodies = new ArrayList<>();
+        Queue<String> responses = new LinkedList<>();
+        for (int i = 0; i < 3; i++) {
+            responses.add("{\"took\":1,\"errors\":true,\"items\":[{\"index\":{\"_index\":\"decanter\",\"status\":503}}]}");
+        }
+        RestClient client = mockClient(bodies, responses, null);
+
+        BulkProcessor processor = new BulkProcessor(client, null, 100, 5 * 1024 * 1024, 60000, 100, 2, 20, 20, 1);
+        try {
+            processor.add("decanter", "{\"id\":1}");
+            processor.flush();
+            awaitQueued(processor);
+            processor.flush();
+            awaitQueued(processor);
+            processor.flush();
+
+            Assert.assertEquals(3, bodies.size());
+            Assert.assertEquals(0, processor.getIndexed());
+            Assert.assertEquals(2, processor.getRetried());
+            Assert.assertEquals(1, processor.getDropped());
+        } finally {
+            processor.close();
+        }
+    }
+
+    @Test
+    public void testFlushOnUtf8Size() throws Exception {
+        String document = "{\"message\":\"" + "éééééééééé" + "\"}";
+        Assert.assertEquals(document.getBytes(StandardCharsets.UTF_8).length, BulkProcessor.utf8Length(document));
+        Assert.assertEquals(4, BulkProcessor.utf8Length("😀"));
+        Assert.assertEquals(3, BulkProcessor.utf8Length("€"));
+
+        List<String> bodies = new ArrayList<>();
+        Queue<String> responses = new LinkedList<>();
+        responses.add("{\"took\":1,\"errors\":false,\"items\":[{\"index\":{\"_index\":\"decanter\",\"status\":201}}]}");
+        CountDownLatch sent = new CountDownLatch(1);
+        RestClient client = mockClient(bodies, responses, sent);
+
+        // the document has 24 chars but 34 bytes: only the byte size reaches the limit
+        BulkProcessor processor = new BulkProcessor(client, null, 100, 30, 60000, 100, 3, 100, 10000, 1);
+        try {
+            processor.add("decanter", document);
+            Assert.assertTrue(sent.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, bodies.size());
+        } finally {
+            processor.close();
+        }
+    }
+
+    @Test
+    public void testBackoff() {
+        BulkProcessor processor = new BulkProcessor(mock(RestClient.class), null, 100, 5 * 1024 * 1024, 60000, 100, 100, 100, 10000, 1);
+        try {
+            Assert.assertEquals(100, processor.backoff(1));
+            Assert.assertEquals(200, processor.backoff(2));
+            Assert.assertEquals(6400, processor.backoff(7));
+            Assert.assertEquals(10000, processor.backoff(8));
+            Assert.assertEquals(10000, processor.backoff(100));
+        } finally {
+            processor.close();
+        }
+    }
+
+    @Test
+    public void testUnparseableResponse() throws Exception {
+        List<String> bodies = new ArrayList<>();
+        Queue<String> responses = new LinkedList<>();
+        responses.add("<html>Bad Gateway</html>");
+        RestClient client = mockClient(bodies, responses, null);
+
+        BulkProcessor processor = new BulkProcessor(client, null, 100, 5 * 1024 * 1024, 60000, 100, 3, 100, 10000, 1);
+        try {
+            processor.add("decanter", "{\"id\":1}");
+            processor.add("decanter", "{\"id\":2}");
+            processor.flush();
+
+            Assert.assertEquals(1, bodies.size());
+            Assert.assertEquals(0, processor.getIndexed());
+            Assert.assertEquals(2, processor.getFailed());
+        } finally {
+            processor.close();
+        }
+    }
+
+    private static void awaitQueued(BulkProcessor processor) throws InterruptedException {
+        for (int i = 0; i < 500 && processor.getQueueSize() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, processor.getQueueSize());
+    }
+
+    private RestClient mockClient(List<String> bodies, Queue<String> responses, CountDownLatch sent) {
+        RestClient client = mock(RestClient.class);
+        doAnswer(invocation -> {
+            Request request = invocation.getArgument(0);
+            ResponseListener listener = invocation.getArgument(1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            request.getEntity().writeTo(out);
+            bodies.add(out.toString(StandardCharsets.UTF_8.name()));
+            Response response = mock(Response.class);
+            when(response.getEntity()).thenReturn(new StringEntity(responses.remove(), ContentType.APPLICATION_JSON));
+            listener.onSuccess(response);
+            if (sent != null) {
+                sent.countDown();
+            }
+            return null;
+        }).when(client).performRequestAsync(any(Request.class), any(ResponseListener.class));
+        return client;
+    }
+
+}
@@ -17,7 +17,10 @@
 package org.apache.karaf.decanter.appender.file;
 
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -26,65 +29,287 @@ import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
 import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.Dictionary;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 @Component(
         name = "org.apache.karaf.decanter.appender.file",
         immediate = true,
+        service = EventHandler.class,
         property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-public class FileAppender implements EventHandler {
+public class FileAppender implements EventHandler, BatchAppender {
 
     public static final String FILENAME_PROPERTY = "filename";
     public static final String APPEND_PROPERTY = "append";
+    public static final String WRITER_PROPERTY = "writer";
+    public static final String MMAP_REGION_SIZE_PROPERTY = "mmap.region.size";
+    public static final String FLUSH_EVENTS_PROPERTY = "flush.events";
+    public static final String FLUSH_INTERVAL_PROPERTY = "flush.interval";
+    public static final String ROLLING_SIZE_PROPERTY = "rolling.size";
+    public static final String ROLLING_INTERVAL_PROPERTY = "rolling.interval";
+    public static final String ROLLING_COMPRESS_PROPERTY = "rolling.compress";
+    public static final String ROLLING_MAX_FILES_PROPERTY = "rolling.max.files";
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(FileAppender.class);
+
+    private final static byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
 
     @Reference
     public Marshaller marshaller;
 
-    private BufferedWriter writer;
+    private File file;
+    private boolean append;
+    private String writer;
+    private long regionSize;
+    private int flushEvents;
+    private long rollingSize;
+    private long rollingInterval;
+    private boolean compress;
+    private int maxFiles;
+    private Pattern rolledPattern;
+
+    // guarded by this
+    private FileOutput output;
+    private int pending;
+    private long nextRolling;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService roller;
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
 
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
         Dictionary<String, Object> config = componentContext.getProperties();
         open(config);
+        if (dispatcher != null) {
+            dispatcherRegistration = dispatcher.register(componentContext.getBundleContext());
+        }
     }
 
     public void open(Dictionary<String, Object> config) throws Exception {
         this.config = config;
+        filter = new EventFilter(config);
 
         String filename = (config.get(FILENAME_PROPERTY) != null) ? (String) config.get(FILENAME_PROPERTY) : System.getProperty("karaf.data") + File.separator + "decanter" + File.separator + "appender.csv";
-        boolean append = (config.get(APPEND_PROPERTY) != null) ? Boolean.parseBoolean((String) config.get(APPEND_PROPERTY)) : true;
+        append = Boolean.parseBoolean(getValue(config, APPEND_PROPERTY, "true"));
+        writer = getValue(config, WRITER_PROPERTY, "stream");
+        regionSize = Long.parseLong(getValue(config, MMAP_REGION_SIZE_PROPERTY, String.valueOf(16 * 1024 * 1024)));
+        flushEvents = Integer.parseInt(getValue(config, FLUSH_EVENTS_PROPERTY, "1"));
+        long flushInterval = Long.parseLong(getValue(config, FLUSH_INTERVAL_PROPERTY, "1000"));
+        rollingSize = Long.parseLong(getValue(config, ROLLING_SIZE_PROPERTY, "0"));
+        rollingInterval = Long.parseLong(getValue(config, ROLLING_INTERVAL_PROPERTY, "0"));
+        String compression = getValue(config, ROLLING_COMPRESS_PROPERTY, "none");
+        if (!compression.equalsIgnoreCase("none") && !compression.equalsIgnoreCase("gzip")) {
+            throw new IllegalArgumentException("Unknown rolling compression " + compression + " (none or gzip expected)");
+        }
+        compress = compression.equalsIgnoreCase("gzip");
+        maxFiles = Integer.parseInt(getValue(config, ROLLING_MAX_FILES_PROPERTY, "0"));
 
-        File file = new File(filename);
+        file = new File(filename);
         file.getParentFile().mkdirs();
         file.createNewFile();
-        this.writer = new BufferedWriter(new FileWriter(file, append));
+        rolledPattern = Pattern.compile(Pattern.quote(file.getName()) + "\\.\\d{8}-\\d{6}-\\d{3}(-\\d+)?(\\.gz)?");
+        synchronized (this) {
+            output = FileOutput.open(file, append, writer, regionSize);
+            pending = 0;
+            nextRolling = (rollingInterval > 0) ? System.currentTimeMillis() + rollingInterval : Long.MAX_VALUE;
+        }
+
+        if (rollingSize > 0 || rollingInterval > 0) {
+            roller = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "decanter-appender-file-roller"));
+        }
+        if (flushEvents > 1 || rollingInterval > 0) {
+            long period = (flushEvents > 1) ? flushInterval : Math.min(rollingInterval, 1000);
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "decanter-appender-file-flush"));
+            scheduler.scheduleWithFixedDelay(this::tick, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("file", config, this);
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
+        String value = (String) config.get(key);
+        return (value != null) ? value : defaultValue;
     }
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
+            }
             try {
-                String marshalled = marshaller.marshal(event);
-                writer.write(marshalled);
-                writer.newLine();
-                writer.flush();
+                batch(Collections.singletonList(event));
             } catch (Exception e) {
-                // nothing to do
+                LOGGER.warn("Can't write event in {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * Write the events in the current file. The events are marshalled by the caller thread, only the write
+     * in the file is serialized.
+     */
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        byte[][] lines = new byte[events.size()][];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = marshaller.marshal(events.get(i)).getBytes(StandardCharsets.UTF_8);
+        }
+        synchronized (this) {
+            if (output == null) {
+                throw new IllegalStateException("File appender is closed");
+            }
+            for (byte[] line : lines) {
+                if ((rollingSize > 0 && output.size() >= rollingSize) || System.currentTimeMillis() >= nextRolling) {
+                    roll();
+                }
+                output.write(line);
+                output.write(LINE_SEPARATOR);
+                pending++;
+            }
+            if (pending >= flushEvents) {
+                flush();
+            }
+        }
+    }
+
+    private void tick() {
+        try {
+            synchronized (this) {
+                if (output == null) {
+                    return;
+                }
+                if (System.currentTimeMillis() >= nextRolling) {
+                    roll();
+                } else if (pending > 0) {
+                    flush();
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Can't flush {}", file, e);
+        }
+    }
+
+    // guarded by this
+    private void flush() throws IOException {
+        output.flush();
+        pending = 0;
+    }
+
+    /**
+     * Close the current file, rename it with the rolling timestamp and open a new file.
+     * The compression and the removal of the old files are done by the roller thread.
+     */
+    // guarded by this
+    private void roll() throws IOException {
+        nextRolling = (rollingInterval > 0) ? System.currentTimeMillis() + rollingInterval : Long.MAX_VALUE;
+        if (output.size() == 0) {
+            return;
+        }
+        output.close();
+        output = null;
+        pending = 0;
+        String name = file.getName() + "." + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        File rolled = new File(file.getParentFile(), name);
+        for (int i = 1; rolled.exists() || new File(rolled.getPath() + ".gz").exists(); i++) {
+            rolled = new File(file.getParentFile(), name + "-" + i);
+        }
+        try {
+            if (!file.renameTo(rolled)) {
+                throw new IOException("Can't rename " + file + " to " + rolled);
+            }
+            File segment = rolled;
+            roller.execute(() -> rolled(segment));
+        } finally {
+            output = FileOutput.open(file, file.length() > 0, writer, regionSize);
+        }
+    }
+
+    private void rolled(File segment) {
+        if (compress) {
+            File compressed = new File(segment.getPath() + ".gz");
+            try (InputStream in = new FileInputStream(segment); OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed), FileOutput.BUFFER_SIZE)) {
+                in.transferTo(out);
+            } catch (IOException e) {
+                LOGGER.warn("Can't compress {}", segment, e);
+                compressed.delete();
+                return;
+            }
+            segment.delete();
+        }
+        if (maxFiles > 0) {
+            File[] files = file.getParentFile().listFiles((directory, name) -> rolledPattern.matcher(name).matches());
+            if (files != null && files.length > maxFiles) {
+                Arrays.sort(files, (first, second) -> Long.compare(first.lastModified(), second.lastModified()));
+                for (int i = 0; i < files.length - maxFiles; i++) {
+                    files[i].delete();
+                }
             }
         }
     }
 
     @Deactivate
     public void deactivate() throws Exception {
-        this.writer.flush();
-        this.writer.close();
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
+        if (scheduler != null) {
+            // an interrupt would close the file channel under a running flush
+            scheduler.shutdown();
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            scheduler = null;
+        }
+        synchronized (this) {
+            if (output != null) {
+                output.close();
+                output = null;
+            }
+        }
+        if (roller != null) {
+            roller.shutdown();
+            roller.awaitTermination(1, TimeUnit.MINUTES);
+            roller = null;
+        }
     }
 
 }
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.file;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Output of the file appender, writing bytes in the current file. The implementations are not thread safe,
+ * the appender serializes the calls.
+ */
+abstract class FileOutput {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    protected long size;
+
+    /**
+     * Open the output on the given file.
+     *
+     * @param file the file to write.
+     * @param append true to write at the end of the existing file, false to truncate it.
+     * @param writer the output type: <code>stream</code>, <code>channel</code> or <code>mmap</code>.
+     * @param regionSize the size of the mapped regions (<code>mmap</code> output only).
+     */
+    static FileOutput open(File file, boolean append, String writer, long regionSize) throws IOException {
+        switch (writer.toLowerCase()) {
+            case "stream":
+                return new StreamOutput(file, append);
+            case "channel":
+                return new ChannelOutput(file, append);
+            case "mmap":
+                return new MappedOutput(file, append, regionSize);
+            default:
+                throw new IllegalArgumentException("Unknown file writer " + writer + " (stream, channel or mmap expected)");
+        }
+    }
+
+    abstract void write(byte[] bytes) throws IOException;
+
+    abstract void flush() throws IOException;
+
+    abstract void close() throws IOException;
+
+    /**
+     * Size of the file, including the bytes not flushed yet.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Buffered output stream, the default output.
+     */
+    static class StreamOutput extends FileOutput {
+
+        private final OutputStream out;
+
+        StreamOutput(File file, boolean append) throws IOException {
+            this.size = append ? file.length() : 0;
+            this.out = new BufferedOutputStream(new FileOutputStream(file, append), BUFFER_SIZE);
+        }
+
+        @Override
+        void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            size += bytes.length;
+        }
+
+        @Override
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        void close() throws IOException {
+            out.close();
+        }
+
+    }
+
+    /**
+     * File channel output, the bytes are copied in a direct buffer written with a single system call when full or flushed.
+     */
+    static class ChannelOutput extends FileOutput {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelOutput(File file, boolean append) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+            this.size = channel.size();
+        }
+
+        @Override
+        void write(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+            size += bytes.length;
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+
+    }
+
+    /**
+     * Memory mapped output. The file is mapped by regions, the bytes are visible by the readers as soon as they are
+     * written, without system call. The file is extended by a full region when a region is mapped, and truncated to
+     * the written size when the output is closed.
+     */
+    static class MappedOutput extends FileOutput {
+
+        private final FileChannel channel;
+        private final long regionSize;
+        private MappedByteBuffer region;
+        private long regionPosition;
+
+        MappedOutput(File file, boolean append, long regionSize) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!append) {
+                channel.truncate(0);
+            }
+            this.regionSize = regionSize;
+            this.size = channel.size();
+            map();
+        }
+
+        private void map() throws IOException {
+            regionPosition = size;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionPosition, regionSize);
+        }
+
+        @Override
+        void write(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!region.hasRemaining()) {
+                    map();
+                }
+                int length = Math.min(region.remaining(), bytes.length - offset);
+                region.put(bytes, offset, length);
+                offset += length;
+                size += length;
+            }
+        }
+
+        @Override
+        void flush() {
+            // the mapped bytes are already in the page cache
+        }
+
+        @Override
+        void close() throws IOException {
+            try {
+                region.force();
+                region = null;
+                channel.truncate(size);
+            } finally {
+                channel.close();
+            }
+        }
+
+    }
+
+}
@@ -24,11 +24,17 @@ import org.osgi.service.event.Event;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 public class TestFileAppender {
 
@@ -94,4 +100,122 @@ public class TestFileAppender {
         Assert.assertEquals(1, lineCount);
     }
 
+    @Test
+    public void testGroupCommit() throws Exception {
+        FileAppender fileAppender = new FileAppender();
+        fileAppender.marshaller = new CsvMarshaller();
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put(FileAppender.FILENAME_PROPERTY, "target/test-classes/group");
+        config.put(FileAppender.APPEND_PROPERTY, "false");
+        config.put(FileAppender.FLUSH_EVENTS_PROPERTY, "3");
+        config.put(FileAppender.FLUSH_INTERVAL_PROPERTY, "60000");
+        fileAppender.open(config);
+
+        Map<String, String> data = new HashMap<>();
+        data.put("a", "b");
+        File file = new File("target/test-classes/group");
+        fileAppender.handleEvent(new Event("testTopic", data));
+        fileAppender.handleEvent(new Event("testTopic", data));
+        Assert.assertEquals(0, file.length());
+        fileAppender.handleEvent(new Event("testTopic", data));
+        Assert.assertEquals(3, readLines(file).size());
+        fileAppender.handleEvent(new Event("testTopic", data));
+        fileAppender.deactivate();
+        Assert.assertEquals(4, readLines(file).size());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        for (String writer : new String[]{ "stream", "channel", "mmap" }) {
+            FileAppender fileAppender = new FileAppender();
+            fileAppender.marshaller = new CsvMarshaller();
+            Dictionary<String, Object> config = new Hashtable<>();
+            config.put(FileAppender.FILENAME_PROPERTY, "target/test-classes/concurrent-" + writer);
+            config.put(FileAppender.APPEND_PROPERTY, "false");
+            config.put(FileAppender.WRITER_PROPERTY, writer);
+            config.put(FileAppender.MMAP_REGION_SIZE_PROPERTY, "4096");
+            config.put(FileAppender.FLUSH_EVENTS_PROPERTY, "100");
+            fileAppender.open(config);
+
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                Map<String, String> data = new HashMap<>();
+                data.put("thread", String.valueOf(i));
+                threads[i] = new Thread(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        fileAppender.handleEvent(new Event("testTopic", data));
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            fileAppender.deactivate();
+
+            List<String> lines = readLines(new File("target/test-classes/concurrent-" + writer));
+            Assert.assertEquals(writer, 4000, lines.size());
+            for (String line : lines) {
+                Assert.assertTrue(writer + ": " + line, line.matches("thread=\\d,event.topics=testTopic"));
+            }
+        }
+    }
+
+    @Test
+    public void testRolling() throws Exception {
+        File directory = new File("target/test-classes/rolling");
+        if (directory.exists()) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+        }
+        FileAppender fileAppender = new FileAppender();
+        fileAppender.marshaller = new CsvMarshaller();
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put(FileAppender.FILENAME_PROPERTY, "target/test-classes/rolling/decanter.csv");
+        config.put(FileAppender.ROLLING_SIZE_PROPERTY, "100");
+        config.put(FileAppender.ROLLING_COMPRESS_PROPERTY, "gzip");
+        fileAppender.open(config);
+
+        Map<String, String> data = new HashMap<>();
+        data.put("a", "b");
+        for (int i = 0; i < 20; i++) {
+            fileAppender.handleEvent(new Event("testTopic", data));
+        }
+        fileAppender.deactivate();
+
+        int lineCount = readLines(new File(directory, "decanter.csv")).size();
+        int segments = 0;
+        for (File file : directory.listFiles()) {
+            if (file.getName().equals("decanter.csv")) {
+                continue;
+            }
+            Assert.assertTrue(file.getName(), file.getName().matches("decanter\\.csv\\.\\d{8}-\\d{6}-\\d{3}(-\\d+)?\\.gz"));
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            // each event is 27 bytes, a segment is rolled when it reaches 100 bytes
+            Assert.assertEquals(4, lines.size());
+            lineCount += lines.size();
+            segments++;
+        }
+        Assert.assertEquals(4, segments);
+        Assert.assertEquals(20, lineCount);
+    }
+
+    private List<String> readLines(File file) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
 }
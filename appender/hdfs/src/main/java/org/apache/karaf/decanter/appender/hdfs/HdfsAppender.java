@@ -21,11 +21,15 @@ import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
-import org.osgi.service.cm.ConfigurationException;
+import org.apache.karaf.decanter.appender.utils.PartitionTemplate;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
@@ -33,70 +37,318 @@ import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Component(
         name = "org.apache.karaf.decanter.appender.hdfs",
         immediate = true,
+        service = EventHandler.class,
         property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-public class HdfsAppender implements EventHandler {
+public class HdfsAppender implements EventHandler, BatchAppender {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(HdfsAppender.class);
 
+    private final static DateTimeFormatter ROLLING_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+    private final static byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
+
     private Dictionary<String, Object> config;
+    private EventFilter filter;
     private Configuration configuration;
 
+    private PartitionTemplate pathTemplate;
+    private String mode;
+    private int flushEvents;
+    private boolean sync;
+    private long rollingSize;
+    private long rollingInterval;
+    private long idleTimeout;
+
+    private FileSystem fileSystem;
+    // guarded by this
+    private final Map<String, Writer> writers = new HashMap<>();
+    // guarded by this, the paths already truncated in overwrite mode
+    private final Set<String> overwritten = new HashSet<>();
+    private ScheduledExecutorService scheduler;
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
+
     @Activate
-    public void activate(ComponentContext componentContext) {
+    public void activate(ComponentContext componentContext) throws Exception {
         activate(componentContext.getProperties());
+        if (dispatcher != null) {
+            dispatcherRegistration = dispatcher.register(componentContext.getBundleContext());
+        }
     }
 
-    public void activate(Dictionary<String, Object> config) {
+    public void activate(Dictionary<String, Object> config) throws Exception {
         this.config = config;
+        filter = new EventFilter(config);
         configuration = new Configuration();
         if (config.get("hdfs.configuration") != null) {
             configuration.addResource((String) config.get("hdfs.configuration"));
         }
+        if (config.get("hdfs.path") == null) {
+            throw new IllegalArgumentException("hdfs.path is not set");
+        }
+        pathTemplate = new PartitionTemplate((String) config.get("hdfs.path"));
+        mode = getValue(config, "hdfs.mode", "create").toLowerCase();
+        if (!mode.equals("create") && !mode.equals("append") && !mode.equals("overwrite")) {
+            throw new IllegalArgumentException("Unknown hdfs.mode " + mode + " (create, append or overwrite expected)");
+        }
+        flushEvents = Integer.parseInt(getValue(config, "hdfs.flush.events", "100"));
+        long flushInterval = Long.parseLong(getValue(config, "hdfs.flush.interval", "1000"));
+        sync = Boolean.parseBoolean(getValue(config, "hdfs.flush.sync", "false"));
+        rollingSize = Long.parseLong(getValue(config, "hdfs.rolling.size", "0"));
+        rollingInterval = Long.parseLong(getValue(config, "hdfs.rolling.interval", "0"));
+        idleTimeout = Long.parseLong(getValue(config, "hdfs.idle.timeout", "300000"));
+
+        // a dedicated instance, not shared with the other users of the FileSystem cache
+        fileSystem = FileSystem.newInstance(configuration);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "decanter-appender-hdfs-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("hdfs", config, this);
+        }
+    }
+
+    private String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
+        String value = (String) config.get(key);
+        return (value != null) ? value : defaultValue;
     }
 
     @Override
     public void handleEvent(Event event) {
-        try {
-            if (EventFilter.match(event, config)) {
-                FileSystem fileSystem = FileSystem.get(configuration);
-                if (config.get("hdfs.path") == null) {
-                    throw new IllegalArgumentException("hdfs.path is not set");
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
+            }
+            try {
+                batch(Collections.singletonList(event));
+            } catch (Exception e) {
+                LOGGER.warn("Can't write on HDFS", e);
+            }
+        }
+    }
+
+    /**
+     * Write the events in the files of their partitions. The events are marshalled by the caller thread, only the
+     * writes on HDFS are serialized.
+     */
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        String[] paths = new String[events.size()];
+        byte[][] lines = new byte[events.size()][];
+        for (int i = 0; i < lines.length; i++) {
+            paths[i] = pathTemplate.format(events.get(i));
+            lines[i] = marshaller.marshal(events.get(i)).getBytes(StandardCharsets.UTF_8);
+        }
+        synchronized (this) {
+            if (fileSystem == null) {
+                throw new IllegalStateException("HDFS appender is closed");
+            }
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < lines.length; i++) {
+                Writer writer = writers.get(paths[i]);
+                if (writer != null && writer.shouldRoll(now)) {
+                    writers.remove(paths[i]);
+                    writer.close();
+                    writer = null;
                 }
-                Path path = new Path((String) config.get("hdfs.path"));
-                FSDataOutputStream outputStream;
-                if (config.get("hdfs.mode") == null) {
-                    outputStream = fileSystem.create(path, true);
-                } else {
-                    if (((String) config.get("hdfs.mode")).equalsIgnoreCase("append")) {
-                        outputStream = fileSystem.append(path);
-                    } else if (((String) config.get("hdfs.mode")).equalsIgnoreCase("overwrite")) {
-                        outputStream = fileSystem.create(path, true);
-                    } else {
-                        outputStream = fileSystem.create(path, false);
+                if (writer == null) {
+                    writer = open(paths[i], now);
+                    writers.put(paths[i], writer);
+                }
+                try {
+                    writer.write(lines[i], now);
+                } catch (IOException e) {
+                    // the stream can't be trusted anymore, the file will be open again for the next event
+                    writers.remove(paths[i]);
+                    writer.abort();
+                    throw e;
+                }
+            }
+            for (Writer writer : writers.values()) {
+                if (writer.pending >= flushEvents) {
+                    writer.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Open a partition file. A file is never truncated when it is open again (after the idle timeout or a restart):
+     * the events are appended in append mode, else they go in a new file named with a timestamp suffix, as the
+     * rolled files. In overwrite mode, the file is only truncated the first time the appender opens it.
+     */
+    // guarded by this
+    private Writer open(String path, long now) throws IOException {
+        Path file = new Path(path);
+        FSDataOutputStream out;
+        if (rollingSize > 0 || rollingInterval > 0) {
+            out = fileSystem.create(suffixed(path, now), false);
+        } else if (mode.equals("append") && fileSystem.exists(file)) {
+            out = fileSystem.append(file);
+        } else if (mode.equals("overwrite") && overwritten.add(path)) {
+            out = fileSystem.create(file, true);
+        } else if (fileSystem.exists(file)) {
+            out = fileSystem.create(suffixed(path, now), false);
+        } else {
+            out = fileSystem.create(file, false);
+        }
+        return new Writer(out, now);
+    }
+
+    // guarded by this
+    private Path suffixed(String path, long now) throws IOException {
+        String suffix = ROLLING_FORMAT.format(Instant.ofEpochMilli(now));
+        Path file = new Path(path + "." + suffix);
+        for (int i = 1; fileSystem.exists(file); i++) {
+            file = new Path(path + "." + suffix + "-" + i);
+        }
+        return file;
+    }
+
+    /**
+     * Flush the pending events, roll the files and close the idle files.
+     */
+    private void tick() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Writer> iterator = writers.values().iterator(); iterator.hasNext(); ) {
+                Writer writer = iterator.next();
+                try {
+                    if (writer.shouldRoll(now) || now - writer.lastWrite >= idleTimeout) {
+                        iterator.remove();
+                        writer.close();
+                    } else if (writer.pending > 0) {
+                        writer.flush();
                     }
+                } catch (Exception e) {
+                    LOGGER.warn("Can't flush on HDFS", e);
                 }
+            }
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
+        if (scheduler != null) {
+            // let a running flush complete before closing the files
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOGGER.warn("HDFS flush still running, closing the files anyway");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        synchronized (this) {
+            for (Writer writer : writers.values()) {
+                try {
+                    writer.close();
+                } catch (Exception e) {
+                    LOGGER.warn("Can't close HDFS file", e);
+                }
+            }
+            writers.clear();
+            overwritten.clear();
+            if (fileSystem != null) {
                 try {
-                    String marshalled = marshaller.marshal(event);
-                    outputStream.writeChars(marshalled);
+                    fileSystem.close();
                 } catch (Exception e) {
-                    // nothing to do
+                    LOGGER.warn("Can't close HDFS file system", e);
                 }
-                outputStream.flush();
-                outputStream.close();
-                fileSystem.close();
+                fileSystem = null;
             }
-        } catch (Exception e) {
-            LOGGER.warn("Can't write on HDFS", e);
         }
     }
 
     @Reference
     public Marshaller marshaller;
 
+    /**
+     * Output stream open on a partition file.
+     */
+    private class Writer {
+
+        private final FSDataOutputStream out;
+        private final long opened;
+        private long size;
+        private long lastWrite;
+        private int pending;
+
+        Writer(FSDataOutputStream out, long now) {
+            this.out = out;
+            this.opened = now;
+            this.lastWrite = now;
+        }
+
+        void write(byte[] line, long now) throws IOException {
+            out.write(line);
+            out.write(NEW_LINE);
+            size += line.length + NEW_LINE.length;
+            lastWrite = now;
+            pending++;
+        }
+
+        boolean shouldRoll(long now) {
+            return (rollingSize > 0 && size >= rollingSize) || (rollingInterval > 0 && now - opened >= rollingInterval);
+        }
+
+        void flush() throws IOException {
+            if (sync) {
+                out.hsync();
+            } else {
+                out.hflush();
+            }
+            pending = 0;
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+    }
+
 }
@@ -22,8 +22,14 @@ import org.junit.Test;
 import org.osgi.service.event.Event;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 
 public class TestHdfsAppender {
 
@@ -45,4 +51,111 @@ public class TestHdfsAppender {
         Assert.assertTrue(file.exists());
     }
 
+    @Test
+    public void testPartitionRolling() throws Exception {
+        delete(new File("target/hdfs/partition"));
+        HdfsAppender appender = new HdfsAppender();
+        appender.marshaller = new CsvMarshaller();
+        Hashtable<String, Object> config = new Hashtable<>();
+        config.put("hdfs.path", "target/hdfs/partition/${topic}/${yyyy-MM-dd}/events.csv");
+        config.put("hdfs.rolling.size", "100");
+        appender.activate(config);
+        for (int i = 0; i < 4; i++) {
+            HashMap<String, Object> data = new HashMap<>();
+            data.put("foo", "bär");
+            data.put("timestamp", 0L);
+            appender.handleEvent(new Event("decanter/collect/jmx", data));
+            appender.handleEvent(new Event("decanter/collect/log", data));
+        }
+        appender.deactivate();
+
+        for (String topic : new String[]{ "jmx", "log" }) {
+            File directory = new File("target/hdfs/partition/" + topic + "/1970-01-01");
+            File[] files = directory.listFiles((dir, name) -> name.startsWith("events.csv.") && !name.endsWith(".crc"));
+            Assert.assertNotNull(files);
+            // each event is 55 bytes, the file is rolled every 2 events
+            Assert.assertEquals(2, files.length);
+            Arrays.sort(files);
+            for (File file : files) {
+                List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+                Assert.assertEquals(2, lines.size());
+                Assert.assertEquals("foo=bär,timestamp=0,event.topics=decanter/collect/" + topic, lines.get(0));
+            }
+        }
+    }
+
+    @Test
+    public void testIdleReopen() throws Exception {
+        for (String mode : new String[]{ "create", "overwrite" }) {
+            File directory = new File("target/hdfs/idle/" + mode);
+            delete(directory);
+            Hashtable<String, Object> config = new Hashtable<>();
+            config.put("hdfs.path", directory.getPath() + "/events.csv");
+            config.put("hdfs.mode", mode);
+            config.put("hdfs.flush.interval", "20");
+            config.put("hdfs.idle.timeout", "50");
+
+            HdfsAppender appender = new HdfsAppender();
+            appender.marshaller = new CsvMarshaller();
+            appender.activate(config);
+            appender.handleEvent(event("first"));
+            // the file is closed by the idle timeout, then open again by the next event
+            Thread.sleep(500);
+            appender.handleEvent(event("second"));
+            appender.deactivate();
+
+            Assert.assertEquals(mode, Arrays.asList("foo=first", "foo=second"), lines(directory));
+        }
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        File directory = new File("target/hdfs/restart");
+        delete(directory);
+        Hashtable<String, Object> config = new Hashtable<>();
+        config.put("hdfs.path", directory.getPath() + "/events.csv");
+
+        for (String value : new String[]{ "first", "second" }) {
+            HdfsAppender appender = new HdfsAppender();
+            appender.marshaller = new CsvMarshaller();
+            appender.activate(config);
+            appender.handleEvent(event(value));
+            appender.deactivate();
+        }
+
+        // default create mode: the existing file is kept, the second activation writes a new file
+        Assert.assertEquals(Arrays.asList("foo=first", "foo=second"), lines(directory));
+        Assert.assertEquals(2, directory.listFiles((dir, name) -> name.startsWith("events.csv") && !name.endsWith(".crc")).length);
+    }
+
+    private static Event event(String value) {
+        HashMap<String, Object> data = new HashMap<>();
+        data.put("foo", value);
+        return new Event("decanter/collect/test", data);
+    }
+
+    private static List<String> lines(File directory) throws Exception {
+        File[] files = directory.listFiles((dir, name) -> !name.endsWith(".crc"));
+        Assert.assertNotNull(files);
+        List<String> lines = new ArrayList<>();
+        for (File file : files) {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                // only keep the test property
+                lines.add(line.substring(0, line.indexOf(',')));
+            }
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
 }
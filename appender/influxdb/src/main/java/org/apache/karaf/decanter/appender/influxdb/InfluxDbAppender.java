@@ -16,11 +16,14 @@
  */
 package org.apache.karaf.decanter.appender.influxdb;
 
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
 import org.influxdb.BatchOptions;
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBFactory;
 import org.influxdb.dto.Point;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -28,34 +31,57 @@ import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
 import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @Component(
         name = "org.apache.karaf.decanter.appender.influxdb",
         immediate = true,
+        service = EventHandler.class,
         property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
 
-public class InfluxDbAppender implements EventHandler {
+public class InfluxDbAppender implements EventHandler, BatchAppender {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(InfluxDbAppender.class);
+
+    private final static int MAX_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Line protocol buffer of each asynchronous worker, reused from batch to batch.
+     */
+    private final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(64 * 1024));
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
 
     private Map<String, String> globalTags = new HashMap<>();
 
     private InfluxDB influxDB;
+    private String database;
+    private String retentionPolicy;
+    private InfluxDbSchema schema;
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
 
     @Activate
     public void activate(ComponentContext componentContext) {
         activate(componentContext.getProperties());
+        if (dispatcher != null) {
+            dispatcherRegistration = dispatcher.register(componentContext.getBundleContext());
+        }
     }
 
     public void activate(Dictionary<String, Object> config) {
         this.config = config;
+        filter = new EventFilter(config);
         if (config.get("url") == null) {
             throw new IllegalArgumentException("url property is mandatory");
         }
@@ -73,7 +99,7 @@ public class InfluxDbAppender implements EventHandler {
         } else {
             this.influxDB = InfluxDBFactory.connect(url);
         }
-        String database = "decanter";
+        database = "decanter";
         if (config.get("database") != null) {
             database = (String) config.get("database");
         }
@@ -103,42 +129,66 @@ public class InfluxDbAppender implements EventHandler {
             }
         }
 
-        this.influxDB.enableBatch(batchOptions);
+        retentionPolicy = (String) config.get("retentionPolicy");
+
+        schema = new InfluxDbSchema(config, globalTags);
+
+        if (AsyncDispatcher.isEnabled(config)) {
+            // the asynchronous workers write each batch as a single line protocol request
+            dispatcher = new AsyncDispatcher("influxdb", config, this);
+        } else {
+            this.influxDB.enableBatch(batchOptions);
+        }
         this.influxDB.setDatabase(database);
+        if (retentionPolicy != null) {
+            this.influxDB.setRetentionPolicy(retentionPolicy);
+        }
     }
 
     @Deactivate
     public void deactivate() {
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
         if (influxDB != null) {
             influxDB.close();
         }
+        if (schema != null && schema.getRejected() > 0) {
+            LOGGER.warn("{} events have been rejected by the tag cardinality limit", schema.getRejected());
+        }
     }
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
-            String type = "decanter";
-            if (event.getProperty("type") != null) {
-                type = (String) event.getProperty("type");
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
             }
-
-            Map<String, Object> eventFields = new HashMap<>();
-            Map<String, String> eventTags = new HashMap<>();
-            eventTags.putAll(globalTags);
-
-            for (String propertyName : event.getPropertyNames()) {
-                Object propertyValue = event.getProperty(propertyName);
-                if (propertyValue != null) {
-                    if (propertyValue instanceof Number || propertyValue instanceof Boolean) {
-                        eventFields.put(propertyName, propertyValue);
-                    }
-                    else if(propertyValue instanceof String){
-                        eventTags.put(propertyName, (String) propertyValue);
-                    }
-                }
+            Point point = schema.point(event);
+            if (point != null) {
+                influxDB.write(point);
             }
-            Point point = Point.measurement(type).fields(eventFields).tag(eventTags).build();
-            influxDB.write(point);
+        }
+    }
+
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        StringBuilder builder = buffer.get();
+        builder.setLength(0);
+        for (Event event : events) {
+            schema.appendLine(event, builder);
+        }
+        if (builder.length() > 0) {
+            influxDB.write(database, retentionPolicy, InfluxDB.ConsistencyLevel.ONE, TimeUnit.MILLISECONDS, builder.toString());
+        }
+        if (builder.capacity() > MAX_BUFFER_SIZE) {
+            buffer.remove();
         }
     }
 
@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.influxdb;
+
+import org.influxdb.dto.Point;
+import org.osgi.service.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Mapping of the events to InfluxDB points, compiled from the configuration:
+ * <ul>
+ *     <li><code>measurement</code>: the measurement is the event <code>type</code> property or the event topic</li>
+ *     <li><code>schema.tags</code>: the properties used as tags. If not set, all string properties are tags, except the
+ *     <code>schema.text</code> free text properties written as fields</li>
+ *     <li><code>schema.fields</code>: the properties used as fields. If not set, all number and boolean properties are fields</li>
+ *     <li><code>schema.drop</code>: regex of the properties never written</li>
+ *     <li><code>cardinality.max</code>: max number of values of a tag in a measurement, the new values being rejected
+ *     (<code>cardinality.policy=reject</code>) or hashed in <code>cardinality.hash.buckets</code> values
+ *     (<code>cardinality.policy=hash</code>)</li>
+ * </ul>
+ */
+class InfluxDbSchema {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(InfluxDbSchema.class);
+
+    private final boolean measurementFromTopic;
+    private final String[] tagKeys;
+    private final Set<String> fieldKeys;
+    private final Set<String> textKeys;
+    private final Pattern[] drops;
+    private final String[] globalTagKeys;
+    private final String[] globalTagValues;
+    private final int maxCardinality;
+    private final boolean hash;
+    private final int hashBuckets;
+
+    private final Map<String, Set<String>> tagValues = new ConcurrentHashMap<>();
+    private final Set<String> limitedTags = ConcurrentHashMap.newKeySet();
+    private final AtomicLong rejected = new AtomicLong();
+
+    InfluxDbSchema(Dictionary<String, Object> config, Map<String, String> globalTags) {
+        String measurement = getValue(config, "measurement", "type");
+        if (!measurement.equalsIgnoreCase("type") && !measurement.equalsIgnoreCase("topic")) {
+            throw new IllegalArgumentException("Unknown measurement " + measurement + " (type or topic expected)");
+        }
+        measurementFromTopic = measurement.equalsIgnoreCase("topic");
+        String tags = getValue(config, "schema.tags", null);
+        if (tags != null) {
+            tagKeys = split(tags);
+            // InfluxDB recommends the tags sorted by key
+            Arrays.sort(tagKeys);
+        } else {
+            tagKeys = null;
+        }
+        String fields = getValue(config, "schema.fields", null);
+        fieldKeys = (fields != null) ? new HashSet<>(Arrays.asList(split(fields))) : null;
+        textKeys = new HashSet<>(Arrays.asList(split(getValue(config, "schema.text", "message, renderedMessage, throwable"))));
+        String[] dropRegexes = split(getValue(config, "schema.drop", ""));
+        drops = new Pattern[dropRegexes.length];
+        for (int i = 0; i < dropRegexes.length; i++) {
+            drops[i] = Pattern.compile(dropRegexes[i]);
+        }
+        TreeMap<String, String> sortedGlobalTags = new TreeMap<>(globalTags);
+        globalTagKeys = sortedGlobalTags.keySet().toArray(new String[0]);
+        globalTagValues = sortedGlobalTags.values().toArray(new String[0]);
+        maxCardinality = Integer.parseInt(getValue(config, "cardinality.max", "10000"));
+        String policy = getValue(config, "cardinality.policy", "reject");
+        if (!policy.equalsIgnoreCase("reject") && !policy.equalsIgnoreCase("hash")) {
+            throw new IllegalArgumentException("Unknown cardinality.policy " + policy + " (reject or hash expected)");
+        }
+        hash = policy.equalsIgnoreCase("hash");
+        hashBuckets = Integer.parseInt(getValue(config, "cardinality.hash.buckets", "64"));
+    }
+
+    private static String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
+        String value = (String) config.get(key);
+        return (value != null) ? value : defaultValue;
+    }
+
+    private static String[] split(String value) {
+        return value.trim().isEmpty() ? new String[0] : value.trim().split("\\s*,\\s*");
+    }
+
+    /**
+     * Append the event as a line protocol line (with a millisecond timestamp) to the builder.
+     *
+     * @return false if the event has been skipped (no field or tag value rejected).
+     */
+    boolean appendLine(Event event, StringBuilder builder) {
+        int start = builder.length();
+        if (builder.length() > 0) {
+            builder.append('\n');
+        }
+        LineSink sink = new LineSink(builder);
+        if (!write(event, sink)) {
+            builder.setLength(start);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Convert the event as a point.
+     *
+     * @return the point, or null if the event has been skipped (no field or tag value rejected).
+     */
+    Point point(Event event) {
+        PointSink sink = new PointSink();
+        return write(event, sink) ? sink.builder.build() : null;
+    }
+
+    private boolean write(Event event, Sink sink) {
+        String measurement = measurement(event);
+        sink.measurement(measurement);
+        for (int i = 0; i < globalTagKeys.length; i++) {
+            sink.tag(globalTagKeys[i], globalTagValues[i]);
+        }
+        if (tagKeys != null) {
+            for (String key : tagKeys) {
+                Object value = event.getProperty(key);
+                if (value != null && !value.toString().isEmpty() && !dropped(key)) {
+                    String tag = guard(measurement, key, value.toString());
+                    if (tag == null) {
+                        return false;
+                    }
+                    sink.tag(key, tag);
+                }
+            }
+        } else {
+            for (String key : event.getPropertyNames()) {
+                Object value = event.getProperty(key);
+                if (value instanceof String && !((String) value).isEmpty() && !textKeys.contains(key)
+                        && (fieldKeys == null || !fieldKeys.contains(key)) && !dropped(key)) {
+                    String tag = guard(measurement, key, (String) value);
+                    if (tag == null) {
+                        return false;
+                    }
+                    sink.tag(key, tag);
+                }
+            }
+        }
+        int fields = 0;
+        for (String key : event.getPropertyNames()) {
+            Object value = event.getProperty(key);
+            if (value == null || (tagKeys != null && Arrays.binarySearch(tagKeys, key) >= 0) || dropped(key)) {
+                continue;
+            }
+            if (value instanceof Number || value instanceof Boolean) {
+                if ((fieldKeys == null || fieldKeys.contains(key)) && finite(value)) {
+                    sink.field(key, value, fields++ == 0);
+                }
+            } else if (value instanceof String && ((fieldKeys != null && fieldKeys.contains(key)) || (tagKeys == null && textKeys.contains(key)))) {
+                sink.field(key, value, fields++ == 0);
+            }
+        }
+        if (fields == 0) {
+            return false;
+        }
+        Object timestamp = event.getProperty("timestamp");
+        if (timestamp instanceof Long) {
+            sink.time((Long) timestamp);
+        }
+        return true;
+    }
+
+    /**
+     * InfluxDB can't store NaN and infinity: as {@link Point}, these fields are not written (and a point without
+     * any other field is skipped).
+     */
+    private static boolean finite(Object value) {
+        if (value instanceof Double) {
+            return Double.isFinite((Double) value);
+        } else if (value instanceof Float) {
+            return Float.isFinite((Float) value);
+        }
+        return true;
+    }
+
+    private String measurement(Event event) {
+        if (measurementFromTopic) {
+            String topic = event.getTopic();
+            return (topic.startsWith("decanter/collect/") ? topic.substring("decanter/collect/".length()) : topic).replace('/', '_');
+        }
+        Object type = event.getProperty("type");
+        return (type != null) ? type.toString() : "decanter";
+    }
+
+    private boolean dropped(String key) {
+        for (Pattern drop : drops) {
+            if (drop.matcher(key).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of events rejected by the tag cardinality limit.
+     */
+    long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Check the number of values of the tag in the measurement.
+     *
+     * @return the tag value to use, or null if the point is rejected.
+     */
+    private String guard(String measurement, String key, String value) {
+        if (maxCardinality <= 0) {
+            return value;
+        }
+        String tag = measurement + '\u0000' + key;
+        Set<String> values = tagValues.computeIfAbsent(tag, k -> ConcurrentHashMap.newKeySet());
+        if (values.contains(value)) {
+            return value;
+        }
+        if (values.size() < maxCardinality) {
+            values.add(value);
+            return value;
+        }
+        if (limitedTags.add(tag)) {
+            LOGGER.warn("Tag {} of measurement {} reached {} values, the new values are {}", key, measurement, maxCardinality, hash ? "hashed" : "rejected");
+        }
+        if (hash) {
+            return "hash_" + Math.floorMod(value.hashCode(), hashBuckets);
+        }
+        long count = rejected.incrementAndGet();
+        LOGGER.debug("Event rejected by the {} values limit of tag {} of measurement {} ({} rejected events)", maxCardinality, key, measurement, count);
+        return null;
+    }
+
+    private interface Sink {
+
+        void measurement(String measurement);
+
+        void tag(String key, String value);
+
+        void field(String key, Object value, boolean first);
+
+        void time(long timestamp);
+
+    }
+
+    private static class LineSink implements Sink {
+
+        private final StringBuilder builder;
+
+        LineSink(StringBuilder builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public void measurement(String measurement) {
+            escape(measurement, false);
+        }
+
+        @Override
+        public void tag(String key, String value) {
+            builder.append(',');
+            escape(key, true);
+            builder.append('=');
+            escape(value, true);
+        }
+
+        @Override
+        public void field(String key, Object value, boolean first) {
+            builder.append(first ? ' ' : ',');
+            escape(key, true);
+            builder.append('=');
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                builder.append(((Number) value).longValue()).append('i');
+            } else if (value instanceof Number) {
+                builder.append(((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                builder.append(value);
+            } else {
+                String string = value.toString();
+                builder.append('"');
+                for (int i = 0; i < string.length(); i++) {
+                    char c = string.charAt(i);
+                    if (c == '"' || c == '\\') {
+                        builder.append('\\');
+                    }
+                    builder.append(c);
+                }
+                builder.append('"');
+            }
+        }
+
+        @Override
+        public void time(long timestamp) {
+            builder.append(' ').append(timestamp);
+        }
+
+        private void escape(String value, boolean equals) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == ' ' || (equals && c == '=')) {
+                    builder.append('\\');
+                } else if (c == '\n') {
+                    builder.append("\\n");
+                    continue;
+                }
+                builder.append(c);
+            }
+        }
+
+    }
+
+    private static class PointSink implements Sink {
+
+        private Point.Builder builder;
+
+        @Override
+        public void measurement(String measurement) {
+            builder = Point.measurement(measurement);
+        }
+
+        @Override
+        public void tag(String key, String value) {
+            builder.tag(key, value);
+        }
+
+        @Override
+        public void field(String key, Object value, boolean first) {
+            if (value instanceof Number) {
+                builder.addField(key, (Number) value);
+            } else if (value instanceof Boolean) {
+                builder.addField(key, (Boolean) value);
+            } else {
+                builder.addField(key, value.toString());
+            }
+        }
+
+        @Override
+        public void time(long timestamp) {
+            builder.time(timestamp, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.influxdb;
+
+import org.influxdb.dto.Point;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class InfluxDbSchemaTest {
+
+    private static final long TIMESTAMP = 1704067200000L;
+
+    /**
+     * Configuration without the event metadata (written as tag and field else).
+     */
+    private static Hashtable<String, Object> config() {
+        Hashtable<String, Object> config = new Hashtable<>();
+        config.put("schema.drop", "timestamp, event\\.topics");
+        return config;
+    }
+
+    private static Event event(Object... properties) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("timestamp", TIMESTAMP);
+        for (int i = 0; i < properties.length; i += 2) {
+            data.put((String) properties[i], properties[i + 1]);
+        }
+        return new Event("decanter/collect/jmx/local", data);
+    }
+
+    @Test
+    public void testAppendLine() {
+        Hashtable<String, Object> config = new Hashtable<>();
+        config.put("schema.tags", "host, type");
+        config.put("schema.fields", "value, message");
+        InfluxDbSchema schema = new InfluxDbSchema(config, Collections.singletonMap("env", "prod"));
+
+        StringBuilder builder = new StringBuilder();
+        Assert.assertTrue(schema.appendLine(event("type", "jmx", "host", "my host,1", "value", 1.5, "other", 42L), builder));
+        Assert.assertTrue(schema.appendLine(event("type", "jmx", "host", "a=b", "message", "say \"hi\""), builder));
+        Assert.assertEquals("jmx,env=prod,host=my\\ host\\,1,type=jmx value=1.5 " + TIMESTAMP + "\n"
+                + "jmx,env=prod,host=a\\=b,type=jmx message=\"say \\\"hi\\\"\" " + TIMESTAMP, builder.toString());
+    }
+
+    @Test
+    public void testMeasurementFromTopic() {
+        Hashtable<String, Object> config = config();
+        config.put("measurement", "topic");
+        InfluxDbSchema schema = new InfluxDbSchema(config, Collections.emptyMap());
+
+        StringBuilder builder = new StringBuilder();
+        Assert.assertTrue(schema.appendLine(event("count", 2), builder));
+        Assert.assertEquals("jmx_local count=2i " + TIMESTAMP, builder.toString());
+    }
+
+    @Test
+    public void testNonFinite() {
+        InfluxDbSchema schema = new InfluxDbSchema(config(), Collections.emptyMap());
+
+        StringBuilder builder = new StringBuilder("previous");
+        // no finite field: the event is skipped, the builder is unchanged
+        Assert.assertFalse(schema.appendLine(event("value", Double.NaN, "rate", Float.POSITIVE_INFINITY), builder));
+        Assert.assertEquals("previous", builder.toString());
+        Assert.assertNull(schema.point(event("value", Double.NaN, "rate", Float.POSITIVE_INFINITY)));
+
+        builder.setLength(0);
+        Assert.assertTrue(schema.appendLine(event("value", Double.NEGATIVE_INFINITY, "count", 1L), builder));
+        Assert.assertEquals("decanter count=1i " + TIMESTAMP, builder.toString());
+    }
+
+    @Test
+    public void testCardinality() {
+        Hashtable<String, Object> config = config();
+        config.put("cardinality.max", "2");
+        InfluxDbSchema schema = new InfluxDbSchema(config, Collections.emptyMap());
+
+        StringBuilder builder = new StringBuilder();
+        Assert.assertTrue(schema.appendLine(event("host", "a", "count", 1L), builder));
+        Assert.assertTrue(schema.appendLine(event("host", "b", "count", 1L), builder));
+        Assert.assertFalse(schema.appendLine(event("host", "c", "count", 1L), builder));
+        Assert.assertTrue(schema.appendLine(event("host", "a", "count", 1L), builder));
+        Assert.assertNull(schema.point(event("host", "d", "count", 1L)));
+        Assert.assertEquals(3, builder.toString().split("\n").length);
+        Assert.assertEquals(2, schema.getRejected());
+
+        config.put("cardinality.policy", "hash");
+        config.put("cardinality.hash.buckets", "4");
+        schema = new InfluxDbSchema(config, Collections.emptyMap());
+        schema.appendLine(event("host", "a", "count", 1L), new StringBuilder());
+        schema.appendLine(event("host", "b", "count", 1L), new StringBuilder());
+        Point point = schema.point(event("host", "c", "count", 1L));
+        Assert.assertTrue(point.lineProtocol(TimeUnit.MILLISECONDS), point.lineProtocol(TimeUnit.MILLISECONDS).startsWith("decanter,host=hash_" + Math.floorMod("c".hashCode(), 4) + " "));
+        Assert.assertEquals(0, schema.getRejected());
+    }
+
+    @Test
+    public void testText() {
+        Hashtable<String, Object> config = config();
+        config.put("cardinality.max", "1");
+        InfluxDbSchema schema = new InfluxDbSchema(config, Collections.emptyMap());
+
+        // the free text properties are fields: they don't reach the cardinality limit
+        StringBuilder builder = new StringBuilder();
+        Assert.assertTrue(schema.appendLine(event("level", "INFO", "message", "first", "renderedMessage", "first", "count", 1L), builder));
+        Assert.assertTrue(schema.appendLine(event("level", "INFO", "message", "second", "throwable", "java.lang.Exception", "count", 1L), builder));
+        Assert.assertEquals(Arrays.asList("decanter,level=INFO", "count=1i,message=\"first\",renderedMessage=\"first\"", String.valueOf(TIMESTAMP)),
+                normalize(builder.toString().split("\n")[0]));
+        Assert.assertEquals(Arrays.asList("decanter,level=INFO", "count=1i,message=\"second\",throwable=\"java.lang.Exception\"", String.valueOf(TIMESTAMP)),
+                normalize(builder.toString().split("\n")[1]));
+
+        // a message field is enough to write the event
+        Assert.assertTrue(schema.appendLine(event("message", "third"), new StringBuilder()));
+
+        // no free text property: all string properties are tags
+        config.put("schema.text", "");
+        schema = new InfluxDbSchema(config, Collections.emptyMap());
+        Assert.assertTrue(schema.appendLine(event("message", "first", "count", 1L), new StringBuilder()));
+        Assert.assertFalse(schema.appendLine(event("message", "second", "count", 1L), new StringBuilder()));
+        Assert.assertEquals(1, schema.getRejected());
+
+        // the free text properties are not used when the tags are set
+        config.put("schema.tags", "level");
+        config.remove("schema.text");
+        schema = new InfluxDbSchema(config, Collections.emptyMap());
+        builder.setLength(0);
+        Assert.assertTrue(schema.appendLine(event("level", "INFO", "message", "first", "count", 1L), builder));
+        Assert.assertEquals("decanter,level=INFO count=1i " + TIMESTAMP, builder.toString());
+    }
+
+    @Test
+    public void testPointParity() {
+        Hashtable<String, Object> config = new Hashtable<>();
+        config.put("schema.drop", "secret.*, timestamp, event\\.topics");
+        InfluxDbSchema schema = new InfluxDbSchema(config, Collections.singletonMap("env", "prod"));
+        Hashtable<String, Object> fieldsConfig = new Hashtable<>();
+        fieldsConfig.put("schema.tags", "host");
+        fieldsConfig.put("schema.fields", "count, message, up");
+        InfluxDbSchema fieldsSchema = new InfluxDbSchema(fieldsConfig, Collections.emptyMap());
+
+        List<Event> events = Arrays.asList(
+                event("type", "jmx", "host", "localhost", "count", 42L, "int", 2, "value", 1.5, "ratio", 2.5f, "up", true),
+                event("type", "my measurement", "host", "my host", "path", "a,b=c", "count", 1L, "secret.count", 3L),
+                event("host", "localhost", "count", 1L, "message", "\"hi\"", "up", false, "nan", Double.NaN));
+        for (InfluxDbSchema s : Arrays.asList(schema, fieldsSchema)) {
+            for (Event event : events) {
+                StringBuilder builder = new StringBuilder();
+                Assert.assertTrue(s.appendLine(event, builder));
+                Assert.assertEquals(normalize(s.point(event).lineProtocol(TimeUnit.MILLISECONDS)), normalize(builder.toString()));
+            }
+        }
+    }
+
+    /**
+     * Sort the tags and fields of a line (the test values have no space or comma in the string fields).
+     */
+    private static List<String> normalize(String line) {
+        String[] parts = line.split("(?<!\\\\) ");
+        Assert.assertEquals(line, 3, parts.length);
+        String[] tags = parts[0].split("(?<!\\\\),");
+        String[] fields = parts[1].split("(?<!\\\\),");
+        Arrays.sort(tags, 1, tags.length);
+        Arrays.sort(fields);
+        return Arrays.asList(String.join(",", tags), String.join(",", fields), parts[2]);
+    }
+
+}
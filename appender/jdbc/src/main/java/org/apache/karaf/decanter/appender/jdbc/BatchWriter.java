@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queues the marshalled events and inserts them in the database from a background thread.
+ * The queued rows are inserted in a single transaction using a JDBC batch, when the batch reaches
+ * the batch size or when the linger time is elapsed. The writer thread keeps its connection and
+ * the prepared insert statement between the batches.
+ */
+public class BatchWriter implements BatchWriterMBean {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(BatchWriter.class);
+
+    /**
+     * Behavior when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** wait for free space in the queue */
+        BLOCK,
+        /** discard the oldest queued event */
+        DROP_OLDEST,
+        /** discard the new event */
+        DROP_NEWEST
+    }
+
+    private final DataSource dataSource;
+    private final String insertQuery;
+    private final int batchSize;
+    private final long linger;
+    private final OverflowPolicy overflowPolicy;
+
+    private final BlockingQueue<Row> queue;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // only accessed by the writer thread
+    private Connection connection;
+    private PreparedStatement statement;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong totalFlushLatency = new AtomicLong();
+    private final AtomicLong lastFlushLatency = new AtomicLong();
+    private final AtomicLong maxFlushLatency = new AtomicLong();
+
+    public BatchWriter(DataSource dataSource, String insertQuery, int batchSize, long linger, int queueSize, OverflowPolicy overflowPolicy) {
+        this.dataSource = dataSource;
+        this.insertQuery = insertQuery;
+        this.batchSize = batchSize;
+        this.linger = linger;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.thread = new Thread(this::run, "decanter-appender-jdbc-batch");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Add a row into the batch queue.
+     *
+     * @param timestamp the event timestamp.
+     * @param content the marshalled event.
+     */
+    public void add(long timestamp, String content) {
+        Row row = new Row(timestamp, content);
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(row);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(row)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+            default:
+                if (!queue.offer(row)) {
+                    dropped.incrementAndGet();
+                    LOGGER.warn("JDBC batch queue is full, dropping event");
+                }
+        }
+    }
+
+    private void run() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Row row = queue.poll(linger, TimeUnit.MILLISECONDS);
+                if (row == null) {
+                    continue;
+                }
+                batch.add(row);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(linger);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    row = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (row == null) {
+                        break;
+                    }
+                    batch.add(row);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Throwable t) {
+                LOGGER.warn("Unexpected error in JDBC batch writer", t);
+            } finally {
+                batch.clear();
+            }
+        }
+        closeConnection();
+    }
+
+    private void write(List<Row> batch) {
+        long start = System.nanoTime();
+        try {
+            if (statement == null) {
+                connection = dataSource.getConnection();
+                connection.setAutoCommit(false);
+                statement = connection.prepareStatement(insertQuery);
+            }
+            for (Row row : batch) {
+                statement.setLong(1, row.timestamp);
+                statement.setString(2, row.content);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+            written.addAndGet(batch.size());
+            LOGGER.trace("{} events inserted", batch.size());
+        } catch (SQLException e) {
+            failed.addAndGet(batch.size());
+            LOGGER.error("Can't store {} events in the database", batch.size(), e);
+            rollback();
+            closeConnection();
+        } finally {
+            recordLatency(start);
+        }
+    }
+
+    private void rollback() {
+        if (connection != null) {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                LOGGER.debug("Can't rollback JDBC batch", e);
+            }
+        }
+    }
+
+    private void closeConnection() {
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                LOGGER.debug("Can't close JDBC statement", e);
+            }
+            statement = null;
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOGGER.debug("Can't close JDBC connection", e);
+            }
+            connection = null;
+        }
+    }
+
+    private void recordLatency(long start) {
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        flushes.incrementAndGet();
+        totalFlushLatency.addAndGet(latency);
+        lastFlushLatency.set(latency);
+        maxFlushLatency.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * Insert the remaining rows and stop the writer thread.
+     */
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10) + linger);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            LOGGER.warn("{} events not stored in the database", queue.size());
+        }
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public long getWritten() {
+        return written.get();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    @Override
+    public long getLastFlushLatency() {
+        return lastFlushLatency.get();
+    }
+
+    @Override
+    public long getMaxFlushLatency() {
+        return maxFlushLatency.get();
+    }
+
+    @Override
+    public long getAverageFlushLatency() {
+        long count = flushes.get();
+        return (count > 0) ? totalFlushLatency.get() / count : 0;
+    }
+
+    private static class Row {
+
+        private final long timestamp;
+        private final String content;
+
+        Row(long timestamp, String content) {
+            this.timestamp = timestamp;
+            this.content = content;
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.jdbc;
+
+/**
+ * Counters of the JDBC appender batch mode.
+ */
+public interface BatchWriterMBean {
+
+    /**
+     * Number of events waiting in the batch queue.
+     */
+    int getQueueSize();
+
+    /**
+     * Number of events successfully inserted.
+     */
+    long getWritten();
+
+    /**
+     * Number of events lost because the batch insert failed.
+     */
+    long getFailed();
+
+    /**
+     * Number of events dropped because the queue was full.
+     */
+    long getDropped();
+
+    /**
+     * Number of batches executed.
+     */
+    long getFlushes();
+
+    /**
+     * Latency (in ms) of the last batch.
+     */
+    long getLastFlushLatency();
+
+    /**
+     * Maximum latency (in ms) of the batches.
+     */
+    long getMaxFlushLatency();
+
+    /**
+     * Average latency (in ms) of the batches.
+     */
+    long getAverageFlushLatency();
+
+}
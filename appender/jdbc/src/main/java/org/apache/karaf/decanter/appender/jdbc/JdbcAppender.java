@@ -26,9 +26,12 @@ import javax.sql.DataSource;
 
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.apache.karaf.decanter.appender.utils.MBeanRegistrar;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
@@ -45,9 +48,19 @@ public class JdbcAppender implements EventHandler {
 
     public static final String TABLE_NAME_PROPERTY = "table.name";
     public static final String DIALECT_PROPERTY = "dialect";
+    public static final String BATCH_ENABLED_PROPERTY = "batch.enabled";
+    public static final String BATCH_SIZE_PROPERTY = "batch.size";
+    public static final String BATCH_LINGER_PROPERTY = "batch.linger";
+    public static final String BATCH_QUEUE_SIZE_PROPERTY = "batch.queue.size";
+    public static final String BATCH_OVERFLOW_PROPERTY = "batch.overflow";
 
     public static final String TABLE_NAME_DEFAULT = "decanter";
     public static final String DIALECT_DEFAULT = "generic";
+    public static final String BATCH_ENABLED_DEFAULT = "false";
+    public static final String BATCH_SIZE_DEFAULT = "500";
+    public static final String BATCH_LINGER_DEFAULT = "1000";
+    public static final String BATCH_QUEUE_SIZE_DEFAULT = "10000";
+    public static final String BATCH_OVERFLOW_DEFAULT = "drop_newest";
 
     @Reference
     public Marshaller marshaller;
@@ -68,20 +81,52 @@ public class JdbcAppender implements EventHandler {
             "INSERT INTO TABLENAME(timestamp, content) VALUES(?,?)";
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+    private String tableName;
+    private String insertQuery;
+
+    private BatchWriter batchWriter;
+
+    private ServiceRegistration<?> batchWriterRegistration;
     
     @SuppressWarnings("unchecked")
     @Activate
     public void activate(ComponentContext context) {
         open(context.getProperties());
+        if (batchWriter != null) {
+            batchWriterRegistration = MBeanRegistrar.register(context.getBundleContext(), BatchWriterMBean.class, batchWriter, "jdbc", context.getProperties());
+        }
     }
     
     public void open(Dictionary<String, Object> config) {
         this.config = config;
+        filter = new EventFilter(config);
+        tableName = getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT);
+        insertQuery = insertQueryTemplate.replaceAll("TABLENAME", tableName);
         try (Connection connection = dataSource.getConnection()) {
             createTable(connection);
         } catch (Exception e) {
-            LOGGER.debug("Error creating table " + getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT), e);
-        } 
+            LOGGER.debug("Error creating table " + tableName, e);
+        }
+        if (Boolean.parseBoolean(getValue(config, BATCH_ENABLED_PROPERTY, BATCH_ENABLED_DEFAULT))) {
+            batchWriter = new BatchWriter(dataSource, insertQuery,
+                    Integer.parseInt(getValue(config, BATCH_SIZE_PROPERTY, BATCH_SIZE_DEFAULT)),
+                    Long.parseLong(getValue(config, BATCH_LINGER_PROPERTY, BATCH_LINGER_DEFAULT)),
+                    Integer.parseInt(getValue(config, BATCH_QUEUE_SIZE_PROPERTY, BATCH_QUEUE_SIZE_DEFAULT)),
+                    BatchWriter.OverflowPolicy.valueOf(getValue(config, BATCH_OVERFLOW_PROPERTY, BATCH_OVERFLOW_DEFAULT).toUpperCase()));
+        }
+    }
+
+    @Deactivate
+    public void close() {
+        if (batchWriterRegistration != null) {
+            batchWriterRegistration.unregister();
+            batchWriterRegistration = null;
+        }
+        if (batchWriter != null) {
+            batchWriter.close();
+            batchWriter = null;
+        }
     }
     
     private String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
@@ -91,19 +136,23 @@ public class JdbcAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
-            try (Connection connection = dataSource.getConnection()) {
+        if (filter.match(event)) {
+            try {
                 String jsonSt = marshaller.marshal(event);
-                String insertQuery = insertQueryTemplate.replaceAll("TABLENAME", getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT));
                 Long timestamp = (Long) event.getProperty(EventConstants.TIMESTAMP);
                 if (timestamp == null) {
                     timestamp = System.currentTimeMillis();
                 }
-                try (PreparedStatement insertStatement = connection.prepareStatement(insertQuery)) {
+                if (batchWriter != null) {
+                    batchWriter.add(timestamp, jsonSt);
+                    return;
+                }
+                try (Connection connection = dataSource.getConnection();
+                     PreparedStatement insertStatement = connection.prepareStatement(insertQuery)) {
                     insertStatement.setLong(1, timestamp);
                     insertStatement.setString(2, jsonSt);
                     insertStatement.executeUpdate();
-                    LOGGER.trace("Data inserted into {} table", getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT));
+                    LOGGER.trace("Data inserted into {} table", tableName);
                 }
             } catch (Exception e) {
                 LOGGER.error("Can't store in the database", e);
@@ -120,10 +169,10 @@ public class JdbcAppender implements EventHandler {
         } else {
             createTemplate = createTableQueryGenericTemplate;
         }
-        String createTableQuery = createTemplate.replaceAll("TABLENAME", getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT));
+        String createTableQuery = createTemplate.replaceAll("TABLENAME", tableName);
         try (Statement createStatement = connection.createStatement()) {
             createStatement.executeUpdate(createTableQuery);
-            LOGGER.debug("Table {} has been created", getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT));
+            LOGGER.debug("Table {} has been created", tableName);
         } catch (SQLException e) {
             LOGGER.trace("Can't create table {}", e);
         }
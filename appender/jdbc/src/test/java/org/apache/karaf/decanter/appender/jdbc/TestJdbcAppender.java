@@ -133,6 +133,42 @@ public class TestJdbcAppender {
         }
     }
 
+    @Test
+    public void testBatch() throws SQLException {
+        System.setProperty("derby.stream.error.file", "target/derby.log");
+        Marshaller marshaller = new JsonMarshaller();
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("target/testBatchDB");
+        dataSource.setCreateDatabase("create");
+
+        deleteTable(dataSource);
+
+        JdbcAppender appender = new JdbcAppender();
+        appender.marshaller = marshaller;
+        appender.dataSource = dataSource;
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("dialect", "derby");
+        config.put(JdbcAppender.BATCH_ENABLED_PROPERTY, "true");
+        config.put(JdbcAppender.BATCH_SIZE_PROPERTY, "10");
+        config.put(JdbcAppender.BATCH_LINGER_PROPERTY, "100");
+        appender.open(config);
+
+        for (int i = 0; i < 25; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put(EventConstants.TIMESTAMP, TIMESTAMP + i);
+            appender.handleEvent(new Event(TOPIC, data));
+        }
+        appender.close();
+
+        try (Connection con = dataSource.getConnection(); Statement statement = con.createStatement();) {
+            ResultSet res = statement.executeQuery("select min(timestamp), max(timestamp), count(*) from " + TABLE_NAME);
+            res.next();
+            Assert.assertEquals(TIMESTAMP, res.getLong(1));
+            Assert.assertEquals(TIMESTAMP + 24, res.getLong(2));
+            Assert.assertEquals(25, res.getInt(3));
+        }
+    }
+
     private void deleteTable(EmbeddedDataSource dataSource) throws SQLException {
         try (Connection con = dataSource.getConnection(); Statement statement = con.createStatement();) {
             statement.execute("delete from " + TABLE_NAME);
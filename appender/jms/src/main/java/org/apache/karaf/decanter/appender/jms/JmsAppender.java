@@ -16,16 +16,25 @@
  */
 package org.apache.karaf.decanter.appender.jms;
 
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
 import javax.jms.*;
 
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
@@ -36,21 +45,32 @@ import org.slf4j.LoggerFactory;
 @Component(
     name = "org.apache.karaf.decanter.appender.jms",
     immediate = true,
+    service = EventHandler.class,
     property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-public class JmsAppender implements EventHandler {
+public class JmsAppender implements EventHandler, BatchAppender {
 
     public static final String USERNAME_PROPERTY = "username";
     public static final String PASSWORD_PROPERTY = "password";
     public static final String DESTINATION_NAME_PROPERTY = "destination.name";
     public static final String DESTINATION_TYPE_PROPERTY = "destination.type";
     public static final String MESSAGE_TYPE_PROPERTY = "message.type";
+    public static final String SESSION_POOL_SIZE_PROPERTY = "session.pool.size";
+    public static final String TRANSACTED_PROPERTY = "transacted";
+    public static final String SEND_MODE_PROPERTY = "send.mode";
+    public static final String RECONNECT_DELAY_PROPERTY = "reconnect.delay";
+    public static final String RECONNECT_MAX_DELAY_PROPERTY = "reconnect.max.delay";
 
     public static final String USERNAME_DEFAULT = null;
     public static final String PASSWORD_DEFAULT = null;
     public static final String DESTINATION_NAME_DEFAULT = "decanter";
     public static final String DESTINATION_TYPE_DEFAULT = "queue";
     public static final String MESSAGE_TYPE_DEFAULT = "text";
+    public static final String SESSION_POOL_SIZE_DEFAULT = "4";
+    public static final String TRANSACTED_DEFAULT = "false";
+    public static final String SEND_MODE_DEFAULT = "sync";
+    public static final String RECONNECT_DELAY_DEFAULT = "1000";
+    public static final String RECONNECT_MAX_DELAY_DEFAULT = "60000";
 
     @Reference
     public ConnectionFactory connectionFactory;
@@ -61,17 +81,75 @@ public class JmsAppender implements EventHandler {
     private final static Logger LOGGER = LoggerFactory.getLogger(JmsAppender.class);
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+    private String username;
+    private String password;
+    private String destinationName;
+    private boolean topic;
+    private boolean text;
+    private boolean transacted;
+    private volatile boolean asyncSend;
+    private long reconnectDelay;
+    private long reconnectMaxDelay;
 
+    private final Object lock = new Object();
+    // guarded by lock
+    private Connection connection;
+    private int generation;
+    private long nextConnect;
+    private long backoff;
+
+    private Semaphore permits;
+    private final BlockingQueue<PooledProducer> idle = new LinkedBlockingQueue<>();
+
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
 
     @SuppressWarnings("unchecked")
     @Activate
     public void activate(ComponentContext context) {
         activate(context.getProperties());
+        if (dispatcher != null) {
+            dispatcherRegistration = dispatcher.register(context.getBundleContext());
+        }
     }
     
     void activate(Dictionary<String, Object> config) {
         this.config = config;
-        LOGGER.info("Decanter JMS Appender started sending to {} {}", getValue(config, DESTINATION_TYPE_PROPERTY, DESTINATION_TYPE_DEFAULT), getValue(config, DESTINATION_NAME_PROPERTY, DESTINATION_NAME_DEFAULT));
+        filter = new EventFilter(config);
+        username = getValue(config, USERNAME_PROPERTY, USERNAME_DEFAULT);
+        password = getValue(config, PASSWORD_PROPERTY, PASSWORD_DEFAULT);
+        destinationName = getValue(config, DESTINATION_NAME_PROPERTY, DESTINATION_NAME_DEFAULT);
+        topic = getValue(config, DESTINATION_TYPE_PROPERTY, DESTINATION_TYPE_DEFAULT).equalsIgnoreCase("topic");
+        text = getValue(config, MESSAGE_TYPE_PROPERTY, MESSAGE_TYPE_DEFAULT).equalsIgnoreCase("text");
+        transacted = Boolean.parseBoolean(getValue(config, TRANSACTED_PROPERTY, TRANSACTED_DEFAULT));
+        asyncSend = getValue(config, SEND_MODE_PROPERTY, SEND_MODE_DEFAULT).equalsIgnoreCase("async");
+        reconnectDelay = Long.parseLong(getValue(config, RECONNECT_DELAY_PROPERTY, RECONNECT_DELAY_DEFAULT));
+        reconnectMaxDelay = Long.parseLong(getValue(config, RECONNECT_MAX_DELAY_PROPERTY, RECONNECT_MAX_DELAY_DEFAULT));
+        backoff = reconnectDelay;
+        permits = new Semaphore(Integer.parseInt(getValue(config, SESSION_POOL_SIZE_PROPERTY, SESSION_POOL_SIZE_DEFAULT)));
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("jms", config, this);
+        }
+        LOGGER.info("Decanter JMS Appender started sending to {} {}", getValue(config, DESTINATION_TYPE_PROPERTY, DESTINATION_TYPE_DEFAULT), destinationName);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
+        synchronized (lock) {
+            idle.clear();
+            safeClose(connection);
+            connection = null;
+            generation++;
+        }
     }
 
     private String getValue(Dictionary<String, Object> properties, String key, String defaultValue) {
@@ -80,35 +158,140 @@ public class JmsAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
-            Connection connection = null;
-            Session session = null;
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
+            }
             try {
-                connection = createConnection();
-                session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-                Destination destination = createDestination(session);
-                MessageProducer producer = session.createProducer(destination);
-                if (getValue(config, MESSAGE_TYPE_PROPERTY, MESSAGE_TYPE_DEFAULT).equalsIgnoreCase("text")) {
-                    TextMessage message = session.createTextMessage(marshaller.marshal(event));
-                    producer.send(message);
-                } else {
-                    MapMessage message = session.createMapMessage();
-                    for (String name : event.getPropertyNames()) {
-                        Object value = event.getProperty(name);
-                        setProperty(message, name, value);
-                    }
-                    producer.send(message);
-                }
-                producer.close();
+                batch(Collections.singletonList(event));
             } catch (Exception e) {
                 LOGGER.warn("Can't send to JMS broker", e);
-            } finally {
-                safeClose(session);
-                safeClose(connection);
             }
         }
     }
 
+    /**
+     * Send the events with a producer of the pool. In transacted mode, the events are sent in a single transaction.
+     */
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        PooledProducer producer = borrow();
+        boolean healthy = false;
+        try {
+            for (Event event : events) {
+                producer.send(createMessage(producer.session, event));
+            }
+            if (transacted) {
+                producer.session.commit();
+            }
+            healthy = true;
+        } finally {
+            release(producer, healthy);
+        }
+    }
+
+    private PooledProducer borrow() throws JMSException, InterruptedException {
+        permits.acquire();
+        try {
+            PooledProducer producer;
+            while ((producer = idle.poll()) != null) {
+                if (producer.generation == currentGeneration()) {
+                    return producer;
+                }
+            }
+            Connection connection = connection();
+            int generation = currentGeneration();
+            try {
+                Session session = connection.createSession(transacted, transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+                Destination destination = topic ? session.createTopic(destinationName) : session.createQueue(destinationName);
+                return new PooledProducer(session, session.createProducer(destination), generation);
+            } catch (JMSException e) {
+                // the connection is not usable anymore
+                invalidate(generation);
+                throw e;
+            }
+        } catch (JMSException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(PooledProducer producer, boolean healthy) {
+        if (healthy && producer.generation == currentGeneration()) {
+            idle.offer(producer);
+        } else {
+            safeClose(producer.session);
+        }
+        permits.release();
+    }
+
+    private int currentGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    /**
+     * Get the shared connection, creating it if needed. After a failure, the connection is not created again
+     * before the reconnect delay, doubled after each failure up to the reconnect max delay.
+     */
+    private Connection connection() throws JMSException {
+        synchronized (lock) {
+            if (connection != null) {
+                return connection;
+            }
+            long now = System.currentTimeMillis();
+            if (now < nextConnect) {
+                throw new JMSException("JMS connection not available, next attempt in " + (nextConnect - now) + "ms");
+            }
+            Connection created = null;
+            try {
+                created = (username != null)
+                        ? connectionFactory.createConnection(username, password)
+                        : connectionFactory.createConnection();
+                int generation = this.generation;
+                created.setExceptionListener(exception -> {
+                    LOGGER.warn("JMS connection failure", exception);
+                    invalidate(generation);
+                });
+                connection = created;
+                backoff = reconnectDelay;
+                nextConnect = 0;
+                return connection;
+            } catch (JMSException | RuntimeException e) {
+                safeClose(created);
+                nextConnect = now + backoff;
+                backoff = Math.min(backoff * 2, reconnectMaxDelay);
+                throw e;
+            }
+        }
+    }
+
+    private void invalidate(int generation) {
+        synchronized (lock) {
+            if (generation != this.generation) {
+                return;
+            }
+            this.generation++;
+            idle.clear();
+            safeClose(connection);
+            connection = null;
+        }
+    }
+
+    private Message createMessage(Session session, Event event) throws JMSException {
+        if (text) {
+            return session.createTextMessage(marshaller.marshal(event));
+        }
+        MapMessage message = session.createMapMessage();
+        for (String name : event.getPropertyNames()) {
+            Object value = event.getProperty(name);
+            setProperty(message, name, value);
+        }
+        return message;
+    }
+
     private void setProperty(MapMessage message, String name, Object value) throws JMSException {
         if (value == null) {
             return;
@@ -131,22 +314,6 @@ public class JmsAppender implements EventHandler {
         }
     }
 
-    private Destination createDestination(Session session) throws JMSException {
-        String destinationType = getValue(config, DESTINATION_TYPE_PROPERTY, DESTINATION_TYPE_DEFAULT);
-        String destinationName = getValue(config, DESTINATION_NAME_PROPERTY, DESTINATION_NAME_DEFAULT);
-        return (destinationType.equalsIgnoreCase("topic"))
-            ? session.createTopic(destinationName)
-            : session.createQueue(destinationName);
-    }
-
-    private Connection createConnection() throws JMSException {
-        String username = getValue(config, USERNAME_PROPERTY, USERNAME_DEFAULT);
-        String password = getValue(config, PASSWORD_PROPERTY, PASSWORD_DEFAULT);
-        return (username != null) 
-            ? connectionFactory.createConnection(username, password)
-            : connectionFactory.createConnection();
-    }
-
     public void safeClose(Session sess) {
         if (sess != null) {
             try {
@@ -167,4 +334,44 @@ public class JmsAppender implements EventHandler {
         }
     }
 
+    /**
+     * Session and producer of the pool, used by one thread at a time.
+     */
+    private class PooledProducer implements CompletionListener {
+
+        private final Session session;
+        private final MessageProducer producer;
+        private final int generation;
+
+        PooledProducer(Session session, MessageProducer producer, int generation) {
+            this.session = session;
+            this.producer = producer;
+            this.generation = generation;
+        }
+
+        void send(Message message) throws JMSException {
+            if (asyncSend) {
+                try {
+                    producer.send(message, this);
+                    return;
+                } catch (UnsupportedOperationException | AbstractMethodError e) {
+                    LOGGER.warn("The JMS provider doesn't support asynchronous send, using synchronous send");
+                    asyncSend = false;
+                }
+            }
+            producer.send(message);
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+            // nothing to do
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            LOGGER.warn("Can't send to JMS broker", exception);
+        }
+
+    }
+
 }
@@ -26,8 +26,10 @@ import javax.jms.JMSException;
 import javax.jms.MapMessage;
 import javax.jms.MessageConsumer;
 import javax.jms.Session;
+import javax.jms.TextMessage;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.karaf.decanter.api.marshaller.Marshaller;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
 import org.junit.Assert;
 import org.junit.Test;
@@ -119,4 +121,49 @@ public class JmsAppenderTest {
         Assert.assertTrue(map instanceof Map);
     }
 
+    @Test
+    public void testTransactedBatch() throws Exception {
+        ActiveMQConnectionFactory cf = new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false");
+        JmsAppender appender = new JmsAppender();
+        appender.connectionFactory = cf;
+        appender.marshaller = new Marshaller() {
+            @Override
+            public void marshal(Object obj, java.io.OutputStream out) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String marshal(Object obj) {
+                return (String) ((Event) obj).getProperty("id");
+            }
+        };
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("destination.name", "transacted");
+        config.put("transacted", "true");
+        config.put("async.enabled", "true");
+        config.put("async.batch.size", "5");
+        appender.activate(config);
+
+        Connection con = cf.createConnection();
+        con.start();
+        Session sess = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = sess.createConsumer(sess.createQueue("transacted"));
+
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("id", String.valueOf(i));
+            appender.handleEvent(new Event("decanter/collect", data));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            Assert.assertNotNull(message);
+            Assert.assertEquals(String.valueOf(i), message.getText());
+        }
+        consumer.close();
+        sess.close();
+        con.close();
+        appender.deactivate();
+    }
+
 }
@@ -37,6 +37,7 @@ public class ConfigMapper {
         process("acks", "all");
         process("retries", "0");
         process("batch.size", "16384");
+        process("linger.ms");
         process("buffer.memory", "33554432");
         process("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
         process("request.timeout.ms", "5000");
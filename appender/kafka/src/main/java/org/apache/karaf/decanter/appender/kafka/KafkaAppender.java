@@ -16,15 +16,24 @@
  */
 package org.apache.karaf.decanter.appender.kafka;
 
+import java.util.ArrayList;
 import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.apache.karaf.decanter.appender.utils.MBeanRegistrar;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -45,27 +54,60 @@ import org.slf4j.LoggerFactory;
 )
 public class KafkaAppender implements EventHandler {
 
+    public static final String ASYNC_PROPERTY = "async";
+    public static final String KEY_PROPERTY = "key.property";
+    public static final String TOPIC_ROUTES_PROPERTY = "topic.routes";
+
+    public static final String ASYNC_DEFAULT = "false";
+    public static final String KEY_DEFAULT = "type";
+
+    private static final int TOPIC_CACHE_SIZE = 1000;
+
     @Reference
     public Marshaller marshaller;
 
     private final static Logger LOGGER = LoggerFactory.getLogger(KafkaAppender.class);
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
     private Properties properties;
     private String topic;
-    private KafkaProducer<String, String> producer;
+    private boolean async;
+    private String keyProperty;
+    private List<Route> routes;
+    private final Map<String, String> topicCache = new ConcurrentHashMap<>();
+    private final ProducerStatistics statistics = new ProducerStatistics();
+    private final Callback callback = new Callback() {
+        @Override
+        public void onCompletion(RecordMetadata recordMetadata, Exception e) {
+            if (e != null) {
+                statistics.onFailure();
+                LOGGER.warn("Can't send event to Kafka broker", e);
+            } else {
+                statistics.onSuccess();
+            }
+        }
+    };
+    private ServiceRegistration<?> statisticsRegistration;
+    Producer<String, String> producer;
 
     @Activate
     @SuppressWarnings("unchecked")
     public void activate(ComponentContext context) {
         activate(context.getProperties());
+        statisticsRegistration = MBeanRegistrar.register(context.getBundleContext(), ProducerStatisticsMBean.class, statistics, "kafka", context.getProperties());
     }
 
     public void activate(Dictionary<String, Object> config) {
         this.config = config;
+        filter = new EventFilter(config);
         this.properties = ConfigMapper.map(config);
         this.topic = properties.getProperty("topic");
         properties.remove("topic");
+        this.async = Boolean.parseBoolean(getValue(config, ASYNC_PROPERTY, ASYNC_DEFAULT));
+        this.keyProperty = getValue(config, KEY_PROPERTY, KEY_DEFAULT);
+        this.routes = parseRoutes(getValue(config, TOPIC_ROUTES_PROPERTY, null));
+        topicCache.clear();
 
         // workaround for KAFKA-3218
         ClassLoader originClassLoader = Thread.currentThread().getContextClassLoader();
@@ -77,21 +119,69 @@ public class KafkaAppender implements EventHandler {
         }
     }
 
+    private String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
+        String value = (String) config.get(key);
+        return (value != null) ? value : defaultValue;
+    }
+
+    /**
+     * Parse the topic routes, as a comma separated list of <code>regex:topic</code>, the regex matching the event topic.
+     */
+    private static List<Route> parseRoutes(String value) {
+        List<Route> routes = new ArrayList<>();
+        if (value == null || value.trim().isEmpty()) {
+            return routes;
+        }
+        for (String route : value.split(",")) {
+            int index = route.lastIndexOf(':');
+            if (index <= 0 || index == route.length() - 1) {
+                throw new IllegalArgumentException("Invalid Kafka topic route " + route + ", expected regex:topic");
+            }
+            routes.add(new Route(Pattern.compile(route.substring(0, index).trim()), route.substring(index + 1).trim()));
+        }
+        return routes;
+    }
+
+    String getTopic(Event event) {
+        if (routes.isEmpty()) {
+            return topic;
+        }
+        String eventTopic = event.getTopic();
+        String target = topicCache.get(eventTopic);
+        if (target == null) {
+            target = topic;
+            for (Route route : routes) {
+                if (route.pattern.matcher(eventTopic).matches()) {
+                    target = route.topic;
+                    break;
+                }
+            }
+            if (topicCache.size() < TOPIC_CACHE_SIZE) {
+                topicCache.put(eventTopic, target);
+            }
+        }
+        return target;
+    }
+
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
+        if (filter.match(event)) {
             try {
-                String type = (String) event.getProperty("type");
+                Object key = event.getProperty(keyProperty);
                 String data = marshaller.marshal(event);
-                producer.send(new ProducerRecord<>(topic, type, data), new Callback() {
-                    @Override
-                    public void onCompletion(RecordMetadata recordMetadata, Exception e) {
-                        if (e != null) {
-                            LOGGER.warn("Can't send event to Kafka broker", e);
-                        }
-                    }
-                }).get();
-                producer.flush();
+                ProducerRecord<String, String> record = new ProducerRecord<>(getTopic(event), (key != null) ? key.toString() : null, data);
+                statistics.onSend();
+                Future<RecordMetadata> future;
+                try {
+                    future = producer.send(record, callback);
+                } catch (Exception e) {
+                    // the callback is not called when the record can't be queued
+                    statistics.onFailure();
+                    throw e;
+                }
+                if (!async) {
+                    future.get();
+                }
             } catch (Exception e) {
                 LOGGER.warn("Error sending event to kafka", e);
             }
@@ -100,7 +190,27 @@ public class KafkaAppender implements EventHandler {
     
     @Deactivate
     public void close() {
+        if (statisticsRegistration != null) {
+            statisticsRegistration.unregister();
+            statisticsRegistration = null;
+        }
         producer.close();
     }
 
+    ProducerStatistics getStatistics() {
+        return statistics;
+    }
+
+    private static class Route {
+
+        private final Pattern pattern;
+        private final String topic;
+
+        Route(Pattern pattern, String topic) {
+            this.pattern = pattern;
+            this.topic = topic;
+        }
+
+    }
+
 }
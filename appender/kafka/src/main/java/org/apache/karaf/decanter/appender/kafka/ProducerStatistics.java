@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.kafka;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ProducerStatistics implements ProducerStatisticsMBean {
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    void onSend() {
+        inFlight.incrementAndGet();
+    }
+
+    void onSuccess() {
+        inFlight.decrementAndGet();
+        sent.incrementAndGet();
+    }
+
+    void onFailure() {
+        inFlight.decrementAndGet();
+        failed.incrementAndGet();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getSent() {
+        return sent.get();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.get();
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.kafka;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import java.io.OutputStream;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+public class KafkaAppenderMockTest {
+
+    private KafkaAppender createAppender(Dictionary<String, Object> config, MockProducer<String, String> producer) {
+        KafkaAppender appender = new KafkaAppender();
+        appender.marshaller = new Marshaller() {
+            @Override
+            public void marshal(Object obj, OutputStream out) {
+            }
+
+            @Override
+            public String marshal(Object obj) {
+                return ((Event) obj).getTopic();
+            }
+        };
+        appender.activate(config);
+        appender.producer.close();
+        appender.producer = producer;
+        return appender;
+    }
+
+    private Event event(String topic, String type) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("type", type);
+        data.put("host", "node1");
+        return new Event(topic, data);
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        MockProducer<String, String> producer = new MockProducer<>(false, new StringSerializer(), new StringSerializer());
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("async", "true");
+        KafkaAppender appender = createAppender(config, producer);
+
+        appender.handleEvent(event("decanter/collect/jmx", "jmx"));
+        appender.handleEvent(event("decanter/collect/log", "log"));
+        appender.handleEvent(event("decanter/collect/log", "log"));
+
+        Assert.assertEquals(3, producer.history().size());
+        Assert.assertEquals(3, appender.getStatistics().getInFlight());
+
+        producer.completeNext();
+        producer.completeNext();
+        producer.errorNext(new RuntimeException("expected"));
+
+        Assert.assertEquals(0, appender.getStatistics().getInFlight());
+        Assert.assertEquals(2, appender.getStatistics().getSent());
+        Assert.assertEquals(1, appender.getStatistics().getFailed());
+        Assert.assertEquals("jmx", producer.history().get(0).key());
+        Assert.assertEquals("decanter", producer.history().get(0).topic());
+    }
+
+    @Test
+    public void testRoutes() throws Exception {
+        MockProducer<String, String> producer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("topic", "others");
+        config.put("topic.routes", "decanter/collect/log.*:logs, decanter/collect/jmx/.*:metrics");
+        config.put("key.property", "host");
+        KafkaAppender appender = createAppender(config, producer);
+
+        appender.handleEvent(event("decanter/collect/log/karaf", "log"));
+        appender.handleEvent(event("decanter/collect/jmx/local", "jmx"));
+        appender.handleEvent(event("decanter/collect/oshi", "oshi"));
+
+        List<ProducerRecord<String, String>> history = producer.history();
+        Assert.assertEquals("logs", history.get(0).topic());
+        Assert.assertEquals("metrics", history.get(1).topic());
+        Assert.assertEquals("others", history.get(2).topic());
+        Assert.assertEquals("node1", history.get(0).key());
+        Assert.assertEquals(3, appender.getStatistics().getSent());
+    }
+
+}
@@ -49,15 +49,17 @@ public class LogAppender implements EventHandler {
     public Marshaller marshaller;
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
 
     @Activate
     public void activate(ComponentContext componentContext) {
         this.config = componentContext.getProperties();
+        filter = new EventFilter(config);
     }
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
+        if (filter.match(event)) {
             if (marshaller != null) {
                 LOGGER.info(marshaller.marshal(event));
             } else {
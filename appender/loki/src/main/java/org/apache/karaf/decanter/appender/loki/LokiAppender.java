@@ -17,10 +17,14 @@
 package org.apache.karaf.decanter.appender.loki;
 
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.event.Event;
@@ -29,88 +33,286 @@ import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @Component(
         name = "org.apache.karaf.decanter.appender.loki",
         immediate = true,
+        service = EventHandler.class,
         property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-public class LokiAppender implements EventHandler {
+public class LokiAppender implements EventHandler, BatchAppender {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(LokiAppender.class);
 
     @Reference(cardinality = ReferenceCardinality.OPTIONAL)
     public Marshaller marshaller;
 
-    private String url;
-    private String tenant = null;
-    private String username = null;
-    private String password = null;
+    private URI url;
+    private String[] headers;
+    private String[] labels;
+    private String[] labelNames;
+    private boolean gzip;
+    private HttpClient client;
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
 
     @Activate
     public void activate(ComponentContext componentContext) {
         activate(componentContext.getProperties());
+        if (dispatcher != null) {
+            dispatcherRegistration = dispatcher.register(componentContext.getBundleContext());
+        }
     }
 
     public void activate(Dictionary<String, Object> config) {
         this.config = config;
-        url = (config.get("loki.url") != null) ? (String) config.get("loki.url") : "http://localhost:3100/loki/api/v1/push";
-        tenant = (config.get("loki.tenant") != null) ? (String) config.get("loki.tenant") : null;
-        username = (config.get("loki.username") != null) ? (String) config.get("loki.username") : null;
-        password = (config.get("loki.password") != null) ? (String) config.get("loki.password") : null;
+        filter = new EventFilter(config);
+        url = URI.create((config.get("loki.url") != null) ? (String) config.get("loki.url") : "http://localhost:3100/loki/api/v1/push");
+        String tenant = (config.get("loki.tenant") != null) ? (String) config.get("loki.tenant") : null;
+        String username = (config.get("loki.username") != null) ? (String) config.get("loki.username") : null;
+        String password = (config.get("loki.password") != null) ? (String) config.get("loki.password") : null;
+        String labels = (config.get("loki.labels") != null) ? (String) config.get("loki.labels") : "";
+        gzip = "gzip".equalsIgnoreCase((String) config.get("loki.compression"));
+
+        List<String> headers = new ArrayList<>();
+        headers.add("Content-Type");
+        headers.add("application/json");
+        if (gzip) {
+            headers.add("Content-Encoding");
+            headers.add("gzip");
+        }
+        if (tenant != null) {
+            headers.add("X-Scope-OrgId");
+            headers.add(tenant);
+        }
+        if (username != null) {
+            String authentication = username + ":" + password;
+            headers.add("Authorization");
+            headers.add("Basic " + Base64.getEncoder().encodeToString(authentication.getBytes(StandardCharsets.UTF_8)));
+        }
+        this.headers = headers.toArray(new String[0]);
+        labels(labels.trim().isEmpty() ? new String[0] : labels.trim().split("\\s*,\\s*"));
+        client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("loki", config, this);
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
     }
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
-            String log;
-            if (marshaller != null) {
-                log = marshaller.marshal(event);
-            } else {
-                StringBuilder builder = new StringBuilder();
-                for (String innerKey : event.getPropertyNames()) {
-                    builder.append(innerKey).append(":").append(toString(event.getProperty(innerKey))).append(" | ");
-                }
-                log = builder.toString();
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
             }
             try {
-                HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-                connection.setDoOutput(true);
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/json");
-                if (tenant != null) {
-                    connection.setRequestProperty("X-Scope-OrgId", tenant);
-                }
-                if (username != null) {
-                    String authentication = username + ":" + password;
-                    byte[] encodedAuthentication = Base64.getEncoder().encode(authentication.getBytes(StandardCharsets.UTF_8));
-                    String authenticationHeader = "Basic " + new String(encodedAuthentication);
-                    connection.setRequestProperty("Authorization", authenticationHeader);
-                }
-                String jsonPush = "{\"streams\": [{ \"stream\": { \"job\": \"decanter\" }, \"values\": [ [ \"" + System.currentTimeMillis() * 1000L * 1000L + "\", \"" + log + "\" ] ] }]}";
-                try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream()))) {
-                    writer.write(jsonPush);
-                    writer.flush();
-                }
-                if (connection.getResponseCode() != 204) {
-                    LOGGER.warn("Can't push to Loki ({}): {}", connection.getResponseCode(), connection.getResponseMessage());
-                }
+                batch(Collections.singletonList(event));
             } catch (Exception e) {
                 LOGGER.warn("Error occurred while pushing to Loki", e);
             }
         }
     }
 
+    /**
+     * Push the events in a single request, the events being grouped in streams by labels.
+     */
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        byte[] body = push(events).getBytes(StandardCharsets.UTF_8);
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            body = compressed.toByteArray();
+        }
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(Duration.ofSeconds(30))
+                .headers(headers)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 204 && response.statusCode() != 200) {
+            throw new IOException("Can't push to Loki (" + response.statusCode() + "): " + response.body());
+        }
+    }
+
+    String push(List<Event> events) {
+        Map<String, List<Entry>> streams = new LinkedHashMap<>();
+        for (Event event : events) {
+            streams.computeIfAbsent(stream(event), key -> new ArrayList<>()).add(new Entry(timestamp(event), line(event)));
+        }
+        StringBuilder builder = new StringBuilder("{\"streams\":[");
+        boolean first = true;
+        for (Map.Entry<String, List<Entry>> stream : streams.entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            builder.append("{\"stream\":").append(stream.getKey()).append(",\"values\":[");
+            List<Entry> values = stream.getValue();
+            values.sort(Comparator.comparingLong(entry -> entry.timestamp));
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                // Loki expects the timestamp in nanoseconds
+                builder.append("[\"").append(values.get(i).timestamp).append("000000\",");
+                appendString(builder, values.get(i).line);
+                builder.append(']');
+            }
+            builder.append("]}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    /**
+     * Resolve the label names of the configured properties. A property whose label name is already used (by the
+     * job label or by a previous property, as host.name and host_name) is ignored, Loki rejecting duplicate labels.
+     */
+    private void labels(String[] properties) {
+        List<String> labels = new ArrayList<>();
+        List<String> labelNames = new ArrayList<>();
+        labelNames.add("job");
+        for (String property : properties) {
+            String labelName = labelName(property);
+            if (labelNames.contains(labelName)) {
+                LOGGER.warn("Loki label {} of property {} is already used, the property is ignored", labelName, property);
+                continue;
+            }
+            labels.add(property);
+            labelNames.add(labelName);
+        }
+        this.labels = labels.toArray(new String[0]);
+        this.labelNames = labelNames.subList(1, labelNames.size()).toArray(new String[0]);
+    }
+
+    /**
+     * JSON labels of the event stream.
+     */
+    private String stream(Event event) {
+        StringBuilder builder = new StringBuilder("{\"job\":\"decanter\"");
+        for (int i = 0; i < labels.length; i++) {
+            Object value = event.getProperty(labels[i]);
+            if (value != null) {
+                builder.append(',');
+                appendString(builder, labelNames[i]);
+                builder.append(':');
+                appendString(builder, value.toString());
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Loki label names must match [a-zA-Z_][a-zA-Z0-9_]*.
+     */
+    private static String labelName(String property) {
+        StringBuilder builder = new StringBuilder(property.length());
+        for (int i = 0; i < property.length(); i++) {
+            char c = property.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (i > 0 && c >= '0' && c <= '9');
+            builder.append(valid ? c : '_');
+        }
+        return builder.toString();
+    }
+
+    private static long timestamp(Event event) {
+        Object timestamp = event.getProperty("timestamp");
+        if (!(timestamp instanceof Number)) {
+            timestamp = event.getProperty(EventConstants.TIMESTAMP);
+        }
+        return (timestamp instanceof Number) ? ((Number) timestamp).longValue() : System.currentTimeMillis();
+    }
+
+    private String line(Event event) {
+        if (marshaller != null) {
+            return marshaller.marshal(event);
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String innerKey : event.getPropertyNames()) {
+            builder.append(innerKey).append(":").append(toString(event.getProperty(innerKey))).append(" | ");
+        }
+        return builder.toString();
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
     private Object toString(Object value) {
         return value == null ? null : value.toString();
     }
 
+    private static class Entry {
+
+        private final long timestamp;
+        private final String line;
+
+        Entry(long timestamp, String line) {
+            this.timestamp = timestamp;
+            this.line = line;
+        }
+
+    }
+
 }
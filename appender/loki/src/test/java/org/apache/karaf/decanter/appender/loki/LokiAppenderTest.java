@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.loki;
+
+import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+public class LokiAppenderTest {
+
+    private LokiAppender appender(String labels) {
+        LokiAppender appender = new LokiAppender();
+        appender.marshaller = new Marshaller() {
+            @Override
+            public void marshal(Object obj, OutputStream out) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String marshal(Object obj) {
+                return (String) ((Event) obj).getProperty("message");
+            }
+        };
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("loki.labels", labels);
+        appender.activate(config);
+        return appender;
+    }
+
+    private Event event(long timestamp, String level, String message) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("timestamp", timestamp);
+        data.put("level", level);
+        data.put("message", message);
+        return new Event("decanter/collect/log", data);
+    }
+
+    @Test
+    public void testPush() {
+        LokiAppender appender = appender("level");
+        String push = appender.push(Arrays.asList(
+                event(1000L, "INFO", "second"),
+                event(2000L, "ERROR", "error \"quoted\"\n\tat Foo\\Bar"),
+                event(500L, "INFO", "first\u0001")));
+        Assert.assertEquals("{\"streams\":["
+                + "{\"stream\":{\"job\":\"decanter\",\"level\":\"INFO\"},\"values\":["
+                + "[\"500000000\",\"first\\u0001\"],[\"1000000000\",\"second\"]]},"
+                + "{\"stream\":{\"job\":\"decanter\",\"level\":\"ERROR\"},\"values\":["
+                + "[\"2000000000\",\"error \\\"quoted\\\"\\n\\tat Foo\\\\Bar\"]]}"
+                + "]}", push);
+    }
+
+    @Test
+    public void testLabels() {
+        LokiAppender appender = appender("host.name,host_name,job,karaf.name,level");
+        Map<String, Object> data = new HashMap<>();
+        data.put("timestamp", 1L);
+        data.put("host.name", "a");
+        data.put("host_name", "b");
+        data.put("job", "collector");
+        data.put("karaf.name", "root");
+        data.put("message", "line");
+        String push = appender.push(Arrays.asList(new Event("decanter/collect/log", data)));
+        // job and host_name collide with existing labels, level is missing
+        Assert.assertEquals("{\"streams\":["
+                + "{\"stream\":{\"job\":\"decanter\",\"host_name\":\"a\",\"karaf_name\":\"root\"},\"values\":["
+                + "[\"1000000\",\"line\"]]}"
+                + "]}", push);
+    }
+
+}
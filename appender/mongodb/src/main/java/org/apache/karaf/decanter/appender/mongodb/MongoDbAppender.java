@@ -18,11 +18,16 @@ package org.apache.karaf.decanter.appender.mongodb;
 
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import com.mongodb.WriteConcern;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
-import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import com.mongodb.client.model.InsertManyOptions;
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
 import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.*;
 import org.osgi.service.event.Event;
@@ -31,38 +36,53 @@ import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
 
 @Component(
     name = "org.apache.karaf.decanter.appender.mongodb",
     immediate = true,
+    service = EventHandler.class,
     configurationPolicy = ConfigurationPolicy.REQUIRE,
     property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-public class MongoDbAppender implements EventHandler {
+public class MongoDbAppender implements EventHandler, BatchAppender {
 
     public static final String URI_PROPERTY = "uri";
     public static final String DATABASE_PROPERTY = "database";
     public static final String COLLECTION_PROPERTY = "collection";
+    public static final String WRITE_CONCERN_PROPERTY = "w";
+    public static final String TIMESERIES_PROPERTY = "timeseries";
+    public static final String TIMESERIES_META_FIELD_PROPERTY = "timeseries.metaField";
+    public static final String TIMESERIES_GRANULARITY_PROPERTY = "timeseries.granularity";
+    public static final String TIMESERIES_EXPIRE_PROPERTY = "timeseries.expireAfterSeconds";
 
     public static final String URI_DEFAULT = "mongodb://localhost";
     public static final String DATABASE_DEFAULT = "decanter";
     public static final String COLLECTION_DEFAULT = "decanter";
 
-    @Reference
-    public Marshaller marshaller;
+    private final static String TIMESTAMP_FIELD = "@timestamp";
 
     private final static Logger LOGGER = LoggerFactory.getLogger(MongoDbAppender.class);
 
     private MongoClient mongoClient;
     private MongoDatabase mongoDatabase;
-    private MongoCollection mongoCollection;
+    private MongoCollection<Document> mongoCollection;
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
 
     @Activate
     public void activate(ComponentContext componentContext) {
         config = componentContext.getProperties();
+        filter = new EventFilter(config);
 
         String uri = getValue(config, URI_PROPERTY, URI_DEFAULT);
         String database = getValue(config, DATABASE_PROPERTY, DATABASE_DEFAULT);
@@ -70,7 +90,47 @@ public class MongoDbAppender implements EventHandler {
 
         mongoClient = new MongoClient(new MongoClientURI(uri));
         mongoDatabase = mongoClient.getDatabase(database);
+        if (Boolean.parseBoolean(getValue(config, TIMESERIES_PROPERTY, "false"))) {
+            createTimeSeries(collection);
+        }
         mongoCollection = mongoDatabase.getCollection(collection);
+        String w = getValue(config, WRITE_CONCERN_PROPERTY, null);
+        if (w != null) {
+            mongoCollection = mongoCollection.withWriteConcern(w.matches("\\d+") ? new WriteConcern(Integer.parseInt(w)) : new WriteConcern(w));
+        }
+
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("mongodb", config, this);
+            dispatcherRegistration = dispatcher.register(componentContext.getBundleContext());
+        }
+    }
+
+    /**
+     * Create the collection as a time series collection (MongoDB 5+), using the event timestamp as time field.
+     * If the collection already exists, it's used as is.
+     */
+    private void createTimeSeries(String collection) {
+        for (String name : mongoDatabase.listCollectionNames()) {
+            if (name.equals(collection)) {
+                return;
+            }
+        }
+        Document timeseries = new Document("timeField", TIMESTAMP_FIELD);
+        String metaField = getValue(config, TIMESERIES_META_FIELD_PROPERTY, null);
+        if (metaField != null) {
+            timeseries.append("metaField", metaField);
+        }
+        timeseries.append("granularity", getValue(config, TIMESERIES_GRANULARITY_PROPERTY, "seconds"));
+        Document command = new Document("create", collection).append("timeseries", timeseries);
+        String expire = getValue(config, TIMESERIES_EXPIRE_PROPERTY, null);
+        if (expire != null) {
+            command.append("expireAfterSeconds", Long.parseLong(expire));
+        }
+        try {
+            mongoDatabase.runCommand(command);
+        } catch (Exception e) {
+            LOGGER.warn("Can't create time series collection {} (MongoDB 5+ is required), using a regular collection", collection, e);
+        }
     }
 
     private String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
@@ -80,18 +140,111 @@ public class MongoDbAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
+            }
             try {
-                String data = marshaller.marshal(event);
-                mongoCollection.insertOne(Document.parse(data));
+                mongoCollection.insertOne(toDocument(event));
             } catch (Exception e) {
                 LOGGER.warn("Error storing event in MongoDB", e);
             }
         }
     }
 
+    /**
+     * Store the events with an unordered bulk insert.
+     */
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        List<Document> documents = new ArrayList<>(events.size());
+        for (Event event : events) {
+            documents.add(toDocument(event));
+        }
+        mongoCollection.insertMany(documents, new InsertManyOptions().ordered(false));
+    }
+
+    /**
+     * Convert the event in a document, with the same fields as the JSON marshaller, but keeping the native
+     * number types, and the <code>@timestamp</code> field as a date (the current date if the event has no numeric
+     * <code>timestamp</code> property).
+     */
+    static Document toDocument(Event event) {
+        Document document = new Document();
+        Object timestamp = event.getProperty(EventConstants.TIMESTAMP);
+        document.put(TIMESTAMP_FIELD, new Date((timestamp instanceof Number) ? ((Number) timestamp).longValue() : System.currentTimeMillis()));
+        for (String name : event.getPropertyNames()) {
+            Object value = toValue(event.getProperty(name));
+            if (value != null) {
+                document.put(name.replace('.', '_'), value);
+            }
+        }
+        return document;
+    }
+
+    private static Object toValue(Object value) {
+        if (value instanceof String || value instanceof Long || value instanceof Integer
+                || value instanceof Double || value instanceof Float || value instanceof Boolean
+                || value instanceof Date) {
+            return value;
+        } else if (value instanceof BigDecimal) {
+            return new Decimal128((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            return new Decimal128(new BigDecimal((BigInteger) value));
+        } else if (value instanceof Map) {
+            Document document = new Document();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object converted = toValue(entry.getValue());
+                if (entry.getKey() != null && converted != null) {
+                    document.put(entry.getKey().toString().replace('.', '_'), converted);
+                }
+            }
+            return document;
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                Object converted = toValue(item);
+                if (converted != null) {
+                    list.add(converted);
+                }
+            }
+            return list;
+        } else if (value instanceof long[]) {
+            List<Long> list = new ArrayList<>();
+            for (long item : (long[]) value) {
+                list.add(item);
+            }
+            return list;
+        } else if (value instanceof int[]) {
+            List<Integer> list = new ArrayList<>();
+            for (int item : (int[]) value) {
+                list.add(item);
+            }
+            return list;
+        } else if (value instanceof Object[]) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (Object[]) value) {
+                if (item != null) {
+                    Object converted = toValue(item);
+                    list.add((converted != null) ? converted : item.toString());
+                }
+            }
+            return list;
+        }
+        return null;
+    }
+
     @Deactivate
     public void deactivate(ComponentContext componentContext) {
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
         mongoClient.close();
     }
 
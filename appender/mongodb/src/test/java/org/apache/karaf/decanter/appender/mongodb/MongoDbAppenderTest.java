@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.mongodb;
+
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MongoDbAppenderTest {
+
+    @Test
+    public void testToDocument() {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("heap.used", 1024L);
+        nested.put("name", "java.lang:type=Memory");
+        nested.put("ignored", new Object());
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("timestamp", 1704067200000L);
+        data.put("string", "foo");
+        data.put("long", 1L);
+        data.put("int", 2);
+        data.put("double", 1.5d);
+        data.put("float", 2.5f);
+        data.put("boolean", true);
+        data.put("decimal", new BigDecimal("12345678901234567890.123"));
+        data.put("big", new BigInteger("123456789012345678901234567890"));
+        data.put("thread.count", 42);
+        data.put("memory", nested);
+        data.put("list", Arrays.asList("a", 1L, nested));
+        data.put("longs", new long[]{ 1, 2 });
+        data.put("ints", new int[]{ 3, 4 });
+        data.put("objects", new Object[]{ "a", new StringBuilder("b"), null });
+        Document document = MongoDbAppender.toDocument(new Event("decanter/collect/jmx", data));
+
+        Assert.assertEquals(new Date(1704067200000L), document.get("@timestamp"));
+        Assert.assertEquals(1704067200000L, document.get("timestamp"));
+        Assert.assertEquals("foo", document.get("string"));
+        Assert.assertEquals(1L, document.get("long"));
+        Assert.assertEquals(2, document.get("int"));
+        Assert.assertEquals(1.5d, document.get("double"));
+        Assert.assertEquals(2.5f, document.get("float"));
+        Assert.assertEquals(true, document.get("boolean"));
+        Assert.assertEquals(new Decimal128(new BigDecimal("12345678901234567890.123")), document.get("decimal"));
+        Assert.assertEquals(new Decimal128(new BigDecimal("123456789012345678901234567890")), document.get("big"));
+        // the dots are replaced in the field names, at any level
+        Assert.assertEquals(42, document.get("thread_count"));
+        Assert.assertFalse(document.containsKey("thread.count"));
+        Document memory = (Document) document.get("memory");
+        Assert.assertEquals(1024L, memory.get("heap_used"));
+        Assert.assertEquals("java.lang:type=Memory", memory.get("name"));
+        Assert.assertFalse(memory.containsKey("ignored"));
+        List<?> list = (List<?>) document.get("list");
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals("a", list.get(0));
+        Assert.assertEquals(1L, list.get(1));
+        Assert.assertEquals(memory, list.get(2));
+        Assert.assertEquals(Arrays.asList(1L, 2L), document.get("longs"));
+        Assert.assertEquals(Arrays.asList(3, 4), document.get("ints"));
+        Assert.assertEquals(Arrays.asList("a", "b"), document.get("objects"));
+        Assert.assertEquals("decanter/collect/jmx", document.get("event_topics"));
+    }
+
+    @Test
+    public void testTimestamp() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("timestamp", 1704067200);
+        Assert.assertEquals(new Date(1704067200L), MongoDbAppender.toDocument(new Event("decanter/collect/log", data)).get("@timestamp"));
+
+        // not a number: the current date
+        data.put("timestamp", "2024-01-01T00:00:00Z");
+        long before = System.currentTimeMillis();
+        Date date = (Date) MongoDbAppender.toDocument(new Event("decanter/collect/log", data)).get("@timestamp");
+        Assert.assertTrue(date.getTime() >= before && date.getTime() <= System.currentTimeMillis());
+
+        data.remove("timestamp");
+        date = (Date) MongoDbAppender.toDocument(new Event("decanter/collect/log", data)).get("@timestamp");
+        Assert.assertTrue(date.getTime() >= before && date.getTime() <= System.currentTimeMillis());
+    }
+
+}
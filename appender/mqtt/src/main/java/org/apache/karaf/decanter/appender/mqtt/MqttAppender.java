@@ -17,15 +17,29 @@
 package org.apache.karaf.decanter.appender.mqtt;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Dictionary;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -40,39 +54,91 @@ import org.slf4j.LoggerFactory;
 @Component(
         name = "org.apache.karaf.decanter.appender.mqtt",
         immediate = true,
+        service = EventHandler.class,
         property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-public class MqttAppender implements EventHandler {
+public class MqttAppender implements EventHandler, BatchAppender {
 
     public static final String SERVER_PROPERTY = "server";
     public static final String CLIENT_ID_PROPERTY = "clientId";
     public static final String TOPIC_PROPERTY = "topic";
+    public static final String QOS_PROPERTY = "qos";
+    public static final String RETAINED_PROPERTY = "retained";
+    public static final String MAX_INFLIGHT_PROPERTY = "max.inflight";
+    public static final String CONNECT_TIMEOUT_PROPERTY = "connect.timeout";
+    public static final String PUBLISH_TIMEOUT_PROPERTY = "publish.timeout";
+    public static final String RECONNECT_DELAY_PROPERTY = "reconnect.delay";
+    public static final String RECONNECT_MAX_DELAY_PROPERTY = "reconnect.max.delay";
+    public static final String BUFFER_ENABLED_PROPERTY = "buffer.enabled";
+    public static final String BUFFER_SIZE_PROPERTY = "buffer.size";
+    public static final String BUFFER_DELETE_OLDEST_PROPERTY = "buffer.delete.oldest";
 
     public static final String SERVER_DEFAULT = "tcp://localhost:1883";
     public static final String CLIENT_ID_DEFAULT = "d:decanter:appender:default";
     public static final String TOPIC_DEFAULT = "decanter";
+    public static final String QOS_DEFAULT = "1";
+    public static final String RETAINED_DEFAULT = "false";
+    public static final String MAX_INFLIGHT_DEFAULT = "100";
+    public static final String CONNECT_TIMEOUT_DEFAULT = "30000";
+    public static final String PUBLISH_TIMEOUT_DEFAULT = "30000";
+    public static final String RECONNECT_DELAY_DEFAULT = "1000";
+    public static final String RECONNECT_MAX_DELAY_DEFAULT = "60000";
+    public static final String BUFFER_ENABLED_DEFAULT = "true";
+    public static final String BUFFER_SIZE_DEFAULT = "5000";
+    public static final String BUFFER_DELETE_OLDEST_DEFAULT = "true";
 
     @Reference
     public Marshaller marshaller;
 
     private final static Logger LOGGER = LoggerFactory.getLogger(MqttAppender.class);
 
-    private MqttClient client;
+    private MqttAsyncClient client;
+    private MqttConnectOptions options;
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+    private MqttTopic topic;
+    private int qos;
+    private boolean retained;
+    private long publishTimeout;
+    private long reconnectDelay;
+    private long reconnectMaxDelay;
+    private ScheduledExecutorService connector;
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
+    // the disconnected buffer of the client is only used once connected, the messages are buffered here before
+    private volatile boolean connectedOnce;
+    private final ArrayDeque<PendingMessage> pending = new ArrayDeque<>();
+    private boolean bufferEnabled;
+    private int bufferSize;
+    private boolean bufferDeleteOldest;
+    private final AtomicBoolean buffering = new AtomicBoolean();
+    private final LongAdder dropped = new LongAdder();
 
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
         activate(componentContext.getProperties());
+        if (dispatcher != null) {
+            dispatcherRegistration = dispatcher.register(componentContext.getBundleContext());
+        }
     }
 
     public void activate(Dictionary<String, Object> config) throws Exception {
         this.config = config;
-        client = new MqttClient(
+        filter = new EventFilter(config);
+        topic = new MqttTopic(getValue(config, TOPIC_PROPERTY, TOPIC_DEFAULT));
+        qos = Integer.parseInt(getValue(config, QOS_PROPERTY, QOS_DEFAULT));
+        retained = Boolean.parseBoolean(getValue(config, RETAINED_PROPERTY, RETAINED_DEFAULT));
+        publishTimeout = Long.parseLong(getValue(config, PUBLISH_TIMEOUT_PROPERTY, PUBLISH_TIMEOUT_DEFAULT));
+        reconnectDelay = Long.parseLong(getValue(config, RECONNECT_DELAY_PROPERTY, RECONNECT_DELAY_DEFAULT));
+        reconnectMaxDelay = Long.parseLong(getValue(config, RECONNECT_MAX_DELAY_PROPERTY, RECONNECT_MAX_DELAY_DEFAULT));
+        long connectTimeout = Long.parseLong(getValue(config, CONNECT_TIMEOUT_PROPERTY, CONNECT_TIMEOUT_DEFAULT));
+
+        client = new MqttAsyncClient(
                 getValue(config, SERVER_PROPERTY, SERVER_DEFAULT),
                 getValue(config, CLIENT_ID_PROPERTY, CLIENT_ID_DEFAULT),
                 new MemoryPersistence());
-        MqttConnectOptions options = new MqttConnectOptions();
+        options = new MqttConnectOptions();
         options.setCleanSession(true);
         String username = getValue(config, "username", null);
         String password = getValue(config, "password", null);
@@ -82,7 +148,145 @@ public class MqttAppender implements EventHandler {
         if (password != null) {
             options.setPassword(password.toCharArray());
         }
-        client.connect(options);
+        // the client reconnects in its own threads once connected, publishing in the disconnected buffer meanwhile
+        options.setAutomaticReconnect(true);
+        options.setMaxReconnectDelay((int) reconnectMaxDelay);
+        options.setMaxInflight(Integer.parseInt(getValue(config, MAX_INFLIGHT_PROPERTY, MAX_INFLIGHT_DEFAULT)));
+        options.setConnectionTimeout((int) Math.max(1, connectTimeout / 1000));
+        bufferEnabled = Boolean.parseBoolean(getValue(config, BUFFER_ENABLED_PROPERTY, BUFFER_ENABLED_DEFAULT));
+        bufferSize = Integer.parseInt(getValue(config, BUFFER_SIZE_PROPERTY, BUFFER_SIZE_DEFAULT));
+        bufferDeleteOldest = Boolean.parseBoolean(getValue(config, BUFFER_DELETE_OLDEST_PROPERTY, BUFFER_DELETE_OLDEST_DEFAULT));
+        DisconnectedBufferOptions bufferOptions = new DisconnectedBufferOptions();
+        bufferOptions.setBufferEnabled(bufferEnabled);
+        bufferOptions.setBufferSize(bufferSize);
+        bufferOptions.setDeleteOldestMessages(bufferDeleteOldest);
+        bufferOptions.setPersistBuffer(false);
+        client.setBufferOpts(bufferOptions);
+
+        connector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "decanter-appender-mqtt-connector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            client.connect(options).waitForCompletion(connectTimeout);
+            connected();
+        } catch (MqttException e) {
+            // the automatic reconnect only applies to a lost connection, the first connection is retried here
+            LOGGER.warn("Can't connect to MQTT server {}, retrying in background", client.getServerURI(), e);
+            scheduleConnect(reconnectDelay);
+        }
+
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("mqtt", config, this);
+        }
+    }
+
+    private void scheduleConnect(long delay) {
+        connector.schedule(() -> {
+            try {
+                client.connect(options, null, new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken token) {
+                        LOGGER.info("Connected to MQTT server {}", client.getServerURI());
+                        connected();
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken token, Throwable exception) {
+                        LOGGER.debug("Can't connect to MQTT server {}", client.getServerURI(), exception);
+                        scheduleConnect(Math.min(delay * 2, reconnectMaxDelay));
+                    }
+                });
+            } catch (MqttException e) {
+                LOGGER.debug("Can't connect to MQTT server {}", client.getServerURI(), e);
+                scheduleConnect(Math.min(delay * 2, reconnectMaxDelay));
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publish the messages buffered before the first connection, in the connector thread. The new events are
+     * buffered after them until the buffer is empty, keeping the order of the events.
+     */
+    private void connected() {
+        connector.execute(() -> {
+            List<IMqttDeliveryToken> tokens = new ArrayList<>();
+            int published = 0;
+            while (true) {
+                PendingMessage message;
+                synchronized (pending) {
+                    message = pending.poll();
+                    if (message == null) {
+                        connectedOnce = true;
+                        break;
+                    }
+                }
+                try {
+                    publish(message.topic, message.payload, tokens);
+                    published++;
+                } catch (Exception e) {
+                    dropped.increment();
+                    LOGGER.debug("Can't publish a buffered event to MQTT server {}", client.getServerURI(), e);
+                }
+                tokens.removeIf(IMqttDeliveryToken::isComplete);
+            }
+            if (buffering.get()) {
+                LOGGER.info("{} events have been published and {} dropped after the first connection to MQTT server {}", published, dropped.sum(), client.getServerURI());
+            }
+        });
+    }
+
+    /**
+     * Until the first connection, the client rejects the messages: the events are kept in a local buffer, with the
+     * disconnected buffer options, and published once connected.
+     *
+     * @return true if the event has been buffered (or dropped).
+     */
+    private boolean buffer(Event event) {
+        if (connectedOnce) {
+            return false;
+        }
+        PendingMessage message = new PendingMessage(topic.resolve(event), marshaller.marshal(event).getBytes(StandardCharsets.UTF_8));
+        synchronized (pending) {
+            if (connectedOnce) {
+                return false;
+            }
+            if (buffering.compareAndSet(false, true)) {
+                LOGGER.warn("Not connected to MQTT server {} yet, the events are buffered until the first connection", client.getServerURI());
+            }
+            if (!bufferEnabled) {
+                dropped.increment();
+                return true;
+            }
+            if (pending.size() >= bufferSize) {
+                dropped.increment();
+                if (!bufferDeleteOldest) {
+                    return true;
+                }
+                pending.poll();
+            }
+            pending.add(message);
+            return true;
+        }
+    }
+
+    /**
+     * Publish a message, waiting for a message to be acknowledged while the in-flight window is full.
+     */
+    private void publish(String resolvedTopic, byte[] payload, List<IMqttDeliveryToken> tokens) throws Exception {
+        while (true) {
+            try {
+                tokens.add(client.publish(resolvedTopic, payload, qos, retained));
+                return;
+            } catch (MqttException e) {
+                if (e.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT) {
+                    throw e;
+                }
+                // the in-flight window is full, wait for a message to be acknowledged
+                awaitOne(tokens);
+            }
+        }
     }
 
     private String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
@@ -91,31 +295,86 @@ public class MqttAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
+            }
             try {
-                MqttMessage message = new MqttMessage();
-                String jsonSt = marshaller.marshal(event);
-                message.setPayload(jsonSt.getBytes(StandardCharsets.UTF_8));
-                client.publish(
-                        getValue(config, TOPIC_PROPERTY, TOPIC_DEFAULT),
-                        message);
+                if (buffer(event)) {
+                    return;
+                }
+                // the message is sent (or buffered if the client is disconnected) by the client threads
+                client.publish(topic.resolve(event), marshaller.marshal(event).getBytes(StandardCharsets.UTF_8), qos, retained);
             } catch (Exception e) {
                 LOGGER.warn("Error sending to MQTT server " + client.getServerURI(), e);
-                try {
-                    client.disconnect();
-                    client.connect();
-                } catch (MqttException e1) {
-                    e1.printStackTrace();
-                }
             }
         }
     }
 
+    /**
+     * Publish the batch and wait for the acknowledgements (with QoS 1 or 2), the in-flight window being filled
+     * as much as possible. When the client is disconnected, the messages go to the disconnected buffer.
+     */
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        List<IMqttDeliveryToken> tokens = new ArrayList<>(events.size());
+        for (Event event : events) {
+            if (!buffer(event)) {
+                publish(topic.resolve(event), marshaller.marshal(event).getBytes(StandardCharsets.UTF_8), tokens);
+            }
+        }
+        if (qos > 0 && client.isConnected()) {
+            long deadline = System.currentTimeMillis() + publishTimeout;
+            for (IMqttDeliveryToken token : tokens) {
+                token.waitForCompletion(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        }
+    }
+
+    private void awaitOne(List<IMqttDeliveryToken> tokens) throws Exception {
+        for (IMqttDeliveryToken token : tokens) {
+            if (!token.isComplete()) {
+                token.waitForCompletion(publishTimeout);
+                return;
+            }
+        }
+        // the window is used by other publishers
+        Thread.sleep(10);
+    }
+
     @Deactivate
     public void deactivate() throws MqttException {
-        client.disconnect();
-        client.close();
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
+        if (connector != null) {
+            connector.shutdownNow();
+        }
+        try {
+            if (client.isConnected()) {
+                client.disconnect().waitForCompletion(publishTimeout);
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    private static class PendingMessage {
+
+        private final String topic;
+        private final byte[] payload;
+
+        PendingMessage(String topic, byte[] payload) {
+            this.topic = topic;
+            this.payload = payload;
+        }
+
     }
 
-    
 }
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.mqtt;
+
+import org.osgi.service.event.Event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Topic of the messages, resolved from the event properties. The <code>${property}</code> placeholders are
+ * replaced by the event property value (<code>unknown</code> if the event doesn't have the property), the
+ * MQTT separator and wildcards (<code>/</code>, <code>+</code> and <code>#</code>) being replaced by <code>_</code>
+ * in the values.
+ */
+class MqttTopic {
+
+    private final String template;
+    private final List<String> literals = new ArrayList<>();
+    private final List<String> properties = new ArrayList<>();
+
+    MqttTopic(String template) {
+        this.template = template;
+        int start = 0;
+        int index;
+        while ((index = template.indexOf("${", start)) >= 0) {
+            int end = template.indexOf('}', index);
+            if (end < 0) {
+                throw new IllegalArgumentException("Invalid topic " + template + ", } expected");
+            }
+            literals.add(template.substring(start, index));
+            properties.add(template.substring(index + 2, end));
+            start = end + 1;
+        }
+        literals.add(template.substring(start));
+    }
+
+    String resolve(Event event) {
+        if (properties.isEmpty()) {
+            return template;
+        }
+        StringBuilder builder = new StringBuilder(template.length() + 32);
+        for (int i = 0; i < properties.size(); i++) {
+            builder.append(literals.get(i));
+            Object value = event.getProperty(properties.get(i));
+            String string = (value != null) ? value.toString() : "";
+            if (string.isEmpty()) {
+                builder.append("unknown");
+                continue;
+            }
+            for (int j = 0; j < string.length(); j++) {
+                char c = string.charAt(j);
+                builder.append((c == '/' || c == '+' || c == '#' || c == '\u0000') ? '_' : c);
+            }
+        }
+        builder.append(literals.get(properties.size()));
+        return builder.toString();
+    }
+
+}
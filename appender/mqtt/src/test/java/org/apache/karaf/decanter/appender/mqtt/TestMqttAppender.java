@@ -103,6 +103,17 @@ public class TestMqttAppender  {
         brokerService.stop();
     }
 
+    @Test
+    public void testTopicTemplate() {
+        MqttTopic topic = new MqttTopic("decanter/${karafName}/${type}");
+        Map<String, Object> data = new HashMap<>();
+        data.put("karafName", "node/1+#");
+        data.put("type", "jmx");
+        Assert.assertEquals("decanter/node_1__/jmx", topic.resolve(new Event(TOPIC, data)));
+        Assert.assertEquals("decanter/unknown/unknown", topic.resolve(new Event(TOPIC, new HashMap<>())));
+        Assert.assertEquals("decanter", new MqttTopic("decanter").resolve(new Event(TOPIC, data)));
+    }
+
     private MqttClient receive(final List<MqttMessage> received) throws MqttException, MqttSecurityException {
         MqttClient client = new MqttClient(SERVER, "test");
         MqttCallback callback = new MqttCallback() {
@@ -53,10 +53,12 @@ public class OrientDBAppender implements EventHandler {
     private ODatabaseDocumentTx database;
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
 
     @Activate
     public void activate(ComponentContext componentContext) {
         config = componentContext.getProperties();
+        filter = new EventFilter(config);
         String url = getValue(config, URL_PROPERTY, URL_DEFAULT);
         String username = getValue(config, USERNAME_PROPERTY, USERNAME_DEFAULT);
         String password = getValue(config, PASSWORD_PROPERTY, PASSWORD_DEFAULT);
@@ -75,7 +77,7 @@ public class OrientDBAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
+        if (filter.match(event)) {
             String json = marshaller.marshal(event);
             ODocument document = new ODocument("decanter").fromJSON(json);
             document.save();
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.prometheus;
+
+import io.prometheus.client.Collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gauges of the Decanter events, registered as a single collector. The series are stored in a concurrent map,
+ * bounded by the max number of series: when the max is reached, the least recently updated series are evicted.
+ * The series not updated since the idle timeout are evicted when the metrics are collected.
+ * The collect works on a snapshot of the series, without blocking the updates.
+ */
+class DecanterCollector extends Collector {
+
+    private final List<String> labelNames;
+    private final int maxSeries;
+    private final long idleTimeout;
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final Object evictionLock = new Object();
+
+    /**
+     * @param labelNames the label names of all series.
+     * @param maxSeries the max number of series.
+     * @param idleTimeout the time (in ms) after which a series not updated is evicted (0 to disable).
+     */
+    DecanterCollector(List<String> labelNames, int maxSeries, long idleTimeout) {
+        this.labelNames = labelNames;
+        this.maxSeries = maxSeries;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Set the value of a series, creating the series if needed.
+     */
+    void set(String name, String help, List<String> labelValues, double value) {
+        String key = name + '\u0000' + String.join("\u0000", labelValues);
+        Series current = series.get(key);
+        if (current == null) {
+            current = series.computeIfAbsent(key, k -> new Series(name, help, labelValues));
+            if (series.size() > maxSeries) {
+                evict();
+            }
+        }
+        current.value = value;
+        current.updated = System.currentTimeMillis();
+    }
+
+    /**
+     * Evict the least recently updated series, keeping 90% of the max series to amortize the eviction.
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            int size = series.size();
+            if (size <= maxSeries) {
+                return;
+            }
+            Map.Entry<String, Series>[] entries = series.entrySet().toArray(new Map.Entry[0]);
+            Arrays.sort(entries, Comparator.comparingLong(entry -> entry.getValue().updated));
+            int count = entries.length - (maxSeries - maxSeries / 10);
+            for (int i = 0; i < count; i++) {
+                series.remove(entries[i].getKey(), entries[i].getValue());
+            }
+        }
+    }
+
+    int size() {
+        return series.size();
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        long now = System.currentTimeMillis();
+        Map<String, List<MetricFamilySamples.Sample>> samples = new HashMap<>();
+        Map<String, String> helps = new HashMap<>();
+        for (Map.Entry<String, Series> entry : series.entrySet()) {
+            Series current = entry.getValue();
+            if (idleTimeout > 0 && now - current.updated > idleTimeout) {
+                series.remove(entry.getKey(), current);
+                continue;
+            }
+            samples.computeIfAbsent(current.name, name -> new ArrayList<>())
+                    .add(new MetricFamilySamples.Sample(current.name, labelNames, current.labelValues, current.value));
+            helps.putIfAbsent(current.name, current.help);
+        }
+        List<MetricFamilySamples> families = new ArrayList<>(samples.size());
+        for (Map.Entry<String, List<MetricFamilySamples.Sample>> entry : samples.entrySet()) {
+            families.add(new MetricFamilySamples(entry.getKey(), Type.GAUGE, helps.get(entry.getKey()), entry.getValue()));
+        }
+        return families;
+    }
+
+    /**
+     * Convert a name to a valid Prometheus metric or label name.
+     */
+    static String sanitize(String name) {
+        StringBuilder builder = new StringBuilder(name.length() + 1);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (c >= '0' && c <= '9' && i > 0)) {
+                builder.append(c);
+            } else if (c >= '0' && c <= '9') {
+                builder.append('_').append(c);
+            } else {
+                builder.append('_');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static class Series {
+
+        private final String name;
+        private final String help;
+        private final List<String> labelValues;
+        private volatile double value;
+        private volatile long updated;
+
+        Series(String name, String help, List<String> labelValues) {
+            this.name = name;
+            this.help = help;
+            this.labelValues = labelValues;
+            this.updated = System.currentTimeMillis();
+        }
+
+    }
+
+}
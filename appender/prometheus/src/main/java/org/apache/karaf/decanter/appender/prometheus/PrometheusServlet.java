@@ -16,7 +16,7 @@
  */
 package org.apache.karaf.decanter.appender.prometheus;
 
-import io.prometheus.client.Gauge;
+import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.exporter.MetricsServlet;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
@@ -45,83 +45,83 @@ public class PrometheusServlet implements EventHandler {
     private String alias;
     private boolean filtered = false;
 
-    private Map<String, Gauge> gauges = new HashMap<>();
+    private String[] labelProperties;
+    DecanterCollector collector;
 
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
-        config = componentContext.getProperties();
-        setFiltered();
+        activate(componentContext.getProperties());
         alias = (config.get("alias") != null) ? (String) config.get("alias") : "/decanter/prometheus";
         httpService.registerServlet(alias, new MetricsServlet(), null, null);
     }
 
+    void activate(Dictionary<String, Object> config) {
+        this.config = config;
+        setFiltered();
+        String labels = (config.get("prometheus.labels") != null) ? (String) config.get("prometheus.labels") : "ObjectName,uuid";
+        labelProperties = labels.trim().isEmpty() ? new String[0] : labels.trim().split("\\s*,\\s*");
+        List<String> labelNames = new ArrayList<>();
+        for (String labelProperty : labelProperties) {
+            labelNames.add(DecanterCollector.sanitize(labelProperty));
+        }
+        int maxSeries = Integer.parseInt((config.get("prometheus.max.series") != null) ? (String) config.get("prometheus.max.series") : "10000");
+        long idleTimeout = Long.parseLong((config.get("prometheus.idle.timeout") != null) ? (String) config.get("prometheus.idle.timeout") : "3600000");
+        collector = new DecanterCollector(labelNames, maxSeries, idleTimeout).register();
+    }
+
     @Deactivate
     public void deactivate() throws Exception {
         httpService.unregister(alias);
+        CollectorRegistry.defaultRegistry.unregister(collector);
     }
 
-    protected static String createUniqueGaugeName(Event event, String mapProperty, String keyProperty) {
+    /**
+     * Name of the metric family: the event topic followed by the property name (and the key for a map property).
+     */
+    protected static String createGaugeName(Event event, String mapProperty, String keyProperty) {
         String gauge = event.getTopic();
-        if (event.getProperty("ObjectName") != null) {
-            gauge = gauge + "." + event.getProperty("ObjectName").toString();
-        } else if (event.getProperty("uuid") != null) {
-            gauge = gauge + "." + event.getProperty("uuid").toString();
-        } else {
-            gauge = gauge + "." + UUID.randomUUID();
-        }
         if (mapProperty != null) {
-            gauge = mapProperty + "." + gauge;
+            gauge = gauge + "." + mapProperty;
         }
-        gauge = gauge + "." + keyProperty;
-        gauge = gauge.replace(".", "_").replace("-", "_")
-                .replace(":", "_").replace(",", "_")
-                .replace("=", "_").replace("/", "_");
-        return gauge;
+        return DecanterCollector.sanitize(gauge + "." + keyProperty);
     }
 
     @Override
     public void handleEvent(Event event) {
+        List<String> labelValues = null;
         for (String property : event.getPropertyNames()) {
             if (!filtered || (filtered && config.get("prometheus.key." + property) != null)) {
-                if (event.getProperty(property) instanceof Map) {
-                    Map<String, Object> map = (Map) event.getProperty(property);
+                Object value = event.getProperty(property);
+                if (value instanceof Map) {
+                    Map<String, Object> map = (Map) value;
                     for (Map.Entry<String, Object> entry : map.entrySet()) {
                         if (entry.getValue() instanceof Double || entry.getValue() instanceof Long || entry.getValue() instanceof Integer) {
-                            String convertedProperty = createUniqueGaugeName(event, property, entry.getKey());
-                            Gauge gauge = gauges.get(convertedProperty);
-                            if (gauge == null) {
-                                gauge = Gauge.build().name(convertedProperty).help(property + "." + entry.getKey()).register();
-                                gauges.put(convertedProperty, gauge);
-                            }
-                            if (entry.getValue() instanceof Long) {
-                                gauge.set((Long) entry.getValue());
-                            } else if (entry.getValue() instanceof Integer) {
-                                gauge.set((Integer) entry.getValue());
-                            } else if (entry.getValue() instanceof Double) {
-                                gauge.set((Double) entry.getValue());
+                            if (labelValues == null) {
+                                labelValues = labelValues(event);
                             }
+                            collector.set(createGaugeName(event, property, entry.getKey()), property + "." + entry.getKey(), labelValues, ((Number) entry.getValue()).doubleValue());
                         }
                     }
                 }
-                if (event.getProperty(property) instanceof Double || event.getProperty(property) instanceof Long || event.getProperty(property) instanceof Integer) {
-                    String convertedProperty = createUniqueGaugeName(event, null, property);
-                    Gauge gauge = gauges.get(convertedProperty);
-                    if (gauge == null) {
-                        gauge = Gauge.build().name(convertedProperty).help(property).register();
-                        gauges.put(convertedProperty, gauge);
-                    }
-                    if (event.getProperty(property) instanceof Long) {
-                        gauge.set((Long) event.getProperty(property));
-                    } else if (event.getProperty(property) instanceof Integer) {
-                        gauge.set((Integer) event.getProperty(property));
-                    } else if (event.getProperty(property) instanceof Double) {
-                        gauge.set((Double) event.getProperty(property));
+                if (value instanceof Double || value instanceof Long || value instanceof Integer) {
+                    if (labelValues == null) {
+                        labelValues = labelValues(event);
                     }
+                    collector.set(createGaugeName(event, null, property), property, labelValues, ((Number) value).doubleValue());
                 }
             }
         }
     }
 
+    private List<String> labelValues(Event event) {
+        List<String> labelValues = new ArrayList<>(labelProperties.length);
+        for (String labelProperty : labelProperties) {
+            Object value = event.getProperty(labelProperty);
+            labelValues.add((value != null) ? value.toString() : "");
+        }
+        return labelValues;
+    }
+
     private void setFiltered() {
         Enumeration<String> keys = config.keys();
         while (keys.hasMoreElements()) {
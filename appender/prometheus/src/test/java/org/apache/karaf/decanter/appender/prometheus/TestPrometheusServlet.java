@@ -16,40 +16,89 @@
  */
 package org.apache.karaf.decanter.appender.prometheus;
 
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
 import org.junit.Assert;
 import org.junit.Test;
 import org.osgi.service.event.Event;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 
 public class TestPrometheusServlet {
 
     @Test
-    public void testDefaultGaugeName() throws Exception {
+    public void testGaugeName() throws Exception {
         Map<String, Object> data = new HashMap<>();
         data.put("Test", 0);
-        Event event = new Event("TestTopic", data);
-
-        String gaugeName = PrometheusServlet.createUniqueGaugeName(event, null, "Test");
-
-        System.out.println(gaugeName);
+        data.put("ObjectName", "test:MyBean,name=foo,other=bar");
+        Event event = new Event("decanter/collect/jmx-local", data);
 
-        Assert.assertTrue(gaugeName.matches("TestTopic_(.*)_Test"));
+        Assert.assertEquals("decanter_collect_jmx_local_Test", PrometheusServlet.createGaugeName(event, null, "Test"));
+        Assert.assertEquals("decanter_collect_jmx_local_HeapMemoryUsage_used", PrometheusServlet.createGaugeName(event, "HeapMemoryUsage", "used"));
     }
 
     @Test
-    public void testGaugeNameWithObjectName() throws Exception {
-        Map<String, Object> data = new HashMap<>();
-        data.put("Test", 0);
-        data.put("ObjectName", "test:MyBean,name=foo,other=bar");
-        Event event = new Event("TestTopic", data);
+    public void testLabels() throws Exception {
+        PrometheusServlet servlet = new PrometheusServlet();
+        Hashtable<String, Object> config = new Hashtable<>();
+        config.put("prometheus.labels", "ObjectName,host.name");
+        servlet.activate(config);
+        try {
+            for (String objectName : new String[]{ "test:name=foo", "test:name=bar", "test:name=foo" }) {
+                Map<String, Object> data = new HashMap<>();
+                data.put("Test", 1);
+                data.put("ObjectName", objectName);
+                servlet.handleEvent(new Event("decanter/collect/jmx", data));
+            }
+            // events without the label properties share the same series
+            servlet.handleEvent(new Event("decanter/collect/jmx", Collections.singletonMap("Test", 2)));
+            servlet.handleEvent(new Event("decanter/collect/jmx", Collections.singletonMap("Test", 3)));
 
-        String gaugeName = PrometheusServlet.createUniqueGaugeName(event, null, "Test");
+            List<Collector.MetricFamilySamples> families = servlet.collector.collect();
+            Assert.assertEquals(1, families.size());
+            Assert.assertEquals("decanter_collect_jmx_Test", families.get(0).name);
+            Assert.assertEquals(3, families.get(0).samples.size());
+            for (Collector.MetricFamilySamples.Sample sample : families.get(0).samples) {
+                Assert.assertEquals(Arrays.asList("ObjectName", "host_name"), sample.labelNames);
+                if (sample.labelValues.get(0).isEmpty()) {
+                    Assert.assertEquals(3, sample.value, 0);
+                } else {
+                    Assert.assertEquals(1, sample.value, 0);
+                }
+            }
+            Assert.assertEquals(Double.valueOf(3), CollectorRegistry.defaultRegistry.getSampleValue("decanter_collect_jmx_Test", new String[]{ "ObjectName", "host_name" }, new String[]{ "", "" }));
+        } finally {
+            CollectorRegistry.defaultRegistry.unregister(servlet.collector);
+        }
+    }
 
-        System.out.println(gaugeName);
+    @Test
+    public void testMaxSeries() throws Exception {
+        DecanterCollector collector = new DecanterCollector(Collections.singletonList("id"), 100, 0);
+        for (int i = 0; i < 1000; i++) {
+            collector.set("test", "test", Collections.singletonList(String.valueOf(i)), i);
+        }
+        Assert.assertTrue(collector.size() <= 100);
+        List<Collector.MetricFamilySamples.Sample> samples = collector.collect().get(0).samples;
+        Assert.assertEquals(collector.size(), samples.size());
+        Assert.assertTrue(samples.stream().anyMatch(sample -> sample.labelValues.get(0).equals("999")));
+    }
 
-        Assert.assertEquals("TestTopic_test_MyBean_name_foo_other_bar_Test", gaugeName);
+    @Test
+    public void testIdleTimeout() throws Exception {
+        DecanterCollector collector = new DecanterCollector(Collections.emptyList(), 100, 50);
+        collector.set("old", "old", Collections.emptyList(), 1);
+        Thread.sleep(100);
+        collector.set("new", "new", Collections.emptyList(), 2);
+        List<Collector.MetricFamilySamples> families = collector.collect();
+        Assert.assertEquals(1, families.size());
+        Assert.assertEquals("new", families.get(0).name);
+        Assert.assertEquals(1, collector.size());
     }
 
 }
@@ -16,7 +16,10 @@
  */
 package org.apache.karaf.decanter.appender.redis;
 
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -25,11 +28,20 @@ import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
 import org.osgi.service.event.EventHandler;
 import org.redisson.Redisson;
+import org.redisson.api.RBatch;
 import org.redisson.api.RedissonClient;
+import org.redisson.api.stream.StreamAddArgs;
 import org.redisson.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Redis appender
@@ -39,7 +51,9 @@ import java.util.Map;
         service = EventHandler.class,
         property = {EventConstants.EVENT_TOPIC + "=decanter/collect/*" }
 )
-public class RedisAppender implements EventHandler {
+public class RedisAppender implements EventHandler, BatchAppender {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RedisAppender.class);
 
     public static final String ADDRESS_PROPERTY = "address";
     public static final String MODE_PROPERTY = "mode";
@@ -47,6 +61,10 @@ public class RedisAppender implements EventHandler {
     public static final String MASTER_ADDRESS_PROPERTY = "masterAddress";
     public static final String MASTER_NAME_PROPERTY = "masterName";
     public static final String SCAN_INTERVAL_PROPERTY = "scanInterval";
+    public static final String LAYOUT_PROPERTY = "layout";
+    public static final String TTL_PROPERTY = "ttl";
+    public static final String STREAM_MAXLEN_PROPERTY = "stream.maxlen";
+    public static final String ZSET_RETENTION_PROPERTY = "zset.retention";
 
     public static final String ADDRESS_DEFAULT = "localhost:6379";
     public static final String MODE_DEFAULT = "Single";
@@ -54,14 +72,26 @@ public class RedisAppender implements EventHandler {
     public static final String MASTER_ADDRESS_DEFAULT = null;
     public static final String MASTER_NAME_DEFAULT = null;
     public static final String SCAN_INTERVAL_DEFAULT = "2000";
+    public static final String LAYOUT_DEFAULT = "map";
+    public static final String TTL_DEFAULT = "0";
+    public static final String STREAM_MAXLEN_DEFAULT = "0";
+    public static final String ZSET_RETENTION_DEFAULT = "0";
 
-    private RedissonClient redissonClient;
+    RedissonClient redissonClient;
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+    private String map;
+    private String layout;
+    private long ttl;
+    private int streamMaxLen;
+    private long zsetRetention;
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
 
     @Activate
     public void activate(ComponentContext componentContext) {
-        config = componentContext.getProperties();
+        open(componentContext.getProperties());
 
         String address = getValue(config, ADDRESS_PROPERTY, ADDRESS_DEFAULT);
         String mode = getValue(config, MODE_PROPERTY, MODE_DEFAULT);
@@ -80,10 +110,39 @@ public class RedisAppender implements EventHandler {
             redissonConfig.useClusterServers().setScanInterval(scanInterval).addNodeAddress(address);
         }
         redissonClient = Redisson.create(redissonConfig);
+
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("redis", config, this);
+            dispatcherRegistration = dispatcher.register(componentContext.getBundleContext());
+        }
+    }
+
+    /**
+     * Read the layout configuration, without creating the Redis client.
+     */
+    void open(Dictionary<String, Object> config) {
+        this.config = config;
+        filter = new EventFilter(config);
+        map = getValue(config, MAP_PROPERTY, MAP_DEFAULT);
+        layout = getValue(config, LAYOUT_PROPERTY, LAYOUT_DEFAULT).toLowerCase();
+        if (!layout.equals("map") && !layout.equals("hash") && !layout.equals("stream") && !layout.equals("zset")) {
+            throw new IllegalArgumentException("Unknown layout " + layout + " (map, hash, stream or zset expected)");
+        }
+        ttl = Long.parseLong(getValue(config, TTL_PROPERTY, TTL_DEFAULT));
+        streamMaxLen = Integer.parseInt(getValue(config, STREAM_MAXLEN_PROPERTY, STREAM_MAXLEN_DEFAULT));
+        zsetRetention = Long.parseLong(getValue(config, ZSET_RETENTION_PROPERTY, ZSET_RETENTION_DEFAULT));
     }
 
     @Deactivate
     public void deactivate() {
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
         if (redissonClient != null && (!redissonClient.isShutdown() || !redissonClient.isShuttingDown())) {
             redissonClient.shutdown();
         }
@@ -91,12 +150,62 @@ public class RedisAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
-            Map<String, Object> redisMap = redissonClient.getMap(getValue(config, MAP_PROPERTY, MAP_DEFAULT));
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
+            }
+            try {
+                batch(Collections.singletonList(event));
+            } catch (Exception e) {
+                LOGGER.warn("Can't store event in Redis", e);
+            }
+        }
+    }
+
+    /**
+     * Store the events in a single pipelined call, depending on the layout:
+     * <ul>
+     *     <li><code>map</code>: the event properties are put in the map (the last event wins)</li>
+     *     <li><code>hash</code>: each event is stored in its own hash, with an optional TTL</li>
+     *     <li><code>stream</code>: each event is added in the stream, approximately trimmed to the max length</li>
+     *     <li><code>zset</code>: each event is added in the sorted set, scored by its timestamp</li>
+     * </ul>
+     */
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        RBatch batch = redissonClient.createBatch();
+        long now = System.currentTimeMillis();
+        for (Event event : events) {
+            Map<String, Object> properties = new HashMap<>();
             for (String name : event.getPropertyNames()) {
-                redisMap.put(name, event.getProperty(name));
+                properties.put(name, event.getProperty(name));
             }
+            Object timestamp = event.getProperty("timestamp");
+            long time = (timestamp instanceof Number) ? ((Number) timestamp).longValue() : now;
+            switch (layout) {
+                case "hash":
+                    String key = map + ":" + time + ":" + UUID.randomUUID();
+                    batch.getMap(key).putAllAsync(properties);
+                    if (ttl > 0) {
+                        batch.getMap(key).expireAsync(Duration.ofMillis(ttl));
+                    }
+                    break;
+                case "stream":
+                    StreamAddArgs<Object, Object> args = StreamAddArgs.entries(new HashMap<>(properties));
+                    batch.getStream(map).addAsync((streamMaxLen > 0) ? args.trimNonStrict().maxLen(streamMaxLen).noLimit() : args);
+                    break;
+                case "zset":
+                    batch.getScoredSortedSet(map).addAsync(time, properties);
+                    break;
+                default:
+                    batch.getMap(map).putAllAsync(properties);
+            }
+        }
+        if (layout.equals("zset") && zsetRetention > 0) {
+            batch.getScoredSortedSet(map).removeRangeByScoreAsync(0, true, now - zsetRetention, false);
         }
+        batch.execute();
     }
 
     private String getValue(Dictionary<String, Object> properties, String key, String defaultValue) {
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.redis;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.osgi.service.event.Event;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RScoredSortedSetAsync;
+import org.redisson.api.RStreamAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.api.stream.StreamAddParams;
+
+public class RedisAppenderTest {
+
+    private static final long TIMESTAMP = 1704067200000L;
+
+    private RBatch batch;
+    private RMapAsync<Object, Object> redisMap;
+    private RStreamAsync<Object, Object> stream;
+    private RScoredSortedSetAsync<Object> sortedSet;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        batch = mock(RBatch.class);
+        redisMap = mock(RMapAsync.class);
+        stream = mock(RStreamAsync.class);
+        sortedSet = mock(RScoredSortedSetAsync.class);
+        doReturn(redisMap).when(batch).getMap(anyString());
+        doReturn(stream).when(batch).getStream(anyString());
+        doReturn(sortedSet).when(batch).getScoredSortedSet(anyString());
+    }
+
+    /**
+     * Appender with a mocked Redis client, without asynchronous dispatcher.
+     */
+    private RedisAppender appender(String... properties) {
+        Hashtable<String, Object> config = new Hashtable<>();
+        for (int i = 0; i < properties.length; i += 2) {
+            config.put(properties[i], properties[i + 1]);
+        }
+        RedisAppender appender = new RedisAppender();
+        appender.open(config);
+        appender.redissonClient = mock(RedissonClient.class);
+        when(appender.redissonClient.createBatch()).thenReturn(batch);
+        return appender;
+    }
+
+    private static Event event(Object timestamp, String message) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("timestamp", timestamp);
+        data.put("message", message);
+        return new Event("decanter/collect/log", data);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMap() throws Exception {
+        RedisAppender appender = appender();
+        appender.batch(Arrays.asList(event(TIMESTAMP, "first"), event(TIMESTAMP, "second")));
+
+        // the events are written in a single pipelined call
+        verify(batch, times(2)).getMap("Decanter");
+        ArgumentCaptor<Map<Object, Object>> properties = ArgumentCaptor.forClass(Map.class);
+        verify(redisMap, times(2)).putAllAsync(properties.capture());
+        Assert.assertEquals("second", properties.getAllValues().get(1).get("message"));
+        Assert.assertEquals("decanter/collect/log", properties.getAllValues().get(1).get("event.topics"));
+        verify(batch).execute();
+    }
+
+    @Test
+    public void testHandleEvent() {
+        RedisAppender appender = appender("event.property.value.exclude", "secret.*");
+        appender.handleEvent(event(TIMESTAMP, "first"));
+        // the filtered events are not written
+        appender.handleEvent(event(TIMESTAMP, "secret"));
+
+        verify(redisMap).putAllAsync(any());
+        verify(batch).execute();
+    }
+
+    @Test
+    public void testHash() throws Exception {
+        RedisAppender appender = appender("layout", "hash", "map", "logs", "ttl", "60000");
+        appender.batch(Arrays.asList(event(TIMESTAMP, "first"), event(TIMESTAMP, "second")));
+
+        // one hash per event, the key is prefixed by the map name and the timestamp
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(batch, times(4)).getMap(keys.capture());
+        List<String> values = keys.getAllValues();
+        Assert.assertTrue(values.get(0), values.get(0).startsWith("logs:" + TIMESTAMP + ":"));
+        Assert.assertEquals(values.get(0), values.get(1));
+        Assert.assertNotEquals(values.get(0), values.get(2));
+        verify(redisMap, times(2)).putAllAsync(any());
+        verify(redisMap, times(2)).expireAsync(Duration.ofMillis(60000));
+        verify(batch).execute();
+    }
+
+    @Test
+    public void testHashWithoutTtl() throws Exception {
+        RedisAppender appender = appender("layout", "hash");
+        appender.batch(Arrays.asList(event(TIMESTAMP, "first")));
+
+        verify(redisMap).putAllAsync(any());
+        verify(redisMap, never()).expireAsync(any(Duration.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStream() throws Exception {
+        RedisAppender appender = appender("layout", "stream", "map", "logs", "stream.maxlen", "1000");
+        appender.batch(Arrays.asList(event(TIMESTAMP, "first")));
+
+        ArgumentCaptor<StreamAddArgs<Object, Object>> args = ArgumentCaptor.forClass(StreamAddArgs.class);
+        verify(batch).getStream("logs");
+        verify(stream).addAsync(args.capture());
+        StreamAddParams<Object, Object> params = (StreamAddParams<Object, Object>) args.getValue();
+        Assert.assertEquals("first", params.getEntries().get("message"));
+        Assert.assertEquals(1000, params.getMaxLen());
+        Assert.assertFalse(params.isTrimStrict());
+        verify(batch).execute();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testZset() throws Exception {
+        RedisAppender appender = appender("layout", "zset", "map", "logs", "zset.retention", "3600000");
+        long before = System.currentTimeMillis();
+        // the timestamp is used as score whatever its numeric type
+        appender.batch(Arrays.asList(event(1704067200, "first"), event("yesterday", "second")));
+
+        ArgumentCaptor<Map<String, Object>> properties = ArgumentCaptor.forClass(Map.class);
+        verify(sortedSet).addAsync(eq(1704067200d), properties.capture());
+        Assert.assertEquals("first", properties.getValue().get("message"));
+        ArgumentCaptor<Double> score = ArgumentCaptor.forClass(Double.class);
+        verify(sortedSet, times(2)).addAsync(score.capture(), any());
+        Assert.assertTrue(score.getAllValues().get(1) >= before);
+
+        // the events older than the retention are removed once per batch
+        verify(sortedSet).removeRangeByScoreAsync(eq(0d), eq(true), anyDouble(), eq(false));
+        verify(batch).execute();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownLayout() {
+        appender("layout", "list");
+    }
+
+}
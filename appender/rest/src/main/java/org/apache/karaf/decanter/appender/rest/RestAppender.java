@@ -17,18 +17,28 @@
 package org.apache.karaf.decanter.appender.rest;
 
 import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -44,12 +54,28 @@ import org.slf4j.LoggerFactory;
 @Component(
     name = "org.apache.karaf.decanter.appender.rest",
     immediate = true,
+    service = EventHandler.class,
     configurationPolicy = ConfigurationPolicy.REQUIRE,
     property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-public class RestAppender implements EventHandler {
+public class RestAppender implements EventHandler, BatchAppender {
 
     public static final String URI_PROPERTY = "uri";
+    public static final String BATCH_FORMAT_PROPERTY = "batch.format";
+    public static final String COMPRESSION_PROPERTY = "compression";
+    public static final String HTTP_VERSION_PROPERTY = "http.version";
+    public static final String CONNECT_TIMEOUT_PROPERTY = "connect.timeout";
+    public static final String REQUEST_TIMEOUT_PROPERTY = "request.timeout";
+    public static final String MAX_CONCURRENT_REQUESTS_PROPERTY = "max.concurrent.requests";
+
+    public static final String BATCH_FORMAT_DEFAULT = "single";
+    public static final String COMPRESSION_DEFAULT = "none";
+    public static final String HTTP_VERSION_DEFAULT = "HTTP_2";
+    public static final String CONNECT_TIMEOUT_DEFAULT = "10000";
+    public static final String REQUEST_TIMEOUT_DEFAULT = "30000";
+    public static final String MAX_CONCURRENT_REQUESTS_DEFAULT = "8";
+
+    private enum BatchFormat { SINGLE, ARRAY, NDJSON }
 
     @Reference
     public Marshaller marshaller;
@@ -59,17 +85,85 @@ public class RestAppender implements EventHandler {
     private URI uri;
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+
+    private HttpClient client;
+    private String requestMethod;
+    private String contentType;
+    private String[] headers;
+    private String payloadHeader;
+    private boolean gzip;
+    private Duration requestTimeout;
+    private BatchFormat batchFormat;
+    private Semaphore inFlight;
+
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
 
     @Activate
     @SuppressWarnings("unchecked")
     public void activate(ComponentContext context) throws URISyntaxException {
         Dictionary<String, Object> config = context.getProperties();
         activate(config);
+        if (dispatcher != null) {
+            dispatcherRegistration = dispatcher.register(context.getBundleContext());
+        }
     }
 
     void activate(Dictionary<String, Object> config) throws URISyntaxException {
         this.config = config;
+        filter = new EventFilter(config);
         uri = new URI(getMandatoryValue(config, URI_PROPERTY));
+
+        requestMethod = getValue(config, "request.method", "POST");
+        payloadHeader = getValue(config, "payload.header", null);
+        gzip = getValue(config, COMPRESSION_PROPERTY, COMPRESSION_DEFAULT).equalsIgnoreCase("gzip");
+        requestTimeout = Duration.ofMillis(Long.parseLong(getValue(config, REQUEST_TIMEOUT_PROPERTY, REQUEST_TIMEOUT_DEFAULT)));
+        batchFormat = BatchFormat.valueOf(getValue(config, BATCH_FORMAT_PROPERTY, BATCH_FORMAT_DEFAULT).toUpperCase());
+        if (payloadHeader != null) {
+            batchFormat = BatchFormat.SINGLE;
+        }
+        String defaultContentType = (batchFormat == BatchFormat.NDJSON) ? "application/x-ndjson" : "application/json";
+        contentType = getValue(config, "content.type", defaultContentType);
+
+        // the headers are the same for all requests
+        List<String> headers = new ArrayList<>();
+        String user = getValue(config, "user", null);
+        if (user != null) {
+            String authentication = user + ":" + getValue(config, "password", null);
+            headers.add("Authorization");
+            headers.add("Basic " + Base64.getEncoder().encodeToString(authentication.getBytes(StandardCharsets.UTF_8)));
+        }
+        headers.add("Content-Type");
+        headers.add(contentType);
+        headers.add("charset");
+        headers.add(getValue(config, "charset", "utf-8"));
+        if (gzip) {
+            headers.add("Content-Encoding");
+            headers.add("gzip");
+        }
+        Enumeration<String> keys = config.keys();
+        while (keys.hasMoreElements()) {
+            String key = keys.nextElement();
+            if (key.startsWith("header.")) {
+                headers.add(key.substring("header.".length()));
+                headers.add((String) config.get(key));
+            }
+        }
+        this.headers = headers.toArray(new String[0]);
+
+        inFlight = new Semaphore(Integer.parseInt(getValue(config, MAX_CONCURRENT_REQUESTS_PROPERTY, MAX_CONCURRENT_REQUESTS_DEFAULT)));
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.valueOf(getValue(config, HTTP_VERSION_PROPERTY, HTTP_VERSION_DEFAULT).toUpperCase()))
+                .connectTimeout(Duration.ofMillis(Long.parseLong(getValue(config, CONNECT_TIMEOUT_PROPERTY, CONNECT_TIMEOUT_DEFAULT))))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        // validate the headers
+        HttpRequest.newBuilder(uri).headers(this.headers).build();
+
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("rest", config, this);
+        }
     }
 
     private String getMandatoryValue(Dictionary<String, Object> config, String key) {
@@ -81,56 +175,116 @@ public class RestAppender implements EventHandler {
         }
     }
 
+    private String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
+        String value = (String) config.get(key);
+        return (value != null) ? value : defaultValue;
+    }
+
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
+            }
             try {
-                HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
-                connection.setDoOutput(true);
-                connection.setInstanceFollowRedirects(false);
-                String user = config.get("user") != null ? (String) config.get("user") : null;
-                String password = config.get("password") != null ? (String) config.get("password") : null;
-                if (user != null) {
-                    String authentication = user + ":" + password;
-                    byte[] encodedAuthentication = Base64.getEncoder().encode(authentication.getBytes(StandardCharsets.UTF_8));
-                    String authenticationHeader = "Basic " + new String(encodedAuthentication);
-                    connection.setRequestProperty("Authorization", authenticationHeader);
-                }
-                String requestMethod = config.get("request.method") != null ? (String) config.get("request.method") : "POST";
-                connection.setRequestMethod(requestMethod);
-                String contentType = config.get("content.type") != null ? (String) config.get("content.type") : "application/json";
-                connection.setRequestProperty("Content-Type",  contentType);
-                String charset = config.get("charset") != null ? (String) config.get("charset") : "utf-8";
-                connection.setRequestProperty("charset", charset);
-                Enumeration<String> keys = config.keys();
-                while (keys.hasMoreElements()) {
-                    String key = keys.nextElement();
-                    if (key.startsWith("header.")) {
-                        connection.setRequestProperty(key.substring("header.".length()), (String) config.get(key));
-                    }
-                }
-                String payloadHeader = config.get("payload.header") != null ? (String) config.get("payload.header") : null;
-                if (payloadHeader != null) {
-                    try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-                        marshaller.marshal(event, out);
-                        connection.setRequestProperty(payloadHeader, out.toString());
-                    }
-                } else {
-                    try (OutputStream out = connection.getOutputStream()) {
-                        marshaller.marshal(event, out);
-                    }
-                }
-                InputStream is = connection.getInputStream();
-                is.read();
-                is.close();
+                HttpResponse<Void> response = client.send(request(event), HttpResponse.BodyHandlers.discarding());
+                checkStatus(response);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
                 LOGGER.warn("Error sending event to rest service", e);
             }
         }
     }
+
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        List<CompletableFuture<HttpResponse<Void>>> futures = new ArrayList<>();
+        if (batchFormat == BatchFormat.SINGLE) {
+            for (Event event : events) {
+                futures.add(send(request(event)));
+            }
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (batchFormat == BatchFormat.ARRAY) {
+                out.write('[');
+            }
+            for (int i = 0; i < events.size(); i++) {
+                if (i > 0) {
+                    out.write(batchFormat == BatchFormat.ARRAY ? ',' : '\n');
+                }
+                out.write(marshaller.marshal(events.get(i)).getBytes(StandardCharsets.UTF_8));
+            }
+            out.write(batchFormat == BatchFormat.ARRAY ? ']' : '\n');
+            futures.add(send(request(out.toByteArray())));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Send a request asynchronously, waiting if the maximum number of concurrent requests is reached.
+     */
+    private CompletableFuture<HttpResponse<Void>> send(HttpRequest request) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenApply(response -> {
+                        checkStatus(response);
+                        return response;
+                    })
+                    .whenComplete((response, throwable) -> inFlight.release());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void checkStatus(HttpResponse<Void> response) {
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException("Rest service " + uri + " returned status " + response.statusCode());
+        }
+    }
+
+    private HttpRequest request(Event event) throws IOException {
+        if (payloadHeader != null) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                    .timeout(requestTimeout)
+                    .headers(headers)
+                    .header(payloadHeader, marshaller.marshal(event))
+                    .method(requestMethod, HttpRequest.BodyPublishers.noBody());
+            return builder.build();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshaller.marshal(event, out);
+        return request(out.toByteArray());
+    }
+
+    private HttpRequest request(byte[] body) throws IOException {
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            body = compressed.toByteArray();
+        }
+        return HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .headers(headers)
+                .method(requestMethod, HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
     
     @Deactivate
     public void close() {
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
     }
 
 }
@@ -99,4 +99,29 @@ public class RestAppenderTest {
         Assert.assertTrue(testService.putMessages.get(0).contains("\"foo\":\"bar\""));
     }
 
+    @Test
+    public void testBatch() throws URISyntaxException {
+        RestAppender appender = new RestAppender();
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("uri", "http://localhost:9091/test/echo");
+        config.put("async.enabled", "true");
+        config.put("async.batch.size", "10");
+        config.put("batch.format", "array");
+        appender.marshaller = new JsonMarshaller();
+        appender.activate(config);
+
+        for (int i = 0; i < 3; i++) {
+            HashMap<String, Object> data = new HashMap<>();
+            data.put("foo", "bar" + i);
+            appender.handleEvent(new Event("post", data));
+        }
+        appender.close();
+
+        Assert.assertEquals(1, testService.postMessages.size());
+        String message = testService.postMessages.get(0);
+        Assert.assertTrue(message.startsWith("["));
+        Assert.assertTrue(message.contains("\"foo\":\"bar0\""));
+        Assert.assertTrue(message.contains("\"foo\":\"bar2\""));
+    }
+
 }
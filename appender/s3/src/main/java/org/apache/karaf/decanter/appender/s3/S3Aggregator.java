@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.karaf.decanter.appender.utils.PartitionTemplate;
+import org.osgi.service.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Aggregates the events in objects, one event per line. The events are appended to a local file per key prefix,
+ * the file is uploaded when it reaches the maximum size or age. The local files survive a restart: the files
+ * not uploaded are uploaded when the aggregator starts.
+ */
+class S3Aggregator {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(S3Aggregator.class);
+
+    private final static byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
+    private final static String OPEN = ".open";
+    private final static String READY = ".ready";
+    private final static String GZIP = ".gz";
+    private final static Pattern DATA_FORMAT = Pattern.compile("dataFormat=([^)]+)");
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final File directory;
+    private final PartitionTemplate template;
+    private final String suffix;
+    private final long maxSize;
+    private final long maxAge;
+    private final boolean gzip;
+    private final long multipartThreshold;
+    private final TransferManager transferManager;
+
+    // guarded by this
+    private final Map<String, Segment> segments = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService uploader;
+    private final AtomicBoolean uploading = new AtomicBoolean();
+
+    S3Aggregator(AmazonS3 s3, String bucket, Dictionary<String, Object> config) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.directory = new File(getValue(config, "aggregation.directory", System.getProperty("karaf.data") + File.separator + "decanter" + File.separator + "s3"));
+        this.template = new PartitionTemplate(getValue(config, "aggregation.key.template", "decanter/dt=${yyyy-MM-dd}/hour=${HH}/"));
+        this.suffix = getValue(config, "aggregation.key.suffix", suffix((String) config.get("marshaller.target")));
+        this.maxSize = Long.parseLong(getValue(config, "aggregation.size", String.valueOf(64 * 1024 * 1024)));
+        this.maxAge = Long.parseLong(getValue(config, "aggregation.interval", "300000"));
+        String compression = getValue(config, "aggregation.compression", "none");
+        if (!compression.equalsIgnoreCase("none") && !compression.equalsIgnoreCase("gzip")) {
+            throw new IllegalArgumentException("Unknown aggregation.compression " + compression + " (none or gzip expected)");
+        }
+        this.gzip = compression.equalsIgnoreCase("gzip");
+        this.multipartThreshold = Long.parseLong(getValue(config, "multipart.threshold", String.valueOf(16 * 1024 * 1024)));
+        this.transferManager = TransferManagerBuilder.standard()
+                .withS3Client(s3)
+                .withMultipartUploadThreshold(multipartThreshold)
+                .withMinimumUploadPartSize(Long.parseLong(getValue(config, "multipart.part.size", String.valueOf(8 * 1024 * 1024))))
+                .withShutDownThreadPools(true)
+                .build();
+
+        directory.mkdirs();
+        // the files of the previous run are uploaded as is, the compressed copies left by a crash are created again
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(OPEN) || name.endsWith(READY + GZIP));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(GZIP)) {
+                    file.delete();
+                } else {
+                    file.renameTo(new File(directory, name.substring(0, name.length() - OPEN.length()) + READY));
+                }
+            }
+        }
+
+        this.uploader = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "decanter-appender-s3-upload"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "decanter-appender-s3-aggregator"));
+        this.scheduler.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
+        String value = (String) config.get(key);
+        return (value != null) ? value : defaultValue;
+    }
+
+    /**
+     * Default suffix of the object keys, from the data format of the marshaller target filter.
+     */
+    static String suffix(String marshallerTarget) {
+        Matcher matcher = DATA_FORMAT.matcher((marshallerTarget != null) ? marshallerTarget : "");
+        String dataFormat = matcher.find() ? matcher.group(1).trim() : "json";
+        switch (dataFormat) {
+            case "json":
+                return ".ndjson";
+            case "raw":
+                return ".txt";
+            default:
+                return "." + dataFormat;
+        }
+    }
+
+    void append(Event event, String marshalled) throws IOException {
+        String prefix = template.format(event);
+        byte[] line = marshalled.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            Segment segment = segments.get(prefix);
+            if (segment == null) {
+                segment = new Segment(prefix);
+                segments.put(prefix, segment);
+            }
+            try {
+                segment.write(line);
+            } catch (IOException e) {
+                segments.remove(prefix);
+                try {
+                    segment.close();
+                } catch (IOException ignore) {
+                    // the write failure is reported
+                }
+                throw e;
+            }
+            if (segment.size >= maxSize) {
+                segments.remove(prefix);
+                segment.close();
+                upload();
+            }
+        }
+    }
+
+    /**
+     * Flush the local files, close the files to upload and start the upload.
+     */
+    private void tick() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Segment> iterator = segments.values().iterator(); iterator.hasNext(); ) {
+                Segment segment = iterator.next();
+                try {
+                    if (now - segment.opened >= maxAge) {
+                        iterator.remove();
+                        segment.close();
+                    } else {
+                        segment.out.flush();
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Can't write aggregation file {}", segment.file, e);
+                }
+            }
+        }
+        upload();
+    }
+
+    private void upload() {
+        if (uploading.compareAndSet(false, true)) {
+            try {
+                uploader.execute(() -> {
+                    try {
+                        uploadReady();
+                    } finally {
+                        uploading.set(false);
+                    }
+                });
+            } catch (Exception e) {
+                // the uploader is stopped
+                uploading.set(false);
+            }
+        }
+    }
+
+    /**
+     * Upload the closed files, in order. On failure, the remaining files are uploaded by the next tick.
+     */
+    private void uploadReady() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(READY));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            int separator = name.indexOf('@');
+            String key = URLDecoder.decode(name.substring(0, separator), StandardCharsets.UTF_8)
+                    + "decanter-" + name.substring(separator + 1, name.length() - READY.length()) + suffix;
+            File upload = file;
+            try {
+                if (gzip) {
+                    key = key + GZIP;
+                    upload = new File(directory, name + GZIP);
+                    try (InputStream in = new FileInputStream(file); OutputStream out = new GZIPOutputStream(new FileOutputStream(upload), 64 * 1024)) {
+                        in.transferTo(out);
+                    }
+                }
+                if (upload.length() >= multipartThreshold) {
+                    transferManager.upload(bucket, key, upload).waitForCompletion();
+                } else {
+                    s3.putObject(bucket, key, upload);
+                }
+                file.delete();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.warn("Can't upload {} to S3 bucket {}", key, bucket, e);
+                return;
+            } finally {
+                if (upload != file) {
+                    upload.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the local files and try to upload them, the files not uploaded are kept for the next start.
+     */
+    void close() {
+        scheduler.shutdownNow();
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Can't close aggregation file {}", segment.file, e);
+                }
+            }
+            segments.clear();
+        }
+        // queued after a running upload, which may have listed the files before the last ones were closed
+        uploader.execute(this::uploadReady);
+        uploader.shutdown();
+        try {
+            uploader.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        uploader.shutdownNow();
+        transferManager.shutdownNow(false);
+    }
+
+    /**
+     * Local file aggregating the events of a key prefix.
+     */
+    private class Segment {
+
+        private final String name;
+        private final File file;
+        private final OutputStream out;
+        private final long opened;
+        private long size;
+
+        Segment(String prefix) throws IOException {
+            this.opened = System.currentTimeMillis();
+            this.name = URLEncoder.encode(prefix, StandardCharsets.UTF_8) + "@" + opened + "-" + UUID.randomUUID();
+            this.file = new File(directory, name + OPEN);
+            this.out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        }
+
+        void write(byte[] line) throws IOException {
+            out.write(line);
+            out.write(NEW_LINE);
+            size += line.length + NEW_LINE.length;
+        }
+
+        void close() throws IOException {
+            out.close();
+            if (!file.renameTo(new File(directory, name + READY))) {
+                throw new IOException("Can't rename " + file);
+            }
+        }
+
+    }
+
+}
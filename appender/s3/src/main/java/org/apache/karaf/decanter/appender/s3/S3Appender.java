@@ -18,6 +18,7 @@ package org.apache.karaf.decanter.appender.s3;
 
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
@@ -25,6 +26,7 @@ import org.apache.karaf.decanter.api.marshaller.Marshaller;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
@@ -44,10 +46,9 @@ public class S3Appender implements EventHandler {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(S3Appender.class);
 
-    private Regions regions;
-    private String accessKeyId;
-    private String secretKeyId;
     private String bucket;
+    private AmazonS3 s3;
+    private S3Aggregator aggregator;
 
     @Activate
     public void activate(ComponentContext componentContext) {
@@ -58,27 +59,57 @@ public class S3Appender implements EventHandler {
         if (config.get("accessKeyId") == null) {
             throw new IllegalStateException("accessKeyId is not set");
         }
-        accessKeyId = (String) config.get("accessKeyId");
+        String accessKeyId = (String) config.get("accessKeyId");
         if (config.get("secretKeyId") == null) {
             throw new IllegalStateException("secretKeyId is not set");
         }
-        secretKeyId = (String) config.get("secretKeyId");
+        String secretKeyId = (String) config.get("secretKeyId");
         if (config.get("bucket") == null) {
             throw new IllegalStateException("bucket is not set");
         }
         bucket = (String) config.get("bucket");
-        regions = (config.get("region") != null) ? Regions.fromName((String) config.get("region")) : Regions.DEFAULT_REGION;
+        Regions regions = (config.get("region") != null) ? Regions.fromName((String) config.get("region")) : Regions.DEFAULT_REGION;
+
+        AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKeyId, secretKeyId)))
+                .withPathStyleAccessEnabled(Boolean.parseBoolean((String) config.get("path.style.access")));
+        if (config.get("endpoint") != null) {
+            // S3 compatible storage
+            builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration((String) config.get("endpoint"), regions.getName()));
+        } else {
+            builder.withRegion(regions);
+        }
+        s3 = builder.build();
+
+        if (Boolean.parseBoolean((String) config.get("aggregation.enabled"))) {
+            aggregator = new S3Aggregator(s3, bucket, config);
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (aggregator != null) {
+            aggregator.close();
+            aggregator = null;
+        }
+        if (s3 != null) {
+            s3.shutdown();
+            s3 = null;
+        }
     }
 
     @Override
     public void handleEvent(Event event) {
-        BasicAWSCredentials awsCreds = new BasicAWSCredentials(accessKeyId, secretKeyId);
-        AmazonS3 s3 = AmazonS3ClientBuilder.standard()
-                .withRegion(regions)
-                .withCredentials(new AWSStaticCredentialsProvider(awsCreds))
-                .build();
-        String key = "decanter-" + System.currentTimeMillis() + "-" + UUID.randomUUID().toString();
-        s3.putObject(bucket, key, marshaller.marshal(event));
+        try {
+            if (aggregator != null) {
+                aggregator.append(event, marshaller.marshal(event));
+            } else {
+                String key = "decanter-" + System.currentTimeMillis() + "-" + UUID.randomUUID().toString();
+                s3.putObject(bucket, key, marshaller.marshal(event));
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Can't store event in S3 bucket {}", bucket, e);
+        }
     }
 
     @Reference
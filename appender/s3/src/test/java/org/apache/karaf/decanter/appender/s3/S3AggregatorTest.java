@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.s3;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+public class S3AggregatorTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File("target/aggregation");
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private Hashtable<String, Object> config() {
+        Hashtable<String, Object> config = new Hashtable<>();
+        config.put("aggregation.directory", directory.getPath());
+        return config;
+    }
+
+    private static Event event(String topic, String instant) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("timestamp", Instant.parse(instant).toEpochMilli());
+        return new Event(topic, data);
+    }
+
+    /**
+     * Mock S3 client keeping the uploaded objects, the first <code>failures</code> uploads fail.
+     */
+    private static AmazonS3 mockS3(Map<String, String> objects, int failures) {
+        AmazonS3 s3 = mock(AmazonS3.class);
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() <= failures) {
+                throw new AmazonClientException("Unable to execute HTTP request");
+            }
+            String key = invocation.getArgument(1);
+            File file = invocation.getArgument(2);
+            try (InputStream in = key.endsWith(".gz") ? new GZIPInputStream(new FileInputStream(file)) : new FileInputStream(file)) {
+                objects.put(key, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            return new PutObjectResult();
+        }).when(s3).putObject(eq("decanter"), anyString(), any(File.class));
+        return s3;
+    }
+
+    @Test
+    public void testKeyNaming() throws Exception {
+        Map<String, String> objects = new TreeMap<>();
+        Hashtable<String, Object> config = config();
+        config.put("aggregation.key.template", "logs/${topic}/dt=${yyyy-MM-dd}/hour=${HH}/");
+        S3Aggregator aggregator = new S3Aggregator(mockS3(objects, 0), "decanter", config);
+        aggregator.append(event("decanter/collect/jmx/local", "2024-01-01T10:15:00Z"), "first");
+        aggregator.append(event("decanter/collect/jmx/local", "2024-01-01T10:59:59Z"), "second");
+        aggregator.append(event("decanter/collect/jmx/local", "2024-01-01T11:00:00Z"), "third");
+        aggregator.append(event("decanter/collect/log", "2024-01-01T10:30:00Z"), "fourth");
+        aggregator.close();
+
+        Assert.assertEquals(3, objects.size());
+        String[] keys = objects.keySet().toArray(new String[0]);
+        Assert.assertTrue(keys[0], keys[0].matches("logs/jmx/local/dt=2024-01-01/hour=10/decanter-\\d+-[0-9a-f-]{36}\\.ndjson"));
+        Assert.assertTrue(keys[1], keys[1].matches("logs/jmx/local/dt=2024-01-01/hour=11/decanter-\\d+-[0-9a-f-]{36}\\.ndjson"));
+        Assert.assertTrue(keys[2], keys[2].matches("logs/log/dt=2024-01-01/hour=10/decanter-\\d+-[0-9a-f-]{36}\\.ndjson"));
+        Assert.assertEquals("first\nsecond\n", objects.get(keys[0]));
+        Assert.assertEquals("third\n", objects.get(keys[1]));
+        Assert.assertEquals("fourth\n", objects.get(keys[2]));
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        Map<String, String> objects = new TreeMap<>();
+        Hashtable<String, Object> config = config();
+        config.put("aggregation.compression", "gzip");
+        S3Aggregator aggregator = new S3Aggregator(mockS3(objects, 0), "decanter", config);
+        aggregator.append(event("decanter/collect/log", "2024-01-01T10:15:00Z"), "{\"message\":\"é\"}");
+        aggregator.close();
+
+        Assert.assertEquals(1, objects.size());
+        String key = objects.keySet().iterator().next();
+        Assert.assertTrue(key, key.matches("decanter/dt=2024-01-01/hour=10/decanter-\\d+-[0-9a-f-]{36}\\.ndjson\\.gz"));
+        Assert.assertEquals("{\"message\":\"é\"}\n", objects.get(key));
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testSuffix() throws Exception {
+        Assert.assertEquals(".ndjson", S3Aggregator.suffix(null));
+        Assert.assertEquals(".ndjson", S3Aggregator.suffix("(dataFormat=json)"));
+        Assert.assertEquals(".csv", S3Aggregator.suffix("(dataFormat=csv)"));
+        Assert.assertEquals(".txt", S3Aggregator.suffix("(&(dataFormat=raw)(foo=bar))"));
+
+        Map<String, String> objects = new TreeMap<>();
+        Hashtable<String, Object> config = config();
+        config.put("marshaller.target", "(dataFormat=csv)");
+        S3Aggregator aggregator = new S3Aggregator(mockS3(objects, 0), "decanter", config);
+        aggregator.append(event("decanter/collect/log", "2024-01-01T10:15:00Z"), "a,b");
+        aggregator.close();
+        Assert.assertTrue(objects.keySet().iterator().next().endsWith(".csv"));
+
+        objects.clear();
+        config.put("aggregation.key.suffix", ".log");
+        aggregator = new S3Aggregator(mockS3(objects, 0), "decanter", config);
+        aggregator.append(event("decanter/collect/log", "2024-01-01T10:15:00Z"), "a,b");
+        aggregator.close();
+        Assert.assertTrue(objects.keySet().iterator().next().endsWith(".log"));
+    }
+
+    @Test
+    public void testFailedUploadRetention() throws Exception {
+        Map<String, String> objects = new TreeMap<>();
+        S3Aggregator aggregator = new S3Aggregator(mockS3(objects, Integer.MAX_VALUE), "decanter", config());
+        aggregator.append(event("decanter/collect/log", "2024-01-01T10:15:00Z"), "first");
+        aggregator.close();
+
+        // the file is kept, ready to upload on the next start
+        Assert.assertEquals(0, objects.size());
+        String[] files = directory.list();
+        Assert.assertEquals(1, files.length);
+        Assert.assertTrue(files[0], files[0].endsWith(".ready"));
+
+        aggregator = new S3Aggregator(mockS3(objects, 0), "decanter", config());
+        aggregator.close();
+        Assert.assertEquals(1, objects.size());
+        Assert.assertEquals("first\n", objects.values().iterator().next());
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testRestartRecovery() throws Exception {
+        directory.mkdirs();
+        // left by a crash: a file being written, and the compressed copy of a file being uploaded
+        Files.write(new File(directory, "decanter%2Flog%2F@1704103200000-0001.open").toPath(), "first\nsecond\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(directory, "decanter%2Flog%2F@1704103100000-0002.ready").toPath(), "third\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(directory, "decanter%2Flog%2F@1704103100000-0002.ready.gz").toPath(), new byte[]{ 31, -117 });
+
+        Map<String, String> objects = new TreeMap<>();
+        S3Aggregator aggregator = new S3Aggregator(mockS3(objects, 0), "decanter", config());
+        aggregator.close();
+
+        Assert.assertEquals(2, objects.size());
+        Assert.assertEquals("third\n", objects.get("decanter/log/decanter-1704103100000-0002.ndjson"));
+        Assert.assertEquals("first\nsecond\n", objects.get("decanter/log/decanter-1704103200000-0001.ndjson"));
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+}
@@ -26,9 +26,20 @@ import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.PrintWriter;
-import java.net.Socket;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
 import java.util.Dictionary;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component(
     name = "org.apache.karaf.decanter.appender.socket",
@@ -41,10 +52,37 @@ public class SocketAppender implements EventHandler {
     public static final String HOST_PROPERTY = "host";
     public static final String PORT_PROPERTY = "port";
     public static final String CONNECTED_PROPERTY = "connected";
+    public static final String FRAMING_PROPERTY = "framing";
+    public static final String BUFFER_SIZE_PROPERTY = "buffer.size";
+    public static final String WRITE_BUFFER_SIZE_PROPERTY = "write.buffer.size";
+    public static final String CONNECT_TIMEOUT_PROPERTY = "connect.timeout";
+    public static final String WRITE_TIMEOUT_PROPERTY = "write.timeout";
+    public static final String RECONNECT_DELAY_PROPERTY = "reconnect.delay";
+    public static final String RECONNECT_MAX_DELAY_PROPERTY = "reconnect.max.delay";
+    public static final String CLOSE_TIMEOUT_PROPERTY = "close.timeout";
+    public static final String SSL_ENABLED_PROPERTY = "ssl.enabled";
+    public static final String SSL_PROTOCOL_PROPERTY = "ssl.protocol";
+    public static final String SSL_TRUSTSTORE_LOCATION_PROPERTY = "ssl.truststore.location";
+    public static final String SSL_TRUSTSTORE_PASSWORD_PROPERTY = "ssl.truststore.password";
+    public static final String SSL_TRUSTSTORE_TYPE_PROPERTY = "ssl.truststore.type";
+    public static final String SSL_KEYSTORE_LOCATION_PROPERTY = "ssl.keystore.location";
+    public static final String SSL_KEYSTORE_PASSWORD_PROPERTY = "ssl.keystore.password";
+    public static final String SSL_KEYSTORE_TYPE_PROPERTY = "ssl.keystore.type";
 
     public static final String HOST_DEFAULT = "localhost";
     public static final String PORT_DEFAULT = "34343";
     public static final String CONNECTED_DEFAULT = "false";
+    public static final String FRAMING_DEFAULT = "line";
+    public static final String BUFFER_SIZE_DEFAULT = "10000";
+    public static final String WRITE_BUFFER_SIZE_DEFAULT = "65536";
+    public static final String CONNECT_TIMEOUT_DEFAULT = "10000";
+    public static final String WRITE_TIMEOUT_DEFAULT = "30000";
+    public static final String RECONNECT_DELAY_DEFAULT = "1000";
+    public static final String RECONNECT_MAX_DELAY_DEFAULT = "60000";
+    public static final String CLOSE_TIMEOUT_DEFAULT = "5000";
+    public static final String SSL_ENABLED_DEFAULT = "false";
+    public static final String SSL_PROTOCOL_DEFAULT = "TLS";
+    public static final String SSL_STORE_TYPE_DEFAULT = "JKS";
 
     @Reference
     public Marshaller marshaller;
@@ -52,9 +90,26 @@ public class SocketAppender implements EventHandler {
     private final static Logger LOGGER = LoggerFactory.getLogger(SocketAppender.class);
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
 
-    private Socket socket;
-    private PrintWriter writer;
+    private InetSocketAddress address;
+    private boolean lengthFraming;
+    private int connectTimeout;
+    private int writeTimeout;
+    private long reconnectDelay;
+    private long reconnectMaxDelay;
+    private long closeTimeout;
+    private SSLContext sslContext;
+
+    private BlockingQueue<byte[]> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closing;
+    private Thread sender;
+
+    // used by the sender thread only
+    private SocketSink sink;
+    private ByteBuffer buffer;
+    private byte[] carry;
 
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
@@ -63,67 +118,212 @@ public class SocketAppender implements EventHandler {
 
     public void activate(Dictionary<String, Object> config) throws Exception {
         this.config = config;
+        filter = new EventFilter(config);
+        address = new InetSocketAddress(getValue(config, HOST_PROPERTY, HOST_DEFAULT),
+                Integer.parseInt(getValue(config, PORT_PROPERTY, PORT_DEFAULT)));
+        String framing = getValue(config, FRAMING_PROPERTY, FRAMING_DEFAULT);
+        if (!framing.equalsIgnoreCase("line") && !framing.equalsIgnoreCase("length")) {
+            throw new IllegalArgumentException("Unknown framing " + framing + " (line or length expected)");
+        }
+        lengthFraming = framing.equalsIgnoreCase("length");
+        connectTimeout = Integer.parseInt(getValue(config, CONNECT_TIMEOUT_PROPERTY, CONNECT_TIMEOUT_DEFAULT));
+        writeTimeout = Integer.parseInt(getValue(config, WRITE_TIMEOUT_PROPERTY, WRITE_TIMEOUT_DEFAULT));
+        reconnectDelay = Long.parseLong(getValue(config, RECONNECT_DELAY_PROPERTY, RECONNECT_DELAY_DEFAULT));
+        reconnectMaxDelay = Long.parseLong(getValue(config, RECONNECT_MAX_DELAY_PROPERTY, RECONNECT_MAX_DELAY_DEFAULT));
+        closeTimeout = Long.parseLong(getValue(config, CLOSE_TIMEOUT_PROPERTY, CLOSE_TIMEOUT_DEFAULT));
+        if (Boolean.parseBoolean(getValue(config, SSL_ENABLED_PROPERTY, SSL_ENABLED_DEFAULT))) {
+            sslContext = createSslContext(config);
+        }
+        // the plain connection writes from a direct buffer, the TLS one needs a heap buffer
+        int writeBufferSize = Integer.parseInt(getValue(config, WRITE_BUFFER_SIZE_PROPERTY, WRITE_BUFFER_SIZE_DEFAULT));
+        buffer = (sslContext != null) ? ByteBuffer.allocate(writeBufferSize) : ByteBuffer.allocateDirect(writeBufferSize);
+        queue = new ArrayBlockingQueue<>(Integer.parseInt(getValue(config, BUFFER_SIZE_PROPERTY, BUFFER_SIZE_DEFAULT)));
+        closing = false;
+
         boolean connected = Boolean.parseBoolean(getValue(config, CONNECTED_PROPERTY, CONNECTED_DEFAULT));
         if (connected) {
             try {
-                initConnection();
+                sink = SocketSink.open(address, connectTimeout, writeTimeout, sslContext);
             } catch (Exception e) {
                 LOGGER.error("Can't create socket", e);
                 throw e;
             }
         }
+        sender = new Thread(this::send, "decanter-appender-socket");
+        sender.setDaemon(true);
+        sender.start();
     }
 
-    @Deactivate
-    public void deactivate() {
-        closeConnection();
+    private SSLContext createSslContext(Dictionary<String, Object> config) throws Exception {
+        SSLContext context = SSLContext.getInstance(getValue(config, SSL_PROTOCOL_PROPERTY, SSL_PROTOCOL_DEFAULT));
+        TrustManagerFactory trustManagerFactory = null;
+        String truststore = getValue(config, SSL_TRUSTSTORE_LOCATION_PROPERTY, null);
+        if (truststore != null) {
+            trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(loadKeyStore(truststore,
+                    getValue(config, SSL_TRUSTSTORE_TYPE_PROPERTY, SSL_STORE_TYPE_DEFAULT),
+                    getValue(config, SSL_TRUSTSTORE_PASSWORD_PROPERTY, null)));
+        }
+        KeyManagerFactory keyManagerFactory = null;
+        String keystore = getValue(config, SSL_KEYSTORE_LOCATION_PROPERTY, null);
+        if (keystore != null) {
+            String password = getValue(config, SSL_KEYSTORE_PASSWORD_PROPERTY, null);
+            keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(loadKeyStore(keystore,
+                    getValue(config, SSL_KEYSTORE_TYPE_PROPERTY, SSL_STORE_TYPE_DEFAULT), password),
+                    password != null ? password.toCharArray() : null);
+        }
+        context.init(keyManagerFactory != null ? keyManagerFactory.getKeyManagers() : null,
+                trustManagerFactory != null ? trustManagerFactory.getTrustManagers() : null, null);
+        return context;
     }
 
-    private void initConnection() throws Exception {
-        socket = new Socket(
-                getValue(config, HOST_PROPERTY, HOST_DEFAULT),
-                Integer.parseInt(getValue(config, PORT_PROPERTY, PORT_DEFAULT)));
-        writer = new PrintWriter(socket.getOutputStream(), true);
+    private KeyStore loadKeyStore(String location, String type, String password) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(type);
+        try (InputStream in = new FileInputStream(location)) {
+            keyStore.load(in, password != null ? password.toCharArray() : null);
+        }
+        return keyStore;
     }
 
-    private void closeConnection() {
-        if (writer != null) {
+    @Deactivate
+    public void deactivate() {
+        closing = true;
+        if (sender != null) {
             try {
-                writer.close();
-            } catch (Exception e) {
-                // nothing to do
+                // let the sender write the waiting events
+                sender.join(closeTimeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+            sender.interrupt();
+            sender = null;
         }
-        if (socket != null) {
-            try {
-                socket.close();
-            } catch (Exception e) {
-                // nothing to do
-            }
+        closeConnection();
+        if (queue != null && !queue.isEmpty()) {
+            LOGGER.warn("{} events not sent on the socket", queue.size());
+            queue.clear();
+        }
+    }
+
+    private synchronized void closeConnection() {
+        if (sink != null) {
+            sink.close();
+            sink = null;
         }
     }
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
-            String data = marshaller.marshal(event);
-
-            boolean connected = Boolean.parseBoolean(getValue(config, CONNECTED_PROPERTY, CONNECTED_DEFAULT));
+        if (filter.match(event) && !closing) {
+            byte[] data = marshaller.marshal(event).getBytes(StandardCharsets.UTF_8);
+            // the oldest events are dropped when the peer is not reachable for too long
+            while (!queue.offer(data)) {
+                if (queue.poll() != null && dropped.getAndIncrement() == 0) {
+                    LOGGER.warn("Socket appender buffer is full, dropping the oldest events");
+                }
+            }
+        }
+    }
 
+    /**
+     * Sender thread: write the waiting events, coalesced in the write buffer, and reconnect with an exponential
+     * backoff when the connection is lost. The events of a failed write are written again on the new connection.
+     */
+    private void send() {
+        ByteBuffer pending = null;
+        long delay = reconnectDelay;
+        boolean failing = false;
+        while (!Thread.currentThread().isInterrupted()) {
             try {
-
-                if (!connected && socket == null) {
-                    initConnection();
+                if (pending == null) {
+                    byte[] first = (carry != null) ? carry : queue.poll(100, TimeUnit.MILLISECONDS);
+                    carry = null;
+                    if (first == null) {
+                        if (closing) {
+                            return;
+                        }
+                        continue;
+                    }
+                    pending = fill(first);
                 }
-
-                writer.println(data);
-
-                if (!connected) {
-                    closeConnection();
+                SocketSink connection;
+                synchronized (this) {
+                    if (sink == null) {
+                        sink = SocketSink.open(address, connectTimeout, writeTimeout, sslContext);
+                    }
+                    connection = sink;
+                }
+                pending.position(0);
+                connection.write(pending);
+                pending = null;
+                if (failing) {
+                    LOGGER.info("Socket appender connected to {}", address);
+                    failing = false;
                 }
+                long count = dropped.getAndSet(0);
+                if (count > 0) {
+                    LOGGER.warn("{} events have been dropped by the socket appender", count);
+                }
+                delay = reconnectDelay;
+            } catch (InterruptedException e) {
+                return;
             } catch (Exception e) {
-                LOGGER.warn("Error sending data on the socket", e);
+                if (!failing) {
+                    LOGGER.warn("Error sending data on the socket, reconnecting to {}", address, e);
+                    failing = true;
+                } else {
+                    LOGGER.debug("Can't connect to {}", address, e);
+                }
+                closeConnection();
+                if (closing) {
+                    return;
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                delay = Math.min(delay * 2, reconnectMaxDelay);
+            }
+        }
+    }
+
+    /**
+     * Copy as many waiting events as possible in the write buffer.
+     */
+    private ByteBuffer fill(byte[] first) {
+        if (frameSize(first) > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.allocate(frameSize(first));
+            frame(large, first);
+            large.flip();
+            return large;
+        }
+        buffer.clear();
+        frame(buffer, first);
+        byte[] next;
+        while ((next = queue.poll()) != null) {
+            if (frameSize(next) > buffer.remaining()) {
+                carry = next;
+                break;
             }
+            frame(buffer, next);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private int frameSize(byte[] data) {
+        return lengthFraming ? data.length + 4 : data.length + 1;
+    }
+
+    private void frame(ByteBuffer buffer, byte[] data) {
+        if (lengthFraming) {
+            buffer.putInt(data.length);
+            buffer.put(data);
+        } else {
+            buffer.put(data);
+            buffer.put((byte) '\n');
         }
     }
 
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.socket;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Connection of the socket appender, writing the buffers prepared by the sender thread.
+ * The implementations are not thread safe, only the sender thread uses the connection.
+ */
+abstract class SocketSink {
+
+    /**
+     * Open a connection.
+     *
+     * @param address the address to connect to.
+     * @param connectTimeout the connection timeout (in ms).
+     * @param writeTimeout the max time (in ms) to wait for the peer to accept the bytes (plain connection only).
+     * @param sslContext the SSL context, null for a plain connection.
+     */
+    static SocketSink open(InetSocketAddress address, int connectTimeout, int writeTimeout, SSLContext sslContext) throws IOException {
+        if (sslContext != null) {
+            return new TlsSink(address, connectTimeout, sslContext);
+        }
+        return new ChannelSink(address, connectTimeout, writeTimeout);
+    }
+
+    /**
+     * Write all the remaining bytes of the buffer.
+     */
+    abstract void write(ByteBuffer buffer) throws IOException;
+
+    abstract void close();
+
+    /**
+     * Non blocking socket channel. The selector waits for the peer
+     * when the socket send buffer is full.
+     */
+    static class ChannelSink extends SocketSink {
+
+        private final SocketChannel channel;
+        private final Selector selector;
+        private final int writeTimeout;
+        private final ByteBuffer scratch = ByteBuffer.allocate(512);
+
+        ChannelSink(InetSocketAddress address, int connectTimeout, int writeTimeout) throws IOException {
+            this.writeTimeout = writeTimeout;
+            this.channel = SocketChannel.open();
+            this.selector = Selector.open();
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                if (!channel.connect(address)) {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT);
+                    if (selector.select(connectTimeout) == 0) {
+                        throw new SocketTimeoutException("Connection to " + address + " timed out");
+                    }
+                    channel.finishConnect();
+                    key.interestOps(0);
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        void write(ByteBuffer buffer) throws IOException {
+            checkOpen();
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0) {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_WRITE);
+                    int ready = selector.select(writeTimeout);
+                    key.interestOps(0);
+                    selector.selectedKeys().clear();
+                    if (ready == 0) {
+                        throw new SocketTimeoutException("Peer didn't accept data for " + writeTimeout + " ms");
+                    }
+                }
+            }
+        }
+
+        /**
+         * Read the pending bytes sent by the peer (ignored): a closed connection is detected before writing,
+         * instead of losing the first write.
+         */
+        private void checkOpen() throws IOException {
+            int read;
+            do {
+                scratch.clear();
+                read = channel.read(scratch);
+            } while (read > 0);
+            if (read < 0) {
+                throw new EOFException("Connection closed by peer");
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+
+    }
+
+    /**
+     * TLS connection, using a SSL socket (the handshake is done when the connection is created).
+     */
+    static class TlsSink extends SocketSink {
+
+        private final SSLSocket socket;
+        private final OutputStream out;
+
+        TlsSink(InetSocketAddress address, int connectTimeout, SSLContext sslContext) throws IOException {
+            socket = (SSLSocket) sslContext.getSocketFactory().createSocket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.connect(address, connectTimeout);
+                socket.setSoTimeout(connectTimeout);
+                socket.startHandshake();
+                out = socket.getOutputStream();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        void write(ByteBuffer buffer) throws IOException {
+            // the TLS connection uses heap buffers
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            out.flush();
+            buffer.position(buffer.limit());
+        }
+
+        @Override
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+
+    }
+
+}
@@ -23,6 +23,7 @@ import org.junit.Test;
 import org.osgi.service.event.Event;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.InputStreamReader;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -45,11 +46,12 @@ public class SocketAppenderTest {
 
         final List<String> received = new ArrayList<>();
 
-        Runnable server = new Runnable() {
+        // bind before sending the event
+        final ServerSocket server = new ServerSocket(44445);
+        Runnable serverRunnable = new Runnable() {
             @Override
             public void run() {
                 try {
-                    ServerSocket server = new ServerSocket(44445);
                     while (received.size() < 1) {
                         try (Socket socket = server.accept()) {
                             try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
@@ -66,7 +68,7 @@ public class SocketAppenderTest {
                 }
           }
         };
-        Thread serverThread = new Thread(server);
+        Thread serverThread = new Thread(serverRunnable);
         serverThread.start();
 
         Map<String, String> data = new HashMap<>();
@@ -103,4 +105,62 @@ public class SocketAppenderTest {
         appender.deactivate();
     }
 
+    @Test(timeout = 60000L)
+    public void testReconnect() throws Exception {
+        SocketAppender appender = new SocketAppender();
+        appender.marshaller = new CsvMarshaller();
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("host", "localhost");
+        config.put("port", "44446");
+        config.put("reconnect.delay", "100");
+        config.put("reconnect.max.delay", "200");
+        appender.activate(config);
+
+        try (ServerSocket server = new ServerSocket(44446)) {
+            appender.handleEvent(new Event("test", Collections.singletonMap("id", "1")));
+            try (Socket socket = server.accept()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                Assert.assertEquals("id=1,event.topics=test", reader.readLine());
+            }
+            // the connection has been closed by the peer, the events are sent on a new connection
+            appender.handleEvent(new Event("test", Collections.singletonMap("id", "2")));
+            appender.handleEvent(new Event("test", Collections.singletonMap("id", "3")));
+            try (Socket socket = server.accept()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                Assert.assertEquals("id=2,event.topics=test", reader.readLine());
+                Assert.assertEquals("id=3,event.topics=test", reader.readLine());
+            }
+        } finally {
+            appender.deactivate();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testLengthFraming() throws Exception {
+        SocketAppender appender = new SocketAppender();
+        appender.marshaller = new CsvMarshaller();
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("host", "localhost");
+        config.put("port", "44447");
+        config.put("framing", "length");
+        config.put("write.buffer.size", "64");
+        appender.activate(config);
+
+        try (ServerSocket server = new ServerSocket(44447)) {
+            for (int i = 0; i < 10; i++) {
+                appender.handleEvent(new Event("test", Collections.singletonMap("id", String.valueOf(i))));
+            }
+            try (Socket socket = server.accept()) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                for (int i = 0; i < 10; i++) {
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    Assert.assertEquals("id=" + i + ",event.topics=test", new String(data, "UTF-8"));
+                }
+            }
+        } finally {
+            appender.deactivate();
+        }
+    }
+
 }
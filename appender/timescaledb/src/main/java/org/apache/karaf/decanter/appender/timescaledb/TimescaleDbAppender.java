@@ -16,17 +16,28 @@
  */
 package org.apache.karaf.decanter.appender.timescaledb;
 
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.List;
 import javax.sql.DataSource;
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.apache.karaf.decanter.appender.utils.AsyncDispatcher;
+import org.apache.karaf.decanter.appender.utils.BatchAppender;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
@@ -37,13 +48,26 @@ import org.slf4j.LoggerFactory;
 @Component(
     name = "org.apache.karaf.decanter.appender.timescaledb",
     immediate = true,
+    service = EventHandler.class,
     property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-public class TimescaleDbAppender implements EventHandler {
+public class TimescaleDbAppender implements EventHandler, BatchAppender {
 
     public static final String TABLE_NAME_PROPERTY = "table.name";
+    public static final String CONTENT_TYPE_PROPERTY = "content.type";
+    public static final String COLUMNS_PROPERTY = "columns";
+    public static final String CHUNK_INTERVAL_PROPERTY = "chunk.interval";
+    public static final String COMPRESSION_AFTER_PROPERTY = "compression.after";
+    public static final String COMPRESSION_SEGMENTBY_PROPERTY = "compression.segmentby";
+    public static final String COPY_ENABLED_PROPERTY = "copy.enabled";
 
     public static final String TABLE_NAME_DEFAULT = "decanter";
+    public static final String CONTENT_TYPE_DEFAULT = "jsonb";
+    public static final String COLUMNS_DEFAULT = "";
+    public static final String CHUNK_INTERVAL_DEFAULT = "86400000";
+    public static final String COMPRESSION_AFTER_DEFAULT = "0";
+    public static final String COMPRESSION_SEGMENTBY_DEFAULT = null;
+    public static final String COPY_ENABLED_DEFAULT = "true";
 
     @Reference
     public Marshaller marshaller;
@@ -56,29 +80,91 @@ public class TimescaleDbAppender implements EventHandler {
     private final static String createExtensionTemplate =
             "CREATE EXTENSION IF NOT EXISTS timescaledb CASCADE";
     private final static String createTableQueryTemplate =
-            "CREATE TABLE TABLENAME(timestamp BIGINT, content text)";
+            "CREATE TABLE IF NOT EXISTS TABLENAME(timestamp BIGINT NOT NULL, content CONTENTTYPE)";
+    private final static String addColumnQueryTemplate =
+            "ALTER TABLE TABLENAME ADD COLUMN IF NOT EXISTS COLUMNDEFINITION";
     private final static String convertHyperTableQueryTemplate =
-            "SELECT * FROM create_hypertable('TABLENAME', 'timestamp', chunk_time_interval=>_timescaledb_internal.interval_to_usec('1 day'), migrate_data => true);";
+            "SELECT create_hypertable('TABLENAME', 'timestamp', chunk_time_interval => CHUNKINTERVAL, if_not_exists => TRUE, migrate_data => TRUE)";
+    private final static String chunkIntervalQueryTemplate =
+            "SELECT set_chunk_time_interval('TABLENAME', CHUNKINTERVAL)";
+    // the timestamp is an integer (in ms), the policies need the current time in the same unit
+    private final static String createNowFunctionQueryTemplate =
+            "CREATE OR REPLACE FUNCTION TABLENAME_now() RETURNS BIGINT LANGUAGE SQL STABLE AS $$ SELECT (extract(epoch FROM now()) * 1000)::BIGINT $$";
+    private final static String setNowFunctionQueryTemplate =
+            "SELECT set_integer_now_func('TABLENAME', 'TABLENAME_now', replace_if_exists => TRUE)";
+    private final static String compressionQueryTemplate =
+            "ALTER TABLE TABLENAME SET (timescaledb.compress, timescaledb.compress_orderby = 'timestamp DESC'SEGMENTBY)";
+    private final static String compressionPolicyQueryTemplate =
+            "SELECT add_compression_policy('TABLENAME', compress_after => BIGINT 'COMPRESSAFTER', if_not_exists => TRUE)";
 
     private final static String insertQueryTemplate =
-            "INSERT INTO TABLENAME(timestamp, content) VALUES(?,?)";
+            "INSERT INTO TABLENAME(COLUMNNAMES) VALUES(COLUMNVALUES)";
+    private final static String copyQueryTemplate =
+            "COPY TABLENAME(COLUMNNAMES) FROM STDIN";
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+    private String tableName;
+    private List<TypedColumn> columns;
+    private String insertQuery;
+    private String copyQuery;
+    private boolean jsonb;
+    private volatile boolean copyEnabled;
+    private volatile Method getCopyApiMethod;
+    private volatile Method copyInMethod;
+    private AsyncDispatcher dispatcher;
+    private ServiceRegistration<?> dispatcherRegistration;
+
+    /**
+     * COPY text format rows of each asynchronous worker, reused from batch to batch.
+     */
+    private final ThreadLocal<StringBuilder> rows = ThreadLocal.withInitial(() -> new StringBuilder(64 * 1024));
 
     @SuppressWarnings("unchecked")
     @Activate
     public void activate(ComponentContext context) {
         open(context.getProperties());
+        if (dispatcher != null) {
+            dispatcherRegistration = dispatcher.register(context.getBundleContext());
+        }
     }
     
     public void open(Dictionary<String, Object> config) {
         this.config = config;
-        String tableName = getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT);
+        filter = new EventFilter(config);
+        tableName = getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT);
+        columns = TypedColumn.parse(getValue(config, COLUMNS_PROPERTY, COLUMNS_DEFAULT));
+        StringBuilder columnNames = new StringBuilder("timestamp, content");
+        StringBuilder values = new StringBuilder("?, CAST(? AS ").append(getValue(config, CONTENT_TYPE_PROPERTY, CONTENT_TYPE_DEFAULT)).append(")");
+        for (TypedColumn column : columns) {
+            columnNames.append(", ").append(column.name);
+            values.append(", ?");
+        }
+        insertQuery = insertQueryTemplate.replaceAll("TABLENAME", tableName)
+                .replace("COLUMNNAMES", columnNames).replace("COLUMNVALUES", values);
+        copyQuery = copyQueryTemplate.replaceAll("TABLENAME", tableName).replace("COLUMNNAMES", columnNames);
+        copyEnabled = Boolean.parseBoolean(getValue(config, COPY_ENABLED_PROPERTY, COPY_ENABLED_DEFAULT));
+        jsonb = getValue(config, CONTENT_TYPE_PROPERTY, CONTENT_TYPE_DEFAULT).equalsIgnoreCase("jsonb");
         try (Connection connection = dataSource.getConnection()) {
             createStructure(connection);
         } catch (Exception e) {
             LOGGER.debug("Error creating table " + tableName, e);
-        } 
+        }
+        if (AsyncDispatcher.isEnabled(config)) {
+            dispatcher = new AsyncDispatcher("timescaledb", config, this);
+        }
+    }
+
+    @Deactivate
+    public void close() {
+        if (dispatcherRegistration != null) {
+            dispatcherRegistration.unregister();
+            dispatcherRegistration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+            dispatcher = null;
+        }
     }
     
     private String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
@@ -88,45 +174,319 @@ public class TimescaleDbAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
-            try (Connection connection = dataSource.getConnection()) {
-                String tableName = getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT);
-                String jsonSt = marshaller.marshal(event);
-                String insertQuery = insertQueryTemplate.replaceAll("TABLENAME", tableName);
-                Long timestamp = (Long) event.getProperty(EventConstants.TIMESTAMP);
-                if (timestamp == null) {
-                    timestamp = System.currentTimeMillis();
+        if (filter.match(event)) {
+            if (dispatcher != null) {
+                dispatcher.dispatch(event);
+                return;
+            }
+            try {
+                batch(Collections.singletonList(event));
+            } catch (Exception e) {
+                LOGGER.error("Can't store in the database", e);
+            }
+        }
+    }
+
+    /**
+     * Store the events with a COPY when the connection is a PostgreSQL JDBC driver connection, with a batch of
+     * inserts else.
+     */
+    @Override
+    public void batch(List<Event> events) throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            Object copyManager = copyManager(connection);
+            if (copyManager != null) {
+                StringBuilder builder = rows.get();
+                builder.setLength(0);
+                for (Event event : events) {
+                    appendRow(builder, event);
                 }
+                try (Reader reader = new StringReader(builder.toString())) {
+                    copyInMethod.invoke(copyManager, copyQuery, reader);
+                } catch (java.lang.reflect.InvocationTargetException e) {
+                    throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                }
+                if (builder.capacity() > 4 * 1024 * 1024) {
+                    rows.remove();
+                }
+            } else {
                 try (PreparedStatement insertStatement = connection.prepareStatement(insertQuery)) {
-                    insertStatement.setLong(1, timestamp);
-                    insertStatement.setString(2, jsonSt);
-                    insertStatement.executeUpdate();
-                    LOGGER.trace("Data inserted into {} table", tableName);
+                    for (Event event : events) {
+                        insertStatement.setLong(1, timestamp(event));
+                        insertStatement.setString(2, content(event));
+                        for (int i = 0; i < columns.size(); i++) {
+                            TypedColumn column = columns.get(i);
+                            Object value = column.value(event);
+                            if (value != null) {
+                                insertStatement.setObject(3 + i, value);
+                            } else {
+                                insertStatement.setNull(3 + i, column.sqlType);
+                            }
+                        }
+                        if (events.size() > 1) {
+                            insertStatement.addBatch();
+                        }
+                    }
+                    if (events.size() > 1) {
+                        insertStatement.executeBatch();
+                    } else {
+                        insertStatement.executeUpdate();
+                    }
                 }
-            } catch (Exception e) {
-                LOGGER.error("Can't store in the database", e);
             }
+            LOGGER.trace("{} events inserted into {} table", events.size(), tableName);
+        }
+    }
+
+    private long timestamp(Event event) {
+        Object timestamp = event.getProperty(EventConstants.TIMESTAMP);
+        return (timestamp instanceof Number) ? ((Number) timestamp).longValue() : System.currentTimeMillis();
+    }
+
+    private String content(Event event) {
+        String content = marshaller.marshal(event);
+        return jsonb ? jsonb(content) : content;
+    }
+
+    /**
+     * jsonb can't store the NUL character: the <code>&#92;u0000</code> escapes of the JSON content are replaced by
+     * <code>&#92;ufffd</code>, else the whole batch is rejected.
+     */
+    static String jsonb(String json) {
+        int index = json.indexOf("\\u0000");
+        if (index < 0) {
+            return json;
+        }
+        StringBuilder builder = new StringBuilder(json.length());
+        int start = 0;
+        while (index >= 0) {
+            int backslashes = 0;
+            for (int i = index - 1; i >= 0 && json.charAt(i) == '\\'; i--) {
+                backslashes++;
+            }
+            builder.append(json, start, index);
+            // preceded by an odd number of backslashes, the backslash is escaped and it's not an unicode escape
+            builder.append((backslashes % 2 == 0) ? "\\ufffd" : "\\u0000");
+            start = index + 6;
+            index = json.indexOf("\\u0000", start);
+        }
+        builder.append(json, start, json.length());
+        return builder.toString();
+    }
+
+    /**
+     * Append the event as a row in COPY text format: tab separated columns, \N for null, with backslash escapes.
+     */
+    void appendRow(StringBuilder builder, Event event) {
+        builder.append(timestamp(event)).append('\t');
+        escape(builder, content(event));
+        for (TypedColumn column : columns) {
+            builder.append('\t');
+            Object value = column.value(event);
+            if (value != null) {
+                escape(builder, value.toString());
+            } else {
+                builder.append("\\N");
+            }
+        }
+        builder.append('\n');
+    }
+
+    private void escape(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\u0000':
+                    // not supported by the PostgreSQL text types
+                    builder.append('\ufffd');
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+    }
+
+    /**
+     * Get the PostgreSQL copy manager of the connection, using reflection as the driver is optional.
+     *
+     * @return the copy manager, or null if the connection doesn't support COPY.
+     */
+    private Object copyManager(Connection connection) {
+        if (!copyEnabled) {
+            return null;
+        }
+        try {
+            Class<?> pgConnectionClass = loadPgConnectionClass(connection);
+            if (pgConnectionClass == null || !connection.isWrapperFor(pgConnectionClass)) {
+                throw new IllegalStateException("Not a PostgreSQL JDBC driver connection");
+            }
+            Object pgConnection = connection.unwrap(pgConnectionClass);
+            if (getCopyApiMethod == null) {
+                getCopyApiMethod = pgConnectionClass.getMethod("getCopyAPI");
+            }
+            Object copyManager = getCopyApiMethod.invoke(pgConnection);
+            if (copyInMethod == null) {
+                copyInMethod = copyManager.getClass().getMethod("copyIn", String.class, Reader.class);
+            }
+            return copyManager;
+        } catch (Exception e) {
+            LOGGER.info("COPY is not supported by the datasource, using batch of inserts ({})", e.toString());
+            copyEnabled = false;
+            return null;
         }
     }
 
+    private Class<?> loadPgConnectionClass(Connection connection) {
+        for (ClassLoader classLoader : new ClassLoader[]{ getClass().getClassLoader(), connection.getClass().getClassLoader(), Thread.currentThread().getContextClassLoader() }) {
+            if (classLoader != null) {
+                try {
+                    return classLoader.loadClass("org.postgresql.PGConnection");
+                } catch (ClassNotFoundException e) {
+                    // try the next class loader
+                }
+            }
+        }
+        return null;
+    }
+
     private void createStructure(Connection connection) {
-        String tableName = getValue(config, TABLE_NAME_PROPERTY, TABLE_NAME_DEFAULT);
-        String createTemplate = createTableQueryTemplate;
-        String createTableQuery = createTemplate.replaceAll("TABLENAME", tableName);
+        long chunkInterval = Long.parseLong(getValue(config, CHUNK_INTERVAL_PROPERTY, CHUNK_INTERVAL_DEFAULT));
+        long compressionAfter = Long.parseLong(getValue(config, COMPRESSION_AFTER_PROPERTY, COMPRESSION_AFTER_DEFAULT));
+        String segmentBy = getValue(config, COMPRESSION_SEGMENTBY_PROPERTY, COMPRESSION_SEGMENTBY_DEFAULT);
 
-        String convertTemplate = convertHyperTableQueryTemplate;
-        String convertTableQuery = convertTemplate.replaceAll("TABLENAME", tableName);
+        List<String> queries = new ArrayList<>();
+        queries.add(createExtensionTemplate);
+        queries.add(createTableQueryTemplate.replaceAll("TABLENAME", tableName)
+                .replace("CONTENTTYPE", getValue(config, CONTENT_TYPE_PROPERTY, CONTENT_TYPE_DEFAULT)));
+        for (TypedColumn column : columns) {
+            queries.add(addColumnQueryTemplate.replaceAll("TABLENAME", tableName).replace("COLUMNDEFINITION", column.name + " " + column.type));
+        }
+        queries.add(convertHyperTableQueryTemplate.replaceAll("TABLENAME", tableName).replace("CHUNKINTERVAL", Long.toString(chunkInterval)));
+        // applies to the new chunks of an existing hypertable
+        queries.add(chunkIntervalQueryTemplate.replaceAll("TABLENAME", tableName).replace("CHUNKINTERVAL", Long.toString(chunkInterval)));
+        if (compressionAfter > 0) {
+            queries.add(createNowFunctionQueryTemplate.replaceAll("TABLENAME", tableName));
+            queries.add(setNowFunctionQueryTemplate.replaceAll("TABLENAME", tableName));
+            queries.add(compressionQueryTemplate.replaceAll("TABLENAME", tableName)
+                    .replace("SEGMENTBY", (segmentBy != null) ? ", timescaledb.compress_segmentby = '" + segmentBy + "'" : ""));
+            queries.add(compressionPolicyQueryTemplate.replaceAll("TABLENAME", tableName).replace("COMPRESSAFTER", Long.toString(compressionAfter)));
+        }
 
         try (Statement createStatement = connection.createStatement()) {
-            createStatement.executeUpdate(createExtensionTemplate);
-            LOGGER.debug("Extension has been created", tableName);
-            createStatement.executeUpdate(createTableQuery);
-            LOGGER.debug("Table {} has been created", tableName);
-            createStatement.execute(convertTableQuery);
-            LOGGER.debug("Table {} has been converted to hypertable", tableName);
+            for (String query : queries) {
+                try {
+                    createStatement.execute(query);
+                    LOGGER.debug("Executed {}", query);
+                } catch (SQLException e) {
+                    LOGGER.error("Can't execute {} on table {}", query, tableName, e);
+                }
+            }
         } catch (SQLException e) {
-            LOGGER.error("Can't create table {}", e);
+            LOGGER.error("Can't create table {}", tableName, e);
+        }
+    }
+
+    /**
+     * Event property stored in its own typed column, in addition to the JSON content.
+     */
+    static class TypedColumn {
+
+        final String property;
+        final String name;
+        final String type;
+        final int sqlType;
+
+        TypedColumn(String property, String type) {
+            this.property = property;
+            this.name = property.replaceAll("[^A-Za-z0-9_]", "_").toLowerCase();
+            switch (type.toLowerCase()) {
+                case "double":
+                    this.type = "DOUBLE PRECISION";
+                    this.sqlType = Types.DOUBLE;
+                    break;
+                case "bigint":
+                case "long":
+                    this.type = "BIGINT";
+                    this.sqlType = Types.BIGINT;
+                    break;
+                case "integer":
+                case "int":
+                    this.type = "INTEGER";
+                    this.sqlType = Types.INTEGER;
+                    break;
+                case "boolean":
+                    this.type = "BOOLEAN";
+                    this.sqlType = Types.BOOLEAN;
+                    break;
+                case "text":
+                    this.type = "TEXT";
+                    this.sqlType = Types.VARCHAR;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown column type " + type + " (double, bigint, integer, boolean or text expected)");
+            }
+        }
+
+        /**
+         * Parse the columns configuration: <code>property:type</code> comma separated list.
+         */
+        static List<TypedColumn> parse(String columns) {
+            List<TypedColumn> result = new ArrayList<>();
+            for (String column : columns.split(",")) {
+                column = column.trim();
+                if (column.isEmpty()) {
+                    continue;
+                }
+                int index = column.lastIndexOf(':');
+                result.add(index > 0 ? new TypedColumn(column.substring(0, index).trim(), column.substring(index + 1).trim())
+                        : new TypedColumn(column, "double"));
+            }
+            return result;
         }
+
+        /**
+         * Value of the column, null if the event doesn't have the property or if it can't be converted.
+         */
+        Object value(Event event) {
+            Object value = event.getProperty(property);
+            if (value == null) {
+                return null;
+            }
+            try {
+                switch (sqlType) {
+                    case Types.DOUBLE:
+                        return (value instanceof Number) ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+                    case Types.BIGINT:
+                        return (value instanceof Number) ? ((Number) value).longValue() : Long.parseLong(value.toString());
+                    case Types.INTEGER:
+                        if (value instanceof Number) {
+                            // a value out of the INTEGER range is not stored (instead of wrapping)
+                            long number = ((Number) value).longValue();
+                            return (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) ? (Object) (int) number : null;
+                        }
+                        return Integer.parseInt(value.toString());
+                    case Types.BOOLEAN:
+                        return (value instanceof Boolean) ? value : Boolean.parseBoolean(value.toString());
+                    default:
+                        return value.toString().replace('\u0000', '\ufffd');
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.timescaledb;
+
+import org.apache.karaf.decanter.api.marshaller.Marshaller;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import java.io.OutputStream;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+public class TimescaleDbAppenderTest {
+
+    /**
+     * Appender without datasource (the table creation fails and is logged), marshalling the <code>content</code>
+     * property of the events.
+     */
+    private static TimescaleDbAppender appender(String contentType, String columns) {
+        TimescaleDbAppender appender = new TimescaleDbAppender();
+        appender.marshaller = new Marshaller() {
+            @Override
+            public void marshal(Object obj, OutputStream out) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String marshal(Object obj) {
+                return (String) ((Event) obj).getProperty("content");
+            }
+        };
+        Hashtable<String, Object> config = new Hashtable<>();
+        config.put(TimescaleDbAppender.CONTENT_TYPE_PROPERTY, contentType);
+        config.put(TimescaleDbAppender.COLUMNS_PROPERTY, columns);
+        appender.open(config);
+        return appender;
+    }
+
+    private static Event event(Object... properties) {
+        Map<String, Object> data = new HashMap<>();
+        for (int i = 0; i < properties.length; i += 2) {
+            data.put((String) properties[i], properties[i + 1]);
+        }
+        return new Event("decanter/collect/jmx", data);
+    }
+
+    @Test
+    public void testAppendRow() {
+        TimescaleDbAppender appender = appender("text", "name:text,count:bigint");
+        StringBuilder builder = new StringBuilder();
+        appender.appendRow(builder, event("timestamp", 1704067200000L, "content", "{\"message\":\"a\\\\b\"}", "name", "tab\there", "count", 42L));
+        appender.appendRow(builder, event("timestamp", 1704067200001L, "content", "line\nbreak\r\n", "name", "nul\u0000char"));
+        Assert.assertEquals("1704067200000\t{\"message\":\"a\\\\\\\\b\"}\ttab\\there\t42\n"
+                + "1704067200001\tline\\nbreak\\r\\n\tnul\ufffdchar\t\\N\n", builder.toString());
+    }
+
+    @Test
+    public void testJsonb() {
+        // escaped NUL is replaced, an escaped backslash followed by u0000 is kept
+        Assert.assertEquals("{\"a\":\"x\\ufffdy\"}", TimescaleDbAppender.jsonb("{\"a\":\"x\\u0000y\"}"));
+        Assert.assertEquals("{\"a\":\"x\\\\u0000y\"}", TimescaleDbAppender.jsonb("{\"a\":\"x\\\\u0000y\"}"));
+        Assert.assertEquals("{\"a\":\"\\\\\\ufffd\\ufffd\"}", TimescaleDbAppender.jsonb("{\"a\":\"\\\\\\u0000\\u0000\"}"));
+        Assert.assertEquals("{\"a\":\"u0000\"}", TimescaleDbAppender.jsonb("{\"a\":\"u0000\"}"));
+
+        StringBuilder builder = new StringBuilder();
+        appender("jsonb", "").appendRow(builder, event("timestamp", 1L, "content", "{\"a\":\"\\u0000\"}"));
+        Assert.assertEquals("1\t{\"a\":\"\\\\ufffd\"}\n", builder.toString());
+        // the text content is kept as is
+        builder.setLength(0);
+        appender("text", "").appendRow(builder, event("timestamp", 1L, "content", "{\"a\":\"\\u0000\"}"));
+        Assert.assertEquals("1\t{\"a\":\"\\\\u0000\"}\n", builder.toString());
+    }
+
+    @Test
+    public void testParseColumns() {
+        List<TimescaleDbAppender.TypedColumn> columns = TimescaleDbAppender.TypedColumn.parse(
+                " HeapMemoryUsage.used:bigint, ProcessCpuLoad ,  up:boolean,java.lang:type=Threading:int,,name:TEXT");
+        Assert.assertEquals(5, columns.size());
+        Assert.assertEquals("HeapMemoryUsage.used", columns.get(0).property);
+        Assert.assertEquals("heapmemoryusage_used", columns.get(0).name);
+        Assert.assertEquals("BIGINT", columns.get(0).type);
+        Assert.assertEquals("processcpuload", columns.get(1).name);
+        Assert.assertEquals("DOUBLE PRECISION", columns.get(1).type);
+        Assert.assertEquals(Types.BOOLEAN, columns.get(2).sqlType);
+        // the type is after the last colon
+        Assert.assertEquals("java.lang:type=Threading", columns.get(3).property);
+        Assert.assertEquals("java_lang_type_threading", columns.get(3).name);
+        Assert.assertEquals("INTEGER", columns.get(3).type);
+        Assert.assertEquals(Types.VARCHAR, columns.get(4).sqlType);
+        Assert.assertTrue(TimescaleDbAppender.TypedColumn.parse("").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownColumnType() {
+        TimescaleDbAppender.TypedColumn.parse("count:float");
+    }
+
+    @Test
+    public void testColumnValue() {
+        List<TimescaleDbAppender.TypedColumn> columns = TimescaleDbAppender.TypedColumn.parse("value:int,value:bigint,value:double,value:boolean");
+        TimescaleDbAppender.TypedColumn integer = columns.get(0);
+        Assert.assertEquals(42, integer.value(event("value", 42L)));
+        Assert.assertEquals(42, integer.value(event("value", 42.9)));
+        Assert.assertEquals(-42, integer.value(event("value", "-42")));
+        Assert.assertEquals(Integer.MAX_VALUE, integer.value(event("value", (long) Integer.MAX_VALUE)));
+        // out of the INTEGER range: not stored instead of wrapped
+        Assert.assertNull(integer.value(event("value", Integer.MAX_VALUE + 1L)));
+        Assert.assertNull(integer.value(event("value", Long.MIN_VALUE)));
+        Assert.assertNull(integer.value(event("value", 1e20)));
+        Assert.assertNull(integer.value(event("value", "3000000000")));
+        Assert.assertNull(integer.value(event("value", "foo")));
+        Assert.assertNull(integer.value(event("other", 1)));
+
+        Assert.assertEquals(3000000000L, columns.get(1).value(event("value", "3000000000")));
+        Assert.assertEquals(1.5, columns.get(2).value(event("value", "1.5")));
+        Assert.assertEquals(true, columns.get(3).value(event("value", "true")));
+    }
+
+}
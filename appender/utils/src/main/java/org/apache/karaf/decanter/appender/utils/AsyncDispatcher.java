@@ -0,0 +1,402 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples an appender from the EventAdmin threads. The events are stored in a bounded {@link RingBuffer}
+ * and the worker threads pass them to the {@link BatchAppender} by batches: a batch is flushed when it
+ * reaches the batch size, or when the linger time is elapsed since its first event.
+ * When the buffer is full, the overflow policy applies:
+ * <ul>
+ *     <li><code>block</code>: the EventAdmin thread waits for free space in the buffer</li>
+ *     <li><code>drop_oldest</code>: the oldest event in the buffer is dropped</li>
+ *     <li><code>drop_newest</code>: the new event is dropped</li>
+ *     <li><code>spill</code>: the event is written in a local file, read back by the workers when the buffer is empty
+ *     (the events order is not preserved)</li>
+ * </ul>
+ */
+public class AsyncDispatcher implements AsyncDispatcherMBean {
+
+    public static final String ENABLED_CONFIG = "async.enabled";
+    public static final String BUFFER_SIZE_CONFIG = "async.buffer.size";
+    public static final String WORKERS_CONFIG = "async.workers";
+    public static final String BATCH_SIZE_CONFIG = "async.batch.size";
+    public static final String LINGER_CONFIG = "async.linger";
+    public static final String OVERFLOW_CONFIG = "async.overflow";
+    public static final String SPILL_DIRECTORY_CONFIG = "async.spill.directory";
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int DEFAULT_WORKERS = 1;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_LINGER = 100;
+    private static final String DEFAULT_OVERFLOW = "drop_newest";
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_BLOCK_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int[] BATCH_SIZE_BUCKETS = { 1, 10, 100, 1000 };
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(AsyncDispatcher.class);
+
+    public enum OverflowPolicy { BLOCK, DROP_OLDEST, DROP_NEWEST, SPILL }
+
+    private final String name;
+    private final Dictionary<String, Object> config;
+    private final BatchAppender appender;
+    private final RingBuffer<Event> buffer;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final SpillFile spill;
+    private final Worker[] workers;
+    private volatile boolean running = true;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLongArray batchSizeHistogram = new AtomicLongArray(BATCH_SIZE_BUCKETS.length + 1);
+    private final AtomicLong totalFlushLatency = new AtomicLong();
+    private final AtomicLong lastFlushLatency = new AtomicLong();
+    private final AtomicLong maxFlushLatency = new AtomicLong();
+
+    /**
+     * Create the dispatcher and start the workers.
+     *
+     * @param name the appender name, used for the threads and the spill file.
+     * @param config the appender configuration, containing the <code>async.*</code> properties.
+     * @param appender the appender storing the batches.
+     */
+    public AsyncDispatcher(String name, Dictionary<String, Object> config, BatchAppender appender) {
+        this.name = name;
+        this.config = config;
+        this.appender = appender;
+        this.buffer = new RingBuffer<>(Integer.parseInt(getValue(config, BUFFER_SIZE_CONFIG, String.valueOf(DEFAULT_BUFFER_SIZE))));
+        this.batchSize = Integer.parseInt(getValue(config, BATCH_SIZE_CONFIG, String.valueOf(DEFAULT_BATCH_SIZE)));
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(getValue(config, LINGER_CONFIG, String.valueOf(DEFAULT_LINGER))));
+        this.overflowPolicy = OverflowPolicy.valueOf(getValue(config, OVERFLOW_CONFIG, DEFAULT_OVERFLOW).toUpperCase());
+        if (overflowPolicy == OverflowPolicy.SPILL) {
+            String directory = getValue(config, SPILL_DIRECTORY_CONFIG, System.getProperty("java.io.tmpdir") + File.separator + "decanter");
+            try {
+                String instance = MBeanRegistrar.instance(config);
+                this.spill = new SpillFile(new File(directory, ((instance != null) ? name + "-" + instance : name) + ".spill"));
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't create spill file in " + directory, e);
+            }
+        } else {
+            this.spill = null;
+        }
+        int count = Integer.parseInt(getValue(config, WORKERS_CONFIG, String.valueOf(DEFAULT_WORKERS)));
+        this.workers = new Worker[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Worker("decanter-appender-" + name + "-" + i);
+        }
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Register the dispatcher counters as the appender MBean.
+     *
+     * @param bundleContext the appender bundle context.
+     * @return the service registration, to unregister before closing the dispatcher.
+     */
+    public ServiceRegistration<AsyncDispatcherMBean> register(BundleContext bundleContext) {
+        return MBeanRegistrar.register(bundleContext, AsyncDispatcherMBean.class, this, name, config);
+    }
+
+    /**
+     * Check if the asynchronous mode is enabled in the appender configuration.
+     */
+    public static boolean isEnabled(Dictionary<String, Object> config) {
+        return config != null && Boolean.parseBoolean(getValue(config, ENABLED_CONFIG, "false"));
+    }
+
+    private static String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
+        Object value = config.get(key);
+        return (value != null) ? value.toString().trim() : defaultValue;
+    }
+
+    /**
+     * Add an event in the buffer, applying the overflow policy if the buffer is full.
+     *
+     * @param event the event to append.
+     */
+    public void dispatch(Event event) {
+        if (!running) {
+            drop(event);
+            return;
+        }
+        if (!buffer.offer(event)) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    if (!block(event)) {
+                        drop(event);
+                        return;
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while (!buffer.offer(event)) {
+                        if (buffer.poll() != null) {
+                            dropped.increment();
+                        }
+                    }
+                    break;
+                case SPILL:
+                    try {
+                        spill.write(event);
+                        spilled.increment();
+                    } catch (IOException e) {
+                        LOGGER.warn("Can't write event in {} spill file", name, e);
+                        drop(event);
+                        return;
+                    }
+                    break;
+                default:
+                    drop(event);
+                    return;
+            }
+        }
+        enqueued.increment();
+        signal();
+    }
+
+    private boolean block(Event event) {
+        long park = 1000;
+        while (!buffer.offer(event)) {
+            if (!running || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(this, park);
+            park = Math.min(park * 2, MAX_BLOCK_PARK_NANOS);
+        }
+        return true;
+    }
+
+    private void drop(Event event) {
+        dropped.increment();
+        LOGGER.debug("{} appender buffer is full, dropping event {}", name, event.getTopic());
+    }
+
+    private void signal() {
+        for (Worker worker : workers) {
+            if (worker.sleeping) {
+                LockSupport.unpark(worker.thread);
+                return;
+            }
+        }
+    }
+
+    private boolean hasPendingEvents() {
+        return !buffer.isEmpty() || (spill != null && spill.size() > 0);
+    }
+
+    private void flush(List<Event> batch) {
+        long start = System.nanoTime();
+        try {
+            appender.batch(batch);
+            processed.addAndGet(batch.size());
+        } catch (Throwable t) {
+            failed.addAndGet(batch.size());
+            LOGGER.warn("Can't append {} events with {} appender", batch.size(), name, t);
+        } finally {
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            flushes.incrementAndGet();
+            totalFlushLatency.addAndGet(latency);
+            lastFlushLatency.set(latency);
+            maxFlushLatency.accumulateAndGet(latency, Math::max);
+            int bucket = 0;
+            while (bucket < BATCH_SIZE_BUCKETS.length && batch.size() > BATCH_SIZE_BUCKETS[bucket]) {
+                bucket++;
+            }
+            batchSizeHistogram.incrementAndGet(bucket);
+        }
+    }
+
+    /**
+     * Stop accepting events, flush the buffered events and stop the workers.
+     */
+    public void close() {
+        running = false;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+        long timeout = TimeUnit.SECONDS.toMillis(10) + TimeUnit.NANOSECONDS.toMillis(lingerNanos);
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        long remaining = buffer.size() + ((spill != null) ? spill.size() : 0);
+        if (remaining > 0) {
+            LOGGER.warn("{} events not stored by {} appender", remaining, name);
+        }
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    @Override
+    public int getQueueSize() {
+        return buffer.size();
+    }
+
+    @Override
+    public long getSpillSize() {
+        return (spill != null) ? spill.size() : 0;
+    }
+
+    @Override
+    public long getEnqueued() {
+        return enqueued.sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getSpilled() {
+        return spilled.sum();
+    }
+
+    @Override
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    @Override
+    public long[] getBatchSizeHistogram() {
+        long[] histogram = new long[batchSizeHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = batchSizeHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public long getLastFlushLatency() {
+        return lastFlushLatency.get();
+    }
+
+    @Override
+    public long getMaxFlushLatency() {
+        return maxFlushLatency.get();
+    }
+
+    @Override
+    public long getAverageFlushLatency() {
+        long count = flushes.get();
+        return (count > 0) ? totalFlushLatency.get() / count : 0;
+    }
+
+    private class Worker implements Runnable {
+
+        private final Thread thread;
+        private volatile boolean sleeping;
+
+        Worker(String threadName) {
+            thread = new Thread(this, threadName);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Event> batch = new ArrayList<>(batchSize);
+            while (running || hasPendingEvents()) {
+                Event event = next();
+                if (event == null) {
+                    if (running) {
+                        sleep(IDLE_NANOS);
+                    }
+                    continue;
+                }
+                batch.add(event);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    event = next();
+                    if (event != null) {
+                        batch.add(event);
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+                    sleep(remaining);
+                }
+                flush(batch);
+                batch.clear();
+            }
+        }
+
+        private Event next() {
+            Event event = buffer.poll();
+            if (event == null && spill != null && spill.size() > 0) {
+                try {
+                    event = spill.read();
+                } catch (IOException e) {
+                    LOGGER.warn("Events lost in {} spill file", name, e);
+                }
+            }
+            return event;
+        }
+
+        private void sleep(long nanos) {
+            sleeping = true;
+            if (running && !hasPendingEvents()) {
+                LockSupport.parkNanos(this, nanos);
+            }
+            sleeping = false;
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+/**
+ * Counters of an appender asynchronous mode.
+ */
+public interface AsyncDispatcherMBean {
+
+    /**
+     * Number of events waiting in the buffer.
+     */
+    int getQueueSize();
+
+    /**
+     * Number of events waiting in the spill file.
+     */
+    long getSpillSize();
+
+    /**
+     * Number of events accepted (in the buffer or the spill file).
+     */
+    long getEnqueued();
+
+    /**
+     * Number of events dropped because the buffer was full.
+     */
+    long getDropped();
+
+    /**
+     * Number of events written in the spill file because the buffer was full.
+     */
+    long getSpilled();
+
+    /**
+     * Number of events successfully stored by the appender.
+     */
+    long getProcessed();
+
+    /**
+     * Number of events lost because the appender failed to store the batch.
+     */
+    long getFailed();
+
+    /**
+     * Number of batches passed to the appender.
+     */
+    long getFlushes();
+
+    /**
+     * Number of batches per size: 1, 2 to 10, 11 to 100, 101 to 1000, more than 1000 events.
+     */
+    long[] getBatchSizeHistogram();
+
+    /**
+     * Latency (in ms) of the last batch.
+     */
+    long getLastFlushLatency();
+
+    /**
+     * Maximum latency (in ms) of the batches.
+     */
+    long getMaxFlushLatency();
+
+    /**
+     * Average latency (in ms) of the batches.
+     */
+    long getAverageFlushLatency();
+
+}
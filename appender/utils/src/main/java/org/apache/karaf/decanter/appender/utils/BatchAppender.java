@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+import org.osgi.service.event.Event;
+
+import java.util.List;
+
+/**
+ * Appender able to store several events at once, used by the {@link AsyncDispatcher} workers.
+ */
+public interface BatchAppender {
+
+    /**
+     * Store a batch of events. The list is reused by the caller and must not be kept after the call.
+     *
+     * @param events the events to store (already filtered).
+     * @throws Exception if the batch can't be stored.
+     */
+    void batch(List<Event> events) throws Exception;
+
+}
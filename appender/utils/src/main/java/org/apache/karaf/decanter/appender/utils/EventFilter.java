@@ -19,44 +19,197 @@ package org.apache.karaf.decanter.appender.utils;
 import org.osgi.service.event.Event;
 
 import java.util.Dictionary;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+/**
+ * Filter applied by the appenders on the received events, based on regex on the property names and values.
+ * The filter is created once from the appender configuration: the regex are compiled and the decision
+ * taken on a property name is cached.
+ */
 public class EventFilter {
 
     public static final String PROPERTY_NAME_EXCLUDE_CONFIG = "event.property.name.exclude";
     public static final String PROPERTY_NAME_INCLUDE_CONFIG = "event.property.name.include";
     public static final String PROPERTY_VALUE_EXCLUDE_CONFIG = "event.property.value.exclude";
     public static final String PROPERTY_VALUE_INCLUDE_CONFIG = "event.property.value.include";
+    public static final String PROPERTY_NAME_CACHE_SIZE_CONFIG = "event.property.name.cache.size";
 
-    public static boolean match(Event event, Dictionary<String, Object> config) {
-        if (config == null) {
-            return true;
-        }
+    private static final int DEFAULT_NAME_CACHE_SIZE = 1000;
 
-        String nameExcludeRegex = (config.get(PROPERTY_NAME_EXCLUDE_CONFIG) != null) ? (String) config.get(PROPERTY_NAME_EXCLUDE_CONFIG) : null;
-        String nameIncludeRegex = (config.get(PROPERTY_NAME_INCLUDE_CONFIG) != null) ? (String) config.get(PROPERTY_NAME_INCLUDE_CONFIG) : null;
-        String valueExcludeRegex = (config.get(PROPERTY_VALUE_EXCLUDE_CONFIG) != null) ? (String) config.get(PROPERTY_VALUE_EXCLUDE_CONFIG) : null;
-        String valueIncludeRegex = (config.get(PROPERTY_VALUE_INCLUDE_CONFIG) != null) ? (String) config.get(PROPERTY_VALUE_INCLUDE_CONFIG) : null;
+    private enum Decision { EXCLUDE, INCLUDE, NONE }
 
-        for (String name : event.getPropertyNames()) {
-            if (nameExcludeRegex != null && name.matches(nameExcludeRegex)) {
-                return false;
-            }
+    private final Pattern nameExclude;
+    private final Pattern nameInclude;
+    private final Pattern valueExclude;
+    private final Pattern valueInclude;
+    private final int nameCacheSize;
+    private final long matchTimeout;
+    private final Map<String, Decision> nameDecisions = new ConcurrentHashMap<>();
 
-            if (nameIncludeRegex != null && name.matches(nameIncludeRegex)) {
-                return true;
-            }
+    public EventFilter(Dictionary<String, Object> config) {
+        this(config, 0);
+    }
+
+    /**
+     * Create a filter from regex supplied by a client: a regex taking more than the timeout to match a property
+     * fails with a {@link MatchTimeoutException}, so a catastrophic backtracking doesn't block the caller.
+     *
+     * @param config the filter properties.
+     * @param matchTimeout the max time of a regex match, in ms (0 for no limit).
+     */
+    public EventFilter(Dictionary<String, Object> config, long matchTimeout) {
+        this.matchTimeout = matchTimeout;
+        nameExclude = compile(config, PROPERTY_NAME_EXCLUDE_CONFIG);
+        nameInclude = compile(config, PROPERTY_NAME_INCLUDE_CONFIG);
+        valueExclude = compile(config, PROPERTY_VALUE_EXCLUDE_CONFIG);
+        valueInclude = compile(config, PROPERTY_VALUE_INCLUDE_CONFIG);
+        Object cacheSize = (config != null) ? config.get(PROPERTY_NAME_CACHE_SIZE_CONFIG) : null;
+        nameCacheSize = (cacheSize != null) ? Integer.parseInt(cacheSize.toString().trim()) : DEFAULT_NAME_CACHE_SIZE;
+    }
+
+    private static Pattern compile(Dictionary<String, Object> config, String key) {
+        if (config == null || config.get(key) == null) {
+            return null;
+        }
+        return Pattern.compile((String) config.get(key));
+    }
 
-            if (event.getProperty(name) != null && event.getProperty(name) instanceof String) {
-                if (valueExcludeRegex != null && ((String) event.getProperty(name)).matches(valueExcludeRegex)) {
+    /**
+     * Check if the event has to be appended. The properties are checked in order, the first property
+     * matching an exclude (false) or include (true) regex decides. An event without matching property is accepted.
+     *
+     * @param event the event to check.
+     * @return true if the event has to be appended, false else.
+     */
+    public boolean match(Event event) {
+        boolean checkNames = nameExclude != null || nameInclude != null;
+        boolean checkValues = valueExclude != null || valueInclude != null;
+        if (!checkNames && !checkValues) {
+            return true;
+        }
+
+        for (String name : event.getPropertyNames()) {
+            if (checkNames) {
+                Decision decision = decide(name);
+                if (decision == Decision.EXCLUDE) {
                     return false;
                 }
-                if (valueIncludeRegex != null && ((String) event.getProperty(name)).matches(valueIncludeRegex)) {
+                if (decision == Decision.INCLUDE) {
                     return true;
                 }
             }
 
+            if (checkValues) {
+                Object value = event.getProperty(name);
+                if (value instanceof String) {
+                    if (valueExclude != null && matches(valueExclude, (String) value)) {
+                        return false;
+                    }
+                    if (valueInclude != null && matches(valueInclude, (String) value)) {
+                        return true;
+                    }
+                }
+            }
         }
         return true;
     }
 
+    private Decision decide(String name) {
+        Decision decision = nameDecisions.get(name);
+        if (decision == null) {
+            if (nameExclude != null && matches(nameExclude, name)) {
+                decision = Decision.EXCLUDE;
+            } else if (nameInclude != null && matches(nameInclude, name)) {
+                decision = Decision.INCLUDE;
+            } else {
+                decision = Decision.NONE;
+            }
+            if (nameDecisions.size() < nameCacheSize) {
+                nameDecisions.put(name, decision);
+            }
+        }
+        return decision;
+    }
+
+    private boolean matches(Pattern pattern, String value) {
+        return (matchTimeout > 0) ? matches(pattern, value, matchTimeout) : pattern.matcher(value).matches();
+    }
+
+    /**
+     * Match a value against a regex, failing if the match takes more than the timeout.
+     *
+     * @param pattern the regex.
+     * @param value the value to match.
+     * @param timeout the max time of the match, in ms.
+     * @return true if the value matches the regex.
+     * @throws MatchTimeoutException if the match takes more than the timeout.
+     */
+    public static boolean matches(Pattern pattern, String value, long timeout) {
+        return pattern.matcher(new DeadlineCharSequence(value, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout))).matches();
+    }
+
+    /**
+     * Check if the event has to be appended, compiling the filter for each call.
+     * The appenders should create an {@link EventFilter} at activation time and use {@link #match(Event)}.
+     */
+    public static boolean match(Event event, Dictionary<String, Object> config) {
+        if (config == null) {
+            return true;
+        }
+        return new EventFilter(config).match(event);
+    }
+
+    /**
+     * Thrown when a regex takes more than the timeout to match a value.
+     */
+    public static class MatchTimeoutException extends RuntimeException {
+
+        MatchTimeoutException(String message) {
+            super(message, null, false, false);
+        }
+
+    }
+
+    /**
+     * Value checking the match deadline while the regex engine reads it (the check is done every 4096 reads).
+     */
+    private static final class DeadlineCharSequence implements CharSequence {
+
+        private final String value;
+        private final long deadline;
+        private int reads;
+
+        DeadlineCharSequence(String value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++reads & 0xFFF) == 0 && System.nanoTime() - deadline > 0) {
+                throw new MatchTimeoutException("Regex match timeout on a value of " + value.length() + " characters");
+            }
+            return value.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DeadlineCharSequence(value.substring(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+
+    }
+
 }
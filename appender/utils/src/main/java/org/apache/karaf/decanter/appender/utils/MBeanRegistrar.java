@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+
+import javax.management.ObjectName;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+/**
+ * Registers the appender MBeans (as services exported by the Karaf JMX whiteboard).
+ * The MBean is named <code>org.apache.karaf.decanter:type=appender,name=&lt;appender&gt;</code>. When the appender
+ * component is created from a factory configuration, the configuration PID is added in the name, so each instance
+ * has its own MBean.
+ */
+public final class MBeanRegistrar {
+
+    private static final String COMPONENT_NAME = "component.name";
+
+    private MBeanRegistrar() {
+    }
+
+    /**
+     * Register an appender MBean.
+     *
+     * @param bundleContext the appender bundle context.
+     * @param type the MBean interface.
+     * @param mbean the MBean.
+     * @param name the appender name.
+     * @param config the appender component properties.
+     * @return the service registration, to unregister on deactivation.
+     */
+    public static <T> ServiceRegistration<T> register(BundleContext bundleContext, Class<T> type, T mbean, String name, Dictionary<String, Object> config) {
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("jmx.objectname", objectName(name, config));
+        return bundleContext.registerService(type, mbean, properties);
+    }
+
+    /**
+     * The MBean object name of an appender component instance.
+     *
+     * @param name the appender name.
+     * @param config the appender component properties.
+     * @return the object name.
+     */
+    public static String objectName(String name, Dictionary<String, Object> config) {
+        String objectName = "org.apache.karaf.decanter:type=appender,name=" + name;
+        String pid = instance(config);
+        return (pid != null) ? objectName + ",pid=" + ObjectName.quote(pid) : objectName;
+    }
+
+    /**
+     * The configuration PID of an appender component created from a factory configuration.
+     *
+     * @param config the appender component properties.
+     * @return the PID, <code>null</code> for a singleton component.
+     */
+    static String instance(Dictionary<String, Object> config) {
+        if (config == null) {
+            return null;
+        }
+        Object pid = config.get(Constants.SERVICE_PID);
+        Object componentName = config.get(COMPONENT_NAME);
+        if (pid == null || pid.equals(componentName)) {
+            return null;
+        }
+        return pid.toString();
+    }
+
+}
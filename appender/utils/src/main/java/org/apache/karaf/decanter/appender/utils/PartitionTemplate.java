@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+import org.osgi.service.event.Event;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Template of the partition (path or key prefix) where an event is written by the file based appenders.
+ * <code>${topic}</code> is the event topic (without the <code>decanter/collect/</code> prefix), any other placeholder
+ * is a date pattern applied on the event timestamp (UTC), for instance <code>logs/${topic}/dt=${yyyy-MM-dd}/</code>.
+ * The template is parsed once, on the appender activation.
+ */
+public class PartitionTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}]+)}");
+    private static final String COLLECT_PREFIX = "decanter/collect/";
+    private static final Object TOPIC = new Object();
+
+    private final List<Object> parts = new ArrayList<>();
+
+    public PartitionTemplate(String template) {
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int position = 0;
+        while (matcher.find()) {
+            parts.add(template.substring(position, matcher.start()));
+            String name = matcher.group(1);
+            parts.add(name.equals("topic") ? TOPIC : DateTimeFormatter.ofPattern(name).withZone(ZoneOffset.UTC));
+            position = matcher.end();
+        }
+        parts.add(template.substring(position));
+    }
+
+    /**
+     * The partition of an event. The event without <code>timestamp</code> property (or with a non numeric one)
+     * goes in the partition of the current time.
+     *
+     * @param event the event.
+     * @return the path or key prefix of the event.
+     */
+    public String format(Event event) {
+        if (parts.size() == 1) {
+            return (String) parts.get(0);
+        }
+        Object timestamp = event.getProperty("timestamp");
+        Instant instant = Instant.ofEpochMilli((timestamp instanceof Number) ? ((Number) timestamp).longValue() : System.currentTimeMillis());
+        StringBuilder builder = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof DateTimeFormatter) {
+                builder.append(((DateTimeFormatter) part).format(instant));
+            } else if (part == TOPIC) {
+                String topic = event.getTopic();
+                builder.append(topic.startsWith(COLLECT_PREFIX) ? topic.substring(COLLECT_PREFIX.length()) : topic);
+            } else {
+                builder.append((String) part);
+            }
+        }
+        return builder.toString();
+    }
+
+}
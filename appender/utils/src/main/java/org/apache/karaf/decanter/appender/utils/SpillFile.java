@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+import org.osgi.service.event.Event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File storing the events which don't fit in the {@link AsyncDispatcher} buffer. The events are appended
+ * to the file and read back in order, the file is truncated when all events have been read.
+ * Only the property values coming from the JDK are serialized as is, the other values are stored as string.
+ */
+class SpillFile {
+
+    private static final ObjectInputFilter JDK_ONLY = info -> {
+        Class<?> serialClass = info.serialClass();
+        if (serialClass == null || serialClass.isPrimitive() || serialClass.getClassLoader() == null) {
+            return ObjectInputFilter.Status.UNDECIDED;
+        }
+        return ObjectInputFilter.Status.REJECTED;
+    };
+
+    private final File file;
+    private final RandomAccessFile access;
+    private long readPosition;
+    private long writePosition;
+    private volatile long count;
+
+    SpillFile(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        this.file = file;
+        this.access = new RandomAccessFile(file, "rw");
+        this.access.setLength(0);
+    }
+
+    synchronized void write(Event event) throws IOException {
+        Map<String, Object> properties = new HashMap<>();
+        for (String name : event.getPropertyNames()) {
+            Object value = event.getProperty(name);
+            if (value instanceof Serializable && value.getClass().getClassLoader() == null) {
+                properties.put(name, value);
+            } else if (value != null) {
+                properties.put(name, value.toString());
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeUTF(event.getTopic());
+            out.writeObject(properties);
+        }
+        access.seek(writePosition);
+        access.writeInt(bytes.size());
+        access.write(bytes.toByteArray());
+        writePosition = access.getFilePointer();
+        count++;
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized Event read() throws IOException {
+        if (count == 0) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            access.seek(readPosition);
+            bytes = new byte[access.readInt()];
+            access.readFully(bytes);
+            readPosition = access.getFilePointer();
+            count--;
+        } catch (IOException e) {
+            // the remaining events can't be trusted anymore
+            count = 0;
+            throw new IOException("Can't read spill file " + file, e);
+        } finally {
+            if (count == 0) {
+                readPosition = 0;
+                writePosition = 0;
+                access.setLength(0);
+            }
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            in.setObjectInputFilter(JDK_ONLY);
+            String topic = in.readUTF();
+            return new Event(topic, (Map<String, Object>) in.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Can't read event from spill file " + file, e);
+        }
+    }
+
+    long size() {
+        return count;
+    }
+
+    synchronized void close() {
+        try {
+            access.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.service.event.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncDispatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Event event(int index) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("index", index);
+        data.put("object", new Value("value" + index));
+        return new Event("decanter/collect/test", data);
+    }
+
+    private static class Value {
+
+        private final String value;
+
+        Value(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+
+    }
+
+    private static class Collector implements BatchAppender {
+
+        private final List<Event> events = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        private volatile CountDownLatch latch;
+
+        @Override
+        public void batch(List<Event> events) throws Exception {
+            if (latch != null) {
+                latch.await();
+            }
+            this.events.addAll(events);
+            this.batches.add(events.size());
+        }
+
+    }
+
+    private Dictionary<String, Object> config(String... keyValues) {
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put(AsyncDispatcher.ENABLED_CONFIG, "true");
+        for (int i = 0; i < keyValues.length; i += 2) {
+            config.put(keyValues[i], keyValues[i + 1]);
+        }
+        return config;
+    }
+
+    @Test
+    public void testEnabled() {
+        Assert.assertFalse(AsyncDispatcher.isEnabled(null));
+        Assert.assertFalse(AsyncDispatcher.isEnabled(new Hashtable<>()));
+        Assert.assertTrue(AsyncDispatcher.isEnabled(config()));
+    }
+
+    @Test(timeout = 30000)
+    public void testBatchSize() throws Exception {
+        Collector collector = new Collector();
+        collector.latch = new CountDownLatch(1);
+        AsyncDispatcher dispatcher = new AsyncDispatcher("test", config(
+                AsyncDispatcher.BATCH_SIZE_CONFIG, "10",
+                AsyncDispatcher.LINGER_CONFIG, "60000"), collector);
+        for (int i = 0; i < 25; i++) {
+            dispatcher.dispatch(event(i));
+        }
+        collector.latch.countDown();
+        dispatcher.close();
+        Assert.assertEquals(25, collector.events.size());
+        Assert.assertEquals(25, dispatcher.getProcessed());
+        Assert.assertEquals(25, dispatcher.getEnqueued());
+        Assert.assertEquals(0, dispatcher.getDropped());
+        for (int batch : collector.batches) {
+            Assert.assertTrue(batch <= 10);
+        }
+        long[] histogram = dispatcher.getBatchSizeHistogram();
+        Assert.assertEquals(dispatcher.getFlushes(), histogram[0] + histogram[1]);
+    }
+
+    @Test(timeout = 30000)
+    public void testLinger() throws Exception {
+        Collector collector = new Collector();
+        AsyncDispatcher dispatcher = new AsyncDispatcher("test", config(
+                AsyncDispatcher.BATCH_SIZE_CONFIG, "1000",
+                AsyncDispatcher.LINGER_CONFIG, "50"), collector);
+        try {
+            dispatcher.dispatch(event(0));
+            dispatcher.dispatch(event(1));
+            long start = System.nanoTime();
+            while (collector.events.size() < 2) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+            Assert.assertEquals(0, collector.events.get(0).getProperty("index"));
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testDropNewest() throws Exception {
+        Collector collector = new Collector();
+        collector.latch = new CountDownLatch(1);
+        AsyncDispatcher dispatcher = new AsyncDispatcher("test", config(
+                AsyncDispatcher.BUFFER_SIZE_CONFIG, "4",
+                AsyncDispatcher.BATCH_SIZE_CONFIG, "1"), collector);
+        dispatcher.dispatch(event(0));
+        // wait for the worker to take the first event
+        while (dispatcher.getQueueSize() > 0) {
+            Thread.sleep(10);
+        }
+        for (int i = 1; i < 10; i++) {
+            dispatcher.dispatch(event(i));
+        }
+        Assert.assertEquals(5, dispatcher.getDropped());
+        collector.latch.countDown();
+        dispatcher.close();
+        Assert.assertEquals(5, collector.events.size());
+        Assert.assertEquals(4, collector.events.get(4).getProperty("index"));
+    }
+
+    @Test(timeout = 30000)
+    public void testDropOldest() throws Exception {
+        Collector collector = new Collector();
+        collector.latch = new CountDownLatch(1);
+        AsyncDispatcher dispatcher = new AsyncDispatcher("test", config(
+                AsyncDispatcher.BUFFER_SIZE_CONFIG, "4",
+                AsyncDispatcher.BATCH_SIZE_CONFIG, "1",
+                AsyncDispatcher.OVERFLOW_CONFIG, "drop_oldest"), collector);
+        dispatcher.dispatch(event(0));
+        while (dispatcher.getQueueSize() > 0) {
+            Thread.sleep(10);
+        }
+        for (int i = 1; i < 10; i++) {
+            dispatcher.dispatch(event(i));
+        }
+        Assert.assertEquals(5, dispatcher.getDropped());
+        collector.latch.countDown();
+        dispatcher.close();
+        Assert.assertEquals(5, collector.events.size());
+        Assert.assertEquals(6, collector.events.get(1).getProperty("index"));
+    }
+
+    @Test(timeout = 30000)
+    public void testBlock() throws Exception {
+        Collector collector = new Collector();
+        AsyncDispatcher dispatcher = new AsyncDispatcher("test", config(
+                AsyncDispatcher.BUFFER_SIZE_CONFIG, "2",
+                AsyncDispatcher.BATCH_SIZE_CONFIG, "1",
+                AsyncDispatcher.OVERFLOW_CONFIG, "block"), collector);
+        for (int i = 0; i < 100; i++) {
+            dispatcher.dispatch(event(i));
+        }
+        dispatcher.close();
+        Assert.assertEquals(0, dispatcher.getDropped());
+        Assert.assertEquals(100, collector.events.size());
+    }
+
+    @Test(timeout = 30000)
+    public void testSpill() throws Exception {
+        Collector collector = new Collector();
+        collector.latch = new CountDownLatch(1);
+        AsyncDispatcher dispatcher = new AsyncDispatcher("test", config(
+                AsyncDispatcher.BUFFER_SIZE_CONFIG, "4",
+                AsyncDispatcher.BATCH_SIZE_CONFIG, "1",
+                AsyncDispatcher.OVERFLOW_CONFIG, "spill",
+                AsyncDispatcher.SPILL_DIRECTORY_CONFIG, folder.getRoot().getAbsolutePath()), collector);
+        dispatcher.dispatch(event(0));
+        while (dispatcher.getQueueSize() > 0) {
+            Thread.sleep(10);
+        }
+        for (int i = 1; i < 10; i++) {
+            dispatcher.dispatch(event(i));
+        }
+        Assert.assertEquals(0, dispatcher.getDropped());
+        Assert.assertEquals(5, dispatcher.getSpilled());
+        Assert.assertEquals(5, dispatcher.getSpillSize());
+        collector.latch.countDown();
+        dispatcher.close();
+        Assert.assertEquals(10, collector.events.size());
+        Assert.assertEquals(0, dispatcher.getSpillSize());
+        Event spilled = collector.events.get(9);
+        Assert.assertEquals(9, spilled.getProperty("index"));
+        // the values which are not coming from the JDK are spilled as string
+        Assert.assertEquals("value9", spilled.getProperty("object"));
+    }
+
+    @Test(timeout = 30000)
+    public void testFailure() throws Exception {
+        AsyncDispatcher dispatcher = new AsyncDispatcher("test", config(), events -> {
+            throw new IllegalStateException("expected");
+        });
+        dispatcher.dispatch(event(0));
+        dispatcher.close();
+        Assert.assertEquals(1, dispatcher.getFailed());
+        Assert.assertEquals(0, dispatcher.getProcessed());
+    }
+
+}
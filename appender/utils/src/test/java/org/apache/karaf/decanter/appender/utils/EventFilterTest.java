@@ -24,6 +24,7 @@ import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public class EventFilterTest {
 
@@ -64,6 +65,49 @@ public class EventFilterTest {
         Assert.assertTrue(EventFilter.match(prepareTestEvent(), config));
     }
 
+    @Test
+    public void compiledFilter() {
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put(EventFilter.PROPERTY_NAME_EXCLUDE_CONFIG, "key.*");
+        config.put(EventFilter.PROPERTY_VALUE_INCLUDE_CONFIG, "other");
+        EventFilter filter = new EventFilter(config);
+        // the decision on the property names is cached, the result doesn't change
+        Assert.assertFalse(filter.match(prepareTestEvent()));
+        Assert.assertFalse(filter.match(prepareTestEvent()));
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("other", "other");
+        map.put("count", 10);
+        Assert.assertTrue(filter.match(new Event("test", map)));
+
+        config.put(EventFilter.PROPERTY_NAME_CACHE_SIZE_CONFIG, "0");
+        filter = new EventFilter(config);
+        Assert.assertFalse(filter.match(prepareTestEvent()));
+        Assert.assertTrue(filter.match(new Event("test", map)));
+
+        Assert.assertTrue(new EventFilter(null).match(prepareTestEvent()));
+    }
+
+    @Test
+    public void matchTimeout() {
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put(EventFilter.PROPERTY_VALUE_INCLUDE_CONFIG, "((a+)+)+b");
+        Map<String, Object> map = new HashMap<>();
+        map.put("key", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+        Event event = new Event("test", map);
+        EventFilter filter = new EventFilter(config, 100);
+        long start = System.currentTimeMillis();
+        try {
+            filter.match(event);
+            Assert.fail("MatchTimeoutException expected");
+        } catch (EventFilter.MatchTimeoutException e) {
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        }
+        // a regular match is not affected
+        Assert.assertTrue(new EventFilter(config, 100).match(prepareTestEvent()));
+        Assert.assertTrue(EventFilter.matches(Pattern.compile("val.*"), "value", 100));
+    }
+
     private Event prepareTestEvent() {
         Map<String, Object> map = new HashMap<>();
         map.put("key1", "value1");
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+public class MBeanRegistrarTest {
+
+    @Test
+    public void testSingleton() {
+        Assert.assertEquals("org.apache.karaf.decanter:type=appender,name=jdbc", MBeanRegistrar.objectName("jdbc", null));
+        Assert.assertEquals("org.apache.karaf.decanter:type=appender,name=jdbc", MBeanRegistrar.objectName("jdbc", new Hashtable<>()));
+
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("component.name", "org.apache.karaf.decanter.appender.jdbc");
+        config.put("service.pid", "org.apache.karaf.decanter.appender.jdbc");
+        Assert.assertEquals("org.apache.karaf.decanter:type=appender,name=jdbc", MBeanRegistrar.objectName("jdbc", config));
+    }
+
+    @Test
+    public void testFactoryConfiguration() throws Exception {
+        Dictionary<String, Object> first = new Hashtable<>();
+        first.put("component.name", "org.apache.karaf.decanter.appender.jdbc");
+        first.put("service.pid", "org.apache.karaf.decanter.appender.jdbc~audit");
+        Dictionary<String, Object> second = new Hashtable<>();
+        second.put("component.name", "org.apache.karaf.decanter.appender.jdbc");
+        second.put("service.pid", "org.apache.karaf.decanter.appender.jdbc~metrics,2");
+
+        ObjectName firstName = new ObjectName(MBeanRegistrar.objectName("jdbc", first));
+        ObjectName secondName = new ObjectName(MBeanRegistrar.objectName("jdbc", second));
+        Assert.assertNotEquals(firstName, secondName);
+        Assert.assertEquals("jdbc", firstName.getKeyProperty("name"));
+        Assert.assertEquals("org.apache.karaf.decanter.appender.jdbc~audit", ObjectName.unquote(firstName.getKeyProperty("pid")));
+        Assert.assertEquals("org.apache.karaf.decanter.appender.jdbc~metrics,2", ObjectName.unquote(secondName.getKeyProperty("pid")));
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import java.time.Instant;
+import java.time.Year;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PartitionTemplateTest {
+
+    private static Event event(String topic, Object timestamp) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("timestamp", timestamp);
+        return new Event(topic, data);
+    }
+
+    @Test
+    public void testFormat() {
+        PartitionTemplate template = new PartitionTemplate("logs/${topic}/dt=${yyyy-MM-dd}/hour=${HH}/events.csv");
+        long timestamp = Instant.parse("2024-01-01T23:59:59.999Z").toEpochMilli();
+        Assert.assertEquals("logs/log/dt=2024-01-01/hour=23/events.csv", template.format(event("decanter/collect/log", timestamp)));
+        Assert.assertEquals("logs/jmx/local/dt=2024-01-02/hour=00/events.csv", template.format(event("decanter/collect/jmx/local", timestamp + 1)));
+        Assert.assertEquals("logs/decanter/alert/dt=2024-01-01/hour=23/events.csv", template.format(event("decanter/alert", timestamp)));
+    }
+
+    @Test
+    public void testTimestamp() {
+        PartitionTemplate template = new PartitionTemplate("${yyyy}");
+        Assert.assertEquals("1970", template.format(event("decanter/collect/log", 0)));
+        Assert.assertEquals("1970", template.format(event("decanter/collect/log", 0L)));
+        // no usable timestamp: the current time
+        String year = String.valueOf(Year.now(ZoneOffset.UTC).getValue());
+        Assert.assertEquals(year, template.format(event("decanter/collect/log", "yesterday")));
+    }
+
+    @Test
+    public void testConstant() {
+        Assert.assertEquals("/decanter/events.csv", new PartitionTemplate("/decanter/events.csv").format(event("decanter/collect/log", 0L)));
+        Assert.assertEquals("", new PartitionTemplate("").format(event("decanter/collect/log", 0L)));
+    }
+
+}
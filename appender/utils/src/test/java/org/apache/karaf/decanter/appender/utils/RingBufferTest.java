@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RingBufferTest {
+
+    @Test
+    public void testCapacity() {
+        Assert.assertEquals(1, new RingBuffer<String>(1).capacity());
+        Assert.assertEquals(8, new RingBuffer<String>(8).capacity());
+        Assert.assertEquals(16, new RingBuffer<String>(9).capacity());
+    }
+
+    @Test
+    public void testOfferPoll() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        Assert.assertNull(buffer.poll());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(4));
+        Assert.assertEquals(4, buffer.size());
+        Assert.assertEquals(Integer.valueOf(0), buffer.poll());
+        Assert.assertTrue(buffer.offer(4));
+        List<Integer> list = new ArrayList<>();
+        Assert.assertEquals(4, buffer.drainTo(list, 10));
+        Assert.assertEquals(List.of(1, 2, 3, 4), list);
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrent() throws Exception {
+        int producers = 4;
+        int consumers = 2;
+        int count = 20000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        ConcurrentHashMap<Integer, Boolean> received = new ConcurrentHashMap<>();
+        AtomicInteger remaining = new AtomicInteger(producers * count);
+        CountDownLatch done = new CountDownLatch(producers + consumers);
+        for (int p = 0; p < producers; p++) {
+            int offset = p * count;
+            new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    while (!buffer.offer(offset + i)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        for (int c = 0; c < consumers; c++) {
+            new Thread(() -> {
+                while (remaining.get() > 0) {
+                    Integer value = buffer.poll();
+                    if (value != null) {
+                        Assert.assertNull(received.put(value, Boolean.TRUE));
+                        remaining.decrementAndGet();
+                    } else {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        Assert.assertEquals(producers * count, received.size());
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+}
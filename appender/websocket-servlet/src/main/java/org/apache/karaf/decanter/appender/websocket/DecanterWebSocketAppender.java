@@ -18,10 +18,6 @@ package org.apache.karaf.decanter.appender.websocket;
 
 import org.apache.karaf.decanter.api.marshaller.Marshaller;
 import org.apache.karaf.decanter.appender.utils.EventFilter;
-import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
-import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
-import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -31,13 +27,10 @@ import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
 import org.osgi.service.event.EventHandler;
 import org.osgi.service.http.HttpService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
 import java.util.Dictionary;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 @Component(
@@ -45,16 +38,26 @@ import java.util.Set;
         immediate = true,
         property = EventConstants.EVENT_TOPIC + "=decanter/collect/*"
 )
-@WebSocket
 public class DecanterWebSocketAppender implements EventHandler {
 
     public static final String ALIAS_PROPERTY = "servlet.alias";
 
-    public static final String ALIAS_DEFAULT = "/decanter-websocket";
+    public static final String QUEUE_SIZE_PROPERTY = "session.queue.size";
+    public static final String OVERFLOW_PROPERTY = "session.overflow";
+    public static final String LAG_TIMEOUT_PROPERTY = "session.lag.timeout";
+    public static final String FRAME_MAX_EVENTS_PROPERTY = "frame.max.events";
+    public static final String FRAME_MAX_SIZE_PROPERTY = "frame.max.size";
+    public static final String SUBSCRIPTION_MATCH_TIMEOUT_PROPERTY = "subscription.match.timeout";
 
-    private static final Logger LOG = LoggerFactory.getLogger(DecanterWebSocketAppender.class);
+    public static final String ALIAS_DEFAULT = "/decanter-websocket";
+    public static final String QUEUE_SIZE_DEFAULT = "1000";
+    public static final String OVERFLOW_DEFAULT = "drop";
+    public static final String LAG_TIMEOUT_DEFAULT = "30000";
+    public static final String FRAME_MAX_EVENTS_DEFAULT = "1";
+    public static final String FRAME_MAX_SIZE_DEFAULT = "65536";
+    public static final String SUBSCRIPTION_MATCH_TIMEOUT_DEFAULT = "100";
 
-    private static final Set<Session> sessions = Collections.synchronizedSet(new HashSet<>());
+    private final Set<DecanterWebSocketSession> sessions = ConcurrentHashMap.newKeySet();
 
     @Reference
     private Marshaller marshaller;
@@ -63,26 +66,47 @@ public class DecanterWebSocketAppender implements EventHandler {
     private HttpService httpService;
 
     private Dictionary<String, Object> config;
+    private EventFilter filter;
+
+    int queueSize;
+    boolean disconnect;
+    long lagTimeout;
+    int frameMaxEvents;
+    int frameMaxSize;
+    long matchTimeout;
 
-    @OnWebSocketConnect
-    public void onOpen(Session session) {
-        session.setIdleTimeout(-1);
+    void register(DecanterWebSocketSession session) {
         sessions.add(session);
     }
 
-    @OnWebSocketClose
-    public void onClose(Session session, int statusCode, String reason) {
+    void unregister(DecanterWebSocketSession session) {
         sessions.remove(session);
     }
 
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
         this.config = componentContext.getProperties();
+        filter = new EventFilter(config);
         String alias = (String) config.get(ALIAS_PROPERTY);
         if (alias == null) {
             alias = ALIAS_DEFAULT;
         }
-        httpService.registerServlet(alias, new DecanterWebSocketServlet(), null, null);
+        queueSize = Integer.parseInt(getValue(config, QUEUE_SIZE_PROPERTY, QUEUE_SIZE_DEFAULT));
+        String overflow = getValue(config, OVERFLOW_PROPERTY, OVERFLOW_DEFAULT);
+        if (!overflow.equalsIgnoreCase("drop") && !overflow.equalsIgnoreCase("disconnect")) {
+            throw new IllegalArgumentException("Unknown session.overflow " + overflow + " (drop or disconnect expected)");
+        }
+        disconnect = overflow.equalsIgnoreCase("disconnect");
+        lagTimeout = Long.parseLong(getValue(config, LAG_TIMEOUT_PROPERTY, LAG_TIMEOUT_DEFAULT));
+        frameMaxEvents = Integer.parseInt(getValue(config, FRAME_MAX_EVENTS_PROPERTY, FRAME_MAX_EVENTS_DEFAULT));
+        frameMaxSize = Integer.parseInt(getValue(config, FRAME_MAX_SIZE_PROPERTY, FRAME_MAX_SIZE_DEFAULT));
+        matchTimeout = Long.parseLong(getValue(config, SUBSCRIPTION_MATCH_TIMEOUT_PROPERTY, SUBSCRIPTION_MATCH_TIMEOUT_DEFAULT));
+        httpService.registerServlet(alias, new DecanterWebSocketServlet(this), null, null);
+    }
+
+    private String getValue(Dictionary<String, Object> config, String key, String defaultValue) {
+        String value = (String) config.get(key);
+        return (value != null) ? value : defaultValue;
     }
 
     @Deactivate
@@ -96,15 +120,15 @@ public class DecanterWebSocketAppender implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
-        if (EventFilter.match(event, config)) {
-            String message = marshaller.marshal(event);
-            synchronized (sessions) {
-                for (Session session : sessions) {
-                    try {
-                        session.getRemote().sendString(message);
-                    } catch (Exception e) {
-                        LOG.warn("Can't publish to remote websocket endpoint", e);
+        if (!sessions.isEmpty() && filter.match(event)) {
+            // the event is marshalled once, only if a session subscribed to it
+            String message = null;
+            for (DecanterWebSocketSession session : sessions) {
+                if (session.match(event)) {
+                    if (message == null) {
+                        message = marshaller.marshal(event);
                     }
+                    session.send(message);
                 }
             }
         }
@@ -24,9 +24,15 @@ import javax.servlet.annotation.WebServlet;
 @WebServlet(name = "Decanter WebSocket Servlet", urlPatterns = { "/decanter-websocket" })
 public class DecanterWebSocketServlet extends WebSocketServlet {
 
+    private final DecanterWebSocketAppender appender;
+
+    public DecanterWebSocketServlet(DecanterWebSocketAppender appender) {
+        this.appender = appender;
+    }
+
     @Override
     public void configure(WebSocketServletFactory factory) {
-        factory.register(DecanterWebSocketAppender.class);
+        factory.setCreator((request, response) -> new DecanterWebSocketSession(appender));
     }
 
 }
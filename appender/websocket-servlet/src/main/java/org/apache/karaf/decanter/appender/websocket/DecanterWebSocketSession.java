@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.websocket;
+
+import org.apache.karaf.decanter.appender.utils.EventFilter;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.osgi.service.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Websocket session of the appender. The messages are queued in a bounded queue and sent asynchronously,
+ * several messages being coalesced in a frame (one message per line) when the client is late.
+ * The client can send a subscription: the <code>topics</code> regex and the event filter properties
+ * (<code>event.property.name.include</code>, ...) in properties format. An empty message removes the subscription.
+ */
+@WebSocket
+public class DecanterWebSocketSession implements WriteCallback {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DecanterWebSocketSession.class);
+
+    private final DecanterWebSocketAppender appender;
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+    private final StringBuilder frame = new StringBuilder();
+
+    private Session session;
+    private volatile Subscription subscription;
+    private boolean sending;
+    private boolean writing;
+    private boolean writeCompleted;
+    private long sendingSince;
+    private long dropped;
+    private boolean closed;
+
+    public DecanterWebSocketSession(DecanterWebSocketAppender appender) {
+        this.appender = appender;
+    }
+
+    @OnWebSocketConnect
+    public void onOpen(Session session) {
+        session.setIdleTimeout(-1);
+        this.session = session;
+        appender.register(this);
+    }
+
+    @OnWebSocketClose
+    public void onClose(int statusCode, String reason) {
+        appender.unregister(this);
+        synchronized (queue) {
+            closed = true;
+            queue.clear();
+        }
+        if (dropped > 0) {
+            LOG.info("Websocket session {} closed, {} messages have been dropped", session.getRemoteAddress(), dropped);
+        }
+    }
+
+    @OnWebSocketMessage
+    public void onMessage(String message) {
+        if (message.trim().isEmpty()) {
+            subscription = null;
+            return;
+        }
+        try {
+            Properties properties = new Properties();
+            properties.load(new StringReader(message));
+            Dictionary<String, Object> config = new Hashtable<>();
+            for (String key : properties.stringPropertyNames()) {
+                config.put(key, properties.getProperty(key));
+            }
+            String topics = properties.getProperty("topics");
+            subscription = new Subscription(topics != null ? Pattern.compile(topics) : null, new EventFilter(config, appender.matchTimeout), appender.matchTimeout);
+        } catch (Exception e) {
+            LOG.warn("Invalid subscription from websocket session {}", session.getRemoteAddress(), e);
+        }
+    }
+
+    /**
+     * Check the event against the session subscription. The subscription regex are supplied by the client and
+     * evaluated on the event admin thread: the session is closed if a regex takes more than the match timeout.
+     */
+    boolean match(Event event) {
+        Subscription subscription = this.subscription;
+        if (subscription == null) {
+            return true;
+        }
+        try {
+            return subscription.match(event);
+        } catch (EventFilter.MatchTimeoutException e) {
+            this.subscription = null;
+            close(StatusCode.POLICY_VIOLATION, "Subscription regex not matched in " + appender.matchTimeout + " ms");
+            return false;
+        }
+    }
+
+    /**
+     * Queue the message and send it if no frame is being sent. Never blocks: when the queue is full, the oldest
+     * message is dropped (or the session is closed with the <code>disconnect</code> overflow policy). The session
+     * is closed if a frame has been sent for more than the lag timeout.
+     */
+    void send(String message) {
+        String reason = null;
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            if (sending && appender.lagTimeout > 0 && System.currentTimeMillis() - sendingSince > appender.lagTimeout) {
+                reason = "Slow consumer, frame not sent after " + appender.lagTimeout + " ms";
+            } else if (queue.size() >= appender.queueSize) {
+                if (appender.disconnect) {
+                    reason = "Slow consumer, more than " + appender.queueSize + " messages waiting";
+                } else {
+                    queue.poll();
+                    dropped++;
+                    queue.offer(message);
+                }
+            } else {
+                queue.offer(message);
+            }
+            if (reason == null) {
+                if (sending) {
+                    return;
+                }
+                sending = true;
+            }
+        }
+        if (reason != null) {
+            close(StatusCode.TRY_AGAIN_LATER, reason);
+            return;
+        }
+        flush();
+    }
+
+    private void close(int statusCode, String reason) {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+        }
+        LOG.warn("Closing websocket session {}: {}", session.getRemoteAddress(), reason);
+        session.close(statusCode, reason);
+    }
+
+    /**
+     * Send the waiting messages, frame per frame. A frame completed while it's written is followed by the next one
+     * in the same loop, else the next frame is sent by the write callback.
+     */
+    private void flush() {
+        while (true) {
+            String message;
+            synchronized (queue) {
+                if (closed || queue.isEmpty()) {
+                    sending = false;
+                    return;
+                }
+                message = nextFrame();
+                sendingSince = System.currentTimeMillis();
+                writing = true;
+                writeCompleted = false;
+            }
+            try {
+                session.getRemote().sendString(message, this);
+            } catch (Exception e) {
+                writeFailed(e);
+                return;
+            }
+            synchronized (queue) {
+                writing = false;
+                if (!writeCompleted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private String nextFrame() {
+        String message = queue.poll();
+        if (appender.frameMaxEvents <= 1 || queue.isEmpty()) {
+            return message;
+        }
+        frame.setLength(0);
+        frame.append(message);
+        int count = 1;
+        while (count < appender.frameMaxEvents && !queue.isEmpty()
+                && frame.length() + 1 + queue.peek().length() <= appender.frameMaxSize) {
+            frame.append('\n').append(queue.poll());
+            count++;
+        }
+        return frame.toString();
+    }
+
+    @Override
+    public void writeSuccess() {
+        synchronized (queue) {
+            if (writing) {
+                writeCompleted = true;
+                return;
+            }
+        }
+        flush();
+    }
+
+    @Override
+    public void writeFailed(Throwable x) {
+        LOG.warn("Can't publish to remote websocket endpoint {}", session.getRemoteAddress(), x);
+        synchronized (queue) {
+            closed = true;
+            sending = false;
+            queue.clear();
+        }
+        session.close(StatusCode.SERVER_ERROR, "Can't publish to the websocket endpoint");
+    }
+
+    private static class Subscription {
+
+        private final Pattern topics;
+        private final EventFilter filter;
+        private final long timeout;
+
+        Subscription(Pattern topics, EventFilter filter, long timeout) {
+            this.topics = topics;
+            this.filter = filter;
+            this.timeout = timeout;
+        }
+
+        boolean match(Event event) {
+            if (topics != null) {
+                boolean matches = (timeout > 0) ? EventFilter.matches(topics, event.getTopic(), timeout) : topics.matcher(event.getTopic()).matches();
+                if (!matches) {
+                    return false;
+                }
+            }
+            return filter.match(event);
+        }
+
+    }
+
+}
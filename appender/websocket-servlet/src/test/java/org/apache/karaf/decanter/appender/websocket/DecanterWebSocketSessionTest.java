@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.appender.websocket;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+public class DecanterWebSocketSessionTest {
+
+    private DecanterWebSocketAppender appender;
+    private Session session;
+    private List<String> frames;
+    private List<WriteCallback> callbacks;
+    private boolean synchronous;
+
+    @Before
+    public void setUp() throws Exception {
+        appender = new DecanterWebSocketAppender();
+        appender.queueSize = 1000;
+        appender.lagTimeout = 30000;
+        appender.frameMaxEvents = 1;
+        appender.frameMaxSize = 65536;
+        appender.matchTimeout = 100;
+
+        frames = new ArrayList<>();
+        callbacks = new ArrayList<>();
+        RemoteEndpoint remote = mock(RemoteEndpoint.class);
+        doAnswer(invocation -> {
+            frames.add(invocation.getArgument(0));
+            WriteCallback callback = invocation.getArgument(1);
+            if (synchronous) {
+                callback.writeSuccess();
+            } else {
+                callbacks.add(callback);
+            }
+            return null;
+        }).when(remote).sendString(anyString(), any(WriteCallback.class));
+        session = mock(Session.class);
+        when(session.getRemote()).thenReturn(remote);
+    }
+
+    private DecanterWebSocketSession open() {
+        DecanterWebSocketSession webSocketSession = new DecanterWebSocketSession(appender);
+        webSocketSession.onOpen(session);
+        return webSocketSession;
+    }
+
+    /**
+     * Complete the pending write, as done by Jetty when the frame has been sent.
+     */
+    private void complete() {
+        callbacks.remove(0).writeSuccess();
+    }
+
+    @Test
+    public void testDropOldest() {
+        appender.queueSize = 2;
+        DecanterWebSocketSession webSocketSession = open();
+        webSocketSession.send("1");
+        webSocketSession.send("2");
+        webSocketSession.send("3");
+        // the queue is full: the oldest waiting message is dropped
+        webSocketSession.send("4");
+        Assert.assertEquals(Arrays.asList("1"), frames);
+
+        complete();
+        complete();
+        complete();
+        Assert.assertEquals(Arrays.asList("1", "3", "4"), frames);
+        Assert.assertTrue(callbacks.isEmpty());
+        verify(session, never()).close(anyInt(), anyString());
+    }
+
+    @Test
+    public void testDisconnect() {
+        appender.queueSize = 1;
+        appender.disconnect = true;
+        DecanterWebSocketSession webSocketSession = open();
+        webSocketSession.send("1");
+        webSocketSession.send("2");
+        webSocketSession.send("3");
+        verify(session).close(eq(StatusCode.TRY_AGAIN_LATER), anyString());
+
+        // the session is closed: the messages are not sent anymore
+        complete();
+        webSocketSession.send("4");
+        Assert.assertEquals(Arrays.asList("1"), frames);
+    }
+
+    @Test
+    public void testSynchronousWriteSuccess() {
+        synchronous = true;
+        DecanterWebSocketSession webSocketSession = open();
+        for (int i = 0; i < 10000; i++) {
+            webSocketSession.send(String.valueOf(i));
+        }
+        // the writes completed in sendString don't recurse, and the session is not stuck in the sending state
+        Assert.assertEquals(10000, frames.size());
+        Assert.assertEquals("9999", frames.get(9999));
+
+        synchronous = false;
+        webSocketSession.send("last");
+        Assert.assertEquals("last", frames.get(10000));
+    }
+
+    @Test
+    public void testLagTimeout() throws Exception {
+        appender.lagTimeout = 50;
+        DecanterWebSocketSession webSocketSession = open();
+        webSocketSession.send("1");
+        webSocketSession.send("2");
+        verify(session, never()).close(anyInt(), anyString());
+
+        // the first frame is not sent after the lag timeout
+        Thread.sleep(100);
+        webSocketSession.send("3");
+        verify(session).close(eq(StatusCode.TRY_AGAIN_LATER), anyString());
+        Assert.assertEquals(Arrays.asList("1"), frames);
+    }
+
+    @Test
+    public void testCoalescing() {
+        appender.frameMaxEvents = 3;
+        appender.frameMaxSize = 10;
+        DecanterWebSocketSession webSocketSession = open();
+        webSocketSession.send("a");
+        webSocketSession.send("bbbb");
+        webSocketSession.send("cccc");
+        webSocketSession.send("dddd");
+        webSocketSession.send("e");
+        webSocketSession.send("f");
+        webSocketSession.send("g");
+        webSocketSession.send("h");
+
+        complete();
+        complete();
+        complete();
+        // frame.max.size limits the second frame to 2 messages, frame.max.events the third one to 3 messages
+        Assert.assertEquals(Arrays.asList("a", "bbbb\ncccc", "dddd\ne\nf", "g\nh"), frames);
+    }
+
+    @Test
+    public void testSubscription() {
+        DecanterWebSocketSession webSocketSession = open();
+        Event jmx = event("decanter/collect/jmx/local", "java.lang:type=Memory");
+        Event log = event("decanter/collect/log", "java.lang:type=Memory");
+        Assert.assertTrue(webSocketSession.match(jmx));
+        Assert.assertTrue(webSocketSession.match(log));
+
+        webSocketSession.onMessage("topics=decanter/collect/jmx.*\nevent.property.value.include=.*Memory.*");
+        Assert.assertTrue(webSocketSession.match(jmx));
+        Assert.assertFalse(webSocketSession.match(log));
+
+        webSocketSession.onMessage("");
+        Assert.assertTrue(webSocketSession.match(log));
+    }
+
+    @Test
+    public void testSlowSubscription() {
+        DecanterWebSocketSession webSocketSession = open();
+        webSocketSession.onMessage("topics=decanter/collect/jmx.*\nevent.property.value.include=((a+)+)+b");
+
+        long start = System.currentTimeMillis();
+        Assert.assertFalse(webSocketSession.match(event("decanter/collect/jmx", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa")));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        verify(session).close(eq(StatusCode.POLICY_VIOLATION), anyString());
+
+        webSocketSession.send("1");
+        Assert.assertTrue(frames.isEmpty());
+    }
+
+    private static Event event(String topic, String value) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("value", value);
+        return new Event(topic, data);
+    }
+
+}
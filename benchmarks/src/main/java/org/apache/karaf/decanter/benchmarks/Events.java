@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.benchmarks;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.service.event.Event;
+
+/**
+ * Realistic event shapes, as produced by the collectors.
+ */
+public final class Events {
+
+    public static final long TIMESTAMP = 1454428780634L;
+
+    private Events() {
+    }
+
+    public static Event create(String shape) {
+        switch (shape) {
+            case "jmx":
+                return new Event("decanter/collect/jmx/local/java/lang/Memory", jmx());
+            case "log":
+                return new Event("decanter/collect/log/org/apache/karaf/decanter", log());
+            case "oshi":
+                return new Event("decanter/collect/oshi", oshi());
+            default:
+                throw new IllegalArgumentException("Unknown event shape " + shape);
+        }
+    }
+
+    /**
+     * JMX bean dump, as harvested by the JMX collector (composite and tabular data).
+     */
+    public static Map<String, Object> jmx() {
+        Map<String, Object> data = common("jmx-local");
+        data.put("ObjectName", "java.lang:type=Memory");
+        data.put("Verbose", false);
+        data.put("ObjectPendingFinalizationCount", 0);
+        data.put("HeapMemoryUsage", usage(268435456L, 173015040L, 91748352L, 4294967296L));
+        data.put("NonHeapMemoryUsage", usage(7667712L, 98238464L, 92457128L, -1L));
+        List<Map<String, Object>> pools = new ArrayList<>();
+        for (String pool : new String[]{ "G1 Eden Space", "G1 Old Gen", "G1 Survivor Space", "Metaspace", "CodeHeap 'non-nmethods'" }) {
+            Map<String, Object> row = usage(0L, 25165824L, 12582912L, -1L);
+            row.put("name", pool);
+            pools.add(row);
+        }
+        data.put("MemoryPools", pools);
+        data.put("MemoryManagerNames", new String[]{ "CodeCacheManager", "Metaspace Manager", "G1 Young Generation", "G1 Old Generation" });
+        data.put("Threads", new long[]{ 1L, 2L, 3L, 12L, 13L, 14L, 21L, 22L, 35L, 36L });
+        return data;
+    }
+
+    /**
+     * Log event with a throwable, as sent by the log collector.
+     */
+    public static Map<String, Object> log() {
+        Map<String, Object> data = common("log");
+        data.put("type", "log");
+        data.put("loggerClass", "org.ops4j.pax.logging.slf4j.Slf4jLogger");
+        data.put("loggerName", "org.apache.karaf.decanter.appender.elasticsearch.ElasticsearchAppender");
+        data.put("threadName", "EventAdminAsyncThread #12");
+        data.put("message", "Can't append event to Elasticsearch");
+        data.put("level", "WARN");
+        data.put("renderedMessage", "Can't append event to Elasticsearch");
+        Map<String, Object> mdc = new HashMap<>();
+        mdc.put("bundle.id", 112L);
+        mdc.put("bundle.name", "org.apache.karaf.decanter.appender.elasticsearch");
+        mdc.put("bundle.version", "3.0.0.SNAPSHOT");
+        data.put("MDC", mdc);
+        StringWriter throwable = new StringWriter();
+        Exception exception = new IllegalStateException("Connection refused: localhost/127.0.0.1:9200",
+                new java.net.ConnectException("Connection refused"));
+        exception.printStackTrace(new PrintWriter(throwable));
+        data.put("throwable", throwable.toString());
+        data.put("loc.class", "org.apache.karaf.decanter.appender.elasticsearch.ElasticsearchAppender");
+        data.put("loc.file", "ElasticsearchAppender.java");
+        data.put("loc.line", "193");
+        data.put("loc.method", "send");
+        return data;
+    }
+
+    /**
+     * OSHI snapshot of about 200 fields, mostly numbers with dotted names.
+     */
+    public static Map<String, Object> oshi() {
+        Map<String, Object> data = common("oshi");
+        data.put("type", "oshi");
+        data.put("computerSystem.manufacturer", "Dell Inc.");
+        data.put("computerSystem.model", "PowerEdge R640");
+        data.put("computerSystem.serialNumber", "7XK2Q53");
+        data.put("memory.available", 12884901888L);
+        data.put("memory.pageSize", 4096L);
+        data.put("memory.total", 34359738368L);
+        data.put("processor.contextSwitched", 982374623L);
+        data.put("processor.interrupts", 234987234L);
+        data.put("processor.logicalProcessorCount", 16);
+        data.put("processor.maxFreq", 3400000000L);
+        data.put("processor.systemCpuLoadBetweenTicks", 0.17364532019704434);
+        int field = 0;
+        for (int i = 0; data.size() < 200; i++) {
+            String prefix = "processor.logical." + i + ".";
+            data.put(prefix + "numaNode", 0);
+            data.put(prefix + "physicalPackageNumber", 0);
+            data.put(prefix + "physicalProcessorNumber", i / 2);
+            data.put(prefix + "processorGroup", 0);
+            data.put(prefix + "load", 0.01 * (field++ % 100));
+            data.put("disk." + i + ".reads", 1234567L + i);
+            data.put("disk." + i + ".writes", 7654321L + i);
+            data.put("disk." + i + ".name", "/dev/nvme0n" + i);
+        }
+        return data;
+    }
+
+    private static Map<String, Object> common(String name) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("timestamp", TIMESTAMP);
+        data.put("karafName", "root");
+        data.put("hostAddress", "10.0.0.12");
+        data.put("hostName", "decanter-node-1");
+        data.put("decanter.collector.name", name);
+        return data;
+    }
+
+    private static Map<String, Object> usage(long init, long committed, long used, long max) {
+        Map<String, Object> usage = new HashMap<>();
+        usage.put("init", init);
+        usage.put("committed", committed);
+        usage.put("used", used);
+        usage.put("max", max);
+        return usage;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.decanter.marshaller.csv.CsvMarshaller;
+import org.apache.karaf.decanter.marshaller.json.JsonMarshaller;
+import org.apache.karaf.decanter.marshaller.raw.RawMarshaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.event.Event;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarshallerBenchmark {
+
+    @Param({ "jmx", "log", "oshi" })
+    public String shape;
+
+    private Event event;
+    private JsonMarshaller jsonMarshaller;
+    private CsvMarshaller csvMarshaller;
+    private RawMarshaller rawMarshaller;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() {
+        event = Events.create(shape);
+        jsonMarshaller = new JsonMarshaller();
+        jsonMarshaller.activate(new Hashtable<>());
+        csvMarshaller = new CsvMarshaller();
+        rawMarshaller = new RawMarshaller();
+        out = new ByteArrayOutputStream(64 * 1024);
+    }
+
+    @Benchmark
+    public String json() {
+        return jsonMarshaller.marshal(event);
+    }
+
+    @Benchmark
+    public int jsonStream() {
+        out.reset();
+        jsonMarshaller.marshal(event, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public String csv() {
+        return csvMarshaller.marshal(event);
+    }
+
+    @Benchmark
+    public String raw() {
+        return rawMarshaller.marshal(event);
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.benchmarks;
+
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.decanter.parser.regex.RegexParser;
+import org.apache.karaf.decanter.parser.split.SplitParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of a typical access log line, as done by the file and socket collectors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final String LOG_LINE = "2016-02-02 15:59:40,634 | INFO  | qtp1829164700-94 | ServletHandler | 127.0.0.1 GET /decanter/api 200 5342 12";
+    private static final String CSV_LINE = "2016-02-02T15:59:40.634,127.0.0.1,GET,/decanter/api,200,5342,12,9876543210,Mozilla/5.0";
+
+    private RegexParser regexParser;
+    private SplitParser splitParser;
+
+    @Setup
+    public void setup() {
+        regexParser = new RegexParser();
+        Hashtable<String, Object> regexConfig = new Hashtable<>();
+        regexConfig.put("regex", "(\\S+ \\S+) \\| (\\w+)\\s+\\| (\\S+) \\| (\\S+) \\| (\\S+) (\\w+) (\\S+) (\\d+) (\\d+) (\\d+)");
+        regexConfig.put("keys", "date,level,thread,logger,client,method,path,status,size,duration");
+        regexParser.activate(regexConfig);
+
+        splitParser = new SplitParser();
+        Hashtable<String, Object> splitConfig = new Hashtable<>();
+        splitConfig.put("separator", ",");
+        splitConfig.put("keys", "date,client,method,path,status,size,duration,bytes,agent");
+        splitParser.activate(splitConfig);
+    }
+
+    @Benchmark
+    public Map<String, Object> regex() {
+        return regexParser.parse("line", LOG_LINE);
+    }
+
+    @Benchmark
+    public Map<String, Object> split() {
+        return splitParser.parse("line", CSV_LINE);
+    }
+
+}
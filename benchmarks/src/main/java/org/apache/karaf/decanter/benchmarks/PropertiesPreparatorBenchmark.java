@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.benchmarks;
+
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.karaf.decanter.collector.utils.PropertiesPreparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Enrichment done by the collectors on each harvested data, with a typical collector configuration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertiesPreparatorBenchmark {
+
+    @Param({ "jmx", "log", "oshi" })
+    public String shape;
+
+    private Map<String, Object> data;
+    private Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
+
+    @Setup
+    public void setup() {
+        switch (shape) {
+            case "jmx":
+                data = Events.jmx();
+                break;
+            case "log":
+                data = Events.log();
+                break;
+            default:
+                data = Events.oshi();
+        }
+        // let the preparator resolve the host details
+        data.remove("hostAddress");
+        data.remove("hostName");
+
+        config = new Hashtable<>();
+        config.put("component.name", "org.apache.karaf.decanter.collector." + shape);
+        config.put("component.id", 12L);
+        config.put("service.pid", "org.apache.karaf.decanter.collector." + shape);
+        config.put("fields.add.environment", "production");
+        config.put("fields.add.id", "UUID");
+        config.put("fields.add.collected", "TIMESTAMP");
+        config.put("fields.rename.type", "kind");
+        config.put("fields.remove.karafName", "");
+        preparator = new PropertiesPreparator(config);
+    }
+
+    @Benchmark
+    public Map<String, Object> prepare() throws Exception {
+        Map<String, Object> copy = new HashMap<>(data);
+        preparator.prepare(copy);
+        return copy;
+    }
+
+    @Benchmark
+    public Map<String, Object> prepareConfig() throws Exception {
+        Map<String, Object> copy = new HashMap<>(data);
+        PropertiesPreparator.prepare(copy, config);
+        return copy;
+    }
+
+}
@@ -51,6 +51,7 @@ public class ConfigAdminCollector implements ConfigurationListener {
     private ConfigurationAdmin configurationAdmin;
 
     private Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
 
     @Activate
     public void activate(ComponentContext componentContext) {
@@ -59,6 +60,7 @@ public class ConfigAdminCollector implements ConfigurationListener {
 
     public void activate(Dictionary<String, Object> properties) {
         this.config = properties;
+        preparator = new PropertiesPreparator(config);
     }
 
     @Override
@@ -95,7 +97,7 @@ public class ConfigAdminCollector implements ConfigurationListener {
         }
 
         try {
-            PropertiesPreparator.prepare(data, config);
+            preparator.prepare(data);
         } catch (Exception e) {
             // nothing to do
         }
@@ -51,6 +51,7 @@ public class DecanterReporterCollector implements Runnable {
     public MetricSet metricRegistry;
 
     public Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
 
     @Activate
     public void activate(ComponentContext componentContext) {
@@ -59,6 +60,7 @@ public class DecanterReporterCollector implements Runnable {
 
     public void activate(Dictionary<String, Object> config) {
         this.config = config;
+        preparator = new PropertiesPreparator(config);
     }
 
     @Override
@@ -113,7 +115,7 @@ public class DecanterReporterCollector implements Runnable {
             }
 
             try {
-                PropertiesPreparator.prepare(data, config);
+                preparator.prepare(data);
             } catch (Exception e) {
                 // nothing to do
             }
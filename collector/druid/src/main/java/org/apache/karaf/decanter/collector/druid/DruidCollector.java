@@ -59,12 +59,14 @@ public class DruidCollector implements Runnable {
     public Unmarshaller unmarshaller;
 
     private Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
 
     private final static Logger LOGGER = LoggerFactory.getLogger(DruidCollector.class);
 
     @Activate
     public void activate(ComponentContext componentContext) {
         config = componentContext.getProperties();
+        preparator = new PropertiesPreparator(config);
     }
 
     @Override
@@ -81,7 +83,7 @@ public class DruidCollector implements Runnable {
                     data.put("type", "druid");
                     data.put("query", key.substring("query.".length()));
                     data.putAll(executeQuery(druidBroker, (String) config.get(key)));
-                    PropertiesPreparator.prepare(data, config);
+                    preparator.prepare(data);
                     String topic = (config.get(EventConstants.EVENT_TOPIC) != null) ? (String) config.get(EventConstants.EVENT_TOPIC) : "decanter/collect/druid";
                     dispatcher.postEvent(new Event(topic, data));
                 } catch (Exception e) {
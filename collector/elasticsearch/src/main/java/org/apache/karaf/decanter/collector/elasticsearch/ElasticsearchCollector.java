@@ -70,6 +70,7 @@ public class ElasticsearchCollector implements Runnable {
     private EventAdmin dispatcher;
 
     private Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
     private RestClient restClient;
 
     @Activate
@@ -79,6 +80,7 @@ public class ElasticsearchCollector implements Runnable {
 
     public void activate(Dictionary<String, Object> configuration) {
         this.config = configuration;
+        preparator = new PropertiesPreparator(config);
         String addressesString = (configuration.get("addresses") != null) ? configuration.get("addresses").toString() : "http://localhost:9200";
         String username = (configuration.get("username") != null) ? configuration.get("username").toString() : null;
         String password = (configuration.get("password") != null) ? configuration.get("password").toString() : null;
@@ -176,7 +178,7 @@ public class ElasticsearchCollector implements Runnable {
             LOGGER.error("Can't query elasticsearch", e);
         }
         try {
-            PropertiesPreparator.prepare(data, config);
+            preparator.prepare(data);
         } catch (Exception e) {
             LOGGER.warn("Can't prepare event", e);
         }
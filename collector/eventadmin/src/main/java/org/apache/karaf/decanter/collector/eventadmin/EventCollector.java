@@ -40,10 +40,12 @@ public class EventCollector implements EventHandler {
     public EventAdmin dispatcher;
 
     private Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
 
     @Activate
     public void activate(ComponentContext context) {
         config = context.getProperties();
+        preparator = new PropertiesPreparator(config);
     }
 
     @Override
@@ -69,7 +71,7 @@ public class EventCollector implements EventHandler {
         }
 
         try {
-            PropertiesPreparator.prepare(data, config);
+            preparator.prepare(data);
         } catch (Exception e) {
             // nothing to do
         }
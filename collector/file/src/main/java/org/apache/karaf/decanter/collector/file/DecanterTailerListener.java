@@ -66,12 +66,14 @@ public class DecanterTailerListener extends TailerListenerAdapter {
      * additional properties provided by the user
      */
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
     private Tailer tailer;
 
     @SuppressWarnings("unchecked")
     @Activate
     public void activate(ComponentContext context) throws ConfigurationException {
         properties = context.getProperties();
+        preparator = new PropertiesPreparator(properties);
         if (properties.get("type") == null) {
             throw new ConfigurationException("type", "type property is mandatory");
         }
@@ -119,7 +121,7 @@ public class DecanterTailerListener extends TailerListenerAdapter {
         }
 
         try {
-            PropertiesPreparator.prepare(data, properties);
+            preparator.prepare(data);
         } catch (Exception e) {
             LOGGER.warn("Can't fully prepare data for the dispatcher", e);
         }
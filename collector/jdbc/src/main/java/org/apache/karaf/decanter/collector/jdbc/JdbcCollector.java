@@ -60,12 +60,14 @@ public class JdbcCollector implements Runnable {
     private String query;
     private String topic;
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
     private Connection connection;
     private PreparedStatement preparedStatement;
 
     @Activate
     public void activate(ComponentContext context) throws Exception {
         properties = context.getProperties();
+        preparator = new PropertiesPreparator(properties);
         activate(properties);
     }
 
@@ -179,7 +181,7 @@ public class JdbcCollector implements Runnable {
                 }
 
                 try {
-                    PropertiesPreparator.prepare(data, properties);
+                    preparator.prepare(data);
                 } catch (Exception e) {
                     LOGGER.warn("Can't prepare data for the dispatcher", e);
                 }
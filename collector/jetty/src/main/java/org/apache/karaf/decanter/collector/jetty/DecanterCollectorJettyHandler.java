@@ -51,10 +51,12 @@ public class DecanterCollectorJettyHandler implements Handler {
 
     private boolean started = false;
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
 
     @Activate
     public void activate(ComponentContext componentContext) {
         this.properties = componentContext.getProperties();
+        preparator = new PropertiesPreparator(properties);
     }
 
     @Override
@@ -153,7 +155,7 @@ public class DecanterCollectorJettyHandler implements Handler {
         data.put("response.contentType", httpServletResponse.getContentType());
         data.put("response.characterEncoding", httpServletResponse.getCharacterEncoding());
         try {
-            PropertiesPreparator.prepare(data, properties);
+            preparator.prepare(data);
         } catch (Exception e) {
             // nothing to do
         }
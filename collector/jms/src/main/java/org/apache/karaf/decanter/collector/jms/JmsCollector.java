@@ -51,6 +51,7 @@ public class JmsCollector {
     private final static Logger LOGGER = LoggerFactory.getLogger(JmsCollector.class);
 
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
     private String dispatcherTopic;
     private String username;
     private String password;
@@ -63,6 +64,7 @@ public class JmsCollector {
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
         properties = componentContext.getProperties();
+        preparator = new PropertiesPreparator(properties);
         username = getProperty(properties, "username", null);
         password = getProperty(properties, "password", null);
         destinationName = getProperty(properties, "destination.name", "decanter");
@@ -149,7 +151,7 @@ public class JmsCollector {
                         data.put(name, mapMessage.getObject(name));
                     }
 
-                    PropertiesPreparator.prepare(data, properties);
+                    preparator.prepare(data);
 
                     Event event = new Event(dispatcherTopic, data);
                     dispatcher.postEvent(event);
@@ -167,7 +169,7 @@ public class JmsCollector {
                     ByteArrayInputStream is = new ByteArrayInputStream(textMessage.getText().getBytes());
                     data.putAll(unmarshaller.unmarshal(is));
 
-                    PropertiesPreparator.prepare(data, properties);
+                    preparator.prepare(data);
 
                     Event event = new Event(dispatcherTopic, data);
                     dispatcher.postEvent(event);
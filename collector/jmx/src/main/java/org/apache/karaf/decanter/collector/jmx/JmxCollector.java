@@ -70,10 +70,12 @@ public class JmxCollector implements Runnable {
     private Set<String> objectNames;
     private Map<String, String> operations;
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
 
     @SuppressWarnings("unchecked")
     public void activate(ComponentContext context) {
         this.properties = context.getProperties();
+        preparator = new PropertiesPreparator(properties);
         String type = getProperty(this.properties, "type", "jmx-local");
         String url = getProperty(this.properties, "url", "local");
         String username = getProperty(this.properties, "username", null);
@@ -160,7 +162,7 @@ public class JmxCollector implements Runnable {
                 LOGGER.debug("Harvesting {}", name);
                 try {
                     Map<String, Object> data = harvester.harvestBean(name);
-                    PropertiesPreparator.prepare(data, properties);
+                    preparator.prepare(data);
                     data.put("host", host);
                     Event event = new Event(topic + this.type + "/" + getTopic(name), data);
                     LOGGER.debug("Posting for {}", name);
@@ -179,7 +181,7 @@ public class JmxCollector implements Runnable {
                     String[] arguments = split[2].split(",");
                     String[] signatures = split[3].split(",");
                     Map<String, Object> data = harvester.executeOperation(operation, objectName, operationName, arguments, signatures);
-                    PropertiesPreparator.prepare(data, properties);
+                    preparator.prepare(data);
                     data.put("host", host);
                     Event event = new Event(topic + this.type + "/" + getTopic(objectName), data);
                     dispatcher.postEvent(event);
@@ -51,6 +51,7 @@ public class KafkaCollector implements Runnable {
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaCollector.class);
 
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
     private KafkaConsumer<String, String> consumer;
     private String topic;
     private String eventAdminTopic;
@@ -67,6 +68,7 @@ public class KafkaCollector implements Runnable {
     @Activate
     public void activate(ComponentContext componentContext) {
         properties = componentContext.getProperties();
+        preparator = new PropertiesPreparator(properties);
 
         topic = getValue(properties, "topic", "decanter");
         eventAdminTopic = getValue(properties, EventConstants.EVENT_TOPIC, "decanter/collect/kafka/decanter");
@@ -187,7 +189,7 @@ public class KafkaCollector implements Runnable {
         }
 
         try {
-            PropertiesPreparator.prepare(data, properties);
+            preparator.prepare(data);
         } catch (Exception e) {
             LOGGER.warn("Can't prepare data for the dispatcher", e);
         }
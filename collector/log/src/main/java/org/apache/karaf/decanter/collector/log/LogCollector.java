@@ -56,6 +56,7 @@ public class LogCollector implements PaxAppender {
     private final static Pattern PATTERN = Pattern.compile("[^A-Za-z0-9]");
 
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
     protected String[] excludedCategories;
     protected String[] includedCategories;
     protected String[] locationDisabledCategories;
@@ -64,6 +65,7 @@ public class LogCollector implements PaxAppender {
     @Activate
     public void activate(ComponentContext context) {
         this.properties = context.getProperties();
+        preparator = new PropertiesPreparator(properties);
         if (this.properties.get("ignored.categories") != null) {
             excludedCategories = ((String)this.properties.get("ignored.categories")).split(",");
         }
@@ -122,7 +124,7 @@ public class LogCollector implements PaxAppender {
             data.put("throwable", join(throwableAr));
         }
 
-        PropertiesPreparator.prepare(data, properties);
+        preparator.prepare(data);
 
         String loggerName = event.getLoggerName();
         if (loggerName == null || loggerName.isEmpty()) {
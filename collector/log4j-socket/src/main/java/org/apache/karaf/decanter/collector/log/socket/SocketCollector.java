@@ -74,10 +74,12 @@ public class SocketCollector implements Closeable, Runnable {
     private boolean open;
     private ExecutorService executor;
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
 
     @Activate
     public void activate(ComponentContext context) throws IOException {
         this.properties = context.getProperties();
+        preparator = new PropertiesPreparator(properties);
         String hostname = getProperty(this.properties, HOSTNAME, "localhost");
         int port = Integer.parseInt(getProperty(this.properties, PORT_NAME, "4560"));
         int backlog = Integer.parseInt(getProperty(this.properties, BACKLOG, "50"));
@@ -142,7 +144,7 @@ public class SocketCollector implements Closeable, Runnable {
         }
 
         try {
-            PropertiesPreparator.prepare(data, properties);
+            preparator.prepare(data);
         } catch (Exception e) {
             LOGGER.warn("Can't prepare data for the dispatcher", e);
         }
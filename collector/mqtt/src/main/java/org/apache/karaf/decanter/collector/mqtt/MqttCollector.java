@@ -54,6 +54,7 @@ public class MqttCollector {
     private final static Logger LOGGER = LoggerFactory.getLogger(MqttCollector.class);
 
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
 
     private MqttClient client;
     private String dispatcherTopic;
@@ -62,6 +63,7 @@ public class MqttCollector {
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
         properties = componentContext.getProperties();
+        preparator = new PropertiesPreparator(properties);
         String serverUri = getProperty(properties, "server.uri", "tcp://localhost:1883");
         String clientId = getProperty(properties, "client.id", "d:decanter:collector:default");
         String topic = getProperty(properties, "topic", "decanter");
@@ -100,7 +102,7 @@ public class MqttCollector {
                 data.putAll(unmarshaller.unmarshal(is));
 
                 try {
-                    PropertiesPreparator.prepare(data, properties);
+                    preparator.prepare(data);
                 } catch (Exception e) {
                     LOGGER.warn("Can't prepare data for the dispatcher", e);
                 }
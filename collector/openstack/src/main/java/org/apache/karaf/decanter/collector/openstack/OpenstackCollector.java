@@ -57,6 +57,7 @@ public class OpenstackCollector implements Runnable {
     private final static Logger LOGGER = LoggerFactory.getLogger(OpenstackCollector.class);
 
     private Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
     private String topic;
 
     private URL identity;
@@ -82,6 +83,7 @@ public class OpenstackCollector implements Runnable {
 
     public void activate(Dictionary<String, Object> config) throws Exception {
         this.config = config;
+        preparator = new PropertiesPreparator(config);
         topic = (config.get(EventConstants.EVENT_TOPIC) != null) ? (String) config.get(EventConstants.EVENT_TOPIC) : "decanter/collect/openstack";
         if (config.get("openstack.identity") == null) {
             throw new IllegalStateException("openstack.identity is not configured");
@@ -319,13 +321,13 @@ public class OpenstackCollector implements Runnable {
                 }
                 data.put("type", "openstack");
                 data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(use.getBytes())));
-                PropertiesPreparator.prepare(data, config);
+                preparator.prepare(data);
                 dispatcher.postEvent(new Event(topic, data));
             }
         } else {
             Map<String, Object> data = new HashMap<>();
             data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-            PropertiesPreparator.prepare(data, config);
+            preparator.prepare(data);
             dispatcher.postEvent(new Event(topic, data));
         }
     }
@@ -335,7 +337,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -344,7 +346,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -353,7 +355,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -362,7 +364,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -371,7 +373,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -380,7 +382,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -389,7 +391,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -398,7 +400,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -407,7 +409,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -416,7 +418,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -425,7 +427,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -434,7 +436,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -443,7 +445,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -452,7 +454,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -461,7 +463,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -470,7 +472,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -479,7 +481,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -488,7 +490,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -497,7 +499,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -506,7 +508,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -515,7 +517,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -524,7 +526,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -533,7 +535,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -542,7 +544,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -551,7 +553,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -560,7 +562,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -569,7 +571,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -578,7 +580,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -587,7 +589,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -596,7 +598,7 @@ public class OpenstackCollector implements Runnable {
         Map<String, Object> data = new HashMap<>();
         data.put("type", "openstack");
         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(response.getBytes())));
-        PropertiesPreparator.prepare(data, config);
+        preparator.prepare(data);
         dispatcher.postEvent(new Event(topic, data));
     }
 
@@ -51,6 +51,7 @@ public class OshiCollector implements Runnable {
     EventAdmin dispatcher;
 
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
 
     long[] lastSystemCpuLoadTicks = null;
 
@@ -61,6 +62,7 @@ public class OshiCollector implements Runnable {
 
     public void activate(Dictionary<String, Object> properties) {
         this.properties = properties;
+        preparator = new PropertiesPreparator(properties);
         this.lastSystemCpuLoadTicks = null;
     }
 
@@ -367,7 +369,7 @@ public class OshiCollector implements Runnable {
                 }
             }
 
-            PropertiesPreparator.prepare(data, properties);
+            preparator.prepare(data);
 
             String topic = (properties.get(EventConstants.EVENT_TOPIC) != null) ? (String) properties.get(EventConstants.EVENT_TOPIC) : "decanter/collect/oshi";
 
@@ -53,6 +53,7 @@ public class PrometheusCollector implements Runnable {
     public EventAdmin dispatcher;
 
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
 
     private URL prometheusURL;
     private String type = "prometheus";
@@ -64,6 +65,7 @@ public class PrometheusCollector implements Runnable {
 
     public void activate(Dictionary<String, Object> properties) throws Exception {
         this.properties = properties;
+        preparator = new PropertiesPreparator(properties);
         if (properties.get("prometheus.url") == null) {
             throw new IllegalArgumentException("prometheus.url is mandatory in the configuration");
         }
@@ -108,7 +110,7 @@ public class PrometheusCollector implements Runnable {
                                 data.put(property, value);
                             }
                         }
-                        PropertiesPreparator.prepare(data, properties);
+                        preparator.prepare(data);
                         dispatcher.postEvent(new Event(topic, data));
                     }
                 }
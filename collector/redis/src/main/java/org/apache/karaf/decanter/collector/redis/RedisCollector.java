@@ -57,10 +57,12 @@ public class RedisCollector implements Runnable {
     private RedissonClient redissonClient;
 
     private Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
 
     @Activate
     public void activate(ComponentContext componentContext) {
         config = componentContext.getProperties();
+        preparator = new PropertiesPreparator(config);
 
         String address = (config.get("address") != null) ? config.get("address").toString() : ADDRESS_DEFAULT;
         String mode = (config.get("map") != null) ? config.get("map").toString() : MODE_DEFAULT;
@@ -99,7 +101,7 @@ public class RedisCollector implements Runnable {
             data.put(key.toString(), rmap.get(key));
         }
         try {
-            PropertiesPreparator.prepare(data, config);
+            preparator.prepare(data);
         } catch (Exception e) {
             LOGGER.warn("Can't prepare data", e);
         }
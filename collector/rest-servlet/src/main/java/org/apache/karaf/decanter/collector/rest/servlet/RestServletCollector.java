@@ -64,6 +64,7 @@ public class RestServletCollector extends HttpServlet {
 
     private String topic;
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
     private long maxRequestSize = 100000;
 
     @SuppressWarnings("unchecked")
@@ -72,6 +73,7 @@ public class RestServletCollector extends HttpServlet {
         Dictionary<String, Object> props = context.getProperties();
         this.topic = getProperty(props, EventConstants.EVENT_TOPIC, "decanter/collect/rest-servlet");
         this.properties = props;
+        preparator = new PropertiesPreparator(properties);
         if (this.properties.get("max.request.size") != null) {
             maxRequestSize = Long.parseLong((String)this.properties.get("max.request.size"));
         }
@@ -100,7 +102,7 @@ public class RestServletCollector extends HttpServlet {
             data.put("type", "restservlet");
             data.put("payload", payload);
 
-            PropertiesPreparator.prepare(data, properties);
+            preparator.prepare(data);
 
             Event event = new Event(topic, data);
             dispatcher.postEvent(event);
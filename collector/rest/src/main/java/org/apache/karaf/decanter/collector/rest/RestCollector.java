@@ -68,6 +68,7 @@ public class RestCollector implements Runnable {
     private boolean exceptionAsHttpResponse;
     private Integer exceptionHttpResponseCode = null;
     private Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
 
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
@@ -76,6 +77,7 @@ public class RestCollector implements Runnable {
 
     public void activate(Dictionary<String, Object> config) throws MalformedURLException {
         this.config = config;
+        preparator = new PropertiesPreparator(config);
         this.url = new URL(getProperty(config, "url", "http://localhost:8181"));
         this.paths = getProperty(config, "paths", "").split(",");
         this.topic = getProperty(config, EventConstants.EVENT_TOPIC, "decanter/collect/rest");
@@ -136,7 +138,7 @@ public class RestCollector implements Runnable {
                 data.put("type", "rest");
                 data.put("url", urlWithPath);
 
-                PropertiesPreparator.prepare(data, config);
+                preparator.prepare(data);
 
                 data.put("service.hostName", url.getHost());
             } catch (Exception e) {
@@ -60,6 +60,7 @@ public class SnmpPoller implements ResponseListener, Runnable {
     private EventAdmin dispatcher;
 
     private Dictionary<String, Object> configuration;
+    private PropertiesPreparator preparator;
     private boolean treeList;
     private String oids;
 
@@ -77,6 +78,7 @@ public class SnmpPoller implements ResponseListener, Runnable {
 
     public void activate(Dictionary<String, Object> configuration) throws Exception {
         this.configuration = configuration;
+        preparator = new PropertiesPreparator(configuration);
 
         String addressConfig = (configuration.get("address") != null) ? (String) configuration.get("address") : "127.0.0.1/161";
         this.address = GenericAddress.parse(addressConfig);
@@ -221,7 +223,7 @@ public class SnmpPoller implements ResponseListener, Runnable {
         data.put("type", "snmp.poll");
         data.put("peerAddress", event.getPeerAddress());
         try {
-            PropertiesPreparator.prepare(data, configuration);
+            preparator.prepare(data);
         } catch (Exception e) {
             LOGGER.warn("Can't prepare event data", e);
         }
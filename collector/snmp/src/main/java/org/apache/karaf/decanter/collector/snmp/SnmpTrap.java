@@ -47,6 +47,7 @@ public class SnmpTrap implements CommandResponder {
     private EventAdmin dispatcher;
 
     private Dictionary<String, Object> configuration;
+    private PropertiesPreparator preparator;
 
     private Address address;
     private Snmp snmp;
@@ -59,6 +60,7 @@ public class SnmpTrap implements CommandResponder {
 
     public void activate(Dictionary<String, Object> configuration) throws Exception {
         this.configuration = configuration;
+        preparator = new PropertiesPreparator(configuration);
         String addressConfig = (configuration.get("address") != null) ? (String) configuration.get("address") : "127.0.0.1/161";
         this.address = GenericAddress.parse(addressConfig);
 
@@ -105,7 +107,7 @@ public class SnmpTrap implements CommandResponder {
                 data.put("type", "snmp.trap");
                 data.put("securityName", new OctetString(event.getSecurityName()));
                 data.put("peerAddress", event.getPeerAddress());
-                PropertiesPreparator.prepare(data, configuration);
+                preparator.prepare(data);
                 // PDU v1 specific variables
                 if (pdu.getType() == PDU.V1TRAP) {
                     PDUv1 v1pdu = (PDUv1) pdu;
@@ -60,6 +60,7 @@ public class SoapCollector implements Runnable {
     private String soapRequest;
     private String topic;
     private Dictionary<String, Object> config;
+    private PropertiesPreparator preparator;
 
     @Activate
     public void activate(ComponentContext componentContext) throws Exception {
@@ -68,6 +69,7 @@ public class SoapCollector implements Runnable {
 
     public void activate(Dictionary<String, Object> config) throws MalformedURLException {
         this.config = config;
+        preparator = new PropertiesPreparator(config);
         if (config.get("url") == null) {
             throw new IllegalArgumentException("url property is mandatory");
         }
@@ -94,7 +96,7 @@ public class SoapCollector implements Runnable {
         }
 
         try {
-            PropertiesPreparator.prepare(data, config);
+            preparator.prepare(data);
         } catch (Exception e) {
             LOGGER.warn("Can't prepare properties", e);
         }
@@ -56,6 +56,7 @@ public class SocketCollector implements Closeable, Runnable {
     private boolean open;
     private ExecutorService executor;
     private Dictionary<String, Object> properties;
+    private PropertiesPreparator preparator;
     private String topic;
     private long maxRequestSize = 100000;
     
@@ -74,6 +75,7 @@ public class SocketCollector implements Closeable, Runnable {
 
     public void activate(Dictionary<String, Object> properties) throws IOException {
         this.properties = properties;
+        preparator = new PropertiesPreparator(properties);
         int port = Integer.parseInt(getProperty(this.properties, "port", "34343"));
         String host = getProperty(this.properties, "host", "0.0.0.0");
         int workers = Integer.parseInt(getProperty(this.properties, "workers", "10"));
@@ -179,7 +181,7 @@ public class SocketCollector implements Closeable, Runnable {
                         Map<String, Object> data = new HashMap<>();
                         data.put("type", "socket");
                         data.putAll(unmarshaller.unmarshal(new ByteArrayInputStream(line.getBytes())));
-                        PropertiesPreparator.prepare(data, properties);
+                        preparator.prepare(data);
                         Event event = new Event(topic, data);
                         dispatcher.postEvent(event);
                     }
@@ -211,7 +213,7 @@ public class SocketCollector implements Closeable, Runnable {
                 }
 
                 try {
-                    PropertiesPreparator.prepare(data, properties);
+                    preparator.prepare(data);
                 } catch (Exception e) {
                     LOGGER.warn("Can't prepare data for the dispatcher", e);
                 }
@@ -17,79 +17,183 @@
 package org.apache.karaf.decanter.collector.utils;
 
 import java.net.InetAddress;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.net.UnknownHostException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Enrich the data harvested by a collector with the default properties (Karaf instance name, host details)
+ * and the custom fields of the collector configuration.
+ * The configuration is compiled once in an ordered list of field operations, and the host details are
+ * resolved once and refreshed periodically in the background.
+ */
 public class PropertiesPreparator {
 
     private final static String FIELDS_ADD = "fields.add.";
     private final static String FIELDS_RENAME = "fields.rename.";
     private final static String FIELDS_REMOVE = "fields.remove.";
 
-    private static SimpleDateFormat tsFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+    private final static DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+
+    private final static long HOST_REFRESH_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private static volatile Host host;
+    private static final AtomicBoolean hostRefreshing = new AtomicBoolean();
+    private static final ThreadPoolExecutor hostResolver = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "decanter-collector-host-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // no thread kept between two refreshes
+        hostResolver.allowCoreThreadTimeOut(true);
+    }
+
+    private final String karafName;
+    private final List<FieldOperation> operations = new ArrayList<>();
 
     /**
-     * Prepare the data sent to the dispatcher using default properties and provided custom fields.
+     * Compile the custom fields of a collector configuration.
      *
-     * @param data Data container sent to the dispatcher by the collector.
      * @param properties Custom properties included in the data.
      */
-    public static void prepare(Map<String, Object> data, Dictionary<String, Object> properties) throws Exception {
-        // add the karaf instance name if it doesn't exist in the data
-        String karafName = (String) data.get("karafName");
-        if (karafName == null) {
-            karafName = System.getProperty("karaf.name");
-            if (karafName != null) {
-                data.put("karafName", karafName);
-            }
-        }
-
-        // add the network details
-        String hostAddress = (String) data.get("hostAddress");
-        if (hostAddress == null) {
-            hostAddress =  InetAddress.getLocalHost().getHostAddress();
-        }
-        data.put("hostAddress", hostAddress);
-        String hostName = (String) data.get("hostName");
-        if (hostName == null) {
-            hostName = InetAddress.getLocalHost().getHostName();
-        }
-        data.put("hostName", hostName);
-
-        // custom fields
+    public PropertiesPreparator(Dictionary<String, Object> properties) {
+        karafName = System.getProperty("karaf.name");
         if (properties != null) {
             Enumeration<String> keys = properties.keys();
             while (keys.hasMoreElements()) {
                 String key = keys.nextElement();
+                Object value = properties.get(key);
                 if (key.startsWith(FIELDS_ADD)) {
-                    if ("UUID".equals(properties.get(key).toString().trim())) {
-                        String uuid = UUID.randomUUID().toString();
-                        data.put(key.substring(FIELDS_ADD.length()), uuid);
-                    } else if ("TIMESTAMP".equals(properties.get(key).toString().trim())) {
-                        Date date = new Date();
-                        data.put(key.substring(FIELDS_ADD.length()), tsFormat.format(date));
+                    String name = key.substring(FIELDS_ADD.length());
+                    if ("UUID".equals(value.toString().trim())) {
+                        operations.add(data -> data.put(name, UUID.randomUUID().toString()));
+                    } else if ("TIMESTAMP".equals(value.toString().trim())) {
+                        operations.add(data -> data.put(name, ZonedDateTime.now().format(TIMESTAMP_FORMATTER)));
                     } else {
-                        data.put(key.substring(FIELDS_ADD.length()), properties.get(key));
+                        operations.add(data -> data.put(name, value));
                     }
                 } else if (key.startsWith(FIELDS_RENAME)) {
-                    if (data.containsKey(key.substring(FIELDS_RENAME.length()))) {
-                        Object value = data.get(key.substring(FIELDS_RENAME.length()));
-                        data.remove(key.substring(FIELDS_RENAME.length()));
-                        data.put(properties.get(key).toString().trim(), value);
-                    }
+                    String name = key.substring(FIELDS_RENAME.length());
+                    String newName = value.toString().trim();
+                    operations.add(data -> {
+                        if (data.containsKey(name)) {
+                            data.put(newName, data.remove(name));
+                        }
+                    });
                 } else if (key.startsWith(FIELDS_REMOVE)) {
-                    if (data.containsKey(key.substring(FIELDS_REMOVE.length()))) {
-                        data.remove(key.substring(FIELDS_REMOVE.length()));
-                    }
+                    String name = key.substring(FIELDS_REMOVE.length());
+                    operations.add(data -> data.remove(name));
                 } else {
-                    data.put(key, properties.get(key));
+                    operations.add(data -> data.put(key, value));
                 }
             }
         }
     }
 
+    /**
+     * Prepare the data sent to the dispatcher using default properties and the compiled custom fields.
+     *
+     * @param data Data container sent to the dispatcher by the collector.
+     */
+    public void prepare(Map<String, Object> data) throws Exception {
+        // add the karaf instance name if it doesn't exist in the data
+        if (karafName != null && data.get("karafName") == null) {
+            data.put("karafName", karafName);
+        }
+
+        // add the network details
+        if (data.get("hostAddress") == null || data.get("hostName") == null) {
+            Host current = host();
+            if (data.get("hostAddress") == null) {
+                data.put("hostAddress", current.address);
+            }
+            if (data.get("hostName") == null) {
+                data.put("hostName", current.name);
+            }
+        }
+
+        // custom fields
+        for (FieldOperation operation : operations) {
+            operation.apply(data);
+        }
+    }
+
+    /**
+     * Prepare the data sent to the dispatcher using default properties and provided custom fields.
+     * The collectors should create a {@link PropertiesPreparator} at activation time and use {@link #prepare(Map)}.
+     *
+     * @param data Data container sent to the dispatcher by the collector.
+     * @param properties Custom properties included in the data.
+     */
+    public static void prepare(Map<String, Object> data, Dictionary<String, Object> properties) throws Exception {
+        new PropertiesPreparator(properties).prepare(data);
+    }
+
+    private static Host host() throws UnknownHostException {
+        Host current = host;
+        if (current == null) {
+            synchronized (PropertiesPreparator.class) {
+                if (host == null) {
+                    host = Host.resolve();
+                }
+                return host;
+            }
+        }
+        // refresh in the background (a lookup can block on the DNS), the collectors keep on using
+        // the current host details meanwhile
+        if (System.nanoTime() - current.resolved > HOST_REFRESH_INTERVAL && hostRefreshing.compareAndSet(false, true)) {
+            try {
+                hostResolver.execute(() -> {
+                    try {
+                        host = Host.resolve();
+                    } catch (UnknownHostException e) {
+                        // keep the previous host details
+                        host = new Host(current.name, current.address, System.nanoTime());
+                    } finally {
+                        hostRefreshing.set(false);
+                    }
+                });
+            } catch (Exception e) {
+                hostRefreshing.set(false);
+            }
+        }
+        return host;
+    }
+
+    @FunctionalInterface
+    private interface FieldOperation {
+        void apply(Map<String, Object> data);
+    }
+
+    private static class Host {
+
+        private final String name;
+        private final String address;
+        private final long resolved;
+
+        Host(String name, String address, long resolved) {
+            this.name = name;
+            this.address = address;
+            this.resolved = resolved;
+        }
+
+        static Host resolve() throws UnknownHostException {
+            InetAddress localHost = InetAddress.getLocalHost();
+            return new Host(localHost.getHostName(), localHost.getHostAddress(), System.nanoTime());
+        }
+
+    }
+
 }
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.collector.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+public class PropertiesPreparatorTest {
+
+    @Test
+    public void testPrepare() throws Exception {
+        Dictionary<String, Object> config = new Hashtable<>();
+        config.put("component.name", "test");
+        config.put("fields.add.environment", "production");
+        config.put("fields.add.id", "UUID");
+        config.put("fields.add.collected", "TIMESTAMP");
+        config.put("fields.rename.type", "kind");
+        config.put("fields.remove.secret", "");
+        PropertiesPreparator preparator = new PropertiesPreparator(config);
+
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("type", "test");
+            data.put("secret", "password");
+            preparator.prepare(data);
+
+            Assert.assertEquals("test", data.get("component.name"));
+            Assert.assertEquals("production", data.get("environment"));
+            Assert.assertEquals(36, data.get("id").toString().length());
+            Assert.assertTrue(data.get("collected").toString().matches("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{3}.*"));
+            Assert.assertEquals("test", data.get("kind"));
+            Assert.assertFalse(data.containsKey("type"));
+            Assert.assertFalse(data.containsKey("secret"));
+            Assert.assertNotNull(data.get("hostName"));
+            Assert.assertNotNull(data.get("hostAddress"));
+        }
+    }
+
+    @Test
+    public void testKeepHost() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("hostName", "remote");
+        data.put("hostAddress", "10.0.0.1");
+        new PropertiesPreparator(null).prepare(data);
+        Assert.assertEquals("remote", data.get("hostName"));
+        Assert.assertEquals("10.0.0.1", data.get("hostAddress"));
+    }
+
+}
@@ -0,0 +1,431 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.decanter.marshaller.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+
+/**
+ * Streams an event as JSON directly into a reusable per-thread buffer, without building an intermediate
+ * JSON object tree. The output is the same as the one produced by the javax.json object builders
+ * (same key order, number and string formatting).
+ */
+class JsonEventWriter {
+
+    private static final String TIMESTAMP_KEY = "@timestamp";
+    private static final int MAX_KEYS = 10000;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final boolean replaceDotsByUnderscores;
+    private final DateTimeFormatter timestampFormatter;
+    private final ZoneId timestampZoneId;
+
+    private final Map<String, Key> keys = new ConcurrentHashMap<>();
+    private final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+
+    JsonEventWriter(boolean replaceDotsByUnderscores, DateTimeFormatter timestampFormatter, ZoneId timestampZoneId) {
+        this.replaceDotsByUnderscores = replaceDotsByUnderscores;
+        this.timestampFormatter = timestampFormatter;
+        this.timestampZoneId = timestampZoneId;
+    }
+
+    String write(Event event) {
+        Context context = contexts.get();
+        StringBuilder builder = context.reset();
+        writeEvent(event, builder, context);
+        return builder.toString();
+    }
+
+    void write(Event event, OutputStream out) throws IOException {
+        Context context = contexts.get();
+        StringBuilder builder = context.reset();
+        writeEvent(event, builder, context);
+        context.encode(builder, out);
+    }
+
+    private void writeEvent(Event event, StringBuilder builder, Context context) {
+        String timestamp = timestamp(event, context);
+        String[] names = event.getPropertyNames();
+        Key[] eventKeys = context.keys(names.length);
+        Set<String> seen = context.seen;
+        seen.clear();
+        seen.add(TIMESTAMP_KEY);
+        boolean duplicates = false;
+        for (int i = 0; i < names.length; i++) {
+            eventKeys[i] = key(names[i]);
+            duplicates |= !seen.add(eventKeys[i].name);
+        }
+
+        if (duplicates) {
+            // several properties share the same (translated) key: the last value wins, at the first position
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put(TIMESTAMP_KEY, timestamp);
+            for (int i = 0; i < names.length; i++) {
+                Object value = event.getProperty(names[i]);
+                if (isAttribute(value)) {
+                    values.put(eventKeys[i].name, value);
+                }
+            }
+            builder.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                builder.append(key(entry.getKey()).json);
+                writeAttribute(builder, entry.getValue());
+            }
+            builder.append('}');
+            return;
+        }
+
+        builder.append("{\"@timestamp\":");
+        writeString(builder, timestamp);
+        for (int i = 0; i < names.length; i++) {
+            Object value = event.getProperty(names[i]);
+            if (isAttribute(value)) {
+                builder.append(',').append(eventKeys[i].json);
+                writeAttribute(builder, value);
+            }
+        }
+        builder.append('}');
+    }
+
+    private String timestamp(Event event, Context context) {
+        Long timestamp = (Long) event.getProperty(EventConstants.TIMESTAMP);
+        if (timestamp == null) {
+            return LocalDateTime.now().format(timestampFormatter);
+        }
+        // events are often produced in bursts sharing the same timestamp
+        if (context.formattedTimestamp == null || context.timestamp != timestamp) {
+            context.timestamp = timestamp;
+            context.formattedTimestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), timestampZoneId).format(timestampFormatter);
+        }
+        return context.formattedTimestamp;
+    }
+
+    private Key key(String name) {
+        Key key = keys.get(name);
+        if (key == null) {
+            key = new Key(replaceDotsByUnderscores ? name.replace('.', '_') : name);
+            if (keys.size() < MAX_KEYS) {
+                keys.put(name, key);
+            }
+        }
+        return key;
+    }
+
+    private static boolean isAttribute(Object value) {
+        return value instanceof Map || value instanceof List
+                || value instanceof long[] || value instanceof int[]
+                || value instanceof Object[]
+                || isScalar(value);
+    }
+
+    private static boolean isScalar(Object value) {
+        return value instanceof String
+                || value instanceof Long || value instanceof Integer
+                || value instanceof Double || value instanceof Float
+                || value instanceof Boolean
+                || value instanceof BigDecimal || value instanceof BigInteger;
+    }
+
+    private void writeAttribute(StringBuilder builder, Object value) {
+        if (value instanceof Map) {
+            writeMap(builder, (Map<?, ?>) value);
+        } else if (value instanceof List) {
+            writeList(builder, (List<?>) value);
+        } else if (value instanceof long[]) {
+            builder.append('[');
+            long[] array = (long[]) value;
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(array[i]);
+            }
+            builder.append(']');
+        } else if (value instanceof int[]) {
+            builder.append('[');
+            int[] array = (int[]) value;
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(array[i]);
+            }
+            builder.append(']');
+        } else if (value instanceof Object[]) {
+            // Long[], Integer[] keep numbers, other arrays are written as strings
+            boolean numbers = value instanceof Long[] || value instanceof Integer[];
+            builder.append('[');
+            boolean first = true;
+            for (Object o : (Object[]) value) {
+                if (o != null) {
+                    if (!first) {
+                        builder.append(',');
+                    }
+                    first = false;
+                    if (numbers) {
+                        builder.append(o);
+                    } else {
+                        writeString(builder, o.toString());
+                    }
+                }
+            }
+            builder.append(']');
+        } else {
+            writeScalar(builder, value);
+        }
+    }
+
+    private void writeMap(StringBuilder builder, Map<?, ?> map) {
+        if (replaceDotsByUnderscores && hasDuplicateKeys(map)) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (isScalar(entry.getValue())) {
+                    values.put(key(String.valueOf(entry.getKey())).name, entry.getValue());
+                }
+            }
+            map = values;
+        }
+        builder.append('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            // as in the javax.json builder, only the scalar values of an inner map are kept
+            Object value = entry.getValue();
+            if (isScalar(value)) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                builder.append(key(String.valueOf(entry.getKey())).json);
+                writeScalar(builder, value);
+            }
+        }
+        builder.append('}');
+    }
+
+    private boolean hasDuplicateKeys(Map<?, ?> map) {
+        Set<String> names = null;
+        for (Object name : map.keySet()) {
+            if (String.valueOf(name).indexOf('.') >= 0) {
+                names = new HashSet<>();
+                break;
+            }
+        }
+        if (names == null) {
+            return false;
+        }
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (isScalar(entry.getValue()) && !names.add(key(String.valueOf(entry.getKey())).name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeList(StringBuilder builder, List<?> list) {
+        builder.append('[');
+        boolean first = true;
+        for (Object value : list) {
+            if (value instanceof Map || isScalar(value)) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                if (value instanceof Map) {
+                    writeMap(builder, (Map<?, ?>) value);
+                } else {
+                    writeScalar(builder, value);
+                }
+            }
+        }
+        builder.append(']');
+    }
+
+    private static void writeScalar(StringBuilder builder, Object value) {
+        if (value instanceof String) {
+            writeString(builder, (String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof BigInteger || value instanceof Boolean) {
+            builder.append(value);
+        } else if (value instanceof Double) {
+            writeDouble(builder, (Double) value);
+        } else if (value instanceof Float) {
+            // javax.json widens the float to a double
+            writeDouble(builder, ((Float) value).doubleValue());
+        } else if (value instanceof BigDecimal) {
+            builder.append(value.toString());
+        }
+    }
+
+    private static void writeDouble(StringBuilder builder, double value) {
+        if (Double.isNaN(value)) {
+            builder.append("\"NaN\"");
+        } else if (Double.isInfinite(value)) {
+            builder.append("\"Infinity\"");
+        } else {
+            // javax.json writes BigDecimal.valueOf(value), which only differs from Double.toString()
+            // for the scientific notation and the signed zero
+            String string = Double.toString(value);
+            if (value == 0 || string.indexOf('E') >= 0) {
+                string = new BigDecimal(string).toString();
+            }
+            builder.append(string);
+        }
+    }
+
+    static void writeString(StringBuilder builder, String value) {
+        builder.append('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            builder.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                case '\\':
+                    builder.append('\\').append(c);
+                    break;
+                case '\b':
+                    builder.append("\\b");
+                    break;
+                case '\f':
+                    builder.append("\\f");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    builder.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        builder.append(value, start, length).append('"');
+    }
+
+    private static class Key {
+
+        private final String name;
+        private final String json;
+
+        Key(String name) {
+            this.name = name;
+            StringBuilder builder = new StringBuilder(name.length() + 3);
+            writeString(builder, name);
+            this.json = builder.append(':').toString();
+        }
+
+    }
+
+    /**
+     * Per-thread state, reused from one event to the next.
+     */
+    private static class Context {
+
+        private StringBuilder builder = new StringBuilder(INITIAL_BUFFER_SIZE);
+        private Key[] keys = new Key[32];
+        private final Set<String> seen = new HashSet<>();
+        private long timestamp;
+        private String formattedTimestamp;
+        private CharsetEncoder encoder;
+        private char[] chars;
+        private ByteBuffer bytes;
+
+        StringBuilder reset() {
+            // don't keep a huge buffer after an unusually large event
+            if (builder.capacity() > MAX_BUFFER_SIZE) {
+                builder = new StringBuilder(INITIAL_BUFFER_SIZE);
+            } else {
+                builder.setLength(0);
+            }
+            return builder;
+        }
+
+        Key[] keys(int size) {
+            if (keys.length < size) {
+                keys = new Key[size];
+            }
+            return keys;
+        }
+
+        void encode(StringBuilder builder, OutputStream out) throws IOException {
+            if (encoder == null) {
+                encoder = StandardCharsets.UTF_8.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                bytes = ByteBuffer.allocate(8192);
+            }
+            // the encoder is much faster on an array backed buffer
+            if (chars == null || chars.length < builder.length() || chars.length > MAX_BUFFER_SIZE) {
+                chars = new char[Math.max(builder.length(), INITIAL_BUFFER_SIZE)];
+            }
+            builder.getChars(0, builder.length(), chars, 0);
+            encoder.reset();
+            CharBuffer buffer = CharBuffer.wrap(chars, 0, builder.length());
+            CoderResult result;
+            do {
+                result = encoder.encode(buffer, bytes, true);
+                drain(out);
+            } while (result.isOverflow());
+            do {
+                result = encoder.flush(bytes);
+                drain(out);
+            } while (result.isOverflow());
+        }
+
+        private void drain(OutputStream out) throws IOException {
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        }
+
+    }
+
+}
@@ -16,10 +16,18 @@
  */
 package org.apache.karaf.decanter.marshaller.json;
 
+import java.io.ByteArrayOutputStream;
 import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.json.Json;
@@ -196,4 +204,120 @@ public class TestJsonMarshaller {
        Assert.assertEquals("other", innerObject.getString("other"));
    }
 
+   @Test
+   public void testScalars() throws Exception {
+       Marshaller marshaller = new JsonMarshaller();
+
+       Map<String, Object> map = new HashMap<>();
+       map.put(EventConstants.TIMESTAMP, EXPECTED_TIMESTAMP);
+       map.put("type", "log");
+       map.put("loggerName", "org.apache.karaf.decanter");
+       map.put("message", "Quote \" backslash \\ tab \t newline \n control \u0001 unicode \u00e9\u4e2d");
+       map.put("int", 42);
+       map.put("long", -9876543210L);
+       map.put("double", 2.5);
+       map.put("round", 100.0);
+       map.put("big", 1.0E20);
+       map.put("small", 1.0E-5);
+       map.put("negativeZero", -0.0);
+       map.put("nan", Double.NaN);
+       map.put("infinite", Double.POSITIVE_INFINITY);
+       map.put("float", 0.1f);
+       map.put("decimal", new BigDecimal("12.3400"));
+       map.put("integer", new BigInteger("123456789012345678901234567890"));
+       map.put("boolean", true);
+       map.put("short", (short) 3);
+       map.put("pojo", new Object());
+
+       // same output as the javax.json (glassfish) object builders
+       Assert.assertEquals("{\"@timestamp\":\"2016-02-02T15:59:40.634\",\"small\":0.000010,\"big\":1.0E+20,\"double\":2.5,"
+               + "\"infinite\":\"Infinity\",\"negativeZero\":0.0,\"integer\":123456789012345678901234567890,\"type\":\"log\","
+               + "\"message\":\"Quote \\\" backslash \\\\ tab \\t newline \\n control \\u0001 unicode \u00e9\u4e2d\",\"float\":0.10000000149011612,"
+               + "\"int\":42,\"long\":-9876543210,\"boolean\":true,\"round\":100.0,\"nan\":\"NaN\",\"loggerName\":\"org.apache.karaf.decanter\","
+               + "\"decimal\":12.3400,\"timestamp\":1454428780634,\"event_topics\":\"decanter/collect/log\"}",
+               marshaller.marshal(new Event("decanter/collect/log", map)));
+   }
+
+   @Test
+   public void testStructured() throws Exception {
+       Marshaller marshaller = new JsonMarshaller();
+
+       Map<String, Object> map = new HashMap<>();
+       map.put(EventConstants.TIMESTAMP, EXPECTED_TIMESTAMP);
+       map.put("longs", new long[]{ 1L, 2L, 3L });
+       map.put("ints", new int[]{ 4, 5 });
+       map.put("strings", new String[]{ "a", "b\"c" });
+       map.put("objects", new Object[]{ 1, null, "x" });
+       List<Object> list = new ArrayList<>();
+       list.add("one");
+       list.add(2);
+       list.add(3L);
+       list.add(4.5);
+       list.add(false);
+       list.add(new BigDecimal("6.70"));
+       list.add((short) 8);
+       list.add(Arrays.asList("nested"));
+       list.add(Collections.singletonMap("in.list", "value"));
+       map.put("list", list);
+       Map<String, Object> inner = new HashMap<>();
+       inner.put("key.with.dots", "value");
+       inner.put("number", 10);
+       inner.put("nan", Double.NaN);
+       inner.put("nested", Collections.singletonMap("a", "b"));
+       inner.put("list", Arrays.asList(1, 2));
+       map.put("map.with.dots", inner);
+       map.put("ObjectName", "java.lang:type=Memory");
+
+       Assert.assertEquals("{\"@timestamp\":\"2016-02-02T15:59:40.634\",\"longs\":[1,2,3],\"strings\":[\"a\",\"b\\\"c\"],\"ints\":[4,5],"
+               + "\"objects\":[\"1\",\"x\"],\"map_with_dots\":{\"number\":10,\"key_with_dots\":\"value\",\"nan\":\"NaN\"},"
+               + "\"list\":[\"one\",2,3,4.5,false,6.70,{\"in_list\":\"value\"}],\"timestamp\":1454428780634,"
+               + "\"ObjectName\":\"java.lang:type=Memory\",\"event_topics\":\"decanter/collect/jmx\"}",
+               marshaller.marshal(new Event("decanter/collect/jmx", map)));
+
+       map = new HashMap<>();
+       map.put("longs", new Long[]{ 1L, null, 2L });
+       map.put("ints", new Integer[]{ 3 });
+       JsonObject jsonObject = Json.createReader(new StringReader(marshaller.marshal(new Event(EXPECTED_TOPIC, map)))).readObject();
+       Assert.assertEquals(2, jsonObject.getJsonArray("longs").getJsonNumber(1).longValue());
+       Assert.assertEquals(3, jsonObject.getJsonArray("ints").getInt(0));
+   }
+
+   @Test
+   public void testDuplicateKeys() throws Exception {
+       Map<String, Object> map = new HashMap<>();
+       map.put(EventConstants.TIMESTAMP, EXPECTED_TIMESTAMP);
+       map.put("a.b", "dotted");
+       map.put("a_b", "underscored");
+       map.put("@timestamp", "overridden");
+       Event event = new Event("decanter/collect/test", map);
+
+       JsonMarshaller marshaller = new JsonMarshaller();
+       Assert.assertEquals("{\"@timestamp\":\"overridden\",\"a_b\":\"underscored\",\"timestamp\":1454428780634,\"event_topics\":\"decanter/collect/test\"}",
+               marshaller.marshal(event));
+
+       Dictionary<String, Object> config = new Hashtable<>();
+       config.put("replaceDotsByUnderscores", "false");
+       marshaller.activate(config);
+       Assert.assertEquals("{\"@timestamp\":\"overridden\",\"a.b\":\"dotted\",\"a_b\":\"underscored\",\"timestamp\":1454428780634,\"event.topics\":\"decanter/collect/test\"}",
+               marshaller.marshal(event));
+   }
+
+   @Test
+   public void testMarshalOutputStream() throws Exception {
+       Marshaller marshaller = new JsonMarshaller();
+
+       Map<String, Object> map = new HashMap<>();
+       map.put(EventConstants.TIMESTAMP, EXPECTED_TIMESTAMP);
+       StringBuilder message = new StringBuilder();
+       for (int i = 0; i < 5000; i++) {
+           message.append("unicode \u00e9\u4e2d ");
+       }
+       map.put("message", message.toString());
+       Event event = new Event(EXPECTED_TOPIC, map);
+
+       ByteArrayOutputStream out = new ByteArrayOutputStream();
+       marshaller.marshal(event, out);
+       Assert.assertEquals(marshaller.marshal(event), new String(out.toByteArray(), StandardCharsets.UTF_8));
+   }
+
 }